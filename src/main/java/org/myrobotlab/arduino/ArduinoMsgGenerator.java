@@ -232,7 +232,7 @@ public class ArduinoMsgGenerator {
     virtualJava = virtualJava.replace("%javaArduinoClass%", "MrlComm");
     virtualJava = virtualJava.replace("%ackEnabled%", "false");
     // virtual message should publish an ack after each processCommand call.
-    virtualJava = virtualJava.replace("%publishAcks%", "publishAck(method);");
+    virtualJava = virtualJava.replace("%publishAcks%", "if (ackSeq) { publishAckSeq(actualCommand); } else { publishAck(method); }");
     // virtual message doesn't need to wait for a begin message to be clear to
     // send.
     virtualJava = virtualJava.replace("%clearToSend%", "true");
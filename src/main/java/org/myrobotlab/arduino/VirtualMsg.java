@@ -6,9 +6,15 @@ import java.io.OutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.myrobotlab.framework.TaskScheduler;
 import org.myrobotlab.logging.Level;
 
 import org.myrobotlab.arduino.virtual.MrlComm;
@@ -94,6 +100,35 @@ public class VirtualMsg {
     volatile boolean pendingMessage = false;
   }
   transient AckLock ackRecievedLock = new AckLock();
+  // windowed acks - up to ackWindow commands are in flight, each sent with a
+  // sequence number after its params. MrlComm decodes params by position, so
+  // a board which does not know about sequence numbers ignores the extra byte
+  // and acks in order. An ackWindow of 1 is the original stop and wait.
+  // The window only opens once the board sends a sequence number back in an
+  // ack - until then one command is in flight and nothing is retransmitted.
+  public static class InFlight {
+    int seq;
+    int method;
+    byte[] message;
+    long sentTs;
+    int retries;
+  }
+  static final int MAX_RETRIES = 3;
+  private int ackWindow = 1;
+  private int retransmitTimeout = 500;
+  // the board acked with a sequence number - it drops retransmitted duplicates
+  private volatile boolean seqAcks = false;
+  // retransmits and gives up on commands whose ack did not come back
+  transient ScheduledFuture<?> retransmitTask = null;
+  // sends and retransmits come from different threads
+  transient final Object writeLock = new Object();
+  private int nextSeq = 0;
+  private int retransmitCount = 0;
+  transient LinkedList<InFlight> inFlight = new LinkedList<>();
+  // device side - commands carry a sequence number which goes back in the ack,
+  // a retransmitted command which was already processed is only acked again
+  boolean ackSeq = false;
+  private boolean[] processedSeq = new boolean[256];
   // recording related
   transient OutputStream record = null;
   transient StringBuilder rxBuffer = new StringBuilder();
@@ -311,7 +346,8 @@ public class VirtualMsg {
       // We saw an ack!  we ack this internally right away, and down below in the generated code, 
       // call publishAck on the MrlCommPublisher
       Integer function = ioCmd[startPos+1]; // bu8
-      ackReceived(function);
+      // windowed acks send back the sequence number of the command
+      ackReceived(function, (ioCmd.length > startPos + 2) ? ioCmd[startPos+2] : -1);
     }
     
     if (method != PUBLISH_MRL_COMM_BEGIN) {
@@ -1652,9 +1688,12 @@ public class VirtualMsg {
           if (debug) {
             log.info("Full message received: {} Data:{}", VirtualMsg.methodToString(ioCmd[0]), actualCommand);
           }
-          // process the command.
-          processCommand(actualCommand);
-          publishAck(method);
+          // process the command - a retransmitted command which was already
+          // processed is only acked again
+          if (!isDuplicate(actualCommand)) {
+            processCommand(actualCommand);
+          }
+          if (ackSeq) { publishAckSeq(actualCommand); } else { publishAck(method); }
           // re-init parser
           Arrays.fill(ioCmd, 0); // optimize remove
           msgSize = 0;
@@ -1760,6 +1799,9 @@ public class VirtualMsg {
   }
   
   synchronized byte[] sendMessage(ByteArrayOutputStream baos) throws Exception {
+    if (ackEnabled && ackWindow > 1) {
+      return sendWindowed(baos);
+    }
     byte[] message = baos.toByteArray();
     if (ackEnabled) {
       // wait for a pending ack to be received before we process our message.^M
@@ -1875,7 +1917,8 @@ public class VirtualMsg {
   }
   
   public void waitForAck(){
-    if (!ackEnabled) {
+    if (!ackEnabled || ackWindow > 1) {
+      // windowed acks are matched as they come in
       return;
     }
     // if there's a pending message, we need to wait for the ack to be received.
@@ -1896,10 +1939,251 @@ public class VirtualMsg {
   }
   
   public void ackReceived(int function) {
+    ackReceived(function, -1);
+  }
+
+  /**
+   * seq is the sequence number of the acked command, -1 if the board does not
+   * send them back - then acks are matched in order. function -1 resets on
+   * connect and disconnect.
+   */
+  public void ackReceived(int function, int seq) {
+    synchronized (ackRecievedLock) {
+      ackRecievedLock.pendingMessage = false;
+      if (function < 0) {
+        inFlight.clear();
+        seqAcks = false;
+      } else if (seq < 0) {
+        inFlight.poll();
+      } else {
+        seqAcks = true;
+        InFlight acked = null;
+        for (InFlight f : inFlight) {
+          if (f.seq == seq) {
+            acked = f;
+            break;
+          }
+        }
+        // a second ack of a retransmitted command is not found
+        if (acked != null) {
+          // commands sent before it which are not acked were lost - they are
+          // retransmitted by the next retransmit run instead of waiting on the
+          // timeout
+          for (InFlight f : inFlight) {
+            if (f == acked) {
+              break;
+            }
+            if (f.sentTs <= acked.sentTs) {
+              f.sentTs = 0;
+            }
+          }
+          inFlight.remove(acked);
+        }
+      }
+      ackRecievedLock.notifyAll();
+    }
+  }
+
+  /**
+   * commands which can be in flight - ackWindow once the board has shown it
+   * sends sequence numbers back, 1 until then
+   */
+  int window() {
+    return seqAcks ? ackWindow : 1;
+  }
+
+  /**
+   * windowed send - only blocks while the window is full, retransmits and
+   * timeouts are done by the retransmit task
+   */
+  byte[] sendWindowed(ByteArrayOutputStream baos) throws Exception {
+    if (serial == null) {
+      return baos.toByteArray();
+    }
+    startRetransmits();
+    synchronized (ackRecievedLock) {
+      while (inFlight.size() >= window()) {
+        ackRecievedLock.wait(retransmitTimeout);
+      }
+    }
+    InFlight f = new InFlight();
+    f.seq = nextSeq;
+    nextSeq = (nextSeq + 1) & 0xFF;
+    baos.write(f.seq);
+    f.message = baos.toByteArray();
+    // size includes the sequence number
+    f.message[1] = (byte) (f.message[1] + 1);
+    if ((f.message[1] & 0xFF) > MAX_MSG_SIZE) {
+      log.error("{} with sequence number exceeds max msg size {}", methodToString(f.message[2] & 0xFF), MAX_MSG_SIZE);
+    }
+    f.method = f.message[2] & 0xFF;
+    f.sentTs = System.currentTimeMillis();
+    synchronized (ackRecievedLock) {
+      inFlight.add(f);
+    }
+    synchronized (writeLock) {
+      serial.write(f.message);
+    }
+    return f.message;
+  }
+
+  /**
+   * schedule retransmitExpired every quarter of the retransmit timeout
+   */
+  void startRetransmits() {
+    synchronized (writeLock) {
+      if (retransmitTask != null) {
+        return;
+      }
+      long interval = Math.max(1, retransmitTimeout / 4);
+      retransmitTask = TaskScheduler.scheduleAtFixedRate(() -> {
+        try {
+          retransmitExpired();
+        } catch (Exception e) {
+          log.error("retransmit threw", e);
+        }
+      }, interval, interval);
+    }
+  }
+
+  void stopRetransmits() {
+    synchronized (writeLock) {
+      if (retransmitTask != null) {
+        retransmitTask.cancel(false);
+        retransmitTask = null;
+      }
+    }
+  }
+
+  /**
+   * resend commands whose ack did not come back within retransmitTimeout -
+   * after MAX_RETRIES they are given up on. A board which does not send
+   * sequence numbers back can not tell a retransmission from a new command, so
+   * its commands are given up on after ACK_TIMEOUT without being resent.
+   */
+  void retransmitExpired() throws Exception {
+    List<byte[]> resend = null;
+    synchronized (ackRecievedLock) {
+      long now = System.currentTimeMillis();
+      long timeout = seqAcks ? retransmitTimeout : ACK_TIMEOUT;
+      Iterator<InFlight> it = inFlight.iterator();
+      while (it.hasNext()) {
+        InFlight f = it.next();
+        if (now - f.sentTs < timeout) {
+          continue;
+        }
+        if (f.retries >= MAX_RETRIES || !seqAcks) {
+          it.remove();
+          log.error("no ack for {} seq {} after {} retries", methodToString(f.method), f.seq, f.retries);
+          arduino.ackTimeout();
+          ackRecievedLock.notifyAll();
+          continue;
+        }
+        ++f.retries;
+        ++retransmitCount;
+        f.sentTs = now;
+        if (resend == null) {
+          resend = new ArrayList<>();
+        }
+        resend.add(f.message);
+      }
+    }
+    if (resend != null) {
+      synchronized (writeLock) {
+        for (byte[] message : resend) {
+          serial.write(message);
+        }
+      }
+    }
+  }
+
+  /**
+   * device side - true if the command is a retransmission of one already
+   * processed
+   */
+  boolean isDuplicate(int[] command) {
+    if (!ackSeq || command.length < 2) {
+      return false;
+    }
+    int seq = command[command.length - 1];
+    if (processedSeq[seq]) {
+      return true;
+    }
+    processedSeq[seq] = true;
+    // forget sequence numbers half way round so they can be used again
+    processedSeq[(seq + 128) & 0xFF] = false;
+    return false;
+  }
+
+  /**
+   * device side - ack with the sequence number of the command
+   */
+  void publishAckSeq(int[] command) throws Exception {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    appendMessage(baos, MAGIC_NUMBER);
+    appendMessage(baos, 1 + 1 + 1); // size
+    appendMessage(baos, PUBLISH_ACK);
+    appendMessage(baos, command[0]);
+    appendMessage(baos, command[command.length - 1]);
+    sendMessage(baos);
+  }
+
+  /**
+   * number of commands which can be in flight - 1 is stop and wait. More than
+   * 1 is only used once the board acks with sequence numbers.
+   */
+  public void setAckWindow(int size) {
+    if (size < 1 || size > 127) {
+      log.error("ack window {} must be between 1 and 127", size);
+      return;
+    }
     synchronized (ackRecievedLock) {
+      ackWindow = size;
+      inFlight.clear();
       ackRecievedLock.pendingMessage = false;
       ackRecievedLock.notifyAll();
     }
+    if (size == 1) {
+      stopRetransmits();
+    }
+  }
+
+  /**
+   * @return commands which can be in flight now - 1 until the board has acked
+   *         with a sequence number
+   */
+  public int getAckWindow() {
+    return window();
+  }
+
+  /**
+   * @return true if the board acks with sequence numbers
+   */
+  public boolean isSeqAcks() {
+    return seqAcks;
+  }
+
+  public void setRetransmitTimeout(int ms) {
+    retransmitTimeout = ms;
+    // rescheduled at the new rate by the next send
+    stopRetransmits();
+  }
+
+  public int getInFlight() {
+    synchronized (ackRecievedLock) {
+      return inFlight.size();
+    }
+  }
+
+  public int getRetransmitCount() {
+    return retransmitCount;
+  }
+
+  /**
+   * device side - commands carry a sequence number
+   */
+  public void setAckSeq(boolean b) {
+    ackSeq = b;
   }
   
   public int getMethod(){
@@ -1972,6 +2256,7 @@ public class VirtualMsg {
     this.byteCount = new AtomicInteger(0);
     this.msgSize = 0;
     ackReceived(-1);
+    stopRetransmits();
   }
 
   public static boolean isFullMessage(byte[] bytes) {
@@ -364,6 +364,14 @@ public class MrlComm implements SerialDataListener {
     ackEnabled = enabled;
   }
 
+  /**
+   * commands from a host with an ack window (Msg.setAckWindow) carry a sequence
+   * number which is sent back with the ack
+   */
+  public void enableAckSeq(boolean enabled) {
+    virtualMsg.setAckSeq(enabled);
+  }
+
   // > enablePin/address/type/b16 rate
   public void enablePin(int address, int type, int rate) {
     // don't add it twice
@@ -1,40 +1,54 @@
 package org.myrobotlab.arduino.virtual;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * virtual Wire - every device behaves like a register file where each register
+ * holds its own address. The first byte written in a transmission sets the
+ * device's register pointer, reads return the register and auto-increment,
+ * like most i2c sensors do. So reading 2 bytes from register 0x3B returns
+ * 0x3B 0x3C.
+ */
 public class Wire {
 
-  public static void beginTransmission(int writeValue) {
-    // TODO Auto-generated method stub
+  static Map<Integer, Integer> registers = new HashMap<>();
 
-  }
+  static int address;
 
-  public static void write(int writeValue) {
-    // TODO Auto-generated method stub
+  static boolean first;
 
+  public static synchronized void beginTransmission(int deviceAddress) {
+    address = deviceAddress;
+    first = true;
   }
 
-  public static void endTransmission() {
-    // TODO Auto-generated method stub
+  public static synchronized void write(int writeValue) {
+    if (first) {
+      registers.put(address, writeValue & 0xff);
+      first = false;
+    }
+  }
 
+  public static synchronized void endTransmission() {
+    first = false;
   }
 
-  public static int requestFrom(int deviceAddress, int readSize) {
-    // TODO Auto-generated method stub
+  public static synchronized int requestFrom(int deviceAddress, int readSize) {
+    address = deviceAddress;
     return readSize;
   }
 
   public static void begin() {
-    // TODO Auto-generated method stub
-
   }
 
   public static void setClock(long l) {
-    // TODO Auto-generated method stub
-
   }
 
-  public static int read() {
-    // TODO Auto-generated method stub
-    return 123;
+  public static synchronized int read() {
+    int register = registers.getOrDefault(address, 0);
+    registers.put(address, (register + 1) & 0xff);
+    return register;
   }
 
 }
@@ -0,0 +1,527 @@
+package org.myrobotlab.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Compact binary message codec for mrl to mrl connections. The JSON path
+ * encodes every parameter to a JSON string and then the whole message again,
+ * here a message is written once:
+ *
+ * <pre>
+ * 'M' version msgId name sender sendingMethod method status hops properties data
+ * </pre>
+ *
+ * Numbers are varints, strings and arrays are length-prefixed. Names (service,
+ * method, ids) are interned - the first time a name is written it is sent
+ * with its bytes and both ends add it to their table, after that only its
+ * index is sent. Parameters are tagged - primitives, strings and primitive
+ * arrays are written natively, anything else as JSON which the receiving
+ * gateway decodes with the parameter types of the MethodEntry it invokes.
+ *
+ * The interning makes a codec stateful, so there is one per connection and
+ * frames must be decoded in the order they were encoded - encode and send
+ * under the codec's lock. Frames travel as websocket text prefixed with
+ * FRAME_PREFIX, so a connection can carry JSON and binary messages at the
+ * same time.
+ *
+ * Negotiation - a client asks for it with codec=binary on the connect url, a
+ * gateway which supports it answers with binary frames, the client switches
+ * to binary when it gets the first one. Browsers never ask and stay JSON.
+ */
+public class BinaryCodec {
+
+  public final static Logger log = LoggerFactory.getLogger(BinaryCodec.class);
+
+  /**
+   * codec name used in negotiation and as Message.encoding of decoded messages
+   */
+  public final static String NAME = "binary";
+
+  public final static String FRAME_PREFIX = "#";
+
+  final static byte MAGIC = 'M';
+
+  final static byte VERSION = 1;
+
+  /**
+   * max names interned per direction
+   */
+  final static int MAX_INTERNED = 4096;
+
+  // value tags
+  final static int NULL = 0;
+  final static int TRUE = 1;
+  final static int FALSE = 2;
+  final static int BYTE = 3;
+  final static int SHORT = 4;
+  final static int INT = 5;
+  final static int LONG = 6;
+  final static int FLOAT = 7;
+  final static int DOUBLE = 8;
+  final static int STRING = 9;
+  final static int BYTES = 10;
+  final static int INTS = 11;
+  final static int DOUBLES = 12;
+  final static int JSON = 13;
+
+  /**
+   * a parameter which was sent as JSON - it is decoded when the type it is
+   * going to is known
+   */
+  public static class JsonValue {
+    public final String json;
+
+    public JsonValue(String json) {
+      this.json = json;
+    }
+
+    @Override
+    public String toString() {
+      return json;
+    }
+  }
+
+  final Map<String, Integer> encodeNames = new HashMap<>();
+
+  final List<String> decodeNames = new ArrayList<>();
+
+  public static boolean isFrame(String data) {
+    return data != null && data.startsWith(FRAME_PREFIX);
+  }
+
+  public synchronized String encodeFrame(Message msg) {
+    return FRAME_PREFIX + Base64.getEncoder().encodeToString(encode(msg));
+  }
+
+  public synchronized Message decodeFrame(String frame) {
+    return decode(Base64.getDecoder().decode(frame.substring(FRAME_PREFIX.length())));
+  }
+
+  public synchronized byte[] encode(Message msg) {
+    Writer out = new Writer();
+    out.writeByte(MAGIC);
+    out.writeByte(VERSION);
+    out.writeVarLong(msg.msgId);
+    writeName(out, msg.name);
+    writeName(out, msg.sender);
+    writeName(out, msg.sendingMethod);
+    writeName(out, msg.method);
+    writeName(out, msg.status);
+
+    List<String> hops = msg.getHops();
+    out.writeVarInt(hops.size());
+    for (String hop : hops) {
+      writeName(out, hop);
+    }
+
+    Map<String, Object> properties = msg.getProperties();
+    if (properties == null) {
+      out.writeVarInt(0);
+    } else {
+      out.writeVarInt(properties.size());
+      for (Map.Entry<String, Object> entry : properties.entrySet()) {
+        writeName(out, entry.getKey());
+        writeValue(out, entry.getValue(), false);
+      }
+    }
+
+    // parameters of a relayed json message are already json
+    boolean json = "json".equals(msg.encoding);
+    if (msg.data == null) {
+      out.writeVarInt(0);
+    } else {
+      out.writeVarInt(msg.data.length + 1);
+      for (Object o : msg.data) {
+        writeValue(out, o, json);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  public synchronized Message decode(byte[] bytes) {
+    Reader in = new Reader(bytes);
+    if (in.readByte() != MAGIC) {
+      throw new IllegalArgumentException("not a binary message");
+    }
+    int version = in.readByte();
+    if (version != VERSION) {
+      throw new IllegalArgumentException(String.format("unsupported binary message version %d", version));
+    }
+    Message msg = new Message();
+    msg.msgId = in.readVarLong();
+    msg.name = readName(in);
+    msg.sender = readName(in);
+    msg.sendingMethod = readName(in);
+    msg.method = readName(in);
+    msg.status = readName(in);
+    msg.encoding = NAME;
+
+    int hops = in.readVarInt();
+    for (int i = 0; i < hops; ++i) {
+      msg.addHop(readName(in));
+    }
+
+    int properties = in.readVarInt();
+    for (int i = 0; i < properties; ++i) {
+      String key = readName(in);
+      msg.setProperty(key, readValue(in));
+    }
+
+    int length = in.readVarInt();
+    if (length == 0) {
+      msg.data = null;
+    } else {
+      msg.data = new Object[length - 1];
+      for (int i = 0; i < msg.data.length; ++i) {
+        msg.data[i] = readValue(in);
+      }
+    }
+    return msg;
+  }
+
+  /**
+   * <pre>
+   * 0                     null
+   * (index + 1) &lt;&lt; 1      interned name
+   * (length &lt;&lt; 1) | 1     new name - utf8 bytes follow
+   * </pre>
+   */
+  void writeName(Writer out, String name) {
+    if (name == null) {
+      out.writeVarInt(0);
+      return;
+    }
+    Integer index = encodeNames.get(name);
+    if (index != null) {
+      out.writeVarInt((index + 1) << 1);
+      return;
+    }
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    out.writeVarInt((bytes.length << 1) | 1);
+    out.writeBytes(bytes);
+    if (encodeNames.size() < MAX_INTERNED) {
+      encodeNames.put(name, encodeNames.size());
+    }
+  }
+
+  String readName(Reader in) {
+    int code = in.readVarInt();
+    if (code == 0) {
+      return null;
+    }
+    if ((code & 1) == 0) {
+      int index = (code >>> 1) - 1;
+      if (index >= decodeNames.size()) {
+        throw new IllegalStateException(String.format("unknown interned name %d - frames out of order ?", index));
+      }
+      return decodeNames.get(index);
+    }
+    String name = new String(in.readBytes(code >>> 1), StandardCharsets.UTF_8);
+    if (decodeNames.size() < MAX_INTERNED) {
+      decodeNames.add(name);
+    }
+    return name;
+  }
+
+  static void writeValue(Writer out, Object o, boolean json) {
+    if (o == null) {
+      out.writeVarInt(NULL);
+    } else if (o instanceof String) {
+      out.writeVarInt(json ? JSON : STRING);
+      out.writeString((String) o);
+    } else if (o instanceof Integer) {
+      out.writeVarInt(INT);
+      out.writeVarLong((Integer) o);
+    } else if (o instanceof Double) {
+      out.writeVarInt(DOUBLE);
+      out.writeLong(Double.doubleToRawLongBits((Double) o));
+    } else if (o instanceof Boolean) {
+      out.writeVarInt((Boolean) o ? TRUE : FALSE);
+    } else if (o instanceof Long) {
+      out.writeVarInt(LONG);
+      out.writeVarLong((Long) o);
+    } else if (o instanceof Float) {
+      out.writeVarInt(FLOAT);
+      out.writeInt(Float.floatToRawIntBits((Float) o));
+    } else if (o instanceof Byte) {
+      out.writeVarInt(BYTE);
+      out.writeByte((Byte) o);
+    } else if (o instanceof Short) {
+      out.writeVarInt(SHORT);
+      out.writeVarLong((Short) o);
+    } else if (o instanceof byte[]) {
+      byte[] a = (byte[]) o;
+      out.writeVarInt(BYTES);
+      out.writeVarInt(a.length);
+      out.writeBytes(a);
+    } else if (o instanceof int[]) {
+      int[] a = (int[]) o;
+      out.writeVarInt(INTS);
+      out.writeVarInt(a.length);
+      for (int v : a) {
+        out.writeVarLong(v);
+      }
+    } else if (o instanceof double[]) {
+      double[] a = (double[]) o;
+      out.writeVarInt(DOUBLES);
+      out.writeVarInt(a.length);
+      for (double v : a) {
+        out.writeLong(Double.doubleToRawLongBits(v));
+      }
+    } else if (o instanceof JsonValue) {
+      out.writeVarInt(JSON);
+      out.writeString(((JsonValue) o).json);
+    } else {
+      out.writeVarInt(JSON);
+      out.writeString(CodecUtils.toJson(o));
+    }
+  }
+
+  static Object readValue(Reader in) {
+    int tag = in.readVarInt();
+    switch (tag) {
+      case NULL:
+        return null;
+      case TRUE:
+        return Boolean.TRUE;
+      case FALSE:
+        return Boolean.FALSE;
+      case BYTE:
+        return in.readByte();
+      case SHORT:
+        return (short) in.readVarLong();
+      case INT:
+        return (int) in.readVarLong();
+      case LONG:
+        return in.readVarLong();
+      case FLOAT:
+        return Float.intBitsToFloat(in.readInt());
+      case DOUBLE:
+        return Double.longBitsToDouble(in.readLong());
+      case STRING:
+        return in.readString();
+      case BYTES:
+        return in.readBytes(in.readVarInt());
+      case INTS: {
+        int[] a = new int[in.readVarInt()];
+        for (int i = 0; i < a.length; ++i) {
+          a[i] = (int) in.readVarLong();
+        }
+        return a;
+      }
+      case DOUBLES: {
+        double[] a = new double[in.readVarInt()];
+        for (int i = 0; i < a.length; ++i) {
+          a[i] = Double.longBitsToDouble(in.readLong());
+        }
+        return a;
+      }
+      case JSON:
+        return new JsonValue(in.readString());
+      default:
+        throw new IllegalArgumentException(String.format("unknown value tag %d", tag));
+    }
+  }
+
+  /**
+   * convert a decoded parameter to the type of the method parameter it is
+   * going to
+   *
+   * @param o
+   *          decoded value
+   * @param type
+   *          parameter type
+   * @return the converted value
+   * @throws IllegalArgumentException
+   *           if it can not be converted
+   */
+  public static Object toType(Object o, Class<?> type) {
+    if (o instanceof JsonValue) {
+      return CodecUtils.fromJson(((JsonValue) o).json, type);
+    }
+    if (o == null) {
+      if (type.isPrimitive()) {
+        throw new IllegalArgumentException("null for primitive " + type);
+      }
+      return null;
+    }
+    Class<?> boxed = box(type);
+    if (boxed.isInstance(o)) {
+      return o;
+    }
+    if (o instanceof Number && Number.class.isAssignableFrom(boxed)) {
+      Number n = (Number) o;
+      if (boxed == Integer.class) {
+        return n.intValue();
+      } else if (boxed == Double.class) {
+        return n.doubleValue();
+      } else if (boxed == Long.class) {
+        return n.longValue();
+      } else if (boxed == Float.class) {
+        return n.floatValue();
+      } else if (boxed == Short.class) {
+        return n.shortValue();
+      } else if (boxed == Byte.class) {
+        return n.byteValue();
+      }
+    }
+    throw new IllegalArgumentException(String.format("%s is not a %s", o.getClass().getSimpleName(), type.getSimpleName()));
+  }
+
+  static Class<?> box(Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    }
+    if (type == int.class) {
+      return Integer.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == float.class) {
+      return Float.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    } else if (type == short.class) {
+      return Short.class;
+    } else if (type == char.class) {
+      return Character.class;
+    }
+    return Void.class;
+  }
+
+  static class Writer {
+    byte[] buf = new byte[256];
+    int pos = 0;
+
+    void ensure(int n) {
+      if (pos + n > buf.length) {
+        byte[] b = new byte[Math.max(buf.length << 1, pos + n)];
+        System.arraycopy(buf, 0, b, 0, pos);
+        buf = b;
+      }
+    }
+
+    void writeByte(int b) {
+      ensure(1);
+      buf[pos++] = (byte) b;
+    }
+
+    void writeBytes(byte[] b) {
+      ensure(b.length);
+      System.arraycopy(b, 0, buf, pos, b.length);
+      pos += b.length;
+    }
+
+    void writeInt(int v) {
+      ensure(4);
+      buf[pos++] = (byte) (v >>> 24);
+      buf[pos++] = (byte) (v >>> 16);
+      buf[pos++] = (byte) (v >>> 8);
+      buf[pos++] = (byte) v;
+    }
+
+    void writeLong(long v) {
+      writeInt((int) (v >>> 32));
+      writeInt((int) v);
+    }
+
+    void writeVarInt(int v) {
+      writeVarLong(v & 0xFFFFFFFFL);
+    }
+
+    /**
+     * zig-zag so small negative numbers stay small
+     */
+    void writeVarLong(long v) {
+      long z = (v << 1) ^ (v >> 63);
+      ensure(10);
+      while ((z & ~0x7FL) != 0) {
+        buf[pos++] = (byte) ((z & 0x7F) | 0x80);
+        z >>>= 7;
+      }
+      buf[pos++] = (byte) z;
+    }
+
+    void writeString(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      writeVarInt(bytes.length);
+      writeBytes(bytes);
+    }
+
+    byte[] toByteArray() {
+      byte[] b = new byte[pos];
+      System.arraycopy(buf, 0, b, 0, pos);
+      return b;
+    }
+  }
+
+  static class Reader {
+    final byte[] buf;
+    int pos = 0;
+
+    Reader(byte[] buf) {
+      this.buf = buf;
+    }
+
+    byte readByte() {
+      if (pos >= buf.length) {
+        throw new IllegalArgumentException("truncated binary message");
+      }
+      return buf[pos++];
+    }
+
+    byte[] readBytes(int n) {
+      if (n < 0 || pos + n > buf.length) {
+        throw new IllegalArgumentException("truncated binary message");
+      }
+      byte[] b = new byte[n];
+      System.arraycopy(buf, pos, b, 0, n);
+      pos += n;
+      return b;
+    }
+
+    int readInt() {
+      return ((readByte() & 0xFF) << 24) | ((readByte() & 0xFF) << 16) | ((readByte() & 0xFF) << 8) | (readByte() & 0xFF);
+    }
+
+    long readLong() {
+      return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+
+    int readVarInt() {
+      return (int) readVarLong();
+    }
+
+    long readVarLong() {
+      long z = 0;
+      int shift = 0;
+      byte b;
+      do {
+        if (shift > 63) {
+          throw new IllegalArgumentException("malformed varint");
+        }
+        b = readByte();
+        z |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while ((b & 0x80) != 0);
+      return (z >>> 1) ^ -(z & 1);
+    }
+
+    String readString() {
+      return new String(readBytes(readVarInt()), StandardCharsets.UTF_8);
+    }
+  }
+
+}
@@ -298,6 +298,13 @@ public class CodecUtils {
     return gson.toJson(o, clazz);
   }
 
+  /**
+   * serialize straight into a writer - no intermediate string
+   */
+  public final static void toJson(Object o, Appendable out) {
+    gson.toJson(o, out);
+  }
+
   public static void toJsonFile(Object o, String filename) throws IOException {
     FileOutputStream fos = new FileOutputStream(new File(filename));
     fos.write(gson.toJson(o).getBytes());
@@ -668,7 +675,12 @@ public class CodecUtils {
     if (params != null) {
       d = new Object[params.length];
       for (int i = 0; i < params.length; ++i) {
-        d[i] = CodecUtils.toJson(params[i]);
+        if (params[i] instanceof BinaryCodec.JsonValue) {
+          // relaying a binary message - already json
+          d[i] = ((BinaryCodec.JsonValue) params[i]).json;
+        } else {
+          d[i] = CodecUtils.toJson(params[i]);
+        }
       }
       msg.setData(d);
     }
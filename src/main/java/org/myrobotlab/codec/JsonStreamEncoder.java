@@ -0,0 +1,390 @@
+package org.myrobotlab.codec;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.framework.Message;
+
+/**
+ * Single pass version of CodecUtils.toJsonMsg. The double encoding is the same
+ * - every parameter a JSON string inside a JSON message - but the parameters
+ * are serialized through an escaping writer straight into the message, and
+ * the message straight into a UTF-8 Buffer, no parameter strings, no message
+ * copy, no message string to re-encode to bytes.
+ *
+ * Buffers come from a Pool, gateways keep one per connection so a busy
+ * connection reuses the same few buffers.
+ *
+ * The output is byte for byte what CodecUtils.toJsonMsg produces.
+ */
+public class JsonStreamEncoder {
+
+  /**
+   * growable byte buffer which is a Writer - chars are encoded to UTF-8 as they
+   * are written
+   */
+  public static class Buffer extends Writer {
+
+    byte[] buf;
+
+    int count;
+
+    // high surrogate waiting on its low surrogate
+    char high;
+
+    public Buffer(int size) {
+      buf = new byte[size];
+    }
+
+    void ensure(int n) {
+      if (count + n > buf.length) {
+        buf = Arrays.copyOf(buf, Math.max(buf.length << 1, count + n));
+      }
+    }
+
+    @Override
+    public void write(int c) {
+      if (high != 0) {
+        char h = high;
+        high = 0;
+        if (Character.isLowSurrogate((char) c)) {
+          int cp = Character.toCodePoint(h, (char) c);
+          ensure(4);
+          buf[count++] = (byte) (0xf0 | (cp >> 18));
+          buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+          buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+          buf[count++] = (byte) (0x80 | (cp & 0x3f));
+          return;
+        }
+        // unpaired - same replacement String.getBytes uses
+        ensure(1);
+        buf[count++] = '?';
+      }
+      if (c < 0x80) {
+        ensure(1);
+        buf[count++] = (byte) c;
+      } else if (c < 0x800) {
+        ensure(2);
+        buf[count++] = (byte) (0xc0 | (c >> 6));
+        buf[count++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate((char) c)) {
+        high = (char) c;
+      } else if (Character.isLowSurrogate((char) c)) {
+        ensure(1);
+        buf[count++] = '?';
+      } else {
+        ensure(3);
+        buf[count++] = (byte) (0xe0 | (c >> 12));
+        buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[count++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      for (int i = off; i < off + len; ++i) {
+        write(cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      for (int i = off; i < off + len; ++i) {
+        write(str.charAt(i));
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public int size() {
+      return count;
+    }
+
+    public void reset() {
+      count = 0;
+      high = 0;
+    }
+
+    public byte[] toByteArray() {
+      return Arrays.copyOf(buf, count);
+    }
+
+    @Override
+    public String toString() {
+      return new String(buf, 0, count, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * a small pool of Buffers - buffers which grew past maxRetained (a single
+   * huge message) are dropped rather than kept around
+   */
+  public static class Pool {
+
+    final ConcurrentLinkedQueue<Buffer> buffers = new ConcurrentLinkedQueue<>();
+
+    final AtomicInteger pooled = new AtomicInteger();
+
+    int maxPooled = 4;
+
+    int initialSize = 4096;
+
+    int maxRetained = 262144;
+
+    public Pool() {
+    }
+
+    public Pool(int maxPooled, int initialSize, int maxRetained) {
+      this.maxPooled = maxPooled;
+      this.initialSize = initialSize;
+      this.maxRetained = maxRetained;
+    }
+
+    public Buffer acquire() {
+      Buffer b = buffers.poll();
+      if (b == null) {
+        return new Buffer(initialSize);
+      }
+      pooled.decrementAndGet();
+      b.reset();
+      return b;
+    }
+
+    public void release(Buffer b) {
+      if (b.buf.length > maxRetained) {
+        return;
+      }
+      if (pooled.incrementAndGet() > maxPooled) {
+        pooled.decrementAndGet();
+        return;
+      }
+      buffers.add(b);
+    }
+
+    public int size() {
+      return pooled.get();
+    }
+  }
+
+  /**
+   * writes everything written to it as the content of a JSON string - escaped
+   * the way gson escapes strings with html escaping disabled
+   */
+  static class StringContentWriter extends Writer {
+
+    final Writer out;
+
+    StringContentWriter(Writer out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      escape(out, (char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+      for (int i = off; i < off + len; ++i) {
+        escape(out, cbuf[i]);
+      }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+      for (int i = off; i < off + len; ++i) {
+        escape(out, str.charAt(i));
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  final static char[] HEX = "0123456789abcdef".toCharArray();
+
+  static void escape(Writer out, char c) throws IOException {
+    switch (c) {
+      case '"':
+        out.write("\\\"");
+        break;
+      case '\\':
+        out.write("\\\\");
+        break;
+      case '\t':
+        out.write("\\t");
+        break;
+      case '\b':
+        out.write("\\b");
+        break;
+      case '\n':
+        out.write("\\n");
+        break;
+      case '\r':
+        out.write("\\r");
+        break;
+      case '\f':
+        out.write("\\f");
+        break;
+      case '\u2028':
+        out.write("\\u2028");
+        break;
+      case '\u2029':
+        out.write("\\u2029");
+        break;
+      default:
+        if (c < 0x20) {
+          out.write("\\u00");
+          out.write(HEX[c >> 4]);
+          out.write(HEX[c & 0xf]);
+        } else {
+          out.write(c);
+        }
+    }
+  }
+
+  static void writeString(Writer out, String s) throws IOException {
+    out.write('"');
+    for (int i = 0; i < s.length(); ++i) {
+      escape(out, s.charAt(i));
+    }
+    out.write('"');
+  }
+
+  static boolean writeName(Writer out, boolean first, String name) throws IOException {
+    if (!first) {
+      out.write(',');
+    }
+    writeString(out, name);
+    out.write(':');
+    return false;
+  }
+
+  /**
+   * encode a message the way CodecUtils.toJsonMsg does - null fields are left
+   * out, fields in the order gson writes Message
+   *
+   * @param inMsg
+   *          message to encode
+   * @param out
+   *          where to write it
+   * @throws IOException
+   *           from the writer
+   */
+  public static void write(Message inMsg, Writer out) throws IOException {
+    boolean first = true;
+    out.write('{');
+    first = writeName(out, first, "msgId");
+    out.write(Long.toString(inMsg.msgId));
+    if (inMsg.name != null) {
+      first = writeName(out, first, "name");
+      writeString(out, inMsg.name);
+    }
+    if (inMsg.sender != null) {
+      first = writeName(out, first, "sender");
+      writeString(out, inMsg.sender);
+    }
+    if (inMsg.sendingMethod != null) {
+      first = writeName(out, first, "sendingMethod");
+      writeString(out, inMsg.sendingMethod);
+    }
+    boolean alreadyJson = "json".equals(inMsg.encoding);
+    List<String> history = inMsg.getHops();
+    if (history == null && !alreadyJson) {
+      // toJsonMsg encodes a copy, which always has a history
+      history = Collections.emptyList();
+    }
+    if (history != null) {
+      first = writeName(out, first, "historyList");
+      CodecUtils.toJson(history, out);
+    }
+    Map<String, Object> properties = inMsg.getProperties();
+    if (properties != null) {
+      first = writeName(out, first, "properties");
+      CodecUtils.toJson(properties, out);
+    }
+    if (inMsg.status != null) {
+      first = writeName(out, first, "status");
+      writeString(out, inMsg.status);
+    }
+    // the parameters are always json encoded on the wire
+    first = writeName(out, first, "encoding");
+    writeString(out, "json");
+    if (inMsg.method != null) {
+      first = writeName(out, first, "method");
+      writeString(out, inMsg.method);
+    }
+    Object[] params = inMsg.data;
+    if (params != null) {
+      StringContentWriter content = new StringContentWriter(out);
+      first = writeName(out, first, "data");
+      out.write('[');
+      for (int i = 0; i < params.length; ++i) {
+        if (i > 0) {
+          out.write(',');
+        }
+        Object param = params[i];
+        if (alreadyJson) {
+          if (param == null) {
+            out.write("null");
+          } else if (param instanceof String) {
+            writeString(out, (String) param);
+          } else {
+            // not json encoded after all - as gson writes it in the envelope
+            CodecUtils.toJson(param, out);
+          }
+        } else if (param instanceof BinaryCodec.JsonValue) {
+          // relaying a binary message - already json
+          writeString(out, ((BinaryCodec.JsonValue) param).json);
+        } else {
+          out.write('"');
+          CodecUtils.toJson(param, content);
+          out.write('"');
+        }
+      }
+      out.write(']');
+    }
+    out.write('}');
+  }
+
+  /**
+   * encode a message into a buffer from the pool - release it when done
+   *
+   * @param msg
+   *          message to encode
+   * @param pool
+   *          where the buffer comes from
+   * @return the buffer holding the message
+   */
+  public static Buffer encode(Message msg, Pool pool) {
+    Buffer buffer = pool.acquire();
+    try {
+      write(msg, buffer);
+    } catch (IOException e) {
+      // the buffer does not throw - only a broken gson type adapter could get
+      // here
+      pool.release(buffer);
+      throw new IllegalStateException(e);
+    }
+    return buffer;
+  }
+
+}
@@ -0,0 +1,426 @@
+package org.myrobotlab.document;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A Document for big crawls - CSV files, database tables - where millions of
+ * rows with the same columns go through a workflow.
+ *
+ * Field names come from a FieldNames dictionary shared by the workflow, the
+ * values are kept in arrays indexed by field id. A field with one value holds
+ * just the value - no list - and Integer, Long and Double values are kept
+ * unboxed. A field becomes a list when a second value is added, or when its
+ * list is asked for with getField, since the caller may change that list.
+ * getValue reads a single value without making a list.
+ *
+ * Like Document it is not thread safe.
+ *
+ * In json it is a Document - id, data and status - with the name of its
+ * FieldNames, not the arrays it keeps the fields in.
+ */
+@JsonAdapter(CompactDocument.GsonAdapter.class)
+public class CompactDocument extends Document {
+
+  static final byte NONE = 0;
+  static final byte LIST = 1;
+  static final byte OBJECT = 2;
+  static final byte INT = 3;
+  static final byte LONG = 4;
+  static final byte DOUBLE = 5;
+
+  static final byte[] EMPTY = new byte[0];
+
+  private final FieldNames names;
+
+  /**
+   * kind of value of each field id
+   */
+  private byte[] kinds = EMPTY;
+
+  /**
+   * list or object value of each field id
+   */
+  private Object[] values;
+
+  /**
+   * int, long and double bits of each field id - only when one is set
+   */
+  private long[] prims;
+
+  public CompactDocument(String id, FieldNames names) {
+    super(id, ProcessingStatus.OK);
+    this.names = names;
+  }
+
+  /**
+   * copy of a document - the field lists are copied, the values are shared
+   *
+   * @param doc
+   *          the document to copy
+   */
+  public CompactDocument(CompactDocument doc) {
+    super(doc.getId(), doc.getStatus());
+    names = doc.names;
+    kinds = doc.kinds.clone();
+    if (doc.values != null) {
+      values = doc.values.clone();
+      for (int i = 0; i < kinds.length; ++i) {
+        if (kinds[i] == LIST) {
+          values[i] = new ArrayList<Object>(list(i));
+        }
+      }
+    }
+    if (doc.prims != null) {
+      prims = doc.prims.clone();
+    }
+  }
+
+  @Override
+  public Document copy() {
+    return new CompactDocument(this);
+  }
+
+  public FieldNames getFieldNames() {
+    return names;
+  }
+
+  /**
+   * @return id of a field that is set or -1
+   */
+  private int find(String fieldName) {
+    int id = names.find(fieldName);
+    if (id < 0 || id >= kinds.length || kinds[id] == NONE) {
+      return -1;
+    }
+    return id;
+  }
+
+  private int register(String fieldName) {
+    int id = names.id(fieldName);
+    if (id >= kinds.length) {
+      // room for the fields registered so far, documents of a crawl have
+      // mostly the same fields
+      int length = Math.max(id + 1, names.size());
+      byte[] k = new byte[length];
+      System.arraycopy(kinds, 0, k, 0, kinds.length);
+      kinds = k;
+      Object[] v = new Object[length];
+      if (values != null) {
+        System.arraycopy(values, 0, v, 0, values.length);
+      }
+      values = v;
+      if (prims != null) {
+        long[] p = new long[length];
+        System.arraycopy(prims, 0, p, 0, prims.length);
+        prims = p;
+      }
+    }
+    return id;
+  }
+
+  @SuppressWarnings("unchecked")
+  private ArrayList<Object> list(int id) {
+    return (ArrayList<Object>) values[id];
+  }
+
+  /**
+   * set a single value
+   */
+  private void store(int id, Object value) {
+    byte kind = OBJECT;
+    if (value instanceof Integer) {
+      kind = INT;
+    } else if (value instanceof Long) {
+      kind = LONG;
+    } else if (value instanceof Double) {
+      kind = DOUBLE;
+    }
+    if (kind == OBJECT) {
+      values[id] = value;
+    } else {
+      if (prims == null) {
+        prims = new long[kinds.length];
+      }
+      if (kind == INT) {
+        prims[id] = (Integer) value;
+      } else if (kind == LONG) {
+        prims[id] = (Long) value;
+      } else {
+        prims[id] = Double.doubleToRawLongBits((Double) value);
+      }
+      values[id] = null;
+    }
+    kinds[id] = kind;
+  }
+
+  /**
+   * @return the single value of a field that is not a list
+   */
+  private Object single(int id) {
+    switch (kinds[id]) {
+      case INT:
+        return Integer.valueOf((int) prims[id]);
+      case LONG:
+        return Long.valueOf(prims[id]);
+      case DOUBLE:
+        return Double.valueOf(Double.longBitsToDouble(prims[id]));
+      default:
+        return values[id];
+    }
+  }
+
+  /**
+   * @return the values of a field as a new list - the field is not changed
+   */
+  private ArrayList<Object> values(int id) {
+    if (kinds[id] == LIST) {
+      return new ArrayList<Object>(list(id));
+    }
+    ArrayList<Object> ret = new ArrayList<Object>(1);
+    ret.add(single(id));
+    return ret;
+  }
+
+  @Override
+  public ArrayList<Object> getField(String fieldName) {
+    int id = find(fieldName);
+    if (id < 0) {
+      return null;
+    }
+    if (kinds[id] != LIST) {
+      // the caller may change the list - it becomes the field
+      values[id] = values(id);
+      kinds[id] = LIST;
+    }
+    return list(id);
+  }
+
+  @Override
+  public void setField(String fieldName, ArrayList<Object> value) {
+    if (value == null) {
+      removeField(fieldName);
+    } else {
+      int id = register(fieldName);
+      values[id] = value;
+      kinds[id] = LIST;
+    }
+  }
+
+  @Override
+  public void setField(String fieldName, Object value) {
+    // set field overwrites existing values in the field.
+    if (value == null) {
+      removeField(fieldName);
+    } else {
+      store(register(fieldName), value);
+    }
+  }
+
+  @Override
+  public Object getValue(String fieldName) {
+    int id = find(fieldName);
+    if (id < 0) {
+      return null;
+    }
+    if (kinds[id] == LIST) {
+      ArrayList<Object> list = list(id);
+      return (list.size() > 0) ? list.get(0) : null;
+    }
+    return single(id);
+  }
+
+  @Override
+  public void renameField(String oldField, String newField) {
+    int from = find(oldField);
+    if (from < 0 || oldField.equals(newField)) {
+      return;
+    }
+    int to = register(newField);
+    kinds[to] = kinds[from];
+    values[to] = values[from];
+    if (prims != null) {
+      prims[to] = prims[from];
+    }
+    kinds[from] = NONE;
+    values[from] = null;
+  }
+
+  @Override
+  public void addToField(String fieldName, Object value) {
+    int id = register(fieldName);
+    switch (kinds[id]) {
+      case NONE:
+        store(id, value);
+        break;
+      case LIST:
+        list(id).add(value);
+        break;
+      default:
+        ArrayList<Object> list = new ArrayList<Object>(2);
+        list.add(single(id));
+        list.add(value);
+        values[id] = list;
+        kinds[id] = LIST;
+    }
+  }
+
+  @Override
+  public boolean hasField(String fieldName) {
+    return find(fieldName) >= 0;
+  }
+
+  /**
+   * @return the field names set on the document, in the order the workflow
+   *         first saw them - a copy, not a view
+   */
+  @Override
+  public Set<String> getFields() {
+    Set<String> ret = new LinkedHashSet<String>();
+    for (int i = 0; i < kinds.length; ++i) {
+      if (kinds[i] != NONE) {
+        ret.add(names.getFieldName(i));
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public void removeField(String fieldName) {
+    int id = find(fieldName);
+    if (id >= 0) {
+      kinds[id] = NONE;
+      values[id] = null;
+    }
+  }
+
+  /**
+   * @return the fields and values as a map of new lists - no field is changed
+   */
+  public Map<String, ArrayList<Object>> toMap() {
+    Map<String, ArrayList<Object>> ret = new LinkedHashMap<String, ArrayList<Object>>();
+    for (int i = 0; i < kinds.length; ++i) {
+      if (kinds[i] != NONE) {
+        ret.put(names.getFieldName(i), values(i));
+      }
+    }
+    return ret;
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + toMap().hashCode();
+    result = prime * result + ((getId() == null) ? 0 : getId().hashCode());
+    result = prime * result + ((getStatus() == null) ? 0 : getStatus().hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    CompactDocument other = (CompactDocument) obj;
+    if (getId() == null) {
+      if (other.getId() != null)
+        return false;
+    } else if (!getId().equals(other.getId()))
+      return false;
+    if (getStatus() != other.getStatus())
+      return false;
+    return toMap().equals(other.toMap());
+  }
+
+  @Override
+  public String toString() {
+    return "Document [id=" + getId() + ", data=" + toMap() + ", status=" + getStatus() + "]";
+  }
+
+  /**
+   * writes a CompactDocument as {id, fieldNames, data, status} and reads it
+   * back into the FieldNames of that name
+   */
+  static class GsonAdapter implements TypeAdapterFactory {
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+      if (!CompactDocument.class.isAssignableFrom(type.getRawType())) {
+        return null;
+      }
+      TypeAdapter<Map<String, ArrayList<Object>>> data = gson.getAdapter(new TypeToken<Map<String, ArrayList<Object>>>() {
+      });
+      TypeAdapter<ProcessingStatus> status = gson.getAdapter(ProcessingStatus.class);
+
+      return (TypeAdapter<T>) new TypeAdapter<CompactDocument>() {
+
+        @Override
+        public void write(JsonWriter out, CompactDocument doc) throws IOException {
+          out.beginObject();
+          out.name("id").value(doc.getId());
+          out.name("fieldNames").value(doc.names.getName());
+          out.name("data");
+          data.write(out, doc.toMap());
+          out.name("status");
+          status.write(out, doc.getStatus());
+          out.endObject();
+        }
+
+        @Override
+        public CompactDocument read(JsonReader in) throws IOException {
+          String id = null;
+          String fieldNames = null;
+          Map<String, ArrayList<Object>> fields = null;
+          ProcessingStatus s = null;
+          in.beginObject();
+          while (in.hasNext()) {
+            String name = in.nextName();
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+            } else if ("id".equals(name)) {
+              id = in.nextString();
+            } else if ("fieldNames".equals(name)) {
+              fieldNames = in.nextString();
+            } else if ("data".equals(name)) {
+              fields = data.read(in);
+            } else if ("status".equals(name)) {
+              s = status.read(in);
+            } else {
+              in.skipValue();
+            }
+          }
+          in.endObject();
+          CompactDocument doc = new CompactDocument(id, FieldNames.get((fieldNames == null) ? "" : fieldNames));
+          if (fields != null) {
+            for (Map.Entry<String, ArrayList<Object>> field : fields.entrySet()) {
+              doc.setField(field.getKey(), field.getValue());
+            }
+          }
+          if (s != null) {
+            doc.setStatus(s);
+          }
+          return doc;
+        }
+      };
+    }
+  }
+
+}
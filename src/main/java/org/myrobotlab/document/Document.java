@@ -11,6 +11,8 @@ import java.util.Set;
  * Basic idea is that a document had a unique id and a map of key to list of
  * object pairs.
  * 
+ * CompactDocument keeps the same fields in less memory for big crawls.
+ * 
  * @author kwatters
  *
  */
@@ -26,6 +28,42 @@ public class Document {
     status = ProcessingStatus.OK;
   }
 
+  /**
+   * copy of a document - the field lists are copied, the values are shared
+   * 
+   * @param doc
+   *          the document to copy
+   */
+  public Document(Document doc) {
+    id = doc.id;
+    status = doc.status;
+    data = new HashMap<String, ArrayList<Object>>();
+    for (String fieldName : doc.getFields()) {
+      data.put(fieldName, new ArrayList<Object>(doc.getField(fieldName)));
+    }
+  }
+
+  /**
+   * for subclasses that keep the fields themselves
+   * 
+   * @param id
+   *          document id
+   * @param status
+   *          processing status
+   */
+  protected Document(String id, ProcessingStatus status) {
+    this.id = id;
+    this.status = status;
+  }
+
+  /**
+   * @return a copy of the same kind of document - the field lists are copied,
+   *         the values are shared
+   */
+  public Document copy() {
+    return new Document(this);
+  }
+
   public ArrayList<Object> getField(String fieldName) {
     if (data.containsKey(fieldName)) {
       return data.get(fieldName);
@@ -69,7 +107,7 @@ public class Document {
   }
 
   public void renameField(String oldField, String newField) {
-    if (data.containsKey(oldField)) {
+    if (data.containsKey(oldField) && !oldField.equals(newField)) {
       // TODO: test me to make sure this is correct.
       data.put(newField, data.get(oldField));
       data.remove(oldField);
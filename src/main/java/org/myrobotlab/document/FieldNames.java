@@ -0,0 +1,37 @@
+package org.myrobotlab.document;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.myrobotlab.framework.NameIds;
+
+/**
+ * Field name dictionary shared by the CompactDocuments of a workflow. Every
+ * field name gets an id once, a CompactDocument keeps its values in arrays
+ * indexed by field id, so millions of documents with the same columns share
+ * one copy of each field name and no per field map entries.
+ *
+ * Ids are never removed.
+ */
+public class FieldNames extends NameIds {
+
+  static final Map<String, FieldNames> registries = new ConcurrentHashMap<>();
+
+  /**
+   * @param name
+   *          name of the workflow or connector
+   * @return the field names shared under that name
+   */
+  public static FieldNames get(String name) {
+    return registries.computeIfAbsent(name, FieldNames::new);
+  }
+
+  public FieldNames(String name) {
+    super(name);
+  }
+
+  public String getFieldName(int id) {
+    return getName(id);
+  }
+
+}
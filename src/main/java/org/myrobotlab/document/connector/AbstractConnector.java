@@ -4,7 +4,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.myrobotlab.document.CompactDocument;
 import org.myrobotlab.document.Document;
+import org.myrobotlab.document.FieldNames;
 import org.myrobotlab.document.transformer.ConnectorConfig;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.service.interfaces.DocumentConnector;
@@ -31,6 +33,12 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
   // private long maxFeedCount = 10000;
   private long maxFeedCount = -1;
 
+  /**
+   * create CompactDocuments - all documents of the connector share one field
+   * name dictionary
+   */
+  protected boolean compactDocuments = false;
+
   public AbstractConnector(String name, String id) {
     super(name, id);
     // no overruns!
@@ -39,6 +47,18 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
 
   public abstract void setConfig(ConnectorConfig config);
 
+  /**
+   * @param id
+   *          document id
+   * @return a new document - compact if compactDocuments is set
+   */
+  protected Document createDocument(String id) {
+    if (compactDocuments) {
+      return new CompactDocument(id, FieldNames.get(getName()));
+    }
+    return new Document(id);
+  }
+
   public void feed(Document doc) {
     // log.info("Feeding document " + doc.getId());
     // TODO: add batching and change this to publishDocuments (as a list)
@@ -143,6 +163,14 @@ public abstract class AbstractConnector extends Service implements DocumentPubli
     this.batchSize = batchSize;
   }
 
+  public boolean isCompactDocuments() {
+    return compactDocuments;
+  }
+
+  public void setCompactDocuments(boolean compactDocuments) {
+    this.compactDocuments = compactDocuments;
+  }
+
   public String getDocIdPrefix() {
     return docIdPrefix;
   }
@@ -1,10 +1,16 @@
 package org.myrobotlab.document.transformer;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.myrobotlab.document.Document;
+import org.myrobotlab.document.ProcessingStatus;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
 
 public abstract class AbstractStage {
+  public final static Logger log = LoggerFactory.getLogger(AbstractStage.class);
+
   // Process only when output field doesn't exist in the document
   // Stages that support this should check and handle it in their
   // processDocument()
@@ -14,6 +20,73 @@ public abstract class AbstractStage {
 
   public abstract List<Document> processDocument(Document doc);
 
+  /**
+   * process a batch of documents - stages talking to an external engine
+   * override this to make one call per batch. The default processes each
+   * document on its own, a document which throws gets the ERROR status and
+   * does not stop the others.
+   * 
+   * @param docs
+   *          the batch - documents dropped by this stage get the DROP status,
+   *          they are not removed from the list
+   * @return the child documents of the whole batch or null
+   */
+  public List<Document> processDocuments(List<Document> docs) {
+    List<Document> children = null;
+    for (Document doc : docs) {
+      List<Document> childDocs = processDocumentSafely(doc);
+      if (childDocs != null && childDocs.size() > 0) {
+        if (children == null) {
+          children = new ArrayList<Document>();
+        }
+        children.addAll(childDocs);
+      }
+    }
+    return children;
+  }
+
+  /**
+   * process a batch without one document failing the others - if
+   * processDocuments throws, the batch is processed again one document at a
+   * time. Documents which fail get the ERROR status and should go no further.
+   * 
+   * @param docs
+   *          the batch
+   * @return the child documents of the whole batch or null
+   */
+  public List<Document> processBatch(List<Document> docs) {
+    try {
+      return processDocuments(docs);
+    } catch (Exception e) {
+      log.warn("{} failed on a batch of {} documents - processing them one at a time", getClass().getSimpleName(), docs.size(), e);
+    }
+    List<Document> children = null;
+    for (Document doc : docs) {
+      if (doc.getStatus().equals(ProcessingStatus.DROP)) {
+        continue;
+      }
+      doc.setStatus(ProcessingStatus.OK);
+      List<Document> childDocs = processDocumentSafely(doc);
+      if (childDocs != null && childDocs.size() > 0) {
+        if (children == null) {
+          children = new ArrayList<Document>();
+        }
+        children.addAll(childDocs);
+      }
+    }
+    return children;
+  }
+
+  private List<Document> processDocumentSafely(Document doc) {
+    try {
+      return processDocument(doc);
+    } catch (Exception e) {
+      log.warn("{} failed on document {}", getClass().getSimpleName(), doc.getId(), e);
+      doc.setStatus(ProcessingStatus.ERROR);
+      return null;
+    }
+  }
+
   public abstract void stopStage();
 
   public abstract void flush();
@@ -6,15 +6,25 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 import org.myrobotlab.document.Document;
+import org.myrobotlab.document.ProcessingStatus;
 
 /**
  * This stage will fetch a web page defined by the uriField and store its byte
  * array in the bytesField.
  * 
+ * With fetchThreads greater than 1 the uris of a batch of documents are
+ * fetched at the same time, so a batch waits about as long as its slowest
+ * fetch rather than the sum of them.
+ * 
  * @author kwatters
  *
  */
@@ -22,12 +32,18 @@ public class FetchURI extends AbstractStage {
 
   private String uriField = "uri";
   private String bytesField = "bytes";
+  private int fetchThreads = 1;
+  private ExecutorService fetcher = null;
 
   @Override
   public void startStage(StageConfiguration config) {
     if (config != null) {
       uriField = config.getProperty("uriField", "uri");
       bytesField = config.getProperty("bytesField", "bytes");
+      fetchThreads = config.getIntegerParam("fetchThreads", fetchThreads);
+    }
+    if (fetchThreads > 1 && fetcher == null) {
+      fetcher = Executors.newFixedThreadPool(fetchThreads);
     }
   }
 
@@ -40,10 +56,42 @@ public class FetchURI extends AbstractStage {
         page = fetchUrlAsByteArray(o.toString());
         doc.addToField(bytesField, page);
       } catch (IOException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
+        log.warn("{} failed on document {}", getClass().getSimpleName(), doc.getId(), e);
+        doc.setStatus(ProcessingStatus.ERROR);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public List<Document> processDocuments(List<Document> docs) {
+    if (fetcher == null || docs.size() < 2) {
+      return super.processDocuments(docs);
+    }
+    List<Document> owners = new ArrayList<Document>();
+    List<Future<byte[]>> pages = new ArrayList<Future<byte[]>>();
+    for (Document doc : docs) {
+      if (!doc.hasField(uriField)) {
         continue;
       }
+      for (Object o : doc.getField(uriField)) {
+        String uri = o.toString();
+        owners.add(doc);
+        pages.add(fetcher.submit(() -> fetchUrlAsByteArray(uri)));
+      }
+    }
+    // documents are only changed on this thread, in uri order
+    for (int i = 0; i < pages.size(); ++i) {
+      try {
+        owners.get(i).addToField(bytesField, pages.get(i).get());
+      } catch (ExecutionException e) {
+        Document doc = owners.get(i);
+        log.warn("{} failed on document {}", getClass().getSimpleName(), doc.getId(), e.getCause());
+        doc.setStatus(ProcessingStatus.ERROR);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
     }
     return null;
   }
@@ -60,8 +108,10 @@ public class FetchURI extends AbstractStage {
 
   @Override
   public void stopStage() {
-    // TODO Auto-generated method stub
-
+    if (fetcher != null) {
+      fetcher.shutdownNow();
+      fetcher = null;
+    }
   }
 
   @Override
@@ -72,6 +72,35 @@ public class OpenNLP extends AbstractStage {
   @Override
   public List<Document> processDocument(Document doc) {
     log.info("Processing Doc: {}", doc.getId());
+    List<Document> children = extract(doc);
+    if (children == null) {
+      return null;
+    }
+    log.info("Extracted {} children records from that document.", children.size());
+    for (Document d : children) {
+      log.info(d.toString());
+    }
+    return children;
+  }
+
+  /**
+   * the models run document after document - a batch just skips the per
+   * document and per child logging
+   */
+  @Override
+  public List<Document> processDocuments(List<Document> docs) {
+    ArrayList<Document> children = new ArrayList<Document>();
+    for (Document doc : docs) {
+      List<Document> childDocs = extract(doc);
+      if (childDocs != null) {
+        children.addAll(childDocs);
+      }
+    }
+    log.info("Processed {} docs, extracted {} children records.", docs.size(), children.size());
+    return children;
+  }
+
+  private List<Document> extract(Document doc) {
     ArrayList<Document> children = new ArrayList<Document>();
     if (!doc.hasField(textField)) {
       log.info("No Text Field On Document {}", doc.getId());
@@ -114,10 +143,6 @@ public class OpenNLP extends AbstractStage {
     }
     // TODO: move this into it's own stage. but for now, this is just to poc it.
     children.addAll(createEntityMentionDocs(doc));
-    log.info("Extracted {} children records from that document.", children.size());
-    for (Document d : children) {
-      log.info(d.toString());
-    }
     return children;
   }
 
@@ -2,7 +2,6 @@ package org.myrobotlab.document.transformer;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import org.apache.solr.client.solrj.SolrClient;
@@ -16,7 +15,8 @@ import org.slf4j.Logger;
 /**
  * This stage will convert an MRL document to a solr document. It then batches
  * those documents and sends the batches to solr. Upon a flush call any partial
- * batches will be flushed.
+ * batches will be flushed. A batch of documents from the workflow is converted
+ * and added to the solr batch under one lock.
  * 
  * @author kwatters
  *
@@ -34,8 +34,8 @@ public class SendToSolr extends AbstractStage {
   private int batchSize = 100;
   // private LinkedBlockingQueue<SolrInputDocument> batch = new
   // LinkedBlockingQueue<SolrInputDocument>();
-  // Synchronized list. needed for thread safety.
-  private List<SolrInputDocument> batch = Collections.synchronizedList(new ArrayList<SolrInputDocument>());
+  // guarded by this - send and flush are synchronized
+  private List<SolrInputDocument> batch = new ArrayList<SolrInputDocument>();
 
   // private String basicAuthUser = null;
   // private String basicAuthPass = null;
@@ -72,6 +72,24 @@ public class SendToSolr extends AbstractStage {
 
   @Override
   public List<Document> processDocument(Document doc) {
+    List<SolrInputDocument> solrDocs = new ArrayList<SolrInputDocument>(1);
+    solrDocs.add(toSolrDocument(doc));
+    send(solrDocs);
+    return null;
+  }
+
+  @Override
+  public List<Document> processDocuments(List<Document> docs) {
+    List<SolrInputDocument> solrDocs = new ArrayList<SolrInputDocument>(docs.size());
+    for (Document doc : docs) {
+      solrDocs.add(toSolrDocument(doc));
+    }
+    send(solrDocs);
+    // TODO: NO COMMITS HERE!
+    return null;
+  }
+
+  private SolrInputDocument toSolrDocument(Document doc) {
     SolrInputDocument solrDoc = new SolrInputDocument();
 
     // set the id field on the solr doc
@@ -89,25 +107,21 @@ public class SendToSolr extends AbstractStage {
     solrDoc.removeField(idField);
     // make sure we add it back
     solrDoc.setField(idField, docId);
-    // I guess we have the full document, we should send it
-    // ArrayList<SolrInputDocument> solrDocs = new
-    // ArrayList<SolrInputDocument>();
-    // solrDocs.add(solrDoc);
+    return solrDoc;
+  }
+
+  /**
+   * add to the batch - sends it once it has batchSize documents
+   */
+  private synchronized void send(List<SolrInputDocument> solrDocs) {
+    batch.addAll(solrDocs);
+    if (batch.size() < batchSize) {
+      return;
+    }
     try {
-      synchronized (batch) {
-        batch.add(solrDoc);
-        if (batch.size() >= batchSize) {
-          // System.out.println("Solr Server Flush Batch...");
-          // you are blocking?
-          solrClient.add(batch);
-          log.info("Sending Batch to Solr. Size: {}", batch.size());
-          // System.out.println("Solr batch sent..");
-          // batch.clear();
-          batch = Collections.synchronizedList(new ArrayList<SolrInputDocument>());
-        } else {
-          // System.out.println("Batch Size " + batch.size());
-        }
-      }
+      log.info("Sending Batch to Solr. Size: {}", batch.size());
+      solrClient.add(batch);
+      batch = new ArrayList<SolrInputDocument>();
     } catch (SolrServerException e) {
       // TODO Auto-generated catch block
       e.printStackTrace();
@@ -115,11 +129,6 @@ public class SendToSolr extends AbstractStage {
       // TODO Auto-generated catch block
       e.printStackTrace();
     }
-
-    // TODO: NO COMMITS HERE!
-    // solrServer.commit();
-    return null;
-
   }
 
   @Override
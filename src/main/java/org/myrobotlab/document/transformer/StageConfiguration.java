@@ -1,6 +1,8 @@
 package org.myrobotlab.document.transformer;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 public class StageConfiguration extends Configuration {
 
@@ -9,6 +11,24 @@ public class StageConfiguration extends Configuration {
   private String stageName = "defaultStage";
   private String stageClass = "org.myrobotlab.document.transformer.AbstractStage";
 
+  /**
+   * threads running this stage - only used by dag workflows, each thread has
+   * its own instance of the stage
+   */
+  private int numThreads = 1;
+
+  /**
+   * length of the stage's input queue in a dag workflow - 0 for the workflow's
+   * queue length
+   */
+  private int queueLength = 0;
+
+  /**
+   * names of the stages feeding this one in a dag workflow - null for the
+   * stage before it in the list
+   */
+  private ArrayList<String> inputs = null;
+
   public StageConfiguration(String stageName, String stageClass) {
     config = new HashMap<String, Object>();
     this.stageName = stageName;
@@ -54,4 +74,36 @@ public class StageConfiguration extends Configuration {
     this.stageClass = stageClass;
   }
 
+  public int getNumThreads() {
+    return numThreads;
+  }
+
+  public void setNumThreads(int numThreads) {
+    this.numThreads = numThreads;
+  }
+
+  public int getQueueLength() {
+    return queueLength;
+  }
+
+  public void setQueueLength(int queueLength) {
+    this.queueLength = queueLength;
+  }
+
+  public List<String> getInputs() {
+    return inputs;
+  }
+
+  /**
+   * @param inputs
+   *          stages feeding this one - none for a stage which gets the
+   *          documents sent to the workflow
+   */
+  public void setInputs(String... inputs) {
+    this.inputs = new ArrayList<String>();
+    for (String input : inputs) {
+      this.inputs.add(input);
+    }
+  }
+
 }
@@ -12,6 +12,24 @@ public class WorkflowConfiguration extends Configuration {
   private int numWorkerThreads = 1;
   private int queueLength = 50;
 
+  /**
+   * run the stages as a dag - each stage with its own threads and queue -
+   * instead of numWorkerThreads copies of the whole chain
+   */
+  private boolean dag = false;
+
+  /**
+   * most documents a worker takes off the queue and sends through the stages
+   * at once
+   */
+  private int batchSize = 20;
+
+  /**
+   * how long a worker waits for a batch to fill - 0 takes only the documents
+   * already queued, it never holds a document back
+   */
+  private long batchWaitMs = 0;
+
   public WorkflowConfiguration(String name) {
     this.name = name;
     stages = new ArrayList<StageConfiguration>();
@@ -51,6 +69,30 @@ public class WorkflowConfiguration extends Configuration {
     this.queueLength = queueLength;
   }
 
+  public boolean isDag() {
+    return dag;
+  }
+
+  public void setDag(boolean dag) {
+    this.dag = dag;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public long getBatchWaitMs() {
+    return batchWaitMs;
+  }
+
+  public void setBatchWaitMs(long batchWaitMs) {
+    this.batchWaitMs = batchWaitMs;
+  }
+
   public static WorkflowConfiguration fromXML(String xml) {
     // TODO: move this to a utility to serialize/deserialize the config objects.
     // TODO: should override on the impl classes so they return a properly
@@ -0,0 +1,421 @@
+package org.myrobotlab.document.workflow;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.myrobotlab.document.Document;
+import org.myrobotlab.document.ProcessingStatus;
+import org.myrobotlab.document.transformer.AbstractStage;
+import org.myrobotlab.document.transformer.StageConfiguration;
+import org.myrobotlab.document.transformer.WorkflowConfiguration;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * DagWorkflow : the stages of a workflow as nodes of a directed acyclic graph.
+ * Every stage has its own bounded input queue and its own threads, each with
+ * its own instance of the stage, so an expensive stage (OpenNLP, FetchURI ..)
+ * can get more threads than the cheap ones around it.
+ *
+ * A stage's inputs are the stages feeding it, by default the stage before it
+ * in the config - so a config without inputs is the same chain the
+ * WorkflowWorker runs. Documents sent to the workflow go to the stages without
+ * inputs. A document, and the child documents a stage made from it, go on to
+ * every stage downstream - each extra downstream stage gets its own copy. A
+ * dropped document, or one a stage failed on, goes no further.
+ *
+ * A full queue blocks the stage feeding it, which applies back pressure all
+ * the way up to processDocument. A stage thread takes everything waiting on
+ * its queue, up to the workflow's batchSize, as one batch.
+ */
+public class DagWorkflow {
+
+  public final static Logger log = LoggerFactory.getLogger(DagWorkflow.class);
+
+  /**
+   * throughput and queue depth of a stage
+   */
+  public static class StageStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public String name;
+    public int threads;
+    public int queued;
+    public int queueLength;
+    /**
+     * threads processing a batch now
+     */
+    public int busy;
+    public long processed;
+    public long dropped;
+    public long childDocs;
+    public long errors;
+    /**
+     * average processing time of a document
+     */
+    public double avgMs;
+    /**
+     * documents per second since the workflow started
+     */
+    public double rate;
+
+    @Override
+    public String toString() {
+      return String.format("%s threads %d busy %d queued %d/%d processed %d (%.1f/s) avg %.2f ms dropped %d children %d errors %d", name, threads, busy, queued,
+          queueLength, processed, rate, avgMs, dropped, childDocs, errors);
+    }
+  }
+
+  class Node {
+
+    final String name;
+
+    final StageConfiguration config;
+
+    final BlockingQueue<Document> queue;
+
+    final List<Node> next = new ArrayList<>();
+
+    final List<Thread> threads = new ArrayList<>();
+
+    final List<AbstractStage> stages = new ArrayList<>();
+
+    boolean root = false;
+
+    long processed;
+
+    long dropped;
+
+    long childDocs;
+
+    long errors;
+
+    long totalNanos;
+
+    int busy;
+
+    Node(StageConfiguration config, int queueLength) {
+      this.config = config;
+      name = config.getStageName();
+      queue = new ArrayBlockingQueue<>(Math.max(1, queueLength));
+    }
+
+    void run(AbstractStage stage) {
+      List<Document> batch = new ArrayList<>(batchSize);
+      while (running) {
+        batch.clear();
+        try {
+          batch.add(queue.take());
+        } catch (InterruptedException e) {
+          break;
+        }
+        // whatever else is waiting goes in the same batch
+        queue.drainTo(batch, batchSize - 1);
+        synchronized (this) {
+          ++busy;
+        }
+        long start = System.nanoTime();
+        // a document which fails does not fail the rest of the batch
+        List<Document> children = stage.processBatch(batch);
+        long nanos = System.nanoTime() - start;
+        int drops = 0;
+        int failed = 0;
+        for (Document doc : batch) {
+          if (doc.getStatus().equals(ProcessingStatus.DROP)) {
+            ++drops;
+          } else if (doc.getStatus().equals(ProcessingStatus.ERROR)) {
+            ++failed;
+            log.warn("document {} failed in stage {}", doc.getId(), name);
+          }
+        }
+        synchronized (this) {
+          --busy;
+          processed += batch.size();
+          totalNanos += nanos;
+          dropped += drops;
+          errors += failed;
+          if (children != null) {
+            childDocs += children.size();
+          }
+        }
+        try {
+          if (children != null) {
+            for (Document child : children) {
+              forward(next, child);
+            }
+          }
+          // like the chain, a dropped document or one whose stage failed goes
+          // no further
+          for (Document doc : batch) {
+            if (doc.getStatus().equals(ProcessingStatus.OK)) {
+              forward(next, doc);
+            }
+          }
+        } catch (InterruptedException e) {
+          done(batch.size());
+          break;
+        }
+        done(batch.size());
+      }
+    }
+
+    StageStats getStats() {
+      StageStats stats = new StageStats();
+      synchronized (this) {
+        stats.name = name;
+        stats.threads = threads.size();
+        stats.busy = busy;
+        stats.processed = processed;
+        stats.dropped = dropped;
+        stats.childDocs = childDocs;
+        stats.errors = errors;
+        stats.avgMs = (processed == 0) ? 0 : totalNanos / 1000000.0 / processed;
+      }
+      stats.queued = queue.size();
+      stats.queueLength = stats.queued + queue.remainingCapacity();
+      long elapsed = System.currentTimeMillis() - startTs;
+      stats.rate = (elapsed <= 0) ? 0 : stats.processed * 1000.0 / elapsed;
+      return stats;
+    }
+  }
+
+  private final String name;
+
+  /**
+   * nodes in topological order
+   */
+  private final List<Node> nodes = new ArrayList<>();
+
+  private final List<Node> roots = new ArrayList<>();
+
+  /**
+   * most documents a stage thread takes off its queue at once
+   */
+  private final int batchSize;
+
+  private volatile boolean running = false;
+
+  /**
+   * documents queued or being processed anywhere in the graph
+   */
+  private long inFlight = 0;
+
+  private long startTs;
+
+  public DagWorkflow(WorkflowConfiguration workflowConfig) {
+    name = workflowConfig.getName();
+    batchSize = Math.max(1, workflowConfig.getBatchSize());
+    Map<String, Node> byName = new LinkedHashMap<>();
+    Node previous = null;
+    for (StageConfiguration stageConf : workflowConfig.getStages()) {
+      int queueLength = (stageConf.getQueueLength() > 0) ? stageConf.getQueueLength() : workflowConfig.getQueueLength();
+      Node node = new Node(stageConf, queueLength);
+      if (byName.containsKey(node.name)) {
+        throw new IllegalArgumentException(String.format("workflow %s has more than one stage named %s", name, node.name));
+      }
+      byName.put(node.name, node);
+      List<String> inputs = stageConf.getInputs();
+      if (inputs == null) {
+        if (previous == null) {
+          node.root = true;
+        } else {
+          previous.next.add(node);
+        }
+      } else if (inputs.isEmpty()) {
+        node.root = true;
+      }
+      previous = node;
+    }
+    // explicit edges - inputs may be declared after the stage
+    for (Node node : byName.values()) {
+      List<String> inputs = node.config.getInputs();
+      if (inputs == null) {
+        continue;
+      }
+      for (String input : inputs) {
+        Node from = byName.get(input);
+        if (from == null) {
+          throw new IllegalArgumentException(String.format("stage %s in workflow %s has unknown input %s", node.name, name, input));
+        }
+        from.next.add(node);
+      }
+    }
+    sort(byName);
+    for (Node node : nodes) {
+      if (node.root) {
+        roots.add(node);
+      }
+    }
+    if (roots.isEmpty() && !nodes.isEmpty()) {
+      throw new IllegalArgumentException(String.format("workflow %s has no stage without inputs", name));
+    }
+  }
+
+  /**
+   * Kahn's sort - also finds cycles
+   */
+  private void sort(Map<String, Node> byName) {
+    Map<Node, Integer> inDegree = new HashMap<>();
+    for (Node node : byName.values()) {
+      inDegree.putIfAbsent(node, 0);
+      for (Node to : node.next) {
+        inDegree.put(to, inDegree.getOrDefault(to, 0) + 1);
+      }
+    }
+    List<Node> ready = new ArrayList<>();
+    for (Node node : byName.values()) {
+      if (inDegree.get(node) == 0) {
+        ready.add(node);
+      }
+    }
+    while (!ready.isEmpty()) {
+      Node node = ready.remove(0);
+      nodes.add(node);
+      for (Node to : node.next) {
+        int d = inDegree.get(to) - 1;
+        inDegree.put(to, d);
+        if (d == 0) {
+          ready.add(to);
+        }
+      }
+    }
+    if (nodes.size() != byName.size()) {
+      throw new IllegalArgumentException(String.format("the stages of workflow %s have a cycle", name));
+    }
+  }
+
+  /**
+   * creates the stages and starts their threads
+   *
+   * @throws ClassNotFoundException
+   *           a stage class is not there
+   */
+  public void initialize() throws ClassNotFoundException {
+    running = true;
+    startTs = System.currentTimeMillis();
+    for (Node node : nodes) {
+      int numThreads = Math.max(1, node.config.getNumThreads());
+      for (int i = 0; i < numThreads; ++i) {
+        AbstractStage stage = Workflow.createStage(node.config);
+        if (stage == null) {
+          throw new IllegalArgumentException(String.format("could not create stage %s of workflow %s", node.name, name));
+        }
+        node.stages.add(stage);
+        Thread t = new Thread(() -> node.run(stage), String.format("WorkflowStage-%s-%s-%d", name, node.name, node.threads.size()));
+        node.threads.add(t);
+        t.start();
+      }
+    }
+  }
+
+  public void processDocument(Document doc) throws InterruptedException {
+    forward(roots, doc);
+  }
+
+  /**
+   * queue a document on the given stages - the first gets the document, the
+   * others a copy
+   */
+  private void forward(List<Node> to, Document doc) throws InterruptedException {
+    // copy before queueing, the first stage may change the document right away
+    Document[] docs = new Document[to.size()];
+    for (int i = 0; i < docs.length; ++i) {
+      docs[i] = (i == 0) ? doc : doc.copy();
+    }
+    for (int i = 0; i < docs.length; ++i) {
+      synchronized (this) {
+        ++inFlight;
+      }
+      try {
+        to.get(i).queue.put(docs[i]);
+      } catch (InterruptedException e) {
+        done(1);
+        throw e;
+      }
+    }
+  }
+
+  private synchronized void done(int count) {
+    inFlight -= count;
+    if (inFlight == 0) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * waits until every document sent so far made it through the graph, then
+   * flushes every stage
+   */
+  public void flush() {
+    synchronized (this) {
+      while (inFlight > 0) {
+        try {
+          log.info("Waiting for workflow flush - {} documents in flight", inFlight);
+          wait(1000);
+        } catch (InterruptedException e) {
+          log.info("Interrupted while waiting for workflow to drain. {}", e.getMessage());
+          return;
+        }
+      }
+    }
+    // in topological order so batches flushed upstream are seen downstream
+    for (Node node : nodes) {
+      for (AbstractStage stage : node.stages) {
+        stage.flush();
+      }
+    }
+    log.info("Workflow {} flushed.", name);
+  }
+
+  /**
+   * stops the stage threads - documents still queued are discarded
+   */
+  public void stop() {
+    running = false;
+    for (Node node : nodes) {
+      for (Thread t : node.threads) {
+        t.interrupt();
+      }
+    }
+    for (Node node : nodes) {
+      for (Thread t : node.threads) {
+        try {
+          t.join(1000);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+      for (AbstractStage stage : node.stages) {
+        stage.stopStage();
+      }
+      node.threads.clear();
+      node.stages.clear();
+      node.queue.clear();
+    }
+    synchronized (this) {
+      inFlight = 0;
+      notifyAll();
+    }
+  }
+
+  /**
+   * @return stats of each stage in topological order
+   */
+  public List<StageStats> getStats() {
+    List<StageStats> ret = new ArrayList<>();
+    for (Node node : nodes) {
+      ret.add(node.getStats());
+    }
+    return ret;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+}
@@ -1,8 +1,12 @@
 package org.myrobotlab.document.workflow;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.myrobotlab.document.Document;
+import org.myrobotlab.document.transformer.AbstractStage;
+import org.myrobotlab.document.transformer.StageConfiguration;
 import org.myrobotlab.document.transformer.WorkflowConfiguration;
 import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
@@ -11,6 +15,10 @@ import org.slf4j.Logger;
  * 
  * Workflow : top level workflow class that controls the thread that do the work
  * of processing documents on each stage.
+ * 
+ * By default each worker thread runs the whole chain of stages. A dag
+ * workflow config runs the stages as a DagWorkflow instead - each stage with
+ * its own threads and queue.
  *
  */
 public class Workflow {
@@ -25,8 +33,37 @@ public class Workflow {
   // more thread poolesque?)
   private WorkflowWorker[] workers;
   private WorkflowConfiguration workflowConfig;
+  private DagWorkflow dag;
   public final static Logger log = LoggerFactory.getLogger(Workflow.class);
 
+  /**
+   * create and start a stage
+   * 
+   * @param stageConf
+   *          the stage's config
+   * @return the stage or null if it could not be created
+   * @throws ClassNotFoundException
+   *           no such stage class
+   */
+  static AbstractStage createStage(StageConfiguration stageConf) throws ClassNotFoundException {
+    String stageClass = stageConf.getStageClass().trim();
+    String stageName = stageConf.getStageName();
+    log.info("Starting stage: {} class: {}", stageName, stageClass);
+    Class<?> sc = Workflow.class.getClassLoader().loadClass(stageClass);
+    try {
+      AbstractStage stageInst = (AbstractStage) sc.newInstance();
+      stageInst.startStage(stageConf);
+      return stageInst;
+    } catch (InstantiationException e) {
+      // TODO Auto-generated catch block
+      e.printStackTrace();
+    } catch (IllegalAccessException e) {
+      // TODO Auto-generated catch block
+      e.printStackTrace();
+    }
+    return null;
+  }
+
   // constructor
   public Workflow(WorkflowConfiguration workflowConfig) throws ClassNotFoundException {
     // create each of the worker threads. each with their own copy of the stages
@@ -41,7 +78,12 @@ public class Workflow {
   }
 
   // initialize the workflow
-  public void initialize() {
+  public void initialize() throws ClassNotFoundException {
+    if (workflowConfig.isDag()) {
+      dag = new DagWorkflow(workflowConfig);
+      dag.initialize();
+      return;
+    }
     workers = new WorkflowWorker[numWorkerThreads];
     for (int i = 0; i < numWorkerThreads; i++) {
       initializeWorkerThread(i);
@@ -64,6 +106,10 @@ public class Workflow {
   }
 
   public void processDocument(Document doc) throws InterruptedException {
+    if (dag != null) {
+      dag.processDocument(doc);
+      return;
+    }
     // put the document on the processing queue.
     if (doc != null) {
       queue.put(doc);
@@ -90,6 +136,10 @@ public class Workflow {
 
   // flush all the stages on each worker thread.
   public void flush() {
+    if (dag != null) {
+      dag.flush();
+      return;
+    }
     // TODO: Or make it block here.
     while (!queue.isEmpty()) {
       try {
@@ -136,4 +186,33 @@ public class Workflow {
     return name;
   }
 
+  /**
+   * @return documents which failed in a stage
+   */
+  public long getErrors() {
+    long errors = 0;
+    if (dag != null) {
+      for (DagWorkflow.StageStats stats : dag.getStats()) {
+        errors += stats.errors;
+      }
+    } else if (workers != null) {
+      for (WorkflowWorker worker : workers) {
+        if (worker != null) {
+          errors += worker.getErrors();
+        }
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * @return throughput and queue depth of each stage - empty unless dag
+   */
+  public List<DagWorkflow.StageStats> getStageStats() {
+    if (dag == null) {
+      return new ArrayList<>();
+    }
+    return dag.getStats();
+  }
+
 }
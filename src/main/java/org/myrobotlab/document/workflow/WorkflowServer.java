@@ -1,6 +1,8 @@
 package org.myrobotlab.document.workflow;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 import org.myrobotlab.document.transformer.WorkflowConfiguration;
 
@@ -53,6 +55,14 @@ public class WorkflowServer {
 
   }
 
+  public List<DagWorkflow.StageStats> getStageStats(String workflow) {
+    Workflow w = workflowMap.get(workflow);
+    if (w == null) {
+      return new ArrayList<>();
+    }
+    return w.getStageStats();
+  }
+
   public String[] listWorkflows() {
     // TODO Auto-generated method stub
     String[] ws = new String[workflowMap.keySet().size()];
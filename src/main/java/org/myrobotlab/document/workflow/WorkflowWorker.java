@@ -3,6 +3,7 @@ package org.myrobotlab.document.workflow;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.myrobotlab.document.Document;
 import org.myrobotlab.document.ProcessingStatus;
@@ -16,6 +17,11 @@ import org.slf4j.Logger;
  * 
  * WorkflowWorker : this is a list of stages that will poll the workflow queue
  * and process documents through that list of stages.
+ * 
+ * Documents are taken off the queue in micro batches - up to batchSize, and
+ * waiting at most batchWaitMs for the batch to fill - and each stage gets the
+ * whole batch in one processDocuments call. A document which fails in a stage
+ * is counted and logged, and goes no further - the rest of its batch does.
  */
 public class WorkflowWorker extends Thread {
   public final static Logger log = LoggerFactory.getLogger(WorkflowWorker.class);
@@ -24,26 +30,26 @@ public class WorkflowWorker extends Thread {
 
   private final LinkedBlockingQueue<Document> queue;
 
+  private final int batchSize;
+
+  private final long batchWaitMs;
+
+  /**
+   * documents which failed in a stage
+   */
+  private volatile long errors = 0;
+
   WorkflowWorker(WorkflowConfiguration workflowConfig, LinkedBlockingQueue<Document> queue, String workerId) throws ClassNotFoundException {
     // set the thread name
     this.setName("WorkflowWorker-" + workflowConfig.getName() + "-" + workerId);
     this.queue = queue;
+    batchSize = Math.max(1, workflowConfig.getBatchSize());
+    batchWaitMs = workflowConfig.getBatchWaitMs();
     stages = new ArrayList<AbstractStage>();
     for (StageConfiguration stageConf : workflowConfig.getStages()) {
-      String stageClass = stageConf.getStageClass().trim();
-      String stageName = stageConf.getStageName();
-      log.info("Starting stage: {} class: {}", stageName, stageClass);
-      Class<?> sc = Workflow.class.getClassLoader().loadClass(stageClass);
-      try {
-        AbstractStage stageInst = (AbstractStage) sc.newInstance();
-        stageInst.startStage(stageConf);
+      AbstractStage stageInst = Workflow.createStage(stageConf);
+      if (stageInst != null) {
         addStage(stageInst);
-      } catch (InstantiationException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      } catch (IllegalAccessException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
       }
     }
   }
@@ -60,8 +66,9 @@ public class WorkflowWorker extends Thread {
           running = false;
         } else {
           processing = true;
+          List<Document> batch = takeBatch(doc);
           // process from the start of the workflow
-          processDocumentInternal(doc, 0);
+          processDocumentsInternal(batch, 0);
           processing = false;
         }
       } catch (Exception e) {
@@ -74,33 +81,82 @@ public class WorkflowWorker extends Thread {
     }
   }
 
+  /**
+   * fill a batch - what is already queued, then wait up to batchWaitMs for the
+   * rest
+   */
+  private List<Document> takeBatch(Document first) throws InterruptedException {
+    List<Document> batch = new ArrayList<Document>(batchSize);
+    batch.add(first);
+    queue.drainTo(batch, batchSize - 1);
+    if (batchWaitMs > 0 && batch.size() < batchSize) {
+      long deadline = System.currentTimeMillis() + batchWaitMs;
+      long wait;
+      while (batch.size() < batchSize && (wait = deadline - System.currentTimeMillis()) > 0) {
+        Document doc = queue.poll(wait, TimeUnit.MILLISECONDS);
+        if (doc == null) {
+          break;
+        }
+        batch.add(doc);
+        queue.drainTo(batch, batchSize - batch.size());
+      }
+    }
+    return batch;
+  }
+
   public boolean isProcessing() {
     return processing;
   }
 
   public void processDocumentInternal(Document doc, int stageOffset) {
-    // TODO:
+    List<Document> docs = new ArrayList<Document>(1);
+    docs.add(doc);
+    processDocumentsInternal(docs, stageOffset);
+  }
+
+  public void processDocumentsInternal(List<Document> docs, int stageOffset) {
     int i = stageOffset;
     for (AbstractStage s : stages.subList(i, stages.size())) {
-      // create a pool of stages, so that when you call processDocument
-      // or each thread should have it's own pool?
-      List<Document> childDocs = s.processDocument(doc);
+      List<Document> childDocs = s.processBatch(docs);
       i++;
-      if (childDocs != null) {
-        // process each of the children docs down the rest of the pipeline
-        for (Document childDoc : childDocs) {
-          processDocumentInternal(childDoc, i);
-        }
+      if (childDocs != null && childDocs.size() > 0) {
+        // process the children docs down the rest of the pipeline
+        processDocumentsInternal(childDocs, i);
       }
       // TODO:should I create a completely new concept for
       // callbacks?
-      if (doc.getStatus().equals(ProcessingStatus.DROP)) {
-        // if it's a drop, break here.
+      // dropped and failed documents go no further
+      List<Document> kept = null;
+      for (int j = 0; j < docs.size(); ++j) {
+        Document doc = docs.get(j);
+        if (!doc.getStatus().equals(ProcessingStatus.OK)) {
+          if (doc.getStatus().equals(ProcessingStatus.ERROR)) {
+            ++errors;
+            log.warn("document {} failed in stage {} - {} failed so far", doc.getId(), s.getClass().getSimpleName(), errors);
+          }
+          if (kept == null) {
+            kept = new ArrayList<Document>(docs.subList(0, j));
+          }
+        } else if (kept != null) {
+          kept.add(doc);
+        }
+      }
+      if (kept != null) {
+        docs = kept;
+      }
+      if (docs.isEmpty()) {
         break;
       }
     }
   }
 
+  /**
+   * @return documents which failed in a stage
+   */
+  public long getErrors() {
+    return errors;
+  }
+
   public void addStage(AbstractStage stage) {
     stages.add(stage);
   }
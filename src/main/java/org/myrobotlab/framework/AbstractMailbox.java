@@ -0,0 +1,115 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * common counters and configuration for {@link Mailbox} implementations
+ */
+public abstract class AbstractMailbox implements Mailbox {
+
+  public final static Logger log = LoggerFactory.getLogger(AbstractMailbox.class);
+
+  protected final String name;
+  protected final int capacity;
+  protected volatile OverflowPolicy policy;
+
+  protected final AtomicLong offered = new AtomicLong();
+  protected final AtomicLong droppedNewest = new AtomicLong();
+  protected final AtomicLong droppedOldest = new AtomicLong();
+  protected final AtomicLong coalesced = new AtomicLong();
+  protected final AtomicLong blocked = new AtomicLong();
+
+  public AbstractMailbox(String name, int capacity, OverflowPolicy policy) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException(String.format("%s mailbox capacity must be > 0 not %d", name, capacity));
+    }
+    this.name = name;
+    this.capacity = capacity;
+    this.policy = (policy == null) ? OverflowPolicy.DROP_NEWEST : policy;
+  }
+
+  /**
+   * the identity used by the COALESCE policy - two messages with the same
+   * destination and method are considered the same "topic"
+   * 
+   * @param a
+   *          msg
+   * @param b
+   *          other msg
+   * @return true if b can replace a
+   */
+  static public boolean sameTopic(Message a, Message b) {
+    if (a.method == null ? b.method != null : !a.method.equals(b.method)) {
+      return false;
+    }
+    if (a.name == null ? b.name != null : !a.name.equals(b.name)) {
+      return false;
+    }
+    // outbox broadcasts have a null name - the publishing method is what
+    // distinguishes them
+    return a.sendingMethod == null ? b.sendingMethod == null : a.sendingMethod.equals(b.sendingMethod);
+  }
+
+  @Override
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public OverflowPolicy getOverflowPolicy() {
+    return policy;
+  }
+
+  @Override
+  public void setOverflowPolicy(OverflowPolicy policy) {
+    if (policy != null) {
+      this.policy = policy;
+    }
+  }
+
+  abstract public String getType();
+
+  @Override
+  public MailboxStats getStats() {
+    MailboxStats stats = new MailboxStats();
+    stats.name = name;
+    stats.type = getType();
+    stats.policy = policy;
+    stats.capacity = capacity;
+    stats.size = size();
+    stats.offered = offered.get();
+    stats.droppedNewest = droppedNewest.get();
+    stats.droppedOldest = droppedOldest.get();
+    stats.coalesced = coalesced.get();
+    stats.blocked = blocked.get();
+    stats.ts = System.currentTimeMillis();
+    return stats;
+  }
+
+  /**
+   * creates a mailbox of the requested type
+   * 
+   * @param type
+   *          Mailbox.LINKED or Mailbox.RING
+   * @param name
+   *          name used in logging and stats
+   * @param capacity
+   *          max number of messages
+   * @param policy
+   *          what to do when full
+   * @return the new mailbox
+   */
+  static public Mailbox create(String type, String name, int capacity, OverflowPolicy policy) {
+    if (Mailbox.RING.equals(type)) {
+      return new RingBufferMailbox(name, capacity, policy);
+    }
+    if (type != null && !Mailbox.LINKED.equals(type)) {
+      log.warn("unknown mailbox type {} - using {}", type, Mailbox.LINKED);
+    }
+    return new LinkedMailbox(name, capacity, policy);
+  }
+
+}
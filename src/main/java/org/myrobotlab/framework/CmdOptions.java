@@ -86,6 +86,9 @@ public class CmdOptions {
   @Option(names = { "-j", "--jvm" }, arity = "0..*", description = "jvm parameters for the instance of mrl")
   public String jvm;
 
+  @Option(names = { "--lazy-resources" }, description = "extract the resources of a service type from the jar when the service first uses them, not all on startup")
+  public boolean lazyResources = false;
+
   @Option(names = { "-l", "--log-level" }, description = "log level - helpful for troubleshooting " + " [debug info warn error]")
   public String logLevel = "info";
 
@@ -199,6 +202,10 @@ public class CmdOptions {
       }
     }
 
+    if (lazyResources) {
+      cmd.add("--lazy-resources");
+    }
+
     if (logLevel != null) {
       cmd.add("--log-level");
       cmd.add(logLevel);
@@ -0,0 +1,26 @@
+package org.myrobotlab.framework;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a callback as thread-safe and short. Messages for it skip the
+ * subscriber's inbox and are invoked directly on the thread delivering them
+ * (the publisher's outbox or dispatch lane), saving a queue hop and a context
+ * switch. The callback may run concurrently with the service's own thread and
+ * with other publishers, and is no longer ordered with the messages which go
+ * through the inbox.
+ * 
+ * Callbacks which do I/O - serial writes, network, files - must not be
+ * annotated. They would block the publisher's thread, and with it every other
+ * subscriber of the publisher, for as long as the I/O takes.
+ * 
+ * Can be switched on and off at runtime with Service.setDirectCallback.
+ */
+@Retention(RUNTIME)
+@Target({ METHOD })
+public @interface DirectCallback {
+}
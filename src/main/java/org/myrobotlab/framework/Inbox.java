@@ -27,8 +27,6 @@ package org.myrobotlab.framework;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.myrobotlab.framework.interfaces.MessageListener;
@@ -42,15 +40,23 @@ public class Inbox implements Serializable {
   public final static Logger log = LoggerFactory.getLogger(Inbox.class.getCanonicalName());
 
   String name;
-  LinkedList<Message> msgBox = new LinkedList<Message>();
   boolean isRunning = false;
   boolean bufferOverrun = false;
   boolean blocking = false;
   int maxQueue = 1024; // will need to adjust unit test if you change this
   // value
 
-  // support remote blocking... in-process blocking uses invoke
-  public HashMap<String, Object[]> blockingList = new HashMap<>();
+  /**
+   * type of mailbox - Mailbox.LINKED or Mailbox.RING
+   */
+  String mailboxType = Mailbox.LINKED;
+
+  /**
+   * what to do when the mailbox is full and we are not blocking
+   */
+  OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+  transient volatile Mailbox msgBox;
 
   List<MessageListener> listeners = new ArrayList<MessageListener>();
 
@@ -60,6 +66,7 @@ public class Inbox implements Serializable {
 
   public Inbox(String name) {
     this.name = name;
+    msgBox = AbstractMailbox.create(mailboxType, name, maxQueue, overflowPolicy);
   }
 
   public void add(Message msg) {
@@ -73,28 +80,31 @@ public class Inbox implements Serializable {
      * msg.historyList.add(name);
      */
 
-    synchronized (msgBox) {
-      while (blocking && (msgBox.size() >= maxQueue)) // queue "full"
-      {
-        try {
-          msgBox.wait();
-        } catch (InterruptedException ex) {
-          log.debug("inbox enque msg INTERRUPTED " + name);
-        }
-      }
+    // --- sendAsync / sendBlocking support begin --------------------
+    // replies complete the waiting caller's future here on the delivering
+    // thread - they are never invoked, a reply nobody waits on any longer
+    // (timed out) is dropped
+    PendingReplies replies = PendingReplies.getInstance();
+    if (Message.RETURN.equals(msg.status)) {
+      replies.complete(msg);
+      return;
+    }
+    if (replies.hasTopicWaiters() && replies.completeTopic(msg)) {
+      return; // waitFor has been notified
+    }
+    // --- sendAsync / sendBlocking support end --------------------
 
-      if (msgBox.size() > maxQueue) {
+    try {
+      if (!msgBox.offer(msg)) {
         bufferOverrun = true;
-        log.warn("inbox size {} BUFFER OVERRUN dumping msg from {} To {}.{}", msgBox.size(), msg.sender, msg.name, msg.method);
-      } else {
-        msgBox.addFirst(msg);
-        // Logging.logTime(String.format("inbox - %s size %d", name,
-        // msgBox.size()));
-        if (log.isDebugEnabled()) {
-          log.debug("{}.msgBox + 1 = {}", name, msgBox.size());
-        }
-        msgBox.notifyAll(); // must own the lock
+        return;
       }
+      if (log.isDebugEnabled()) {
+        log.debug("{}.msgBox + 1 = {}", name, msgBox.size());
+      }
+    } catch (InterruptedException ex) {
+      log.debug("inbox enque msg INTERRUPTED " + name);
+      return;
     }
 
     // TODO: move this to a base class Inbox/Outbox are very similar.
@@ -143,44 +153,8 @@ public class Inbox implements Serializable {
      * Message came from should be hidden and interfaces should be exposed only-
      */
 
-    Message msg = null;
-
-    synchronized (msgBox) {
-
-      while (msg == null) { // while no messages && no messages that are
-        // blocking
-        if (msgBox.size() == 0) {
-          msgBox.wait(); // must own the lock
-        } else {
-          msg = msgBox.removeLast();
-          log.debug("{}.msgBox -1 {}", name, msgBox.size());
-
-          // --- sendBlocking support begin --------------------
-          // TODO - possible safety check msg.status == Message.RETURN
-          // &&
-          String blockingKey = String.format("%s.%s", msg.getFullName(), msg.getMethod());
-          if (blockingList.containsKey(blockingKey)) {
-            Object[] returnContainer = blockingList.get(blockingKey);
-            if (msg.data == null) {
-              returnContainer[0] = null;
-            } else {
-              // transferring data
-              returnContainer[0] = msg.data[0];
-            }
-
-            synchronized (returnContainer) {
-              blockingList.remove(blockingKey);
-              returnContainer.notifyAll(); // addListener sender
-            }
-            msg = null; // do not invoke this msg - sendBlocking has
-            // been notified data returned
-          }
-          // --- sendBlocking support end --------------------
-
-        }
-      }
-      msgBox.notifyAll();
-    }
+    Message msg = msgBox.take();
+    log.debug("{}.msgBox -1 {}", name, msgBox.size());
     return msg;
   }
 
@@ -190,6 +164,48 @@ public class Inbox implements Serializable {
 
   public void setBlocking(boolean toBlock) {
     blocking = toBlock;
+    msgBox.setOverflowPolicy(toBlock ? OverflowPolicy.BLOCK : overflowPolicy);
+  }
+
+  /**
+   * replace the mailbox - pending messages are moved to the new one. This
+   * should be done before the service is started, a thread already waiting on
+   * the old mailbox will not see the new one.
+   * 
+   * @param type
+   *          Mailbox.LINKED or Mailbox.RING
+   * @param size
+   *          max queue size
+   * @param policy
+   *          overflow policy when not blocking
+   */
+  synchronized public void setMailbox(String type, int size, OverflowPolicy policy) {
+    mailboxType = type;
+    maxQueue = size;
+    if (policy != null) {
+      overflowPolicy = policy;
+    }
+    msgBox = transfer(msgBox, AbstractMailbox.create(type, name, size, blocking ? OverflowPolicy.BLOCK : overflowPolicy));
+  }
+
+  static Mailbox transfer(Mailbox from, Mailbox to) {
+    Message msg = null;
+    while ((msg = from.poll()) != null) {
+      try {
+        to.offer(msg);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    return to;
+  }
+
+  public Mailbox getMailbox() {
+    return msgBox;
+  }
+
+  public MailboxStats getStats() {
+    return msgBox.getStats();
   }
 
   public int size() {
@@ -0,0 +1,107 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of latencies in nanoseconds. Buckets are 4 per power of
+ * 2, so a reported value is within 25% of the recorded one - enough to compare
+ * delivery paths without the cost of keeping every sample.
+ */
+public class LatencyHistogram {
+
+  static final int SUB_BUCKETS = 4;
+
+  static final int BUCKETS = SUB_BUCKETS + (62 * SUB_BUCKETS);
+
+  final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+  final AtomicLong count = new AtomicLong();
+
+  final AtomicLong total = new AtomicLong();
+
+  final AtomicLong max = new AtomicLong();
+
+  static int index(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (nanos < 0) ? 0 : (int) nanos;
+    }
+    int msb = 63 - Long.numberOfLeadingZeros(nanos);
+    int sub = (int) (nanos >>> (msb - 2)) & (SUB_BUCKETS - 1);
+    return SUB_BUCKETS + (msb - 2) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * @return the largest value which falls in bucket i
+   */
+  static long upperBound(int i) {
+    if (i < SUB_BUCKETS) {
+      return i;
+    }
+    int msb = (i - SUB_BUCKETS) / SUB_BUCKETS + 2;
+    int sub = (i - SUB_BUCKETS) % SUB_BUCKETS;
+    long lower = (long) (SUB_BUCKETS + sub) << (msb - 2);
+    return lower + (1L << (msb - 2)) - 1;
+  }
+
+  public void record(long nanos) {
+    counts.incrementAndGet(index(nanos));
+    count.incrementAndGet();
+    total.addAndGet(nanos);
+    long m = max.get();
+    while (nanos > m && !max.compareAndSet(m, nanos)) {
+      m = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long c = count.get();
+    return (c == 0) ? 0 : (double) total.get() / c;
+  }
+
+  /**
+   * @param percentile
+   *          0 - 100
+   * @return latency in nanoseconds which percentile of the samples are at or
+   *         below
+   */
+  public long getPercentile(double percentile) {
+    long c = count.get();
+    if (c == 0) {
+      return 0;
+    }
+    long target = (long) Math.ceil(c * percentile / 100.0);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; ++i) {
+      seen += counts.get(i);
+      if (seen >= target) {
+        return Math.min(upperBound(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; ++i) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    total.set(0);
+    max.set(0);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("count %d mean %.1f us p50 %.1f us p90 %.1f us p99 %.1f us max %.1f us", getCount(), getMean() / 1000.0, getPercentile(50) / 1000.0,
+        getPercentile(90) / 1000.0, getPercentile(99) / 1000.0, getMax() / 1000.0);
+  }
+
+}
@@ -0,0 +1,143 @@
+package org.myrobotlab.framework;
+
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+/**
+ * The original Inbox/Outbox queue - a LinkedList guarded by its own monitor.
+ * Messages are added to the front and removed from the back.
+ * 
+ * With COALESCE messages which do not fit are queued over capacity like the
+ * RingBufferMailbox's overflow - only the latest per topic, and once anything
+ * went over capacity newer messages coalesce with those too until the
+ * consumer reached them.
+ */
+public class LinkedMailbox extends AbstractMailbox {
+
+  final LinkedList<Message> msgBox = new LinkedList<Message>();
+
+  /**
+   * newest messages which were queued over capacity by COALESCE and not taken
+   * yet - guarded by msgBox
+   */
+  int spilled = 0;
+
+  public LinkedMailbox(String name, int capacity, OverflowPolicy policy) {
+    super(name, capacity, policy);
+  }
+
+  @Override
+  public String getType() {
+    return Mailbox.LINKED;
+  }
+
+  @Override
+  public boolean offer(Message msg) throws InterruptedException {
+    offered.incrementAndGet();
+    synchronized (msgBox) {
+      if (spilled > 0 && policy == OverflowPolicy.COALESCE) {
+        return spill(msg);
+      }
+      if (msgBox.size() >= capacity) {
+        switch (policy) {
+          case BLOCK:
+            blocked.incrementAndGet();
+            while (msgBox.size() >= capacity) {
+              msgBox.wait();
+            }
+            break;
+          case DROP_OLDEST:
+            msgBox.removeLast();
+            droppedOldest.incrementAndGet();
+            break;
+          case COALESCE:
+            return spill(msg);
+          case WARN:
+            log.warn("{} BUFFER OVERRUN size {} queueing {}", name, msgBox.size(), msg);
+            break;
+          case DROP_NEWEST:
+          default:
+            droppedNewest.incrementAndGet();
+            log.warn("{} BUFFER OVERRUN size {} dumping msg from {} To {}.{}", name, msgBox.size(), msg.sender, msg.name, msg.method);
+            return false;
+        }
+      }
+      msgBox.addFirst(msg);
+      msgBox.notifyAll(); // must own the lock
+    }
+    return true;
+  }
+
+  /**
+   * queue a message over capacity - it replaces the spilled message of the
+   * same topic in its place
+   * 
+   * @return false if it was coalesced
+   */
+  boolean spill(Message msg) {
+    ListIterator<Message> it = msgBox.listIterator();
+    for (int i = 0; i < spilled && it.hasNext(); ++i) {
+      if (sameTopic(it.next(), msg)) {
+        it.set(msg);
+        coalesced.incrementAndGet();
+        return false;
+      }
+    }
+    msgBox.addFirst(msg);
+    ++spilled;
+    msgBox.notifyAll();
+    return true;
+  }
+
+  Message remove() {
+    Message msg = msgBox.removeLast();
+    // the consumer reached the spilled messages
+    spilled = Math.min(spilled, msgBox.size());
+    msgBox.notifyAll();
+    return msg;
+  }
+
+  @Override
+  public Message take() throws InterruptedException {
+    synchronized (msgBox) {
+      while (msgBox.size() == 0) {
+        msgBox.wait(); // must own the lock
+      }
+      return remove();
+    }
+  }
+
+  @Override
+  public Message poll() {
+    synchronized (msgBox) {
+      if (msgBox.size() == 0) {
+        return null;
+      }
+      return remove();
+    }
+  }
+
+  @Override
+  public int size() {
+    return msgBox.size();
+  }
+
+  @Override
+  public void clear() {
+    synchronized (msgBox) {
+      msgBox.clear();
+      spilled = 0;
+      msgBox.notifyAll();
+    }
+  }
+
+  /**
+   * @return copy of the pending messages, newest first
+   */
+  public LinkedList<Message> getMsgBox() {
+    synchronized (msgBox) {
+      return new LinkedList<Message>(msgBox);
+    }
+  }
+
+}
@@ -0,0 +1,69 @@
+package org.myrobotlab.framework;
+
+/**
+ * A message queue which backs an {@link Inbox} or {@link Outbox}. Any number of
+ * threads may add messages, while the owning service's thread(s) take them off.
+ * Implementations differ in how they synchronize, but all of them must honor
+ * the {@link OverflowPolicy} and keep the drop counters in
+ * {@link MailboxStats} up to date.
+ * 
+ * @author GroG
+ *
+ */
+public interface Mailbox {
+
+  /**
+   * the legacy synchronized LinkedList mailbox
+   */
+  public final static String LINKED = "linked";
+
+  /**
+   * lock-free bounded ring buffer mailbox
+   */
+  public final static String RING = "ring";
+
+  /**
+   * add a message to the mailbox
+   * 
+   * @param msg
+   *          the message
+   * @return true if the message was queued, false if it was dropped or
+   *         coalesced into another pending message
+   * @throws InterruptedException
+   *           if BLOCK policy is waiting for room and the thread is
+   *           interrupted
+   */
+  public boolean offer(Message msg) throws InterruptedException;
+
+  /**
+   * remove the oldest message, waiting for one if the mailbox is empty
+   * 
+   * @return the message
+   * @throws InterruptedException
+   *           when the waiting thread is interrupted
+   */
+  public Message take() throws InterruptedException;
+
+  /**
+   * remove the oldest message if there is one
+   * 
+   * @return the message or null if empty
+   */
+  public Message poll();
+
+  public int size();
+
+  public void clear();
+
+  public int getCapacity();
+
+  public OverflowPolicy getOverflowPolicy();
+
+  public void setOverflowPolicy(OverflowPolicy policy);
+
+  /**
+   * @return a snapshot of the mailbox counters
+   */
+  public MailboxStats getStats();
+
+}
@@ -0,0 +1,46 @@
+package org.myrobotlab.framework;
+
+/**
+ * snapshot of a {@link Mailbox}'s counters - returned from
+ * Service.getMailboxStats
+ */
+public class MailboxStats {
+
+  public String name;
+  public String type;
+  public OverflowPolicy policy;
+  public int capacity;
+  public int size;
+  /**
+   * total number of messages offered to the mailbox
+   */
+  public long offered;
+  /**
+   * incoming messages dropped because the mailbox was full
+   */
+  public long droppedNewest;
+  /**
+   * queued messages dropped to make room for new ones
+   */
+  public long droppedOldest;
+  /**
+   * messages which replaced a pending message with the same name and method
+   */
+  public long coalesced;
+  /**
+   * number of times a producer had to wait for room
+   */
+  public long blocked;
+  public long ts;
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s %s %s size %d/%d offered %d dropped newest %d oldest %d coalesced %d blocked %d", name, type, policy, size, capacity, offered, droppedNewest,
+        droppedOldest, coalesced, blocked);
+  }
+
+}
@@ -45,6 +45,17 @@ public class Message implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  /**
+   * status of a request sent with sendAsync or sendBlocking - the receiving
+   * service replies with a RETURN message with the same msgId
+   */
+  public final static String BLOCKING = "BLOCKING";
+
+  /**
+   * status of a reply to a BLOCKING request
+   */
+  public final static String RETURN = "RETURN";
+
   // FIXME msgId should be a String encoded value of src and an atomic increment
   // ROS comes with a seq Id, a timestamp, and a frame Id
   /**
@@ -53,6 +64,12 @@ public class Message implements Serializable {
 
   public long msgId;
 
+  /**
+   * System.nanoTime() when the message was published - local only, used for
+   * the delivery latency stats of the receiving service
+   */
+  transient public long publishTs;
+
   /**
    * destination name of the message
    */
@@ -147,10 +164,14 @@ public class Message implements Serializable {
     // deep copy
 
     historyList = new ArrayList<String>();
-    historyList.addAll(other.historyList);
+    if (other.historyList != null) {
+      historyList.addAll(other.historyList);
+    }
 
+    publishTs = other.publishTs;
     status = other.status;
     encoding = other.encoding;
+    properties = (other.properties == null) ? null : new HashMap<>(other.properties);
     method = other.method;
     // you know the dangers of reference copy
     // shallow data copy
@@ -9,8 +9,10 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
+import org.myrobotlab.codec.BinaryCodec;
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
@@ -138,6 +140,28 @@ public class MethodCache {
 
   Map<String, MethodIndex> objectCache = new TreeMap<>();
 
+  /**
+   * max number of differently typed parameter lists compiled for a single
+   * method name - after that lookups fall back to getMethod
+   */
+  static int maxInvokersPerMethod = 16;
+
+  /**
+   * compiled invokers - class --&gt; method name --&gt; invokers resolved for
+   * each set of runtime parameter types. Lookups compare classes by identity,
+   * no keys are built.
+   */
+  volatile ClassValue<Map<String, MethodInvoker[]>> invokerCache = newInvokerCache();
+
+  static ClassValue<Map<String, MethodInvoker[]>> newInvokerCache() {
+    return new ClassValue<Map<String, MethodInvoker[]>>() {
+      @Override
+      protected Map<String, MethodInvoker[]> computeValue(Class<?> type) {
+        return new ConcurrentHashMap<>();
+      }
+    };
+  }
+
   protected MethodCache() {
   }
 
@@ -242,6 +266,7 @@ public class MethodCache {
    */
   public void clear() {
     objectCache.clear();
+    invokerCache = newInvokerCache();
   }
 
   public int getObjectSize() {
@@ -286,6 +311,55 @@ public class MethodCache {
     return getMethod(objectType, methodName, paramTypes);
   }
 
+  /**
+   * Use case for in-process invoking - resolves the method with getMethod the
+   * first time a method name is used with a set of runtime parameter types,
+   * and compiles it into a {@link MethodInvoker}. Later calls with the same
+   * parameter types return the same invoker.
+   * 
+   * @param objectType
+   *          - the object to invoke against
+   * @param methodName
+   *          - method name
+   * @param params
+   *          - actual parameters
+   * @return the invoker or null if no method matches
+   * @throws ClassNotFoundException
+   *           if the class isn't found
+   */
+  public MethodInvoker getInvoker(Class<?> objectType, String methodName, Object... params) throws ClassNotFoundException {
+    Map<String, MethodInvoker[]> methods = invokerCache.get(objectType);
+    MethodInvoker[] invokers = methods.get(methodName);
+    if (invokers != null) {
+      for (int i = 0; i < invokers.length; ++i) {
+        if (invokers[i].matches(params)) {
+          return invokers[i];
+        }
+      }
+    }
+
+    // resolve and compile
+    synchronized (methods) {
+      Class<?>[] paramTypes = getParamTypes(params);
+      Method method = getMethod(objectType, methodName, paramTypes);
+      if (method == null) {
+        return null;
+      }
+      MethodInvoker invoker = new MethodInvoker(method, paramTypes);
+      invokers = methods.get(methodName);
+      if (invokers == null) {
+        methods.put(methodName, new MethodInvoker[] { invoker });
+      } else if (invokers.length < maxInvokersPerMethod) {
+        // copy on write - readers never lock
+        MethodInvoker[] grown = new MethodInvoker[invokers.length + 1];
+        System.arraycopy(invokers, 0, grown, 0, invokers.length);
+        grown[invokers.length] = invoker;
+        methods.put(methodName, grown);
+      }
+      return invoker;
+    }
+  }
+
   public Class<?>[] getParamTypes(Object... params) {
     Class<?>[] paramTypes = null;
     if (params != null) {
@@ -561,6 +635,52 @@ public class MethodCache {
     return null;
   }
 
+  /**
+   * parameters of a message decoded by the BinaryCodec are already typed, only
+   * the ones sent as json need decoding - numbers are converted to the
+   * parameter type of the matching method
+   */
+  public Object[] getDecodedBinaryParameters(Class<?> clazz, String methodName, Object[] encodedParams) {
+    if (encodedParams == null) {
+      encodedParams = new Object[0];
+    }
+
+    if (clazz == null) {
+      log.error("cannot query method cache for null class");
+      return null;
+    }
+
+    List<MethodEntry> possible = getRemoteOrdinalMethods(clazz, methodName, encodedParams.length);
+    if (possible == null) {
+      log.error("getOrdinalMethods -> {}.{} with ordinal {} does not exist", clazz.getSimpleName(), methodName, encodedParams.length);
+      return null;
+    }
+    Object[] params = new Object[encodedParams.length];
+    for (int p = 0; p < possible.size(); ++p) {
+      Class<?>[] paramTypes = possible.get(p).getParameterTypes();
+      try {
+        for (int i = 0; i < encodedParams.length; ++i) {
+          params[i] = BinaryCodec.toType(encodedParams[i], paramTypes[i]);
+        }
+        return params;
+      } catch (Exception e) {
+        log.info("getDecodedBinaryParameters threw clazz {} method {} params {} ", clazz, methodName, encodedParams.length, e.getMessage());
+      }
+    }
+    log.error("requested getDecodedBinaryParameters({}, {},{}) could not decode", clazz.getSimpleName(), methodName, encodedParams);
+    return null;
+  }
+
+  /**
+   * decode the parameters of a message which came in through a gateway
+   */
+  public Object[] getDecodedParameters(Class<?> clazz, Message msg) {
+    if (BinaryCodec.NAME.equals(msg.encoding)) {
+      return getDecodedBinaryParameters(clazz, msg.method, msg.data);
+    }
+    return getDecodedJsonParameters(clazz, msg.method, msg.data);
+  }
+
   public static String formatParams(Object[] params) {
     StringBuilder sb = new StringBuilder();
     if (params != null) {
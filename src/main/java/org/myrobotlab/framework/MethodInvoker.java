@@ -0,0 +1,240 @@
+package org.myrobotlab.framework;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * A method resolved once by the {@link MethodCache} and compiled with
+ * LambdaMetafactory into a small generated class which calls it directly - the
+ * same way a lambda or method reference would. Invoking it skips the access
+ * and argument checks Method.invoke does on every call.
+ * 
+ * Public instance methods of public classes with up to 4 parameters are
+ * compiled, everything else (static methods, non-public classes, classes from
+ * another class loader ...) falls back to reflection.
+ * 
+ * The compiled caller only unboxes - it does not widen. So it is only used
+ * when the argument of every primitive parameter is of its exact box type, an
+ * Integer passed to a double parameter goes through Method.invoke.
+ * 
+ * Exceptions thrown by the target are wrapped in an InvocationTargetException
+ * so callers can treat it the same as Method.invoke.
+ * 
+ * @author GroG
+ *
+ */
+public class MethodInvoker {
+
+  public final static Logger log = LoggerFactory.getLogger(MethodInvoker.class);
+
+  public final static int MAX_COMPILED_ARITY = 4;
+
+  public interface Function0 {
+    Object apply(Object target);
+  }
+
+  public interface Function1 {
+    Object apply(Object target, Object p0);
+  }
+
+  public interface Function2 {
+    Object apply(Object target, Object p0, Object p1);
+  }
+
+  public interface Function3 {
+    Object apply(Object target, Object p0, Object p1, Object p2);
+  }
+
+  public interface Function4 {
+    Object apply(Object target, Object p0, Object p1, Object p2, Object p3);
+  }
+
+  public interface Procedure0 {
+    void apply(Object target);
+  }
+
+  public interface Procedure1 {
+    void apply(Object target, Object p0);
+  }
+
+  public interface Procedure2 {
+    void apply(Object target, Object p0, Object p1);
+  }
+
+  public interface Procedure3 {
+    void apply(Object target, Object p0, Object p1, Object p2);
+  }
+
+  public interface Procedure4 {
+    void apply(Object target, Object p0, Object p1, Object p2, Object p3);
+  }
+
+  final static Class<?>[] FUNCTIONS = { Function0.class, Function1.class, Function2.class, Function3.class, Function4.class };
+
+  final static Class<?>[] PROCEDURES = { Procedure0.class, Procedure1.class, Procedure2.class, Procedure3.class, Procedure4.class };
+
+  /**
+   * the runtime classes of the parameters this invoker was resolved with - a
+   * null entry matches a null parameter
+   */
+  final Class<?>[] argTypes;
+
+  final Method method;
+
+  final int arity;
+
+  final boolean isVoid;
+
+  /**
+   * one of the Function or Procedure interfaces - null if not compiled
+   */
+  final Object compiled;
+
+  public MethodInvoker(Method method, Class<?>[] argTypes) {
+    this.method = method;
+    this.argTypes = (argTypes == null) ? new Class<?>[0] : argTypes;
+    this.arity = method.getParameterCount();
+    this.isVoid = method.getReturnType() == void.class;
+    this.compiled = isUnboxed(method, this.argTypes) ? compile(method) : null;
+    if (compiled == null) {
+      try {
+        method.setAccessible(true);
+      } catch (Exception e) {
+        log.debug("could not make {} accessible", method);
+      }
+    }
+  }
+
+  /**
+   * @return true if the argument types need no conversion but unboxing - every
+   *         primitive parameter gets its own box type
+   */
+  static boolean isUnboxed(Method method, Class<?>[] argTypes) {
+    Class<?>[] paramTypes = method.getParameterTypes();
+    if (argTypes.length != paramTypes.length) {
+      return false;
+    }
+    for (int i = 0; i < paramTypes.length; ++i) {
+      if (paramTypes[i].isPrimitive() && MethodType.methodType(paramTypes[i]).wrap().returnType() != argTypes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Object compile(Method method) {
+    Class<?> declaring = method.getDeclaringClass();
+    int modifiers = method.getModifiers();
+    if (arity > MAX_COMPILED_ARITY || Modifier.isStatic(modifiers) || !Modifier.isPublic(modifiers) || !Modifier.isPublic(declaring.getModifiers())) {
+      return null;
+    }
+    try {
+      // the generated class is defined along side this one, so it has to be
+      // able to see the target class
+      if (Class.forName(declaring.getName(), false, MethodInvoker.class.getClassLoader()) != declaring) {
+        return null;
+      }
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      MethodHandle impl = lookup.unreflect(method);
+      Class<?> fi = isVoid ? PROCEDURES[arity] : FUNCTIONS[arity];
+      MethodType erased = MethodType.genericMethodType(arity + 1);
+      if (isVoid) {
+        erased = erased.changeReturnType(void.class);
+      }
+      CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(fi), erased, impl, impl.type().wrap().changeReturnType(isVoid ? void.class : impl.type().wrap().returnType()));
+      return site.getTarget().invoke();
+    } catch (Throwable t) {
+      log.debug("could not compile {} - using reflection", method, t);
+      return null;
+    }
+  }
+
+  /**
+   * @param params
+   *          actual parameters
+   * @return true if this invoker was resolved for parameters of these runtime
+   *         types
+   */
+  final boolean matches(Object[] params) {
+    int len = (params == null) ? 0 : params.length;
+    if (len != argTypes.length) {
+      return false;
+    }
+    for (int i = 0; i < len; ++i) {
+      Object p = params[i];
+      if (p == null) {
+        if (argTypes[i] != null) {
+          return false;
+        }
+      } else if (p.getClass() != argTypes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public boolean isCompiled() {
+    return compiled != null;
+  }
+
+  public Object invoke(Object obj, Object... params) throws InvocationTargetException, IllegalAccessException {
+    if (compiled == null || !matches(params)) {
+      return method.invoke(obj, params);
+    }
+    try {
+      if (isVoid) {
+        switch (arity) {
+          case 0:
+            ((Procedure0) compiled).apply(obj);
+            break;
+          case 1:
+            ((Procedure1) compiled).apply(obj, params[0]);
+            break;
+          case 2:
+            ((Procedure2) compiled).apply(obj, params[0], params[1]);
+            break;
+          case 3:
+            ((Procedure3) compiled).apply(obj, params[0], params[1], params[2]);
+            break;
+          default:
+            ((Procedure4) compiled).apply(obj, params[0], params[1], params[2], params[3]);
+            break;
+        }
+        return null;
+      }
+      switch (arity) {
+        case 0:
+          return ((Function0) compiled).apply(obj);
+        case 1:
+          return ((Function1) compiled).apply(obj, params[0]);
+        case 2:
+          return ((Function2) compiled).apply(obj, params[0], params[1]);
+        case 3:
+          return ((Function3) compiled).apply(obj, params[0], params[1], params[2]);
+        default:
+          return ((Function4) compiled).apply(obj, params[0], params[1], params[2], params[3]);
+      }
+    } catch (Throwable t) {
+      throw new InvocationTargetException(t);
+    }
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  @Override
+  public String toString() {
+    return method.toString();
+  }
+
+}
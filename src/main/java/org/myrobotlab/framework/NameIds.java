@@ -0,0 +1,91 @@
+package org.myrobotlab.framework;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Names interned to dense ids - 0, 1, 2 .. in the order they are first seen -
+ * so data keyed by name can be kept in arrays indexed by id. Looking up a name
+ * which has an id takes no lock, registering a new one is synchronized.
+ *
+ * Ids are never removed.
+ */
+public class NameIds {
+
+  final String name;
+
+  /**
+   * id to name
+   */
+  final List<String> names = new CopyOnWriteArrayList<>();
+
+  /**
+   * name to id
+   */
+  final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+  /**
+   * @param name
+   *          name of the registry e.g. the workflow or service it is for
+   */
+  public NameIds(String name) {
+    this.name = name;
+  }
+
+  /**
+   * @param n
+   *          a name
+   * @return id of the name - registered if new
+   */
+  public int id(String n) {
+    Integer id = ids.get(n);
+    if (id != null) {
+      return id;
+    }
+    synchronized (names) {
+      id = ids.get(n);
+      if (id == null) {
+        id = names.size();
+        names.add(n);
+        ids.put(n, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * @param n
+   *          a name
+   * @return id of the name or -1 if it was never registered
+   */
+  public int find(String n) {
+    Integer id = ids.get(n);
+    return (id == null) ? -1 : id;
+  }
+
+  /**
+   * @param id
+   *          an id
+   * @return the name with the id
+   */
+  public String getName(int id) {
+    return names.get(id);
+  }
+
+  /**
+   * @return name of the registry
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return number of names registered
+   */
+  public int size() {
+    return names.size();
+  }
+
+}
@@ -29,11 +29,20 @@ import java.io.Serializable;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.interfaces.MessageListener;
@@ -63,13 +72,106 @@ public class Outbox implements Runnable, Serializable {
   static public final String PROCESSANDBROADCAST = "PROCESSANDBROADCAST";
 
   NameProvider myService = null;
-  LinkedList<Message> msgBox = new LinkedList<Message>();
   private boolean isRunning = false;
   private boolean blocking = false;
   int maxQueue = 1024;
+
+  /**
+   * type of mailbox - Mailbox.LINKED or Mailbox.RING
+   */
+  String mailboxType = Mailbox.LINKED;
+
+  /**
+   * what to do when the mailbox is full and we are not blocking - the outbox
+   * has always accepted messages over its max size with a warning
+   */
+  OverflowPolicy overflowPolicy = OverflowPolicy.WARN;
+
+  transient volatile Mailbox msgBox;
   int initialThreadCount = 1;
   transient ArrayList<Thread> outboxThreadPool = new ArrayList<Thread>();
 
+  /**
+   * when true subscribers are delivered to in parallel on the shared dispatch
+   * pool - each subscriber has its own lane so messages from this publisher
+   * arrive in order, but a slow subscriber no longer holds up the others
+   */
+  private boolean parallelDispatch = false;
+
+  /**
+   * max number of messages waiting in a single subscriber lane before new ones
+   * are dropped
+   */
+  int maxLaneSize = 1024;
+
+  /**
+   * max number of messages a lane delivers before giving its pool thread to
+   * another lane
+   */
+  static int laneBatchSize = 32;
+
+  /**
+   * subscriber name --&gt; lane
+   */
+  transient Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+  /**
+   * shared by all outboxes in parallel dispatch mode
+   */
+  static private ExecutorService dispatchPool = null;
+
+  /**
+   * ordered delivery to a single subscriber - at most one pool thread drains a
+   * lane at a time
+   */
+  class Lane implements Runnable {
+    final String subscriber;
+    final ConcurrentLinkedQueue<Message> queue = new ConcurrentLinkedQueue<>();
+    final AtomicInteger size = new AtomicInteger();
+    final AtomicBoolean scheduled = new AtomicBoolean();
+    final AtomicLong delivered = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+
+    Lane(String subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    void add(Message msg) {
+      if (size.incrementAndGet() > maxLaneSize) {
+        size.decrementAndGet();
+        if (dropped.incrementAndGet() % 1000 == 1) {
+          log.warn("{} lane to {} is full - dropped {} msgs", myService.getName(), subscriber, dropped.get());
+        }
+        return;
+      }
+      queue.add(msg);
+      schedule();
+    }
+
+    void schedule() {
+      if (scheduled.compareAndSet(false, true)) {
+        getDispatchPool().execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      Message msg = null;
+      int cnt = 0;
+      while (cnt < laneBatchSize && (msg = queue.poll()) != null) {
+        size.decrementAndGet();
+        send(msg);
+        ++cnt;
+      }
+      delivered.addAndGet(cnt);
+      scheduled.set(false);
+      // something arrived after our last poll or we yielded
+      if (!queue.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
   /**
    * pub/sub listeners - HashMap &lt; {topic}, List {listeners} &gt;
    */
@@ -79,6 +181,7 @@ public class Outbox implements Runnable, Serializable {
 
   public Outbox(NameProvider myService) {
     this.myService = myService;
+    msgBox = AbstractMailbox.create(mailboxType, myService.getName() + "_outbox", maxQueue, overflowPolicy);
   }
 
   public Set<String> getAttached(String publishingPoint) {
@@ -102,33 +205,17 @@ public class Outbox implements Runnable, Serializable {
     // log.error(String.format("%s.outbox.add(msg) %s.%s --> %s.%s",
     // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
     // msg.method));
-    synchronized (msgBox) {
-      while (blocking && (msgBox.size() >= maxQueue)) {
-        // queue "full"
-        try {
-          // log.debug("outbox enque msg WAITING ");
-          msgBox.wait(); // Limit the size
-        } catch (InterruptedException ex) {
-          log.debug("outbox add enque msg INTERRUPTED ");
-        }
-      }
-
-      // we warn if over 10 messages are in the queue - but we will still
-      // process them
-      if (msgBox.size() > maxQueue) {
-        // log.warn("{} outbox BUFFER OVERRUN size {} Dropping message to
-        // {}.{}", myService.getName(), msgBox.size(), msg.name, msg.method);
-        log.warn("{} outbox BUFFER OVERRUN size {} Dropping message to {}", myService.getName(), msgBox.size(), msg);
+    try {
+      if (!msgBox.offer(msg)) {
+        return;
       }
-      msgBox.addFirst(msg);
-
-      // Logging.logTime(String.format("outbox %s size %d",myService.getName(),
-      // msgBox.size()));
+    } catch (InterruptedException ex) {
+      log.debug("outbox add enque msg INTERRUPTED ");
+      return;
+    }
 
-      if (log.isDebugEnabled()) {
-        log.debug("msg [{}]", msg.toString());
-      }
-      msgBox.notifyAll(); // must own the lock
+    if (log.isDebugEnabled()) {
+      log.debug("msg [{}]", msg.toString());
     }
 
     // now that it's actually in the queue. let's notify the listeners
@@ -143,26 +230,12 @@ public class Outbox implements Runnable, Serializable {
     isRunning = true;
     while (isRunning) {
       Message msg = null;
-      synchronized (msgBox) {
-        try {
-          while (msgBox.size() == 0) {
-            // log.debug("outbox run WAITING ");
-            msgBox.wait(); // must own the lock
-          }
-        } catch (InterruptedException ex) {
-          log.debug("outbox run INTERRUPTED ");
-          // msgBox.notifyAll();
-          isRunning = false;
-          return;
-        }
-        msg = msgBox.removeLast();
-        // chase network bugs
-        // log.error(String.format("%s.outbox.run(msg) %s.%s -- %s.%s ",
-        // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
-        // msg.method));
-        // log.debug(String.format("removed from msgBox size now %d",
-        // msgBox.size()));
-        msgBox.notifyAll();
+      try {
+        msg = msgBox.take();
+      } catch (InterruptedException ex) {
+        log.debug("outbox run INTERRUPTED ");
+        isRunning = false;
+        return;
       }
 
       // RELAY OTHER SERVICE'S MSGS
@@ -173,7 +246,7 @@ public class Outbox implements Runnable, Serializable {
       // deprecate that logic
       if (msg.getName() != null) {
         log.debug("{} configured to RELAY ", msg.getName());
-        send(msg);
+        dispatch(msg);
         // recently added -
         // if I'm relaying I'm not broadcasting...(i think)
         continue;
@@ -193,7 +266,7 @@ public class Outbox implements Runnable, Serializable {
           MRLListener listener = subList.get(i);
           msg.setName(listener.callbackName);
           msg.method = listener.callbackMethod;
-          send(msg);
+          dispatch(msg);
 
           // must make new for internal queues
           // otherwise you'll change the name on
@@ -210,8 +283,78 @@ public class Outbox implements Runnable, Serializable {
     } // while (isRunning)
   }
 
+  /**
+   * deliver directly on this thread or hand off to the subscriber's lane
+   * 
+   * @param msg
+   *          message with a destination
+   */
+  void dispatch(Message msg) {
+    if (!parallelDispatch) {
+      send(msg);
+      return;
+    }
+    Lane lane = lanes.get(msg.getName());
+    if (lane == null) {
+      lane = lanes.computeIfAbsent(msg.getName(), k -> new Lane(k));
+    }
+    lane.add(msg);
+  }
+
+  static synchronized public ExecutorService getDispatchPool() {
+    if (dispatchPool == null) {
+      int threads = Math.max(2, java.lang.Runtime.getRuntime().availableProcessors());
+      dispatchPool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        final AtomicInteger cnt = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "outbox_dispatch_" + cnt.getAndIncrement());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return dispatchPool;
+  }
+
+  public boolean isParallelDispatch() {
+    return parallelDispatch;
+  }
+
+  /**
+   * switch between delivering to subscribers one after another on the outbox
+   * thread (default) and delivering to them in parallel with ordering kept per
+   * subscriber
+   * 
+   * @param parallel
+   *          true for parallel dispatch
+   */
+  public void setParallelDispatch(boolean parallel) {
+    parallelDispatch = parallel;
+  }
+
+  public void setMaxLaneSize(int size) {
+    maxLaneSize = size;
+  }
+
+  /**
+   * @return subscriber name --&gt; {pending, delivered, dropped} for each lane
+   */
+  public Map<String, long[]> getLaneStats() {
+    Map<String, long[]> stats = new HashMap<>();
+    for (Lane lane : lanes.values()) {
+      stats.put(lane.subscriber, new long[] { lane.size.get(), lane.delivered.get(), lane.dropped.get() });
+    }
+    return stats;
+  }
+
   public int size() {
-    return msgBox.size();
+    int size = msgBox.size();
+    for (Lane lane : lanes.values()) {
+      size += lane.size.get();
+    }
+    return size;
   }
 
   public void start() {
@@ -224,6 +367,7 @@ public class Outbox implements Runnable, Serializable {
 
   public void stop() {
     isRunning = false;
+    lanes.clear();
     for (int i = 0; i < outboxThreadPool.size(); ++i) {
       Thread t = outboxThreadPool.get(i);
       t.interrupt();
@@ -232,16 +376,41 @@ public class Outbox implements Runnable, Serializable {
     }
   }
 
-  public LinkedList<Message> getMsgBox() {
+  public Mailbox getMailbox() {
     return msgBox;
   }
 
+  public MailboxStats getStats() {
+    return msgBox.getStats();
+  }
+
   public int getMaxQueueSize() {
     return maxQueue;
   }
 
   public void setMaxQueueSize(int size) {
+    setMailbox(mailboxType, size, overflowPolicy);
+  }
+
+  /**
+   * replace the mailbox - pending messages are moved to the new one. This
+   * should be done before the outbox is started, threads already waiting on
+   * the old mailbox will not see the new one.
+   * 
+   * @param type
+   *          Mailbox.LINKED or Mailbox.RING
+   * @param size
+   *          max queue size
+   * @param policy
+   *          overflow policy when not blocking
+   */
+  synchronized public void setMailbox(String type, int size, OverflowPolicy policy) {
+    mailboxType = type;
     maxQueue = size;
+    if (policy != null) {
+      overflowPolicy = policy;
+    }
+    msgBox = Inbox.transfer(msgBox, AbstractMailbox.create(type, myService.getName() + "_outbox", size, blocking ? OverflowPolicy.BLOCK : overflowPolicy));
   }
 
   public boolean isBlocking() {
@@ -250,6 +419,7 @@ public class Outbox implements Runnable, Serializable {
 
   public void setBlocking(boolean blocking) {
     this.blocking = blocking;
+    msgBox.setOverflowPolicy(blocking ? OverflowPolicy.BLOCK : overflowPolicy);
   }
 
   public boolean isRunning() {
@@ -329,6 +499,7 @@ public class Outbox implements Runnable, Serializable {
       }
       notifyList.put(topic, smallerList);
     }
+    lanes.remove(name);
   }
 
 }
@@ -0,0 +1,19 @@
+package org.myrobotlab.framework;
+
+/**
+ * What a {@link Mailbox} does with a message when it is already holding its
+ * capacity.
+ * 
+ * <pre>
+ * BLOCK        - the producing thread waits until there is room
+ * DROP_NEWEST  - the incoming message is dropped (legacy Inbox behavior)
+ * DROP_OLDEST  - the oldest queued message is dropped to make room
+ * COALESCE     - the incoming message is queued over capacity, replacing a
+ *                message over capacity with the same name and method, latest
+ *                value wins
+ * WARN         - accept the message anyway and log (legacy Outbox behavior)
+ * </pre>
+ */
+public enum OverflowPolicy {
+  BLOCK, DROP_NEWEST, DROP_OLDEST, COALESCE, WARN
+}
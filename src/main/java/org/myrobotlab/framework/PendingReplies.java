@@ -0,0 +1,183 @@
+package org.myrobotlab.framework;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.myrobotlab.codec.BinaryCodec;
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Registry of callers waiting on a reply. sendAsync and sendBlocking register a
+ * future keyed on the msgId of the request, the service which processes the
+ * request sends back a Message.RETURN message with the same msgId and the
+ * future is completed by the inbox which receives it - on the delivering
+ * thread, no extra thread per call and no string keys. Concurrent calls to the
+ * same method each get their own reply.
+ *
+ * waitFor does not send a request so it can not correlate on msgId, those
+ * waiters are keyed on {fullName}.{callbackMethod} and all waiters on the same
+ * topic are completed by the next matching message.
+ *
+ * msgIds come from Runtime.getUniqueID() so a single registry serves the whole
+ * process.
+ *
+ */
+public class PendingReplies {
+
+  public final static Logger log = LoggerFactory.getLogger(PendingReplies.class);
+
+  /**
+   * property set on a RETURN message with the class name of the returned
+   * object, so a gateway receiving a json encoded reply can decode it
+   */
+  public final static String RETURN_TYPE = "returnType";
+
+  private static final PendingReplies instance = new PendingReplies();
+
+  final ConcurrentHashMap<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+
+  final ConcurrentHashMap<String, Queue<CompletableFuture<Object>>> topics = new ConcurrentHashMap<>();
+
+  public static PendingReplies getInstance() {
+    return instance;
+  }
+
+  /**
+   * register a caller waiting on the reply to msgId
+   *
+   * @param msgId
+   *          id of the request message
+   * @return the future completed with the returned data
+   */
+  public CompletableFuture<Object> register(long msgId) {
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    pending.put(msgId, future);
+    return future;
+  }
+
+  /**
+   * register a caller waiting on the next message to fullName.method
+   *
+   * @param fullName
+   *          full name of the subscriber
+   * @param method
+   *          callback method
+   * @return the future completed with the data of the message
+   */
+  public CompletableFuture<Object> registerTopic(String fullName, String method) {
+    CompletableFuture<Object> future = new CompletableFuture<>();
+    // compute is atomic with the remove in completeTopic - a waiter can not
+    // be added to a queue which has already been drained
+    topics.compute(String.format("%s.%s", fullName, method), (k, q) -> {
+      if (q == null) {
+        q = new ConcurrentLinkedQueue<>();
+      }
+      q.add(future);
+      return q;
+    });
+    return future;
+  }
+
+  /**
+   * the caller gave up (timeout or interrupt) - a late reply will be dropped
+   *
+   * @param msgId
+   *          id of the request message
+   */
+  public void cancel(long msgId) {
+    CompletableFuture<Object> future = pending.remove(msgId);
+    if (future != null) {
+      future.cancel(false);
+    }
+  }
+
+  public void cancelTopic(String fullName, String method, CompletableFuture<Object> future) {
+    topics.computeIfPresent(String.format("%s.%s", fullName, method), (k, q) -> {
+      q.remove(future);
+      return q.isEmpty() ? null : q;
+    });
+    future.cancel(false);
+  }
+
+  /**
+   * complete the caller waiting on a Message.RETURN message
+   *
+   * @param msg
+   *          the reply
+   * @return true if a caller was waiting on it
+   */
+  public boolean complete(Message msg) {
+    CompletableFuture<Object> future = pending.remove(msg.msgId);
+    if (future == null) {
+      log.debug("no caller waiting on reply {} {}.{} - dropping", msg.msgId, msg.name, msg.method);
+      return false;
+    }
+    try {
+      future.complete(getReturn(msg));
+    } catch (Exception e) {
+      future.completeExceptionally(e);
+    }
+    return true;
+  }
+
+  /**
+   * complete all the callers waiting on the topic of this message
+   *
+   * @param msg
+   *          the message
+   * @return true if any caller was waiting on it
+   */
+  public boolean completeTopic(Message msg) {
+    Queue<CompletableFuture<Object>> waiters = topics.remove(String.format("%s.%s", msg.getFullName(), msg.getMethod()));
+    if (waiters == null) {
+      return false;
+    }
+    Object ret = null;
+    try {
+      ret = getReturn(msg);
+    } catch (Exception e) {
+      log.error("could not decode {}.{}", msg.name, msg.method, e);
+    }
+    for (CompletableFuture<Object> future : waiters) {
+      future.complete(ret);
+    }
+    return true;
+  }
+
+  public boolean hasTopicWaiters() {
+    return !topics.isEmpty();
+  }
+
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * the returned object of a reply - json encoded replies from remote gateways
+   * are decoded with the type the replying service put in the RETURN_TYPE
+   * property
+   */
+  static Object getReturn(Message msg) throws ClassNotFoundException {
+    if (msg.data == null || msg.data.length == 0) {
+      return null;
+    }
+    Object ret = msg.data[0];
+    String json = null;
+    if ("json".equals(msg.encoding) && ret instanceof String) {
+      json = (String) ret;
+    } else if (ret instanceof BinaryCodec.JsonValue) {
+      json = ((BinaryCodec.JsonValue) ret).json;
+    }
+    if (json != null) {
+      String type = (String) msg.getProperty(RETURN_TYPE);
+      Class<?> clazz = (type == null) ? Object.class : Class.forName(type);
+      ret = CodecUtils.fromJson(json, clazz);
+    }
+    return ret;
+  }
+
+}
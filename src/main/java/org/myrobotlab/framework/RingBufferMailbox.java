@@ -0,0 +1,356 @@
+package org.myrobotlab.framework;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free bounded mailbox. Each slot of a power of 2 sized ring carries a
+ * sequence number, producers claim slots with a CAS on the tail and consumers
+ * with a CAS on the head (D. Vyukov's bounded queue). No monitor is held
+ * while adding or removing, and no node is allocated per message.
+ * 
+ * Threads only park when the ring is empty (consumers) or full with the BLOCK
+ * policy (producers). A parked thread is registered in a waiter queue and
+ * re-checks the ring before parking, so a wake-up can not be lost - the park
+ * timeout is only a safety net.
+ * 
+ * Messages which do not fit are spilled to an overflow map with the COALESCE
+ * and WARN policies - COALESCE keeps the latest message per topic, WARN logs
+ * and keeps all of them, so the ring never blocks the producer. Once anything
+ * spilled, newer messages go to the overflow too until the consumer emptied
+ * it, and the consumer drains the ring before the overflow, so messages are
+ * taken in the order they came.
+ * 
+ * @author GroG
+ *
+ */
+public class RingBufferMailbox extends AbstractMailbox {
+
+  final static long PARK_NANOS = 50000000L; // 50 ms
+
+  final int mask;
+  final AtomicReferenceArray<Message> buffer;
+  final AtomicLongArray sequence;
+  final AtomicLong head = new AtomicLong();
+  final AtomicLong tail = new AtomicLong();
+
+  final ConcurrentLinkedQueue<Thread> takers = new ConcurrentLinkedQueue<>();
+  final ConcurrentLinkedQueue<Thread> putters = new ConcurrentLinkedQueue<>();
+
+  /**
+   * spill over in arrival order - Topic keys for COALESCE, sequence numbers
+   * for WARN - guarded by itself
+   */
+  final LinkedHashMap<Object, Message> overflow = new LinkedHashMap<>();
+
+  /**
+   * size of the overflow - read without the lock
+   */
+  volatile int spilled = 0;
+
+  /**
+   * WARN keys and count of messages over capacity - guarded by overflow
+   */
+  long overrun = 0;
+
+  /**
+   * coalescing key - destination name, method and publishing method
+   */
+  static class Topic {
+    final String name;
+    final String method;
+    final String sendingMethod;
+    final int hash;
+
+    Topic(Message msg) {
+      name = msg.name;
+      method = msg.method;
+      sendingMethod = msg.sendingMethod;
+      int h = (name == null) ? 0 : name.hashCode();
+      h = 31 * h + ((method == null) ? 0 : method.hashCode());
+      hash = 31 * h + ((sendingMethod == null) ? 0 : sendingMethod.hashCode());
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Topic)) {
+        return false;
+      }
+      Topic t = (Topic) o;
+      return hash == t.hash && eq(name, t.name) && eq(method, t.method) && eq(sendingMethod, t.sendingMethod);
+    }
+
+    static boolean eq(String a, String b) {
+      return (a == null) ? b == null : a.equals(b);
+    }
+  }
+
+  public RingBufferMailbox(String name, int capacity, OverflowPolicy policy) {
+    super(name, roundUpToPowerOf2(capacity), policy);
+    mask = this.capacity - 1;
+    buffer = new AtomicReferenceArray<>(this.capacity);
+    sequence = new AtomicLongArray(this.capacity);
+    for (int i = 0; i < this.capacity; ++i) {
+      sequence.set(i, i);
+    }
+  }
+
+  static int roundUpToPowerOf2(int capacity) {
+    if (capacity < 2) {
+      return 2;
+    }
+    return Integer.highestOneBit(capacity - 1) << 1;
+  }
+
+  @Override
+  public String getType() {
+    return Mailbox.RING;
+  }
+
+  /**
+   * lock-free enqueue
+   * 
+   * @param msg
+   *          the message
+   * @return false if the ring is full
+   */
+  boolean enqueue(Message msg) {
+    long pos = tail.get();
+    int index;
+    while (true) {
+      index = (int) (pos & mask);
+      long dif = sequence.get(index) - pos;
+      if (dif == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+        pos = tail.get();
+      } else if (dif < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+    buffer.lazySet(index, msg);
+    // publishes the message to consumers
+    sequence.set(index, pos + 1);
+    return true;
+  }
+
+  /**
+   * lock-free dequeue
+   * 
+   * @return oldest message or null if the ring is empty
+   */
+  Message dequeue() {
+    long pos = head.get();
+    int index;
+    while (true) {
+      index = (int) (pos & mask);
+      long dif = sequence.get(index) - (pos + 1);
+      if (dif == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          break;
+        }
+        pos = head.get();
+      } else if (dif < 0) {
+        return null;
+      } else {
+        pos = head.get();
+      }
+    }
+    Message msg = buffer.get(index);
+    buffer.lazySet(index, null);
+    // hands the slot back to producers for the next lap
+    sequence.set(index, pos + mask + 1);
+    return msg;
+  }
+
+  static void signal(ConcurrentLinkedQueue<Thread> waiters) {
+    if (!waiters.isEmpty()) {
+      Thread t = waiters.poll();
+      if (t != null) {
+        LockSupport.unpark(t);
+      }
+    }
+  }
+
+  static void register(ConcurrentLinkedQueue<Thread> waiters, Thread t) {
+    if (!waiters.contains(t)) {
+      waiters.add(t);
+    }
+  }
+
+  static void park(ConcurrentLinkedQueue<Thread> waiters) throws InterruptedException {
+    LockSupport.parkNanos(waiters, PARK_NANOS);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  @Override
+  public boolean offer(Message msg) throws InterruptedException {
+    offered.incrementAndGet();
+
+    if (spilled > 0 && (policy == OverflowPolicy.COALESCE || policy == OverflowPolicy.WARN)) {
+      // newer messages go after the ones which spilled
+      return spill(msg);
+    }
+
+    if (enqueue(msg)) {
+      signal(takers);
+      return true;
+    }
+
+    switch (policy) {
+      case DROP_OLDEST:
+        while (!enqueue(msg)) {
+          if (dequeue() != null) {
+            droppedOldest.incrementAndGet();
+          }
+        }
+        signal(takers);
+        return true;
+
+      case COALESCE:
+      case WARN:
+        return spill(msg);
+
+      case BLOCK:
+        blocked.incrementAndGet();
+        Thread t = Thread.currentThread();
+        try {
+          while (true) {
+            // register before re-checking so a consumer can not miss us
+            register(putters, t);
+            if (enqueue(msg)) {
+              break;
+            }
+            park(putters);
+          }
+        } finally {
+          putters.remove(t);
+        }
+        signal(takers);
+        return true;
+
+      case DROP_NEWEST:
+      default:
+        long dropped = droppedNewest.incrementAndGet();
+        if (dropped % 1000 == 1) {
+          log.warn("{} BUFFER OVERRUN size {} dropped {} msgs - last from {} To {}.{}", name, capacity, dropped, msg.sender, msg.name, msg.method);
+        }
+        return false;
+    }
+  }
+
+  /**
+   * put a message which did not fit in the overflow - COALESCE replaces the
+   * message of the same topic in its place, WARN appends
+   * 
+   * @return false if it was coalesced
+   */
+  boolean spill(Message msg) {
+    boolean ret = true;
+    synchronized (overflow) {
+      // the ring is used again once the consumer emptied the overflow
+      if (!overflow.isEmpty() || !enqueue(msg)) {
+        if (policy == OverflowPolicy.COALESCE) {
+          if (overflow.put(new Topic(msg), msg) != null) {
+            coalesced.incrementAndGet();
+            ret = false;
+          }
+        } else {
+          overflow.put(Long.valueOf(++overrun), msg);
+          if (overrun % 1000 == 1) {
+            log.warn("{} BUFFER OVERRUN size {} queueing {} msgs over capacity - last from {} To {}.{}", name, capacity, overflow.size(), msg.sender, msg.name,
+                msg.method);
+          }
+        }
+        spilled = overflow.size();
+      }
+    }
+    signal(takers);
+    return ret;
+  }
+
+  @Override
+  public Message poll() {
+    Message msg = dequeue();
+    if (msg == null && spilled > 0) {
+      synchronized (overflow) {
+        // the ring first - it is older than the overflow, and may have been
+        // filled since
+        msg = dequeue();
+        if (msg == null) {
+          Iterator<Message> it = overflow.values().iterator();
+          if (it.hasNext()) {
+            msg = it.next();
+            it.remove();
+          }
+          spilled = overflow.size();
+        }
+      }
+    }
+    if (msg != null) {
+      signal(putters);
+    }
+    return msg;
+  }
+
+  @Override
+  public Message take() throws InterruptedException {
+    Message msg = poll();
+    if (msg != null) {
+      return msg;
+    }
+    Thread t = Thread.currentThread();
+    try {
+      while (true) {
+        // register before re-checking so a producer can not miss us
+        register(takers, t);
+        msg = poll();
+        if (msg != null) {
+          break;
+        }
+        park(takers);
+      }
+    } finally {
+      takers.remove(t);
+    }
+    return msg;
+  }
+
+  @Override
+  public int size() {
+    long size = tail.get() - head.get();
+    if (size < 0) {
+      size = 0;
+    } else if (size > capacity) {
+      size = capacity;
+    }
+    return (int) size + spilled;
+  }
+
+  @Override
+  public void clear() {
+    synchronized (overflow) {
+      while (dequeue() != null) {
+      }
+      overflow.clear();
+      spilled = 0;
+    }
+    signal(putters);
+  }
+
+}
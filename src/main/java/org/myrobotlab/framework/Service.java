@@ -48,10 +48,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.Timer;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.interfaces.Attachable;
@@ -168,7 +171,7 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
   /**
    * a more capable task handler
    */
-  transient HashMap<String, Timer> tasks = new HashMap<String, Timer>();
+  transient Map<String, Task> tasks = new ConcurrentHashMap<String, Task>();
 
   // public final static String cfgDir = FileIO.getCfgDir();
 
@@ -179,6 +182,19 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
    */
   transient protected Set<String> methodSet;
 
+  /**
+   * callbacks delivered directly on the publisher's thread instead of going
+   * through the inbox - methods annotated with {@link DirectCallback} or set
+   * with setDirectCallback
+   */
+  transient protected Set<String> directCallbacks = ConcurrentHashMap.newKeySet();
+
+  /**
+   * publish to invoke latency of the messages this service processes - by
+   * method
+   */
+  transient protected Map<String, LatencyHistogram> latencyStats = new ConcurrentHashMap<>();
+
   /**
    * This is the map of interfaces - its really "static" information, since its
    * a definition. However, since gson will not process statics - we are making
@@ -458,6 +474,9 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
    */
   static public String getResourceDir(String serviceType, String additionalPath) {
 
+    // extracted on first use with --lazy-resources
+    FileIO.extractResources(serviceType);
+
     // setting resource directory
     String resourceDir = "resource" + fs + serviceType;
 
@@ -661,6 +680,12 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
     this.inbox = new Inbox(getFullName());
     this.outbox = new Outbox(this);
 
+    for (Method m : getClass().getMethods()) {
+      if (m.isAnnotationPresent(DirectCallback.class)) {
+        directCallbacks.add(m.getName());
+      }
+    }
+
     File versionFile = new File(getResourceDir() + fs + "version.txt");
     if (versionFile.exists()) {
       try {
@@ -786,7 +811,9 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
   }
 
   /**
-   * a stronger bigger better task handler !
+   * a stronger bigger better task handler ! The method runs on the task
+   * threads shared by all services and must not block - use addTaskBlocking
+   * for network, disk or anything else which can wait
    * 
    * @param taskName
    *          task name
@@ -800,18 +827,65 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
    *          the params to pass
    */
   synchronized public void addTask(String taskName, long intervalMs, long delayMs, String method, Object... params) {
+    addTask(taskName, false, false, intervalMs, delayMs, method, params);
+  }
+
+  /**
+   * a task whose method may block - connecting, fetching, scanning .. - it runs
+   * on threads of its own so it can not hold up the timing of other services'
+   * tasks
+   * 
+   * @param taskName
+   *          task name
+   * @param intervalMs
+   *          time from the end of a run to the start of the next
+   * @param delayMs
+   *          the delay
+   * @param method
+   *          the method
+   * @param params
+   *          the params to pass
+   */
+  synchronized public void addTaskBlocking(String taskName, long intervalMs, long delayMs, String method, Object... params) {
+    addTask(taskName, false, true, intervalMs, delayMs, method, params);
+  }
+
+  /**
+   * a task whose runs start every intervalMs - for clocks and sampling, where
+   * the time between runs should not drift with how long a run takes
+   * 
+   * @param taskName
+   *          task name
+   * @param intervalMs
+   *          time between the starts of runs
+   * @param delayMs
+   *          the delay
+   * @param method
+   *          the method
+   * @param params
+   *          the params to pass
+   */
+  synchronized public void addTaskFixedRate(String taskName, long intervalMs, long delayMs, String method, Object... params) {
+    addTask(taskName, true, false, intervalMs, delayMs, method, params);
+  }
+
+  private void addTask(String taskName, boolean fixedRate, boolean blocking, long intervalMs, long delayMs, String method, Object... params) {
     if (tasks.containsKey(taskName)) {
       log.info("already have active task \"{}\"", taskName);
       return;
     }
-    Timer timer = new Timer(String.format("%s.timer", String.format("%s.%s", getName(), taskName)));
     Message msg = Message.createMessage(getName(), getName(), method, params);
     Task task = new Task(this, taskName, intervalMs, msg);
-    timer.schedule(task, delayMs);
-    tasks.put(taskName, timer);
+    task.fixedRate = fixedRate;
+    task.blocking = blocking;
+    tasks.put(taskName, task);
+    task.start(delayMs);
   }
 
-  public HashMap<String, Timer> getTasks() {
+  /**
+   * @return the active tasks with their run stats
+   */
+  public Map<String, Task> getTasks() {
     return tasks;
   }
 
@@ -820,19 +894,10 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
   }
 
   synchronized public void purgeTask(String taskName) {
-    if (tasks.containsKey(taskName)) {
+    Task task = tasks.remove(taskName);
+    if (task != null) {
       log.info("remove task {}", taskName);
-      Timer timer = tasks.get(taskName);
-      if (timer != null) {
-        try {
-          timer.cancel();
-          timer.purge();
-          timer = null;
-          tasks.remove(taskName);
-        } catch (Exception e) {
-          log.info(e.getMessage());
-        }
-      }
+      task.cancel();
     } else {
       log.debug("purgeTask - task {} does not exist", taskName);
     }
@@ -840,18 +905,11 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
 
   public void purgeTasks() {
     for (String taskName : tasks.keySet()) {
-      Timer timer = tasks.get(taskName);
-      if (timer != null) {
-        try {
-          timer.purge();
-          timer.cancel();
-          timer = null;
-        } catch (Exception e) {
-          log.info(e.getMessage());
-        }
+      Task task = tasks.remove(taskName);
+      if (task != null) {
+        task.cancel();
       }
     }
-    tasks.clear();
   }
 
   @Override
@@ -1079,6 +1137,48 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
     return outbox;
   }
 
+  /**
+   * Select the mailbox implementation of this service's inbox and outbox. The
+   * "ring" mailbox is lock-free and bounded, which is preferable for services
+   * with high publishing rates. Must be called before the service is started.
+   * 
+   * @param type
+   *          "linked" (default) or "ring", null keeps the current type
+   * @param size
+   *          max number of queued messages, null keeps the current size
+   * @param policy
+   *          overflow policy of the inbox - BLOCK, DROP_NEWEST, DROP_OLDEST,
+   *          COALESCE or WARN - null keeps the current policy
+   */
+  public void setMailbox(String type, Integer size, String policy) {
+    if (isRunning()) {
+      error("%s mailbox can only be changed before the service is started", getName());
+      return;
+    }
+    OverflowPolicy overflow = null;
+    if (policy != null) {
+      try {
+        overflow = OverflowPolicy.valueOf(policy.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        error("unknown overflow policy %s", policy);
+        return;
+      }
+    }
+    inbox.setMailbox((type == null) ? inbox.mailboxType : type, (size == null) ? inbox.maxQueue : size, overflow);
+    // the outbox keeps its own overflow policy
+    outbox.setMailbox((type == null) ? outbox.mailboxType : type, (size == null) ? outbox.maxQueue : size, null);
+  }
+
+  /**
+   * @return current counters of the inbox and outbox mailboxes
+   */
+  public List<MailboxStats> getMailboxStats() {
+    List<MailboxStats> stats = new ArrayList<>();
+    stats.add(inbox.getStats());
+    stats.add(outbox.getStats());
+    return stats;
+  }
+
   @Override
   public String getSimpleName() {
     return simpleName;
@@ -1138,9 +1238,77 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
 
   @Override
   public void in(Message msg) {
+    // blocking requests and replies always go through the inbox
+    if (msg.status == null && isRunning && directCallbacks.contains(msg.method)) {
+      processDirect(msg);
+      return;
+    }
     inbox.add(msg);
   }
 
+  /**
+   * process a message for a {@link DirectCallback} on the delivering thread -
+   * the same hooks as the service's own thread, without the inbox
+   * 
+   * @param m
+   *          the message
+   */
+  protected void processDirect(Message m) {
+    try {
+      if (!preRoutingHook(m) || !preProcessHook(m)) {
+        return;
+      }
+      recordLatency(m);
+      invoke(m);
+    } catch (Exception e) {
+      log.error("{} direct {} threw", getName(), m.method, e);
+    }
+  }
+
+  void recordLatency(Message m) {
+    if (m.publishTs == 0) {
+      return;
+    }
+    LatencyHistogram histogram = latencyStats.get(m.method);
+    if (histogram == null) {
+      histogram = latencyStats.computeIfAbsent(m.method, k -> new LatencyHistogram());
+    }
+    histogram.record(System.nanoTime() - m.publishTs);
+  }
+
+  /**
+   * deliver a callback directly on the publisher's thread or through the
+   * inbox. The callback must be thread-safe and must not block for long.
+   * 
+   * @param method
+   *          callback method
+   * @param direct
+   *          true to bypass the inbox
+   */
+  public void setDirectCallback(String method, boolean direct) {
+    if (direct) {
+      directCallbacks.add(method);
+    } else {
+      directCallbacks.remove(method);
+    }
+  }
+
+  public boolean isDirectCallback(String method) {
+    return directCallbacks.contains(method);
+  }
+
+  /**
+   * @return publish to invoke latency of the messages this service processed
+   *         by method
+   */
+  public Map<String, LatencyHistogram> getLatencyStats() {
+    return latencyStats;
+  }
+
+  public void resetLatencyStats() {
+    latencyStats.clear();
+  }
+
   /**
    * This is where all messages are routed to and processed
    */
@@ -1237,7 +1405,7 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
         log.error("cannot invoke on a null object ! {}({})", methodName, MethodCache.formatParams(params));
         return null;
       }
-      Method method = cache.getMethod(obj.getClass(), methodName, params);
+      MethodInvoker method = cache.getInvoker(obj.getClass(), methodName, params);
       if (method == null) {
         error("could not find method %s.%s(%s)", obj.getClass().getSimpleName(), methodName, MethodCache.formatParams(params));
         return null; // should this be allowed to throw to a higher level ?
@@ -1259,9 +1427,10 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
               if (si == null) {
                 log.info("{} cannot callback to listener {} does not exist for {} ", getName(), listener.callbackName, listener.callbackMethod);
               } else {
-                Method m = cache.getMethod(si.getClass(), listener.callbackMethod, retobj);
+                MethodInvoker m = cache.getInvoker(si.getClass(), listener.callbackMethod, retobj);
                 if (m == null) {
                   log.warn("Null Method as a result of cache lookup. {} {} {}", si.getClass(), listener.callbackMethod, retobj);
+                  continue;
                 }
                 try {
                   m.invoke(si, retobj);
@@ -1323,6 +1492,9 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
     log.info("Default service config loading for service: {} type: {}", getName(), getType());
     // setVirtual(config.isVirtual); "overconfigured" - user Runtimes virtual
     setLocale(config.locale);
+    if (config.mailbox != null || config.overflowPolicy != null || config.mailboxSize != null) {
+      setMailbox(config.mailbox, config.mailboxSize, config.overflowPolicy);
+    }
     return config;
   }
 
@@ -1356,6 +1528,13 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
       }
     }
 
+    // only non-default mailboxes are saved
+    if (inbox != null && (!Mailbox.LINKED.equals(inbox.mailboxType) || inbox.overflowPolicy != OverflowPolicy.DROP_NEWEST || inbox.maxQueue != 1024)) {
+      config.mailbox = inbox.mailboxType;
+      config.mailboxSize = inbox.maxQueue;
+      config.overflowPolicy = inbox.overflowPolicy.toString();
+    }
+
     return config;
   }
 
@@ -1457,6 +1636,7 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
    */
   public void out(String method, Object o) {
     Message m = Message.createMessage(getFullName(), null, method, o);
+    m.publishTs = System.nanoTime();
 
     if (m.sender.length() == 0) {
       m.sender = this.getFullName();
@@ -1649,8 +1829,14 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
           continue;
         }
 
+        recordLatency(m);
+
         Object ret = invoke(m);
 
+        if (Message.BLOCKING.equals(m.status)) {
+          sendReply(m, ret);
+        }
+
       }
     } catch (InterruptedException edown) {
       info("shutting down");
@@ -1760,21 +1946,20 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
   public Object sendBlocking(String name, Integer timeout, String method, Object... data) throws InterruptedException, TimeoutException {
     Message msg = Message.createMessage(getName(), name, method, data);
     msg.sender = this.getFullName();
-    msg.msgId = Runtime.getUniqueID();
 
     return sendBlocking(msg, timeout);
   }
 
   /**
-   * In theory the only reason this should need to use synchronized wait/notify
-   * is when the msg destination is in another remote process. sendBlocking
-   * should either invoke directly or use a gateway's sendBlockingRemote. To use
-   * a gateways sendBlockingRemote - the msg must have a remote src
+   * In-process destinations are invoked directly on the calling thread. Remote
+   * destinations are sent with sendAsync and the calling thread waits on the
+   * future, which is completed when the RETURN message with the same msgId
+   * comes back through the gateway.
    * 
    * <pre>
    * after attach:
-   * stdin (remote) --&gt; gateway sendBlockingRemote --&gt; invoke
-   *                &lt;--                            &lt;--
+   * stdin (remote) --&gt; gateway --&gt; invoke
+   *                &lt;--  RETURN   &lt;--
    * </pre>
    * 
    */
@@ -1787,12 +1972,68 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
   }
 
   /**
-   * This method waits on a remote topic by sending a subscription and waiting
-   * for a message to come back. It is used both by sendBlocking and waitFor to
-   * normalize the code - they are equivalent. The only difference between
-   * sendBlocking and waitFor is sendBlocking sends an activating msg to the
-   * remote topic. If timeout occurs before a return message, a TimeoutException
-   * is thrown. This is important to distinguish between a timeout and a valid
+   * Sends a request and returns a future for its return value. The message is
+   * tagged with a unique msgId and the BLOCKING status, the service which
+   * processes it - local or behind a gateway - replies with a RETURN message
+   * carrying the same msgId, which completes the future. No thread is used per
+   * call, and concurrent requests to the same method each get their own reply.
+   * 
+   * The future is never completed if the destination does not exist, so use
+   * get with a timeout and cancel(msgId) on PendingReplies when giving up.
+   * 
+   * @param name
+   *          - service name
+   * @param method
+   *          - method name
+   * @param data
+   *          - parameters
+   * @return future of the returned object
+   */
+  public CompletableFuture<Object> sendAsync(String name, String method, Object... data) {
+    Message msg = Message.createMessage(getName(), name, method, data);
+    msg.sender = this.getFullName();
+    return sendAsync(msg);
+  }
+
+  public CompletableFuture<Object> sendAsync(Message msg) {
+    if (msg.sender == null || msg.sender.isEmpty()) {
+      msg.sender = getFullName();
+    }
+    msg.msgId = Runtime.getUniqueID();
+    msg.status = Message.BLOCKING;
+    // register before sending - the reply may arrive before send returns
+    CompletableFuture<Object> future = PendingReplies.getInstance().register(msg.msgId);
+    Runtime.getInstance().send(msg);
+    return future;
+  }
+
+  /**
+   * reply to a BLOCKING request - the RETURN message goes back to the sender
+   * with the msgId of the request, gateways call this after invoking a remote
+   * request locally
+   * 
+   * @param request
+   *          - the BLOCKING request
+   * @param ret
+   *          - the returned object
+   */
+  public void sendReply(Message request, Object ret) {
+    Message reply = Message.createMessage(getFullName(), request.sender, CodecUtils.getCallbackTopicName(request.method), new Object[] { ret });
+    reply.msgId = request.msgId;
+    reply.status = Message.RETURN;
+    if (ret != null) {
+      reply.setProperty(PendingReplies.RETURN_TYPE, ret.getClass().getName());
+    }
+    send(reply);
+  }
+
+  /**
+   * This method waits on a remote reply. With a sendMsg it is the request/reply
+   * of sendBlocking - sendMsg is sent with sendAsync and the reply is
+   * correlated on its msgId. Without a sendMsg it is waitFor - a subscription
+   * to the remote topic is made and the next published message completes the
+   * wait. If timeout occurs before a return message, a TimeoutException is
+   * thrown. This is important to distinguish between a timeout and a valid
    * null return.
    * 
    * @param fullName
@@ -1811,59 +2052,46 @@ public abstract class Service implements Runnable, Serializable, ServiceInterfac
    */
   protected Object waitOn(String fullName, String method, Integer timeout, Message sendMsg) throws InterruptedException, TimeoutException {
 
-    String subscriber = null;
+    PendingReplies replies = PendingReplies.getInstance();
+
     if (sendMsg != null) {
-      // InProcCli proxies - so the subscription needs to be from the sender NOT
-      // from runtime !
-      subscriber = sendMsg.getSrcFullName();
-    } else {
-      subscriber = getFullName();
+      CompletableFuture<Object> future = sendAsync(sendMsg);
+      try {
+        return await(future, timeout, fullName, method);
+      } finally {
+        // no-op if completed - otherwise a late reply is dropped
+        replies.cancel(sendMsg.msgId);
+      }
     }
 
-    // put in-process lock in map
+    String subscriber = getFullName();
     String callbackMethod = CodecUtils.getCallbackTopicName(method);
-    String blockingKey = String.format("%s.%s", subscriber, callbackMethod);
-    Object[] blockingLockContainer = null;
-    if (!inbox.blockingList.containsKey(blockingKey)) {
-      blockingLockContainer = new Object[1];
-      inbox.blockingList.put(blockingKey, blockingLockContainer);
-    } else {
-      // if it already exists - other threads are already waiting for the
-      // same callback ...
-      blockingLockContainer = inbox.blockingList.get(blockingKey);
-    }
+    CompletableFuture<Object> future = replies.registerTopic(subscriber, callbackMethod);
 
     // send subscription
-    subscribe(fullName, method, subscriber, CodecUtils.getCallbackTopicName(method));
+    subscribe(fullName, method, subscriber, callbackMethod);
 
-    if (sendMsg != null) {
-      // possible race condition - counting on the delay of
-      // starting a thread for the program counter to reach the
-      // wait before the msg is sent
-      new Thread("blocking-msg") {
-        public void run() {
-          Runtime.getInstance().send(sendMsg);
-        }
-      }.start();
+    try {
+      return await(future, timeout, fullName, method);
+    } finally {
+      replies.cancelTopic(subscriber, callbackMethod, future);
+      // cleanup
+      unsubscribe(fullName, method, subscriber, callbackMethod);
     }
+  }
 
-    synchronized (blockingLockContainer) {
+  private Object await(CompletableFuture<Object> future, Integer timeout, String fullName, String method) throws InterruptedException, TimeoutException {
+    try {
       if (timeout == null) {
-        blockingLockContainer.wait();
-      } else {
-        long startTs = System.currentTimeMillis();
-        blockingLockContainer.wait(timeout);
-        if (System.currentTimeMillis() - startTs >= timeout) {
-          throw new TimeoutException("timeout of %d for %s.%s exceeded", timeout, fullName, method);
-        }
+        return future.get();
       }
+      return future.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (java.util.concurrent.TimeoutException e) {
+      throw new TimeoutException("timeout of %d for %s.%s exceeded", timeout, fullName, method);
+    } catch (ExecutionException e) {
+      error("reply from %s.%s failed %s", fullName, method, e.getCause());
+      return null;
     }
-
-    // cleanup
-    unsubscribe(fullName, method, subscriber, CodecUtils.getCallbackTopicName(method));
-
-    return blockingLockContainer[0];
-
   }
 
   // equivalent to sendBlocking without the sending a message
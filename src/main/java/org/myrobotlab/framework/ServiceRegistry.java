@@ -0,0 +1,241 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.myrobotlab.framework.interfaces.ServiceInterface;
+
+/**
+ * The services Runtime knows about, keyed by full name - name@id.
+ *
+ * Lookups by full name, or by short name for a given id, are a hash lookup
+ * without locks. The services, their names and the services implementing each
+ * interface or of each type are kept in one immutable snapshot, so callers
+ * iterate without locks and without the registry changing under them.
+ * Iteration is in name order.
+ *
+ * Registering or releasing a service only drops the snapshot - the next read
+ * rebuilds it. Registering hundreds of services at start is not quadratic.
+ */
+public class ServiceRegistry {
+
+  /**
+   * the services in name order, their names and indexes - all of the same
+   * registry state
+   */
+  public static class Snapshot {
+
+    /**
+     * full names in name order
+     */
+    public final List<String> names;
+
+    /**
+     * services in the same order as names
+     */
+    public final List<ServiceInterface> services;
+
+    /**
+     * services by the interfaces their class implements directly
+     */
+    final Map<Class<?>, List<ServiceInterface>> byInterface;
+
+    /**
+     * services by class name
+     */
+    final Map<String, List<ServiceInterface>> byType;
+
+    Snapshot(Map<String, ServiceInterface> sorted) {
+      List<ServiceInterface> s = new ArrayList<>(sorted.size());
+      List<String> n = new ArrayList<>(sorted.size());
+      Map<Class<?>, List<ServiceInterface>> interfaces = new HashMap<>();
+      Map<String, List<ServiceInterface>> types = new HashMap<>();
+      for (Map.Entry<String, ServiceInterface> entry : sorted.entrySet()) {
+        ServiceInterface si = entry.getValue();
+        n.add(entry.getKey());
+        s.add(si);
+        Class<?> c = si.getClass();
+        for (Class<?> i : c.getInterfaces()) {
+          interfaces.computeIfAbsent(i, k -> new ArrayList<>()).add(si);
+        }
+        types.computeIfAbsent(c.getName(), k -> new ArrayList<>()).add(si);
+      }
+      for (Map.Entry<Class<?>, List<ServiceInterface>> entry : interfaces.entrySet()) {
+        entry.setValue(Collections.unmodifiableList(entry.getValue()));
+      }
+      for (Map.Entry<String, List<ServiceInterface>> entry : types.entrySet()) {
+        entry.setValue(Collections.unmodifiableList(entry.getValue()));
+      }
+      names = Collections.unmodifiableList(n);
+      services = Collections.unmodifiableList(s);
+      byInterface = interfaces;
+      byType = types;
+    }
+  }
+
+  /**
+   * a service registered under a short name and the id it was registered with
+   */
+  static class Local {
+    final String id;
+    final ServiceInterface si;
+
+    Local(String id, ServiceInterface si) {
+      this.id = id;
+      this.si = si;
+    }
+  }
+
+  private final Map<String, ServiceInterface> byFullName = new ConcurrentHashMap<>();
+
+  /**
+   * short name --&gt; the last service registered with that name
+   */
+  private final Map<String, Local> byShortName = new ConcurrentHashMap<>();
+
+  /**
+   * the same entries in name order
+   */
+  private final ConcurrentSkipListMap<String, ServiceInterface> sorted = new ConcurrentSkipListMap<>();
+
+  private final Map<String, ServiceInterface> view = Collections.unmodifiableMap(sorted);
+
+  /**
+   * null when the registry changed since it was built
+   */
+  private volatile Snapshot snapshot = null;
+
+  /**
+   * @param fullName
+   *          name@id
+   * @return the service or null
+   */
+  public ServiceInterface get(String fullName) {
+    return byFullName.get(fullName);
+  }
+
+  /**
+   * @param name
+   *          short name or name@id
+   * @param id
+   *          id of a short name - the local id
+   * @return the service or null
+   */
+  public ServiceInterface get(String name, String id) {
+    if (name.indexOf('@') >= 0) {
+      return byFullName.get(name);
+    }
+    Local local = byShortName.get(name);
+    if (local != null && local.id.equals(id)) {
+      return local.si;
+    }
+    // another instance registered the same short name last
+    return byFullName.get(name + "@" + id);
+  }
+
+  public boolean containsKey(String fullName) {
+    return byFullName.containsKey(fullName);
+  }
+
+  public synchronized ServiceInterface put(String fullName, ServiceInterface si) {
+    ServiceInterface previous = byFullName.put(fullName, si);
+    sorted.put(fullName, si);
+    int at = fullName.indexOf('@');
+    if (at > 0) {
+      byShortName.put(fullName.substring(0, at), new Local(fullName.substring(at + 1), si));
+    }
+    snapshot = null;
+    return previous;
+  }
+
+  public synchronized ServiceInterface remove(String fullName) {
+    ServiceInterface previous = byFullName.remove(fullName);
+    if (previous != null) {
+      sorted.remove(fullName);
+      int at = fullName.indexOf('@');
+      if (at > 0) {
+        String name = fullName.substring(0, at);
+        Local local = byShortName.get(name);
+        if (local != null && local.si == previous) {
+          byShortName.remove(name);
+        }
+      }
+      snapshot = null;
+    }
+    return previous;
+  }
+
+  public synchronized void clear() {
+    byFullName.clear();
+    byShortName.clear();
+    sorted.clear();
+    snapshot = null;
+  }
+
+  /**
+   * @return the names, services and indexes of one state of the registry
+   */
+  public Snapshot getSnapshot() {
+    Snapshot s = snapshot;
+    if (s != null) {
+      return s;
+    }
+    synchronized (this) {
+      if (snapshot == null) {
+        snapshot = new Snapshot(sorted);
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * @return snapshot of the services in name order
+   */
+  public List<ServiceInterface> getServices() {
+    return getSnapshot().services;
+  }
+
+  /**
+   * @return snapshot of the full names in name order
+   */
+  public List<String> getNames() {
+    return getSnapshot().names;
+  }
+
+  /**
+   * @param interfaze
+   *          an interface
+   * @return snapshot of the services whose class implements it directly
+   */
+  public List<ServiceInterface> getServicesFromInterface(Class<?> interfaze) {
+    List<ServiceInterface> ret = getSnapshot().byInterface.get(interfaze);
+    return (ret == null) ? Collections.<ServiceInterface> emptyList() : ret;
+  }
+
+  /**
+   * @param type
+   *          class name e.g. org.myrobotlab.service.Servo
+   * @return snapshot of the services of that type
+   */
+  public List<ServiceInterface> getServicesFromType(String type) {
+    List<ServiceInterface> ret = getSnapshot().byType.get(type);
+    return (ret == null) ? Collections.<ServiceInterface> emptyList() : ret;
+  }
+
+  /**
+   * @return read only view in name order
+   */
+  public Map<String, ServiceInterface> asMap() {
+    return view;
+  }
+
+  public int size() {
+    return byFullName.size();
+  }
+
+}
@@ -1,17 +1,47 @@
 package org.myrobotlab.framework;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ScheduledFuture;
 
-public class Task extends TimerTask {
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * A task of a service - invokes a message once or on an interval. Runs on the
+ * shared TaskScheduler, with fixed delay (the next run starts interval after
+ * the last one finished - the default) or fixed rate (runs start every
+ * interval). A blocking task runs on the scheduler's blocking pool.
+ * 
+ * Jitter is how late a run started compared to when it should have, an
+ * overrun is a run which took longer than the interval.
+ */
+public class Task implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(Task.class);
 
   String taskName;
-  Message msg;
+  transient Message msg;
   long interval = 0;
-  Service myService;
+  boolean fixedRate = false;
+  /**
+   * may block - network, disk .. - runs off the shared task threads
+   */
+  boolean blocking = false;
+  transient Service myService;
+
+  transient ScheduledFuture<?> future;
+
+  /**
+   * nano time the next run should start
+   */
+  transient long expected;
+
+  long runs;
 
-  // FIXME upgrade to ScheduledExecutorService
-  // http://howtodoinjava.com/2015/03/25/task-scheduling-with-executors-scheduledthreadpoolexecutor-example/
+  long overruns;
+
+  final LatencyHistogram jitter = new LatencyHistogram();
+
+  final LatencyHistogram runTime = new LatencyHistogram();
 
   public Task(Service myService, String taskName, long interval, Message msg) {
     this.myService = myService;
@@ -25,30 +55,113 @@ public class Task extends TimerTask {
     this.interval = s.interval;
     this.taskName = s.taskName;
     this.myService = s.myService;
+    this.fixedRate = s.fixedRate;
+    this.blocking = s.blocking;
   }
 
-  @Override
-  public void run() {
-    // info("task %s running - next run %s", taskName,
-    // MathUtils.msToString(interval));
-    myService.invoke(msg);
+  /**
+   * schedule the task
+   * 
+   * @param delayMs
+   *          delay before the first run
+   */
+  synchronized void start(long delayMs) {
+    expected = System.nanoTime() + delayMs * 1000000L;
+    if (interval <= 0) {
+      future = TaskScheduler.schedule(this, delayMs, blocking);
+    } else if (fixedRate) {
+      future = TaskScheduler.scheduleAtFixedRate(this, delayMs, interval, blocking);
+    } else {
+      future = TaskScheduler.scheduleWithFixedDelay(this, delayMs, interval, blocking);
+    }
+  }
 
-    // GroG commented out 2019.07.14 for preferrable "blocking" task
-    // myService.getInbox().add(msg);
+  /**
+   * stop the task - a run in progress finishes
+   * 
+   * @return false if it was not scheduled
+   */
+  public synchronized boolean cancel() {
+    if (future == null) {
+      return false;
+    }
+    boolean ret = future.cancel(false);
+    future = null;
+    return ret;
+  }
 
-    if (interval > 0) {
-      Task t = new Task(this);
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    jitter.record(Math.abs(start - expected));
+    try {
       // clear history list - becomes "new" message
-      t.msg.historyList.clear();
-      Timer timer = myService.tasks.get(taskName);
-      if (timer != null) {
-        // timer = new Timer(String.format("%s.timer", getName()));
-        try {
-          timer.schedule(t, interval);
-        } catch (IllegalStateException e) {
-        }
+      msg.historyList.clear();
+      myService.invoke(msg);
+    } catch (Exception e) {
+      log.error("task {} of {} threw", taskName, myService.getName(), e);
+    }
+    long end = System.nanoTime();
+    runTime.record(end - start);
+    ++runs;
+
+    if (interval <= 0) {
+      // one shot done
+      myService.tasks.remove(taskName, this);
+      return;
+    }
+    long intervalNanos = interval * 1000000L;
+    if (end - start > intervalNanos) {
+      ++overruns;
+      if (overruns == 1 || overruns % 100 == 0) {
+        log.warn("task {} of {} took {} ms - longer than its {} ms interval - {} overruns", taskName, myService.getName(), (end - start) / 1000000, interval, overruns);
       }
     }
+    expected = (fixedRate) ? expected + intervalNanos : end + intervalNanos;
+  }
+
+  public String getName() {
+    return taskName;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  public boolean isFixedRate() {
+    return fixedRate;
+  }
+
+  public boolean isBlocking() {
+    return blocking;
+  }
+
+  public long getRuns() {
+    return runs;
+  }
+
+  public long getOverruns() {
+    return overruns;
+  }
+
+  /**
+   * @return how late runs started in nanoseconds
+   */
+  public LatencyHistogram getJitter() {
+    return jitter;
+  }
+
+  /**
+   * @return how long runs took in nanoseconds
+   */
+  public LatencyHistogram getRunTime() {
+    return runTime;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s every %d ms%s%s runs %d overruns %d jitter [%s] run time [%s]", taskName, interval, (fixedRate) ? " fixed rate" : "",
+        (blocking) ? " blocking" : "", runs, overruns, jitter, runTime);
   }
 
 }
@@ -0,0 +1,186 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * One scheduler for the tasks of all services in the process. A task used to
+ * get its own java.util.Timer - a thread which slept most of the time - now
+ * all tasks share a small pool of threads.
+ *
+ * A task on the shared pool must not block - no network, no waiting on a
+ * device or a lock held for long - it holds one of the pool's threads while it
+ * runs, and the clocks, retransmits and client flushes of every other service
+ * run late. Tasks which block are scheduled as blocking, they run on a pool of
+ * their own and can only delay each other. Task counts runs which took longer
+ * than the interval as overruns.
+ */
+public class TaskScheduler {
+
+  public final static Logger log = LoggerFactory.getLogger(TaskScheduler.class);
+
+  static final ScheduledThreadPoolExecutor executor;
+
+  /**
+   * tasks which block - connecting, checking for updates, scanning hosts ..
+   */
+  static final ScheduledThreadPoolExecutor blockingExecutor;
+
+  static {
+    executor = create("task", Math.max(4, java.lang.Runtime.getRuntime().availableProcessors()));
+    blockingExecutor = create("task-blocking", 4);
+  }
+
+  static ScheduledThreadPoolExecutor create(String prefix, int threads) {
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      Thread t = new Thread(r, String.format("%s-%d", prefix, count.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    };
+    ScheduledThreadPoolExecutor ret = new ScheduledThreadPoolExecutor(threads, factory);
+    // purged tasks do not wait in the queue until their next run
+    ret.setRemoveOnCancelPolicy(true);
+    return ret;
+  }
+
+  static ScheduledThreadPoolExecutor executor(boolean blocking) {
+    return (blocking) ? blockingExecutor : executor;
+  }
+
+  /**
+   * run once
+   *
+   * @param task
+   *          the task
+   * @param delayMs
+   *          delay before it runs
+   * @return future to cancel it
+   */
+  public static ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+    return schedule(task, delayMs, false);
+  }
+
+  /**
+   * run once
+   *
+   * @param task
+   *          the task
+   * @param delayMs
+   *          delay before it runs
+   * @param blocking
+   *          the task may block - it runs on the blocking pool
+   * @return future to cancel it
+   */
+  public static ScheduledFuture<?> schedule(Runnable task, long delayMs, boolean blocking) {
+    return executor(blocking).schedule(task, delayMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * runs start every intervalMs - a late run does not move the ones after it
+   *
+   * @param task
+   *          the task
+   * @param delayMs
+   *          delay before the first run
+   * @param intervalMs
+   *          time between starts
+   * @return future to cancel it
+   */
+  public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long delayMs, long intervalMs) {
+    return scheduleAtFixedRate(task, delayMs, intervalMs, false);
+  }
+
+  /**
+   * runs start every intervalMs - a late run does not move the ones after it
+   *
+   * @param task
+   *          the task
+   * @param delayMs
+   *          delay before the first run
+   * @param intervalMs
+   *          time between starts
+   * @param blocking
+   *          the task may block - it runs on the blocking pool
+   * @return future to cancel it
+   */
+  public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long delayMs, long intervalMs, boolean blocking) {
+    return executor(blocking).scheduleAtFixedRate(task, delayMs, intervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * a run starts intervalMs after the one before it finished
+   *
+   * @param task
+   *          the task
+   * @param delayMs
+   *          delay before the first run
+   * @param intervalMs
+   *          time from the end of a run to the start of the next
+   * @return future to cancel it
+   */
+  public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delayMs, long intervalMs) {
+    return scheduleWithFixedDelay(task, delayMs, intervalMs, false);
+  }
+
+  /**
+   * a run starts intervalMs after the one before it finished
+   *
+   * @param task
+   *          the task
+   * @param delayMs
+   *          delay before the first run
+   * @param intervalMs
+   *          time from the end of a run to the start of the next
+   * @param blocking
+   *          the task may block - it runs on the blocking pool
+   * @return future to cancel it
+   */
+  public static ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long delayMs, long intervalMs, boolean blocking) {
+    return executor(blocking).scheduleWithFixedDelay(task, delayMs, intervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param threads
+   *          threads running the tasks which do not block
+   */
+  public static void setThreads(int threads) {
+    if (threads < 1) {
+      log.error("task scheduler needs at least 1 thread - not {}", threads);
+      return;
+    }
+    executor.setCorePoolSize(threads);
+  }
+
+  public static int getThreads() {
+    return executor.getCorePoolSize();
+  }
+
+  /**
+   * @return tasks running now - not counting blocking ones
+   */
+  public static int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+  /**
+   * @return blocking tasks running now
+   */
+  public static int getBlockingActiveCount() {
+    return blockingExecutor.getActiveCount();
+  }
+
+  /**
+   * @return tasks waiting for their next run
+   */
+  public static int getScheduledCount() {
+    return executor.getQueue().size();
+  }
+
+}
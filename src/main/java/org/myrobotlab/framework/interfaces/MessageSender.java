@@ -1,5 +1,7 @@
 package org.myrobotlab.framework.interfaces;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.TimeoutException;
 
@@ -45,6 +47,32 @@ public interface MessageSender extends NameProvider {
 
   public Object sendBlocking(Message msg, Integer timeout) throws InterruptedException, TimeoutException;
 
+  /**
+   * Send a request and get a future for its return value, the reply is
+   * correlated on the msgId of the request.
+   * 
+   * @param name
+   *          - name of destination service
+   * @param method
+   *          - method of destination service
+   * @param data
+   *          - parameter data
+   * @return future of the returned object
+   */
+  public CompletableFuture<Object> sendAsync(String name, String method, Object... data);
+
+  public CompletableFuture<Object> sendAsync(Message msg);
+
+  /**
+   * Reply to a Message.BLOCKING request with a Message.RETURN message.
+   * 
+   * @param request
+   *          - the request
+   * @param ret
+   *          - the returned object
+   */
+  public void sendReply(Message request, Object ret);
+
   public Object waitFor(String fullName, String method, Integer timeout) throws InterruptedException, TimeoutException;
 
 }
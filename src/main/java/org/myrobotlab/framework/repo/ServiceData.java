@@ -3,8 +3,11 @@ package org.myrobotlab.framework.repo;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -12,10 +15,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.MrlException;
 import org.myrobotlab.framework.Plan;
+import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.ServiceReservation;
 import org.myrobotlab.io.FileIO;
 import org.myrobotlab.logging.LoggerFactory;
@@ -36,6 +41,10 @@ import org.slf4j.Logger;
  * When MyRobotLab runs for the first time, it will extract this file into the
  * .myrobotlab directory.
  * 
+ * The build also writes a binary ServiceIndex of the same data. If one of the
+ * running version is found it is memory mapped, and the meta data of a type
+ * is only decoded when that type is asked for.
+ * 
  * @author GroG
  *
  */
@@ -59,6 +68,13 @@ public class ServiceData implements Serializable {
 
   static private String serviceDataCacheFileName = FileIO.getCfgDir() + File.separator + "serviceData.json";
 
+  static private String serviceIndexFileName = FileIO.getCfgDir() + File.separator + "serviceData.idx";
+
+  /**
+   * index bundled in the jar
+   */
+  static final String SERVICE_INDEX_RESOURCE = "/resource/framework/serviceData.idx";
+
   /**
    * clears all overrides. All services shall be using the standard hard co
    */
@@ -137,12 +153,11 @@ public class ServiceData implements Serializable {
   static public List<ServiceDependency> getDependencyKeys(String fullTypeName) {
     List<ServiceDependency> keys = new ArrayList<ServiceDependency>();
     ServiceData sd = getLocalInstance();
-    if (!sd.serviceTypes.containsKey(fullTypeName)) {
-      log.error("{} not defined in service types");
+    MetaData st = sd.getServiceType(fullTypeName);
+    if (st == null) {
+      log.error("{} not defined in service types", fullTypeName);
       return keys;
     }
-
-    MetaData st = localInstance.serviceTypes.get(fullTypeName);
     return st.getDependencies();
   }
 
@@ -174,6 +189,14 @@ public class ServiceData implements Serializable {
 
       // if we're not in a jar we are in an IDE.
 
+      // the binary index of this version - in the .myrobotlab directory or
+      // bundled in the jar
+      ServiceData indexed = loadIndex();
+      if (indexed != null) {
+        localInstance = indexed;
+        return localInstance;
+      }
+
       // First check the .myrobotlab/serviceData.json dir.
       File jsonFile = new File(serviceDataCacheFileName);
       if (jsonFile.exists()) {
@@ -197,6 +220,8 @@ public class ServiceData implements Serializable {
           localInstance = ServiceData.generate();
           localInstance.save();
           log.info("saved generated serviceData.json to {}", serviceDataCacheFileName);
+          // next start maps the index
+          localInstance.saveIndex(serviceIndexFileName, Platform.getLocalInstance().getVersion());
         } catch (IOException e1) {
           log.error("Unable to generate the serivceData.json file!!");
           // This is a fatal issue. I think we should exit the jvm here.
@@ -207,6 +232,62 @@ public class ServiceData implements Serializable {
     }
   }
 
+  /**
+   * Map the service index of the running version. The index in the
+   * .myrobotlab directory is used, or else the one bundled in the jar is
+   * copied there - a file can be mapped, a jar entry can not. An index of
+   * another version is never mapped, so it can be replaced.
+   * 
+   * @return service data backed by the index or null if there is no index of
+   *         this version
+   */
+  static ServiceData loadIndex() {
+    String version = Platform.getLocalInstance().getVersion();
+    File file = new File(serviceIndexFileName);
+    ServiceIndex index = openIndex(file, version);
+    if (index == null) {
+      File tmp = null;
+      try (InputStream is = ServiceData.class.getResourceAsStream(SERVICE_INDEX_RESOURCE)) {
+        if (is == null) {
+          return null;
+        }
+        tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+        Files.copy(is, tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        ServiceIndex.moveIntoPlace(tmp, file);
+      } catch (Exception e) {
+        log.warn("could not extract {} to {}", SERVICE_INDEX_RESOURCE, file, e);
+        return null;
+      } finally {
+        if (tmp != null) {
+          tmp.delete();
+        }
+      }
+      index = openIndex(file, version);
+    }
+    if (index == null) {
+      return null;
+    }
+    log.info("mapped service index {} of {} types", file, index.size());
+    return new ServiceData(index);
+  }
+
+  static ServiceIndex openIndex(File file, String version) {
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      // checked before mapping - a mapped file can not be replaced on Windows
+      String indexVersion = ServiceIndex.readVersion(file);
+      if (version.equals(indexVersion)) {
+        return ServiceIndex.open(file);
+      }
+      log.info("service index {} is of version {} not {}", file, indexVersion, version);
+    } catch (Exception e) {
+      log.warn("could not read service index {}", file, e);
+    }
+    return null;
+  }
+
   /**
    * This method returns the default meta data of a class.
    * 
@@ -335,18 +416,59 @@ public class ServiceData implements Serializable {
    */
   TreeMap<String, MetaData> serviceTypes = new TreeMap<String, MetaData>();
 
+  /**
+   * the mapped index serviceTypes are decoded from - null if all are loaded
+   */
+  transient private ServiceIndex index;
+
   public ServiceData() {
   }
 
-  public void add(MetaData serviceType) {
+  ServiceData(ServiceIndex index) {
+    this.index = index;
+    categoryTypes = index.getCategories();
+  }
+
+  public synchronized void add(MetaData serviceType) {
     serviceTypes.put(serviceType.getType(), serviceType);
   }
 
-  public boolean containsServiceType(String fullServiceName) {
-    return serviceTypes.containsKey(fullServiceName);
+  public synchronized boolean containsServiceType(String fullServiceName) {
+    return serviceTypes.containsKey(fullServiceName) || (index != null && index.contains(fullServiceName));
+  }
+
+  /**
+   * @param fullTypeName
+   *          e.g. org.myrobotlab.service.Servo
+   * @return the meta data of the type or null
+   */
+  public synchronized MetaData getServiceType(String fullTypeName) {
+    MetaData ret = serviceTypes.get(fullTypeName);
+    if (ret == null && index != null) {
+      ret = index.getMetaData(fullTypeName);
+      if (ret != null) {
+        serviceTypes.put(fullTypeName, ret);
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * decode the meta data of every type still in the index - before all types
+   * are listed or the service data is serialized
+   */
+  public synchronized void loadAll() {
+    if (index == null) {
+      return;
+    }
+    for (String type : index.getTypes()) {
+      getServiceType(type);
+    }
+    index = null;
   }
 
   public List<MetaData> getAvailableServiceTypes() {
+    loadAll();
     List<MetaData> ret = new ArrayList<MetaData>();
     for (Map.Entry<String, MetaData> o : serviceTypes.entrySet()) {
       if (o.getValue().isAvailable()) {
@@ -386,6 +508,7 @@ public class ServiceData implements Serializable {
   }
 
   public HashSet<ServiceDependency> getServiceTypeDependencyKeys() {
+    loadAll();
     HashSet<ServiceDependency> uniqueKeys = new HashSet<ServiceDependency>();
     for (Map.Entry<String, MetaData> o : serviceTypes.entrySet()) {
       MetaData st = o.getValue();
@@ -406,7 +529,17 @@ public class ServiceData implements Serializable {
   public String[] getServiceTypeNames(String categoryFilterName) {
 
     if (categoryFilterName == null || categoryFilterName.length() == 0 || categoryFilterName.equals("all")) {
-      String[] ret = serviceTypes.keySet().toArray(new String[0]);
+      String[] ret;
+      synchronized (this) {
+        if (index == null) {
+          ret = serviceTypes.keySet().toArray(new String[0]);
+        } else {
+          // names without decoding the meta data
+          TreeSet<String> names = new TreeSet<String>(serviceTypes.keySet());
+          names.addAll(Arrays.asList(index.getTypes()));
+          ret = names.toArray(new String[0]);
+        }
+      }
       Arrays.sort(ret);
       return ret;
     }
@@ -425,6 +558,7 @@ public class ServiceData implements Serializable {
   }
 
   public List<MetaData> getServiceTypes(boolean showUnavailable) {
+    loadAll();
     List<MetaData> ret = new ArrayList<MetaData>();
     for (Map.Entry<String, MetaData> o : serviceTypes.entrySet()) {
       if (!o.getValue().isAvailable() && !showUnavailable) {
@@ -445,6 +579,7 @@ public class ServiceData implements Serializable {
   public boolean save(String filename) {
     try {
 
+      loadAll();
       FileOutputStream fos = new FileOutputStream(filename);
       String json = CodecUtils.toJson(this);
       fos.write(json.getBytes());
@@ -458,6 +593,26 @@ public class ServiceData implements Serializable {
     return false;
   }
 
+  /**
+   * write the binary index of this service data
+   * 
+   * @param filename
+   *          index file
+   * @param version
+   *          mrl version it is valid for
+   * @return true if saved
+   */
+  public boolean saveIndex(String filename, String version) {
+    try {
+      loadAll();
+      ServiceIndex.write(this, version, new File(filename));
+      return true;
+    } catch (Exception e) {
+      log.error("service index saving threw for {}", filename, e);
+    }
+    return false;
+  }
+
   /**
    * Start at root and build all the meta data - add
    * 
@@ -523,6 +678,8 @@ public class ServiceData implements Serializable {
       } else {
         path = ".";
       }
+      // the version of the jar being built - the index is only used by it
+      String version = (args.length > 1) ? args[1] : Platform.getLocalInstance().getVersion();
 
       String filename = path + File.separator + "serviceData.json";
       log.info("generating {}", filename);
@@ -538,11 +695,13 @@ public class ServiceData implements Serializable {
       // 20190630 - GroG changed uses FileIO.getCfgDir()
       removeExisting = new File(FileIO.getCfgDir() + File.separatorChar + "serviceData.json");
       removeExisting.delete();
+      new File(serviceIndexFileName).delete();
 
       // THIS IS FOR ANT BUILD - DO NOT CHANGE !!! - BEGIN ----
       ServiceData sd = generate();
       // save a copy to the resources folder so it can be bundled in the jar.
       sd.save(filename);
+      sd.saveIndex(path + File.separator + "serviceData.idx", version);
       // save to the .myrobotlab directory also..
       sd.save();
 
@@ -0,0 +1,333 @@
+package org.myrobotlab.framework.repo;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.meta.abstracts.MetaData;
+import org.slf4j.Logger;
+
+/**
+ * A binary index of the ServiceData. It is written at build time next to
+ * serviceData.json, and memory mapped when Runtime starts. Reading it replaces
+ * scanning the service classes and calling each one's meta data.
+ *
+ * The header has the service types, whether each is available, and the
+ * categories. The meta data of a type - peers, dependencies, description -
+ * stays in the mapped file as json until that type is asked for.
+ *
+ * The index records the format and the mrl version which wrote it. An index
+ * from another format or version is not used - its version is read without
+ * mapping it. A mapped file can not be written on Windows, so an index is
+ * written to a temporary file which is then moved into place.
+ *
+ * @author GroG
+ *
+ */
+public class ServiceIndex {
+
+  public final static Logger log = LoggerFactory.getLogger(ServiceIndex.class);
+
+  /**
+   * "MRLI"
+   */
+  static final int MAGIC = 0x4d524c49;
+
+  /**
+   * format version - change when the layout changes
+   */
+  public static final int FORMAT = 1;
+
+  final String version;
+
+  /**
+   * sorted type names
+   */
+  final String[] types;
+
+  final boolean[] available;
+
+  /**
+   * offset and length of each type's json in data
+   */
+  final int[] offsets;
+
+  final int[] lengths;
+
+  final Map<String, Integer> ids;
+
+  final List<Category> categories;
+
+  /**
+   * json of the meta data - the mapped file after the header
+   */
+  private final ByteBuffer data;
+
+  private ServiceIndex(ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("not a service index");
+    }
+    int format = buffer.getInt();
+    if (format != FORMAT) {
+      throw new IOException(String.format("service index format %d not %d", format, FORMAT));
+    }
+    version = getString(buffer);
+    int count = buffer.getInt();
+    types = new String[count];
+    available = new boolean[count];
+    offsets = new int[count];
+    lengths = new int[count];
+    ids = new HashMap<>(count * 2);
+    for (int i = 0; i < count; ++i) {
+      types[i] = getString(buffer);
+      available[i] = buffer.get() != 0;
+      offsets[i] = buffer.getInt();
+      lengths[i] = buffer.getInt();
+      ids.put(types[i], i);
+    }
+    int categoryCount = buffer.getInt();
+    categories = new ArrayList<>(categoryCount);
+    for (int i = 0; i < categoryCount; ++i) {
+      Category category = new Category();
+      category.name = getString(buffer);
+      category.description = getString(buffer);
+      int size = buffer.getInt();
+      for (int j = 0; j < size; ++j) {
+        category.serviceTypes.add(types[buffer.getInt()]);
+      }
+      categories.add(category);
+    }
+    data = buffer.slice();
+  }
+
+  /**
+   * map an index file
+   *
+   * @param file
+   *          the index
+   * @return the index
+   * @throws IOException
+   *           if it can not be read or is not an index of this format
+   */
+  public static ServiceIndex open(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      try {
+        return new ServiceIndex(buffer);
+      } catch (RuntimeException e) {
+        // truncated
+        throw new IOException(String.format("bad service index %s", file), e);
+      }
+    }
+  }
+
+  /**
+   * read the version of an index file without mapping it
+   *
+   * @param file
+   *          the index
+   * @return mrl version which wrote it or null if it is not an index of this
+   *         format
+   * @throws IOException
+   *           if it can not be read
+   */
+  public static String readVersion(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+        return null;
+      }
+      int length = in.readInt();
+      if (length < 0 || length > file.length()) {
+        return null;
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * replace a file with a temporary one in the same directory - the old file
+   * may still be mapped, so it is never written to
+   *
+   * @param tmp
+   *          the new content
+   * @param file
+   *          the file to replace
+   * @throws IOException
+   *           boom
+   */
+  static void moveIntoPlace(File tmp, File file) throws IOException {
+    try {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * write an index of the service data
+   *
+   * @param sd
+   *          all types must be loaded
+   * @param version
+   *          mrl version of the build
+   * @param file
+   *          where to write it
+   * @throws IOException
+   *           boom
+   */
+  public static void write(ServiceData sd, String version, File file) throws IOException {
+    List<String> names = new ArrayList<>(sd.serviceTypes.keySet());
+    Map<String, Integer> ids = new HashMap<>();
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    ByteArrayOutputStream header = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(header);
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT);
+    putString(out, version);
+    out.writeInt(names.size());
+    for (int i = 0; i < names.size(); ++i) {
+      String type = names.get(i);
+      MetaData metaData = sd.serviceTypes.get(type);
+      byte[] bytes = CodecUtils.toJson(metaData).getBytes(StandardCharsets.UTF_8);
+      ids.put(type, i);
+      putString(out, type);
+      out.writeByte(metaData.isAvailable() ? 1 : 0);
+      out.writeInt(json.size());
+      out.writeInt(bytes.length);
+      json.write(bytes);
+    }
+    out.writeInt(sd.categoryTypes.size());
+    for (Category category : sd.categoryTypes.values()) {
+      putString(out, category.name);
+      putString(out, category.description);
+      List<Integer> members = new ArrayList<>();
+      for (String type : category.serviceTypes) {
+        Integer id = ids.get(type);
+        if (id != null) {
+          members.add(id);
+        }
+      }
+      out.writeInt(members.size());
+      for (int id : members) {
+        out.writeInt(id);
+      }
+    }
+    out.flush();
+    File tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+    try {
+      try (FileOutputStream fos = new FileOutputStream(tmp)) {
+        header.writeTo(fos);
+        json.writeTo(fos);
+      }
+      moveIntoPlace(tmp, file);
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  static void putString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return mrl version which wrote the index
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  public int size() {
+    return types.length;
+  }
+
+  public boolean contains(String type) {
+    return ids.containsKey(type);
+  }
+
+  /**
+   * @return the type names, sorted
+   */
+  public String[] getTypes() {
+    return types.clone();
+  }
+
+  public boolean isAvailable(String type) {
+    Integer id = ids.get(type);
+    return id != null && available[id];
+  }
+
+  /**
+   * @return the categories - new objects each call
+   */
+  public TreeMap<String, Category> getCategories() {
+    TreeMap<String, Category> ret = new TreeMap<>();
+    for (Category category : categories) {
+      Category copy = new Category();
+      copy.name = category.name;
+      copy.description = category.description;
+      copy.serviceTypes.addAll(category.serviceTypes);
+      ret.put(copy.name, copy);
+    }
+    return ret;
+  }
+
+  /**
+   * decode the meta data of a type
+   *
+   * @param type
+   *          full type name
+   * @return the meta data or null if the type is not in the index
+   */
+  public MetaData getMetaData(String type) {
+    Integer id = ids.get(type);
+    if (id == null) {
+      return null;
+    }
+    // own position - the index is read by many threads
+    ByteBuffer b = data.duplicate();
+    b.position(offsets[id]);
+    byte[] bytes = new byte[lengths[id]];
+    b.get(bytes);
+    return CodecUtils.fromJson(new String(bytes, StandardCharsets.UTF_8), MetaData.class);
+  }
+
+}
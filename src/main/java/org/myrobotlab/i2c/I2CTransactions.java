@@ -0,0 +1,259 @@
+package org.myrobotlab.i2c;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Outstanding i2c reads of a controller. MrlComm processes its commands in
+ * order and answers a read with publishI2cData(busDeviceId, data), which says
+ * nothing about which read it answers - so reads are kept in a fifo per bus in
+ * the order they were sent and each answer completes the oldest one it matches.
+ *
+ * Any number of reads can be outstanding on a bus, each has its own future,
+ * nothing polls.
+ *
+ * An answer matches a read of the same size - and of the same device when the
+ * answer says which device it is from. If the oldest read does not match, its
+ * answer was lost: the first read which matches is completed and the reads
+ * before it are failed. An answer no read matches is dropped - a device which
+ * returns fewer bytes than asked for times the read out.
+ *
+ * A read whose caller gave up is removed with cancel. Reads older than
+ * staleTimeout - the controller's i2c timeout - are failed and removed when
+ * the next read is sent.
+ *
+ */
+public class I2CTransactions {
+
+  public final static Logger log = LoggerFactory.getLogger(I2CTransactions.class);
+
+  /**
+   * a single read - optionally of a register, which is written before the read
+   */
+  public static class Request {
+
+    public int deviceAddress;
+
+    /**
+     * register written before reading - -1 for a plain read
+     */
+    public int register = -1;
+
+    public int size;
+
+    transient long ts;
+
+    transient final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+    public Request(int deviceAddress, int size) {
+      this.deviceAddress = deviceAddress;
+      this.size = size;
+    }
+
+    public Request(int deviceAddress, int register, int size) {
+      this.deviceAddress = deviceAddress;
+      this.register = register;
+      this.size = size;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("0x%02X reg %d size %d", deviceAddress, register, size);
+    }
+  }
+
+  /**
+   * sends a request to the board
+   */
+  public interface Sender {
+    void send(Request request);
+  }
+
+  final Map<Integer, LinkedList<Request>> pending = new ConcurrentHashMap<>();
+
+  long staleTimeout;
+
+  public I2CTransactions() {
+    this(1000);
+  }
+
+  /**
+   * @param staleTimeout
+   *          ms after which an unanswered read is dropped
+   */
+  public I2CTransactions(long staleTimeout) {
+    this.staleTimeout = staleTimeout;
+  }
+
+  LinkedList<Request> getBus(int busId) {
+    return pending.computeIfAbsent(busId, k -> new LinkedList<>());
+  }
+
+  /**
+   * queue and send a read - queuing and sending are done under the bus lock so
+   * the fifo is always in the order the board sees the reads
+   *
+   * @param busId
+   *          device id of the bus
+   * @param request
+   *          the read
+   * @param sender
+   *          sends it to the board
+   * @return future completed with the data read
+   */
+  public CompletableFuture<byte[]> send(int busId, Request request, Sender sender) {
+    LinkedList<Request> bus = getBus(busId);
+    synchronized (bus) {
+      long now = System.currentTimeMillis();
+      expire(bus, now);
+      request.ts = now;
+      bus.add(request);
+      try {
+        sender.send(request);
+      } catch (Exception e) {
+        bus.removeLast();
+        request.future.completeExceptionally(e);
+      }
+    }
+    return request.future;
+  }
+
+  void expire(LinkedList<Request> bus, long now) {
+    Iterator<Request> it = bus.iterator();
+    while (it.hasNext()) {
+      Request r = it.next();
+      if (now - r.ts < staleTimeout) {
+        break;
+      }
+      log.warn("i2c read {} was never answered - dropping it", r);
+      it.remove();
+      r.future.completeExceptionally(new TimeoutException(String.format("i2c read %s not answered in %d ms", r, staleTimeout)));
+    }
+  }
+
+  /**
+   * remove a read whose caller gave up waiting - it is failed with a
+   * TimeoutException
+   *
+   * @param busId
+   *          device id of the bus
+   * @param request
+   *          the read
+   * @return false if it was not outstanding
+   */
+  public boolean cancel(int busId, Request request) {
+    LinkedList<Request> bus = getBus(busId);
+    boolean removed;
+    synchronized (bus) {
+      removed = bus.remove(request);
+    }
+    if (removed) {
+      request.future.completeExceptionally(new TimeoutException(String.format("i2c read %s cancelled", request)));
+    }
+    return removed;
+  }
+
+  /**
+   * an answer from the board which does not say which device it is from - as
+   * MrlComm's publishI2cData
+   *
+   * @param busId
+   *          device id of the bus
+   * @param data
+   *          data read
+   * @return false if no read matched
+   */
+  public boolean complete(int busId, int[] data) {
+    return complete(busId, -1, data);
+  }
+
+  /**
+   * an answer from the board - completes the oldest read on the bus which
+   * matches it
+   *
+   * @param busId
+   *          device id of the bus
+   * @param deviceAddress
+   *          device the data is from - -1 if unknown
+   * @param data
+   *          data read
+   * @return false if no read matched
+   */
+  public boolean complete(int busId, int deviceAddress, int[] data) {
+    LinkedList<Request> bus = getBus(busId);
+    Request r = null;
+    List<Request> lost = new ArrayList<>();
+    synchronized (bus) {
+      for (Request head : bus) {
+        if (matches(head, deviceAddress, data)) {
+          r = head;
+          break;
+        }
+        lost.add(head);
+      }
+      if (r == null) {
+        lost.clear();
+      } else {
+        bus.removeAll(lost);
+        bus.remove(r);
+      }
+    }
+    for (Request l : lost) {
+      log.warn("i2c read {} on bus {} was never answered - dropping it", l, busId);
+      l.future.completeExceptionally(new TimeoutException(String.format("i2c read %s not answered", l)));
+    }
+    if (r == null) {
+      log.warn("i2c data of {} bytes from bus {} matches no outstanding read - dropping", data.length, busId);
+      return false;
+    }
+    byte[] bytes = new byte[data.length];
+    for (int i = 0; i < data.length; ++i) {
+      bytes[i] = (byte) (data[i] & 0xff);
+    }
+    // completed outside the lock - callbacks may send the next read
+    r.future.complete(bytes);
+    return true;
+  }
+
+  static boolean matches(Request r, int deviceAddress, int[] data) {
+    return (deviceAddress < 0 || r.deviceAddress == deviceAddress) && r.size == data.length;
+  }
+
+  /**
+   * fail everything outstanding - e.g. on disconnect
+   */
+  public void clear() {
+    for (LinkedList<Request> bus : pending.values()) {
+      synchronized (bus) {
+        for (Request r : bus) {
+          r.future.cancel(false);
+        }
+        bus.clear();
+      }
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (LinkedList<Request> bus : pending.values()) {
+      synchronized (bus) {
+        size += bus.size();
+      }
+    }
+    return size;
+  }
+
+  public void setStaleTimeout(long staleTimeout) {
+    this.staleTimeout = staleTimeout;
+  }
+
+}
@@ -374,23 +374,65 @@ public class FileIO {
   }
 
   /**
-   * extractResources will extract the entire /resource directory out unless it
-   * already exist
+   * extractor of the first extractResources - it extracts the deferred service
+   * types of lazy mode, later calls reuse it instead of scanning the jar again
+   */
+  static private ResourceExtractor resourceExtractor = null;
+
+  /**
+   * extractResources will extract the /resource directory out of the jar -
+   * only the entries which changed in the jar since the last extraction
    * 
    * this process is important to the webgui, as it accesses the AngularJS files
    * from the file system and not within the jar
    * 
+   * with --lazy-resources the directories of service types are extracted when
+   * the service's resource dir is first asked for
+   * 
    * @return true/false
    */
   static public final boolean extractResources() {
+    return extractResources(Runtime.getOptions() != null && Runtime.getOptions().lazyResources);
+  }
+
+  static public final synchronized boolean extractResources(boolean lazy) {
     try {
-      extract(getRoot(), "resource", null, false);
+      if (resourceExtractor != null) {
+        // extracted already - only deferred types can be left
+        if (!lazy) {
+          resourceExtractor.extractDeferred();
+        }
+        return true;
+      }
+      String root = getRoot();
+      if (!isJar(root)) {
+        log.info("not extracting resources {} is not a jar", root);
+        return false;
+      }
+      ResourceExtractor extractor = new ResourceExtractor(root, "resource", ".");
+      extractor.extract(lazy);
+      resourceExtractor = extractor;
+      return true;
     } catch (Exception e) {
       Logging.logError(e);
     }
     return false;
   }
 
+  /**
+   * extract the resource directory of a service type if it was deferred by a
+   * lazy extractResources
+   * 
+   * @param serviceType
+   *          simple type name e.g. OpenCV
+   */
+  static public final void extractResources(String serviceType) {
+    ResourceExtractor extractor = resourceExtractor;
+    if (extractor != null) {
+      extractor.extractType(serviceType);
+    }
+  }
+
   /**
    * get configuration directory
    * 
@@ -0,0 +1,374 @@
+package org.myrobotlab.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Extracts a directory - typically resource - from the mrl jar.
+ *
+ * The CRC and size of every entry extracted is kept in a manifest,
+ * {dst}/{src}/.manifest, so later starts only extract the entries which changed
+ * in the jar. The CRCs come from the jar's central directory, nothing is
+ * decompressed to compare them. Entries are streamed to their files by one
+ * thread per core.
+ *
+ * Files are never overwritten unless they are still what was extracted. A
+ * file which is there without a manifest entry - extracted before there was a
+ * manifest - is kept and its own CRC recorded, and a new version in the jar
+ * only replaces a file whose CRC still matches the one recorded - files
+ * changed by the user are kept.
+ *
+ * In lazy mode the directory of a service type - resource/{type}/ - is not
+ * extracted until Service.getResourceDir is first called for that type. Files
+ * at the top of the directory and the eager types are always extracted.
+ *
+ * @author GroG
+ *
+ */
+public class ResourceExtractor {
+
+  public final static Logger log = LoggerFactory.getLogger(ResourceExtractor.class);
+
+  public final static String MANIFEST = ".manifest";
+
+  /**
+   * types extracted in lazy mode too - used without asking for their resource
+   * dir
+   */
+  public final static Set<String> EAGER = new HashSet<>(Arrays.asList("framework", "WebGui"));
+
+  final File jar;
+
+  final String src;
+
+  final File dst;
+
+  final File manifestFile;
+
+  /**
+   * entry name --&gt; crc:size of what was extracted
+   */
+  final Properties manifest = new Properties();
+
+  /**
+   * type --&gt; entry names not extracted yet
+   */
+  final Map<String, List<String>> deferred = new ConcurrentHashMap<>();
+
+  int extracted = 0;
+
+  int unchanged = 0;
+
+  /**
+   * files changed by the user which were not replaced
+   */
+  int kept = 0;
+
+  /**
+   * @param jar
+   *          the jar
+   * @param src
+   *          directory in the jar e.g. resource
+   * @param dst
+   *          directory src is extracted into
+   */
+  public ResourceExtractor(String jar, String src, String dst) {
+    this.jar = new File(jar);
+    this.src = src;
+    this.dst = new File(dst);
+    manifestFile = new File(this.dst, src + File.separator + MANIFEST);
+  }
+
+  /**
+   * extract the entries which changed since the last extraction
+   *
+   * @param lazy
+   *          defer the directories of service types
+   * @return number of entries extracted
+   * @throws IOException
+   *           if the jar can not be read
+   */
+  public synchronized int extract(boolean lazy) throws IOException {
+    long start = System.currentTimeMillis();
+    loadManifest();
+    String prefix = src + "/";
+    int count = 0;
+    try (ZipFile zip = new ZipFile(jar)) {
+      List<ZipEntry> changed = new ArrayList<>();
+      Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (!name.startsWith(prefix)) {
+          continue;
+        }
+        String type = getType(name);
+        if (lazy && type != null && !EAGER.contains(type)) {
+          deferred.computeIfAbsent(type, k -> new ArrayList<>()).add(name);
+          continue;
+        }
+        if (entry.isDirectory()) {
+          new File(dst, name).mkdirs();
+        } else if (isChanged(entry)) {
+          changed.add(entry);
+        }
+      }
+      count = extract(zip, changed);
+    }
+    saveManifest();
+    log.info("extracted {} changed {} entries of {} in {} ms - {} unchanged - {} kept - {} types deferred", count, src, jar, System.currentTimeMillis() - start,
+        unchanged, kept, deferred.size());
+    return count;
+  }
+
+  /**
+   * extract the directory of a type deferred in lazy mode - nothing is done if
+   * it was not deferred or was extracted already
+   *
+   * @param type
+   *          service type e.g. OpenCV
+   * @return number of entries extracted
+   */
+  public int extractType(String type) {
+    List<String> names = deferred.remove(type);
+    if (names == null) {
+      return 0;
+    }
+    synchronized (this) {
+      int count = 0;
+      try (ZipFile zip = new ZipFile(jar)) {
+        List<ZipEntry> changed = new ArrayList<>();
+        for (String name : names) {
+          ZipEntry entry = zip.getEntry(name);
+          if (entry == null) {
+            continue;
+          }
+          if (entry.isDirectory()) {
+            new File(dst, name).mkdirs();
+          } else if (isChanged(entry)) {
+            changed.add(entry);
+          }
+        }
+        count = extract(zip, changed);
+        saveManifest();
+        log.info("extracted {} changed entries of {}/{}", count, src, type);
+      } catch (Exception e) {
+        log.error("extracting {}/{} threw", src, type, e);
+      }
+      return count;
+    }
+  }
+
+  /**
+   * extract every type deferred in lazy mode
+   *
+   * @return number of entries extracted
+   */
+  public int extractDeferred() {
+    int count = 0;
+    for (String type : new ArrayList<>(deferred.keySet())) {
+      count += extractType(type);
+    }
+    return count;
+  }
+
+  /**
+   * @return the types not extracted yet
+   */
+  public Set<String> getDeferred() {
+    return deferred.keySet();
+  }
+
+  /**
+   * @return the type of resource/{type}/... or null for a file at the top
+   */
+  String getType(String name) {
+    int begin = src.length() + 1;
+    int end = name.indexOf('/', begin);
+    return (end < 0) ? null : name.substring(begin, end);
+  }
+
+  static String stamp(ZipEntry entry) {
+    return String.format("%x:%d", entry.getCrc(), entry.getSize());
+  }
+
+  static String stamp(File file) throws IOException {
+    return String.format("%x:%d", crc(file), file.length());
+  }
+
+  /**
+   * an entry is extracted if its file is missing, or the jar has a different
+   * version of it than the one extracted and the file was not changed since
+   */
+  boolean isChanged(ZipEntry entry) throws IOException {
+    String name = entry.getName();
+    File target = new File(dst, name);
+    if (!target.exists()) {
+      return true;
+    }
+    String stamp = stamp(entry);
+    String recorded = manifest.getProperty(name);
+    if (recorded == null) {
+      // there before the manifest - it may be stale or the user's, so it is
+      // kept, and recorded as what it is - not as the jar's version - so the
+      // next version of the jar replaces it unless it is changed meanwhile
+      recorded = stamp(target);
+      manifest.setProperty(name, recorded);
+      if (recorded.equals(stamp)) {
+        ++unchanged;
+      } else {
+        ++kept;
+      }
+      return false;
+    }
+    if (recorded.equals(stamp)) {
+      ++unchanged;
+      return false;
+    }
+    if (isExtracted(target, recorded)) {
+      return true;
+    }
+    log.warn("{} was changed since it was extracted - not replacing it with the new version in {}", target, jar.getName());
+    // warned once - the file is the user's now
+    manifest.setProperty(name, stamp);
+    ++kept;
+    return false;
+  }
+
+  /**
+   * @return true if the file is still the version recorded as crc:size
+   */
+  static boolean isExtracted(File file, String recorded) throws IOException {
+    int colon = recorded.indexOf(':');
+    if (colon < 0) {
+      return false;
+    }
+    try {
+      long crc = Long.parseLong(recorded.substring(0, colon), 16);
+      long size = Long.parseLong(recorded.substring(colon + 1));
+      return file.length() == size && crc(file) == crc;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  static long crc(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[8192];
+    try (InputStream is = new FileInputStream(file)) {
+      int n;
+      while ((n = is.read(buffer)) != -1) {
+        crc.update(buffer, 0, n);
+      }
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * stream the entries to their files - one thread per core
+   */
+  int extract(ZipFile zip, List<ZipEntry> entries) {
+    if (entries.size() == 0) {
+      return 0;
+    }
+    int threads = Math.min(entries.size(), java.lang.Runtime.getRuntime().availableProcessors());
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    int count = 0;
+    try {
+      List<Future<ZipEntry>> futures = new ArrayList<>(entries.size());
+      for (ZipEntry entry : entries) {
+        futures.add(pool.submit(() -> {
+          copy(zip, entry);
+          return entry;
+        }));
+      }
+      for (Future<ZipEntry> future : futures) {
+        try {
+          ZipEntry entry = future.get();
+          manifest.setProperty(entry.getName(), stamp(entry));
+          ++count;
+        } catch (ExecutionException e) {
+          log.error("extracting threw", e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      log.warn("extracting {} interrupted", src);
+      Thread.currentThread().interrupt();
+    } finally {
+      pool.shutdownNow();
+    }
+    extracted += count;
+    return count;
+  }
+
+  void copy(ZipFile zip, ZipEntry entry) throws IOException {
+    String name = entry.getName();
+    File target = new File(dst, name);
+    if (!target.getCanonicalPath().startsWith(dst.getCanonicalPath() + File.separator)) {
+      throw new IOException(String.format("not extracting %s outside of %s", name, dst));
+    }
+    File parent = target.getParentFile();
+    if (parent != null) {
+      parent.mkdirs();
+    }
+    log.debug("extracting {} to {}", name, target);
+    try (InputStream is = zip.getInputStream(entry)) {
+      Files.copy(is, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  void loadManifest() {
+    manifest.clear();
+    if (!manifestFile.exists()) {
+      return;
+    }
+    try (InputStream is = new FileInputStream(manifestFile)) {
+      manifest.load(is);
+    } catch (Exception e) {
+      log.warn("could not read {} - extracting all of {}", manifestFile, src, e);
+      manifest.clear();
+    }
+  }
+
+  void saveManifest() {
+    manifestFile.getParentFile().mkdirs();
+    try (OutputStream os = new FileOutputStream(manifestFile)) {
+      manifest.store(os, String.format("extracted from %s", jar.getName()));
+    } catch (Exception e) {
+      log.error("could not save {}", manifestFile, e);
+    }
+  }
+
+  /**
+   * @return entries extracted by this extractor
+   */
+  public int getExtracted() {
+    return extracted;
+  }
+
+}
@@ -0,0 +1,269 @@
+package org.myrobotlab.net;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Per client flow control for a gateway. Counts the bytes handed to the
+ * client's transport which it has not written yet, and when a client falls
+ * behind (pending &gt; maxPending) applies the policy of the topic instead of
+ * queuing more:
+ *
+ * <pre>
+ * LATEST - latest value wins, only the newest message per publisher is held and
+ *          sent when the client catches up
+ * DROP   - dropped
+ * </pre>
+ *
+ * Either can have a minimum interval which caps the rate sent to the client
+ * regardless of how fast the publisher is. Topics without a policy - state,
+ * replies, status .. - are still sent to a client which is behind, so a burst
+ * does not lose them, until its pending bytes pass maxPendingUnlisted. Past
+ * that the client is not catching up and they are dropped too. Nothing here
+ * blocks - a slow client only ever costs the latest message per publisher and
+ * at most maxPendingUnlisted bytes, fast clients and the publishing services
+ * are not affected.
+ *
+ * Topics are the publishing method (e.g. publishWebDisplay), the publisher key
+ * is {sender}.{sendingMethod}.
+ */
+public class FlowControl {
+
+  public enum Policy {
+    LATEST, DROP
+  }
+
+  public static class TopicPolicy {
+
+    public Policy policy;
+
+    public long minIntervalMs;
+
+    public TopicPolicy(Policy policy, long minIntervalMs) {
+      this.policy = policy;
+      this.minIntervalMs = minIntervalMs;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s %d ms", policy, minIntervalMs);
+    }
+  }
+
+  static class Held {
+    TopicPolicy policy;
+    byte[] data;
+  }
+
+  /**
+   * the transport - must not block
+   */
+  final Consumer<byte[]> sink;
+
+  /**
+   * topic policies - shared with the gateway, read only here
+   */
+  final Map<String, TopicPolicy> policies;
+
+  final long maxPending;
+
+  /**
+   * pending bytes past which topics without a policy are dropped
+   */
+  final long maxPendingUnlisted;
+
+  final AtomicLong pending = new AtomicLong();
+
+  final LinkedHashMap<String, Held> held = new LinkedHashMap<>();
+
+  final Map<String, Long> lastSent = new HashMap<>();
+
+  long sent;
+
+  long coalesced;
+
+  long dropped;
+
+  // the transport may deliver on the sending thread
+  boolean flushing;
+
+  /**
+   * topics without a policy are dropped past 4 x maxPending
+   *
+   * @param sink
+   *          the transport - must not block
+   * @param policies
+   *          topic policies
+   * @param maxPending
+   *          bytes pending before the client is behind
+   */
+  public FlowControl(Consumer<byte[]> sink, Map<String, TopicPolicy> policies, long maxPending) {
+    this(sink, policies, maxPending, maxPending * 4);
+  }
+
+  /**
+   * @param sink
+   *          the transport - must not block
+   * @param policies
+   *          topic policies
+   * @param maxPending
+   *          bytes pending before the client is behind
+   * @param maxPendingUnlisted
+   *          bytes pending past which topics without a policy are dropped
+   */
+  public FlowControl(Consumer<byte[]> sink, Map<String, TopicPolicy> policies, long maxPending, long maxPendingUnlisted) {
+    this.sink = sink;
+    this.policies = policies;
+    this.maxPending = maxPending;
+    this.maxPendingUnlisted = Math.max(maxPending, maxPendingUnlisted);
+  }
+
+  /**
+   * send or hold or drop data according to the policy of its topic
+   *
+   * @param topic
+   *          publishing method
+   * @param key
+   *          publisher key
+   * @param data
+   *          encoded message
+   * @return true if it was handed to the transport
+   */
+  public synchronized boolean send(String topic, String key, byte[] data) {
+    TopicPolicy policy = (topic == null) ? null : policies.get(topic);
+    if (policy == null) {
+      if (pending.get() > maxPendingUnlisted) {
+        ++dropped;
+        return false;
+      }
+      emit(data);
+      return true;
+    }
+
+    if (!isCongested() && intervalElapsed(key, policy, System.currentTimeMillis())) {
+      // a newer value supersedes anything held
+      if (held.remove(key) != null) {
+        ++coalesced;
+      }
+      emit(key, data);
+      return true;
+    }
+
+    if (policy.policy == Policy.DROP) {
+      ++dropped;
+      return false;
+    }
+
+    Held h = held.get(key);
+    if (h == null) {
+      h = new Held();
+      held.put(key, h);
+    } else {
+      ++coalesced;
+    }
+    h.policy = policy;
+    h.data = data;
+    return false;
+  }
+
+  /**
+   * the transport wrote data to the client
+   *
+   * @param bytes
+   *          size written
+   */
+  public void delivered(int bytes) {
+    // never below 0 - writes of data sent before a reset are still reported
+    pending.accumulateAndGet(bytes, (p, b) -> Math.max(0, p - b));
+    flush();
+  }
+
+  /**
+   * the transport lost what it had not written - on transport errors and
+   * reconnects - nothing is pending any more, held messages can go
+   */
+  public void reset() {
+    pending.set(0);
+    flush();
+  }
+
+  /**
+   * send held messages which can go now - called on delivery and periodically
+   * by the gateway for rate capped topics nothing else triggers
+   */
+  public synchronized void flush() {
+    if (held.isEmpty() || flushing) {
+      return;
+    }
+    flushing = true;
+    try {
+      long now = System.currentTimeMillis();
+      Iterator<Map.Entry<String, Held>> it = held.entrySet().iterator();
+      while (it.hasNext() && !isCongested()) {
+        Map.Entry<String, Held> entry = it.next();
+        Held h = entry.getValue();
+        if (intervalElapsed(entry.getKey(), h.policy, now)) {
+          it.remove();
+          emit(entry.getKey(), h.data);
+        }
+      }
+    } finally {
+      flushing = false;
+    }
+  }
+
+  boolean intervalElapsed(String key, TopicPolicy policy, long now) {
+    if (policy.minIntervalMs <= 0) {
+      return true;
+    }
+    Long last = lastSent.get(key);
+    return last == null || now - last >= policy.minIntervalMs;
+  }
+
+  void emit(String key, byte[] data) {
+    if (key != null) {
+      lastSent.put(key, System.currentTimeMillis());
+    }
+    emit(data);
+  }
+
+  void emit(byte[] data) {
+    pending.addAndGet(data.length);
+    ++sent;
+    sink.accept(data);
+  }
+
+  public boolean isCongested() {
+    return pending.get() > maxPending;
+  }
+
+  public long getPending() {
+    return pending.get();
+  }
+
+  public synchronized int getHeld() {
+    return held.size();
+  }
+
+  public synchronized long getSent() {
+    return sent;
+  }
+
+  public synchronized long getCoalesced() {
+    return coalesced;
+  }
+
+  public synchronized long getDropped() {
+    return dropped;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("pending %d bytes held %d sent %d coalesced %d dropped %d", pending.get(), held.size(), sent, coalesced, dropped);
+  }
+
+}
@@ -0,0 +1,287 @@
+package org.myrobotlab.net;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+import org.myrobotlab.image.SerializableImage;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * One mjpeg feed and the http clients watching it. Each frame is jpeg encoded
+ * once, the read only buffers of the encoded frame are shared by all clients
+ * and written with a gathering write - part header, jpeg and part end in one
+ * call, no copies.
+ *
+ * Every client has its own sender thread and holds only the newest frame it
+ * has not sent yet. A slow client skips ahead to the newest frame when it is
+ * ready again, it never holds up the feed or the other clients.
+ */
+public class MjpegBroadcaster {
+
+  public final static Logger log = LoggerFactory.getLogger(MjpegBroadcaster.class);
+
+  static final String BOUNDARY = "--BoundaryString";
+
+  static final byte[] RESPONSE_HEADER = ("HTTP/1.0 200 OK\r\n" + "Server: myrobotlab\r\n" + "Connection: close\r\n" + "Max-Age: 0\r\n" + "Expires: 0\r\n"
+      + "Cache-Control: no-cache, private\r\n" + "Pragma: no-cache\r\n" + "Content-Type: multipart/x-mixed-replace; boundary=" + BOUNDARY + "\r\n\r\n")
+          .getBytes(StandardCharsets.US_ASCII);
+
+  static final ByteBuffer PART_END = ByteBuffer.wrap("\r\n\r\n".getBytes(StandardCharsets.US_ASCII)).asReadOnlyBuffer();
+
+  /**
+   * a frame encoded once - immutable, shared by all clients
+   */
+  public static class EncodedFrame {
+
+    public final int frameIndex;
+
+    final ByteBuffer header;
+
+    final ByteBuffer jpeg;
+
+    EncodedFrame(int frameIndex, byte[] jpeg) {
+      this.frameIndex = frameIndex;
+      header = ByteBuffer.wrap(String.format("%s\r\nContent-Type: image/jpeg\r\nContent-Length: %d\r\n\r\n", BOUNDARY, jpeg.length).getBytes(StandardCharsets.US_ASCII))
+          .asReadOnlyBuffer();
+      this.jpeg = ByteBuffer.wrap(jpeg).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return the buffers of one part - each client gets its own positions
+     */
+    ByteBuffer[] buffers() {
+      return new ByteBuffer[] { header.duplicate(), jpeg.duplicate(), PART_END.duplicate() };
+    }
+
+    public int size() {
+      return jpeg.capacity();
+    }
+  }
+
+  class Client implements Runnable {
+
+    final Socket socket;
+
+    final WritableByteChannel channel;
+
+    /**
+     * newest frame not sent yet
+     */
+    EncodedFrame next;
+
+    boolean closed = false;
+
+    long sent;
+
+    long skipped;
+
+    Client(Socket socket) throws IOException {
+      this.socket = socket;
+      // sockets not accepted through a channel fall back to a plain stream
+      channel = (socket.getChannel() != null) ? socket.getChannel() : Channels.newChannel(socket.getOutputStream());
+    }
+
+    synchronized void offer(EncodedFrame frame) {
+      if (next != null) {
+        ++skipped;
+      }
+      next = frame;
+      notifyAll();
+    }
+
+    synchronized EncodedFrame take() throws InterruptedException {
+      while (next == null && !closed) {
+        wait();
+      }
+      EncodedFrame frame = next;
+      next = null;
+      return frame;
+    }
+
+    void write(ByteBuffer[] buffers) throws IOException {
+      if (channel instanceof GatheringByteChannel) {
+        long remaining = 0;
+        for (ByteBuffer b : buffers) {
+          remaining += b.remaining();
+        }
+        while (remaining > 0) {
+          remaining -= ((GatheringByteChannel) channel).write(buffers);
+        }
+      } else {
+        for (ByteBuffer b : buffers) {
+          while (b.hasRemaining()) {
+            channel.write(b);
+          }
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      try {
+        write(new ByteBuffer[] { ByteBuffer.wrap(RESPONSE_HEADER) });
+        EncodedFrame frame;
+        while ((frame = take()) != null) {
+          write(frame.buffers());
+          ++sent;
+        }
+      } catch (InterruptedException e) {
+      } catch (IOException e) {
+        log.info("{} client {} gone - {}", feed, socket.getRemoteSocketAddress(), e.getMessage());
+      }
+      log.info("{} client {} sent {} frames skipped {}", feed, socket.getRemoteSocketAddress(), sent, skipped);
+      clients.remove(this);
+      close();
+    }
+
+    void close() {
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+      try {
+        socket.close();
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  final String feed;
+
+  final List<Client> clients = new CopyOnWriteArrayList<>();
+
+  final ByteArrayOutputStream bos = new ByteArrayOutputStream(64 * 1024);
+
+  ImageWriter writer;
+
+  ImageWriteParam param;
+
+  /**
+   * last frame encoded - new clients start with it
+   */
+  volatile EncodedFrame last;
+
+  /**
+   * @param feed
+   *          name of the feed
+   * @param quality
+   *          jpeg quality 0.0 - 1.0
+   */
+  public MjpegBroadcaster(String feed, float quality) {
+    this.feed = feed;
+    writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    param = writer.getDefaultWriteParam();
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    setQuality(quality);
+  }
+
+  public synchronized void setQuality(float quality) {
+    param.setCompressionQuality(Math.max(0.0f, Math.min(1.0f, quality)));
+  }
+
+  public synchronized float getQuality() {
+    return param.getCompressionQuality();
+  }
+
+  /**
+   * start streaming to a new http client
+   *
+   * @param socket
+   *          socket of the client
+   * @throws IOException
+   *           e
+   */
+  public void addClient(Socket socket) throws IOException {
+    Client client = new Client(socket);
+    clients.add(client);
+    if (last != null) {
+      client.offer(last);
+    }
+    Thread t = new Thread(client, String.format("stream_%s_%s", feed, socket.getRemoteSocketAddress()));
+    t.setDaemon(true);
+    t.start();
+  }
+
+  /**
+   * encode a frame once and hand it to every client - never waits for a client
+   *
+   * @param si
+   *          the frame
+   * @return the encoded frame or null if no one is watching
+   * @throws IOException
+   *           e
+   */
+  public EncodedFrame publish(SerializableImage si) throws IOException {
+    if (clients.size() == 0) {
+      return null;
+    }
+    EncodedFrame frame = encode(si);
+    if (frame == null) {
+      return null;
+    }
+    last = frame;
+    for (Client client : clients) {
+      client.offer(frame);
+    }
+    return frame;
+  }
+
+  synchronized EncodedFrame encode(SerializableImage si) throws IOException {
+    BufferedImage image = si.getImage();
+    if (image == null) {
+      log.warn("{} frame {} has no image", feed, si.frameIndex);
+      return null;
+    }
+    if (image.getColorModel().hasAlpha()) {
+      // jpeg has no alpha
+      BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+      Graphics2D g = rgb.createGraphics();
+      g.drawImage(image, 0, 0, null);
+      g.dispose();
+      image = rgb;
+    }
+    bos.reset();
+    MemoryCacheImageOutputStream ios = new MemoryCacheImageOutputStream(bos);
+    writer.setOutput(ios);
+    writer.write(null, new IIOImage(image, null, null), param);
+    ios.close();
+    return new EncodedFrame(si.frameIndex, bos.toByteArray());
+  }
+
+  public int getClientCount() {
+    return clients.size();
+  }
+
+  public String getFeed() {
+    return feed;
+  }
+
+  /**
+   * disconnect all clients
+   */
+  public synchronized void close() {
+    for (Client client : clients) {
+      client.close();
+    }
+    clients.clear();
+    last = null;
+  }
+
+}
@@ -2,15 +2,11 @@ package org.myrobotlab.net;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.Socket;
-import java.util.ArrayList;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.image.SerializableImage;
 import org.myrobotlab.logging.Level;
@@ -28,98 +24,20 @@ import org.slf4j.Logger;
  *         http://www.servlets.com/cos/
  *         http://www.damonkohler.com/2010/10/mjpeg-streaming-protocol.html
  * 
+ *         each feed is a MjpegBroadcaster - frames are jpeg encoded once per
+ *         feed and shared by all of its clients
+ * 
  */
 public class MjpegServer extends NanoHTTPD {
 
-  public class Connection {
-    boolean initialized = false;
-    Socket socket;
-    OutputStream os;
-
-    public Connection(Socket socket) throws IOException {
-      this.socket = socket;
-      os = socket.getOutputStream();
-    }
-
-    public void close() {
-      try {
-        socket.close();
-        socket = null;
-      } catch (IOException e) {
-      }
-    }
-  }
-
-  public class VideoWebClient extends Thread {
-    String feed;
-    ArrayList<Connection> connections = new ArrayList<Connection>();
-    BlockingQueue<SerializableImage> videoFeed;
-
-    VideoWebClient(BlockingQueue<SerializableImage> videoFeed, String feed, Socket socket) throws IOException {
-      // super(String.format("stream_%s:%s",
-      // socket.getInetAddress().getHostAddress(), socket.getPort()));
-      super(String.format("stream_%s", feed));
-      this.videoFeed = videoFeed;
-      this.feed = feed;
-      connections.add(new Connection(socket));
-    }
-
-    // TODO - look into buffered output stream
-    @Override
-    public void run() {
-      try {
-        while (true) {
-          SerializableImage frame = videoFeed.take();
-          // ++frameIndex;
-          // log.info("frame {}", frameIndex);
-          Logging.logTime(String.format("Mjpeg frameIndex %d %d", frame.frameIndex, System.currentTimeMillis()));
-          for (Iterator<Connection> iterator = connections.iterator(); iterator.hasNext();) {
-            Connection c = iterator.next();
-
-            try {
-
-              if (!c.initialized) {
-                c.os.write(
-                    ("HTTP/1.0 200 OK\r\n" + "Server: YourServerName\r\n" + "Connection: close\r\n" + "Max-Age: 0\r\n" + "Expires: 0\r\n" + "Cache-Control: no-cache, private\r\n"
-                        + "Pragma: no-cache\r\n" + "Content-Type: multipart/x-mixed-replace; " + "boundary=--BoundaryString\r\n\r\n").getBytes());
-                c.initialized = true;
-              }
-
-              byte[] bytes = frame.getBytes();
-
-              // begin jpg
-              c.os.write(("--BoundaryString\r\n" + "Content-type: image/jpg\r\n" + "Content-Length: " + bytes.length + "\r\n\r\n").getBytes());
-              // write the jpg
-              c.os.write(bytes);
-
-              // end
-              c.os.write("\r\n\r\n".getBytes());
-
-              // flush or not to flush that is the question
-              c.os.flush();
-              Logging.logTime(String.format("Mjpeg frameIndex %d %d SENT", frame.frameIndex, System.currentTimeMillis()));
-            } catch (Exception e) {
-              Logging.logError(e);
-              log.info("removing socket");
-              iterator.remove();
-              c.close();
-            }
-
-          } // for each socket
-        }
-      } catch (Exception e) {
-        // FIXME remove socket from list - continue to run
-        Logging.logError(e);
-      }
-
-    }
-  }
-
   public final static Logger log = LoggerFactory.getLogger(MjpegServer.class.getCanonicalName());
 
-  transient public HashMap<String, BlockingQueue<SerializableImage>> videoFeeds = new HashMap<String, BlockingQueue<SerializableImage>>();
+  transient public Map<String, MjpegBroadcaster> videoFeeds = new ConcurrentHashMap<String, MjpegBroadcaster>();
 
-  transient public HashMap<String, VideoWebClient> clients = new HashMap<String, VideoWebClient>();
+  /**
+   * jpeg quality of the feeds 0.0 - 1.0
+   */
+  float quality = 0.8f;
 
   public static void main(String[] args) {
     try {
@@ -138,6 +56,42 @@ public class MjpegServer extends NanoHTTPD {
     super(port);
   }
 
+  /**
+   * publish a frame to the feed named by the image's source - the feed is
+   * created on its first frame
+   * 
+   * @param si
+   *          the frame
+   * @throws IOException
+   *           e
+   */
+  public void publish(SerializableImage si) throws IOException {
+    MjpegBroadcaster feed = videoFeeds.get(si.getSource());
+    if (feed == null) {
+      feed = videoFeeds.computeIfAbsent(si.getSource(), k -> new MjpegBroadcaster(k, quality));
+    }
+    feed.publish(si);
+  }
+
+  public void setQuality(float quality) {
+    this.quality = quality;
+    for (MjpegBroadcaster feed : videoFeeds.values()) {
+      feed.setQuality(quality);
+    }
+  }
+
+  public float getQuality() {
+    return quality;
+  }
+
+  @Override
+  public void stop() {
+    super.stop();
+    for (MjpegBroadcaster feed : videoFeeds.values()) {
+      feed.close();
+    }
+  }
+
   @Override
   public Response serve(String uri, String method, Properties header, Properties parms, Socket socket) {
     log.info(method + " '" + uri + "' ");
@@ -167,7 +121,7 @@ public class MjpegServer extends NanoHTTPD {
 
     if (!videoFeeds.containsKey(feed)) {
       StringBuffer response = new StringBuffer(String.format("<html><body align=center>video feeds<br/>", feed));
-      for (Map.Entry<String, BlockingQueue<SerializableImage>> o : videoFeeds.entrySet()) {
+      for (Map.Entry<String, MjpegBroadcaster> o : videoFeeds.entrySet()) {
         // Map.Entry<String,SerializableImage> pairs = o;
         // response.append(String.format("<a href=\"http://%\" >%s</a><br/>",
         // o.getKey()));
@@ -181,9 +135,7 @@ public class MjpegServer extends NanoHTTPD {
       return new Response(HTTP_OK, MIME_HTML, response.toString());
     } else {
       try {
-        VideoWebClient client = new VideoWebClient(videoFeeds.get(feed), feed, socket);
-        client.start();
-        clients.put(feed, client);
+        videoFeeds.get(feed).addClient(socket);
       } catch (IOException e1) {
         Logging.logError(e1);
       }
@@ -35,9 +35,11 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URLEncoder;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -700,7 +702,9 @@ public class NanoHTTPD {
 
   public void start() throws IOException {
     if (thread == null) {
-      serverSocket = new ServerSocket(myTcpPort);
+      // opened through a channel so accepted sockets have a SocketChannel
+      // derived servers can do gathering writes on
+      serverSocket = ServerSocketChannel.open().bind(new InetSocketAddress(myTcpPort)).socket();
       thread = new Thread(new Runnable() {
         @Override
         public void run() {
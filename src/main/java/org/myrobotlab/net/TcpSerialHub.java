@@ -159,4 +159,19 @@ public class TcpSerialHub implements Runnable {
     }
   }
 
+  /**
+   * a whole chunk of rx data - one write per client
+   * 
+   * @param data
+   *          received bytes
+   * @throws IOException
+   *           boom
+   */
+  public void broadcast(byte[] data) throws IOException {
+    for (TcpThread client : clients) {
+      OutputStream out = client.socket.getOutputStream();
+      out.write(data);
+    }
+  }
+
 }
\ No newline at end of file
@@ -38,6 +38,12 @@ public class WsClient implements Decoder<String, Reader> {
   protected transient Client client = null;
   protected transient Set<RemoteMessageHandler> handlers = new HashSet<>();
 
+  /**
+   * codec to ask the remote gateway for - e.g. BinaryCodec.NAME, null for json
+   * only
+   */
+  public String codec = null;
+
   public static AsyncHttpClient getAsyncClient() {
     // Netty Config ..
     NettyAsyncHttpProviderConfig nettyConfig = new NettyAsyncHttpProviderConfig();
@@ -59,6 +65,19 @@ public class WsClient implements Decoder<String, Reader> {
     return asc;
   }
 
+  /**
+   * @param url
+   *          url with or without a query string
+   * @param name
+   *          parameter name
+   * @param value
+   *          parameter value
+   * @return the url with the parameter appended to its query string
+   */
+  static String addParameter(String url, String name, String value) {
+    return String.format("%s%s%s=%s", url, (url.indexOf('?') < 0) ? "?" : "&", name, value);
+  }
+
   public Connection connect(RemoteMessageHandler handler, String gatewayFullName, String srcId, String url) {
     try {
 
@@ -68,7 +87,11 @@ public class WsClient implements Decoder<String, Reader> {
       }
 
       if (!url.contains("id=")) {
-        url += "?id=" + srcId;
+        url = addParameter(url, "id", srcId);
+      }
+
+      if (codec != null && !url.contains("codec=")) {
+        url = addParameter(url, "codec", codec);
       }
 
       this.handlers.add(handler);
@@ -0,0 +1,281 @@
+package org.myrobotlab.opencv;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.bytedeco.opencv.opencv_core.IplImage;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Runs the heavy detectors of filters (dnn, cascades ..) off the video thread.
+ * There is one executor for the whole process, so the number of inferences
+ * running at the same time is bounded over all OpenCV services and filters.
+ *
+ * A filter owns an AsyncDetector and submits every frame to it. Only the
+ * newest frame waits - a frame still waiting when a newer one comes is
+ * dropped. The latest result is latched and the filter puts it on the frame
+ * it is processing, with the index of the frame the detection ran on.
+ */
+public class DetectorExecutor {
+
+  public final static Logger log = LoggerFactory.getLogger(DetectorExecutor.class);
+
+  /**
+   * a detection on a copy of a frame - the copy is released when detect
+   * returns, a detector must not keep it
+   *
+   * @param <R>
+   *          result type
+   */
+  public interface Detector<R> {
+    R detect(IplImage image, int frameIndex) throws Exception;
+  }
+
+  /**
+   * a latched result and the frame it came from
+   *
+   * @param <R>
+   *          result type
+   */
+  public static class Result<R> {
+    /**
+     * index of the frame the detection ran on
+     */
+    public final int frameIndex;
+    /**
+     * ts of the frame the detection ran on
+     */
+    public final long frameTs;
+    /**
+     * when the detection finished
+     */
+    public final long ts;
+    public final R value;
+
+    Result(int frameIndex, long frameTs, R value) {
+      this.frameIndex = frameIndex;
+      this.frameTs = frameTs;
+      this.value = value;
+      ts = System.currentTimeMillis();
+    }
+
+    public long getLatency() {
+      return ts - frameTs;
+    }
+  }
+
+  static class Job {
+    final IplImage image;
+    final int frameIndex;
+    final long ts;
+
+    Job(IplImage image, int frameIndex, long ts) {
+      this.image = image;
+      this.frameIndex = frameIndex;
+      this.ts = ts;
+    }
+  }
+
+  /**
+   * the detector of one filter - at most one detection runs and one frame
+   * waits
+   *
+   * @param <R>
+   *          result type
+   */
+  public static class AsyncDetector<R> {
+
+    final String name;
+
+    final Detector<R> detector;
+
+    /**
+     * key part the latched result is put under in OpenCVData
+     */
+    final String resultKey;
+
+    Consumer<Result<R>> onResult;
+
+    Job pending;
+
+    boolean scheduled = false;
+
+    volatile Result<R> latest;
+
+    long submitted;
+
+    long dropped;
+
+    long detected;
+
+    /**
+     * @param name
+     *          name for logging e.g. the filter's name
+     * @param keyPart
+     *          the result is put in OpenCVData under keyPart + "Result"
+     * @param detector
+     *          the detection
+     */
+    public AsyncDetector(String name, String keyPart, Detector<R> detector) {
+      this.name = name;
+      this.detector = detector;
+      resultKey = keyPart + "Result";
+    }
+
+    /**
+     * @param onResult
+     *          called on the executor thread with every new result
+     */
+    public void setOnResult(Consumer<Result<R>> onResult) {
+      this.onResult = onResult;
+    }
+
+    /**
+     * queue a copy of the frame - replaces a frame still waiting
+     *
+     * @param image
+     *          the frame - copied, the caller keeps it
+     * @param frameIndex
+     *          index of the frame
+     */
+    public void submit(IplImage image, int frameIndex) {
+      IplImage copy = image.clone();
+      synchronized (this) {
+        ++submitted;
+        if (pending != null) {
+          ++dropped;
+          pending.image.release();
+        }
+        pending = new Job(copy, frameIndex, System.currentTimeMillis());
+        if (!scheduled) {
+          scheduled = true;
+          executor.execute(this::runOne);
+        }
+      }
+    }
+
+    /**
+     * runs one job - a newer frame goes to the back of the executor's queue so
+     * a fast camera can not keep a thread to itself
+     */
+    void runOne() {
+      Job job;
+      synchronized (this) {
+        job = pending;
+        pending = null;
+      }
+      if (job != null) {
+        try {
+          Result<R> result = new Result<>(job.frameIndex, job.ts, detector.detect(job.image, job.frameIndex));
+          latest = result;
+          synchronized (this) {
+            ++detected;
+          }
+          if (onResult != null) {
+            onResult.accept(result);
+          }
+        } catch (Exception e) {
+          log.error("{} detection of frame {} threw", name, job.frameIndex, e);
+        } finally {
+          job.image.release();
+        }
+      }
+      synchronized (this) {
+        if (pending != null) {
+          executor.execute(this::runOne);
+        } else {
+          scheduled = false;
+        }
+      }
+    }
+
+    /**
+     * @return the latest result or null
+     */
+    public Result<R> getResult() {
+      return latest;
+    }
+
+    /**
+     * put the latest result on a frame
+     *
+     * @param data
+     *          the frame being processed
+     * @return the latest result or null
+     */
+    public Result<R> latch(OpenCVData data) {
+      Result<R> result = latest;
+      if (result != null && data != null) {
+        data.put(resultKey, result);
+      }
+      return result;
+    }
+
+    /**
+     * drop the waiting frame and the latched result
+     */
+    public synchronized void clear() {
+      if (pending != null) {
+        pending.image.release();
+        pending = null;
+      }
+      latest = null;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return String.format("%s submitted %d dropped %d detected %d", name, submitted, dropped, detected);
+    }
+  }
+
+  static final ThreadPoolExecutor executor;
+
+  static {
+    int threads = Math.max(1, java.lang.Runtime.getRuntime().availableProcessors() / 2);
+    AtomicInteger count = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      Thread t = new Thread(r, String.format("opencv-detector-%d", count.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    };
+    executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @param maxConcurrent
+   *          detections running at the same time in this process
+   */
+  public static void setMaxConcurrent(int maxConcurrent) {
+    if (maxConcurrent < 1) {
+      log.error("max concurrent detections must be at least 1 - not {}", maxConcurrent);
+      return;
+    }
+    synchronized (executor) {
+      if (maxConcurrent > executor.getMaximumPoolSize()) {
+        executor.setMaximumPoolSize(maxConcurrent);
+        executor.setCorePoolSize(maxConcurrent);
+      } else {
+        executor.setCorePoolSize(maxConcurrent);
+        executor.setMaximumPoolSize(maxConcurrent);
+      }
+    }
+  }
+
+  public static int getMaxConcurrent() {
+    return executor.getMaximumPoolSize();
+  }
+
+  /**
+   * @return detections running now
+   */
+  public static int getActiveCount() {
+    return executor.getActiveCount();
+  }
+
+}
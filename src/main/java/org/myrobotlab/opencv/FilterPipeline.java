@@ -0,0 +1,255 @@
+package org.myrobotlab.opencv;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.OpenCV;
+import org.slf4j.Logger;
+
+/**
+ * Pipelined execution of the OpenCV filters. The enabled filters of each frame
+ * are split into contiguous groups, each group runs on its own stage thread
+ * and a last stage does the output (display, publishing, recording). Stages
+ * hand frames to the next stage through small bounded queues, so while the
+ * last stage publishes frame N the filters work on N+1, N+2 .. and the capture
+ * thread is already grabbing the next one. Throughput is limited by the
+ * slowest stage instead of the sum of all of them.
+ *
+ * When a stage can not keep up, either the stage before it waits (the default
+ * - back pressure up to the camera) or, with dropFrames, the frame is dropped
+ * at the full stage and the camera never stalls.
+ *
+ * Frames stay in order. A filter is only ever run by one stage at a time, even
+ * while the filter list changes.
+ */
+public class FilterPipeline {
+
+  public final static Logger log = LoggerFactory.getLogger(FilterPipeline.class);
+
+  /**
+   * timing of a stage
+   */
+  public static class StageStats implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public String name;
+    public long frames;
+    public long dropped;
+    /**
+     * moving average of the processing time of a frame
+     */
+    public double avgMs;
+    public long maxMs;
+    public int queued;
+
+    @Override
+    public String toString() {
+      return String.format("%s frames %d dropped %d avg %.2f ms max %d ms queued %d", name, frames, dropped, avgMs, maxMs, queued);
+    }
+  }
+
+  static class Job {
+    OpenCVData data;
+    List<OpenCVFilter> filters;
+
+    Job(OpenCVData data, List<OpenCVFilter> filters) {
+      this.data = data;
+      this.filters = filters;
+    }
+  }
+
+  class Stage implements Runnable {
+
+    final int index;
+
+    final BlockingQueue<Job> queue;
+
+    final StageStats stats = new StageStats();
+
+    Thread thread;
+
+    Stage(int index, int queueSize) {
+      this.index = index;
+      queue = new ArrayBlockingQueue<>(queueSize);
+      stats.name = (index == filterStages) ? "output" : String.format("stage %d", index);
+    }
+
+    boolean isOutput() {
+      return index == filterStages;
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        Job job;
+        try {
+          job = queue.take();
+        } catch (InterruptedException e) {
+          break;
+        }
+        long start = System.nanoTime();
+        try {
+          if (isOutput()) {
+            opencv.processOutput(job.data);
+          } else {
+            int n = job.filters.size();
+            for (int i = index * n / filterStages; i < (index + 1) * n / filterStages; ++i) {
+              opencv.processFilter(job.filters.get(i), job.data);
+            }
+          }
+        } catch (InterruptedException e) {
+          if (!isOutput()) {
+            discard(job);
+          }
+          break;
+        } catch (Exception e) {
+          log.error("{} {} threw", opencv.getName(), stats.name, e);
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+        synchronized (stats) {
+          ++stats.frames;
+          stats.avgMs = (stats.frames == 1) ? ms : stats.avgMs * 0.9 + ms * 0.1;
+          stats.maxMs = Math.max(stats.maxMs, ms);
+        }
+        if (!isOutput()) {
+          try {
+            forward(index + 1, job);
+          } catch (InterruptedException e) {
+            discard(job);
+            break;
+          }
+        }
+      }
+    }
+  }
+
+  final OpenCV opencv;
+
+  final int filterStages;
+
+  final boolean dropFrames;
+
+  final Stage[] stages;
+
+  volatile boolean running = false;
+
+  /**
+   * @param opencv
+   *          the service whose filters are run
+   * @param filterStages
+   *          number of filter stages - filters are split evenly between them
+   * @param queueSize
+   *          frames waiting in front of each stage
+   * @param dropFrames
+   *          drop frames at a full stage instead of waiting
+   */
+  public FilterPipeline(OpenCV opencv, int filterStages, int queueSize, boolean dropFrames) {
+    this.opencv = opencv;
+    this.filterStages = filterStages;
+    this.dropFrames = dropFrames;
+    stages = new Stage[filterStages + 1];
+    for (int i = 0; i < stages.length; ++i) {
+      stages[i] = new Stage(i, queueSize);
+    }
+  }
+
+  public void start() {
+    running = true;
+    for (Stage stage : stages) {
+      stage.thread = new Thread(stage, String.format("%s-pipeline-%s", opencv.getName(), stage.stats.name.replace(" ", "-")));
+      stage.thread.start();
+    }
+  }
+
+  /**
+   * stops the stages - frames still queued or held by a filter stage are
+   * discarded and their copies closed
+   */
+  public void stop() {
+    running = false;
+    for (Stage stage : stages) {
+      if (stage.thread != null) {
+        stage.thread.interrupt();
+      }
+    }
+    for (Stage stage : stages) {
+      try {
+        if (stage.thread != null) {
+          stage.thread.join(1000);
+        }
+      } catch (InterruptedException e) {
+        break;
+      }
+      Job job;
+      while ((job = stage.queue.poll()) != null) {
+        discard(job);
+      }
+    }
+  }
+
+  /**
+   * a new frame from the capture thread
+   *
+   * @param data
+   *          the frame - its images must not be reused by the grabber
+   * @param filters
+   *          the enabled filters for this frame, in order
+   * @return false if the frame was dropped
+   * @throws InterruptedException
+   *           e
+   */
+  public boolean submit(OpenCVData data, List<OpenCVFilter> filters) throws InterruptedException {
+    return forward(0, new Job(data, filters));
+  }
+
+  boolean forward(int index, Job job) throws InterruptedException {
+    Stage next = stages[index];
+    if (!dropFrames) {
+      next.queue.put(job);
+      return true;
+    }
+    if (next.queue.offer(job)) {
+      return true;
+    }
+    synchronized (next.stats) {
+      ++next.stats.dropped;
+    }
+    discard(job);
+    opencv.recycle(job.data);
+    return false;
+  }
+
+  /**
+   * a frame which never reached the output - never published, so nothing else
+   * has it and its copies can be closed
+   */
+  void discard(Job job) {
+    job.data.dispose();
+    job.data.release();
+  }
+
+  public List<StageStats> getStats() {
+    List<StageStats> ret = new ArrayList<>();
+    for (Stage stage : stages) {
+      StageStats s = new StageStats();
+      synchronized (stage.stats) {
+        s.name = stage.stats.name;
+        s.frames = stage.stats.frames;
+        s.dropped = stage.stats.dropped;
+        s.avgMs = stage.stats.avgMs;
+        s.maxMs = stage.stats.maxMs;
+      }
+      s.queued = stage.queue.size();
+      ret.add(s);
+    }
+    return ret;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+}
@@ -8,11 +8,12 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.TreeSet;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -57,6 +58,10 @@ import org.slf4j.Logger;
  * of pipeline data. The input Frame for example will have the key
  * <b><i>opencv.input.Frame</i></b>
  * 
+ * The keys are registered once in the service's OpenCVDataKeys and the values
+ * are kept in an array indexed by the key's slot, so a frame does not build or
+ * hash key strings. Frames of a service can be recycled with reset.
+ * 
  * Data from the filters is captured typically in non-graphic form, then for a
  * display it is added to the Java Graphics2D of the display BufferedImage.
  * 
@@ -145,10 +150,20 @@ public class OpenCVData extends CvData {
   private String selectedFilter = INPUT_KEY;
 
   /**
-   * all non-serializable data including frames an IplImages It will also
-   * contain a global source set of keys
+   * all non-serializable data including frames an IplImages - indexed by the
+   * slots of keys
+   */
+  transient Object[] sources = new Object[0];
+
+  /**
+   * the key slots of the service
+   */
+  transient OpenCVDataKeys keys;
+
+  /**
+   * native copies made for this frame only - closed by release
    */
-  transient final Map<String, Object> sources = new TreeMap<>();
+  transient List<AutoCloseable> owned = new ArrayList<>();
 
   protected long timestamp;
 
@@ -163,22 +178,84 @@ public class OpenCVData extends CvData {
 
   public OpenCVData(String name, long frameStartTs, int frameIndex, Frame frame) {
     this.name = name;
+    reset(frameStartTs, frameIndex, frame);
+  }
+
+  /**
+   * recycle this data for a new frame of the same service - everything put in
+   * for the previous frame is dropped
+   * 
+   * @param frameStartTs
+   *          ts of the new frame
+   * @param frameIndex
+   *          index of the new frame
+   * @param frame
+   *          the new frame
+   */
+  public void reset(long frameStartTs, int frameIndex, Frame frame) {
     this.timestamp = frameStartTs;
     this.frameIndex = frameIndex;
     selectedFilter = INPUT_KEY;
+    filters.clear();
+    g2ds.clear();
+    blurriness = null;
+    detectedText = null;
+
+    int size = keys().size();
+    if (sources == null || sources.length < size) {
+      sources = new Object[size];
+    } else {
+      Arrays.fill(sources, null);
+    }
 
     // before the first filter is added input & output point to the
     // same things
-    sources.put(String.format("%s.input.Frame", name), frame);
-    sources.put(String.format("%s.output.Frame", name), frame);
+    put(keys.inputFrame, frame);
+    put(keys.outputFrame, frame);
 
     IplImage firstImage = OpenCV.toImage(frame);
     if (firstImage == null) {
       log.error("could not convert frame to image !!!!");
     }
-    sources.put(String.format("%s.input.IplImage", name), firstImage);
-    sources.put(String.format("%s.output.IplImage", name), firstImage);
+    put(keys.inputImage, firstImage);
+    put(keys.outputImage, firstImage);
+  }
 
+  /**
+   * @return the key slots of the service which produced this data
+   */
+  public OpenCVDataKeys getKeys() {
+    return keys();
+  }
+
+  OpenCVDataKeys keys() {
+    if (keys == null) {
+      keys = OpenCVDataKeys.get(String.valueOf(name));
+    }
+    return keys;
+  }
+
+  /**
+   * @param slot
+   *          slot from getKeys()
+   * @return value of the slot or null
+   */
+  public Object get(int slot) {
+    return (sources != null && slot < sources.length) ? sources[slot] : null;
+  }
+
+  /**
+   * @param slot
+   *          slot from getKeys()
+   * @param object
+   *          the value
+   */
+  public void put(int slot, Object object) {
+    if (sources == null || slot >= sources.length) {
+      // a key registered after this data was created
+      sources = Arrays.copyOf((sources == null) ? new Object[0] : sources, Math.max(slot + 1, keys().size()));
+    }
+    sources[slot] = object;
   }
 
   /**
@@ -190,16 +267,43 @@ public class OpenCVData extends CvData {
     }
   }
 
+  /**
+   * a native copy made for this frame - e.g. a clone of the grabber's frame -
+   * closed when the frame is released
+   * 
+   * @param resource
+   *          the copy
+   */
+  public void own(AutoCloseable resource) {
+    owned.add(resource);
+  }
+
+  /**
+   * close the copies owned by this frame - only when nothing uses the frame
+   * any more, frames published to subscribers are left to the gc
+   */
+  public void release() {
+    for (AutoCloseable resource : owned) {
+      try {
+        resource.close();
+      } catch (Exception e) {
+        log.warn("closing {} of frame {} threw", resource, frameIndex, e);
+      }
+    }
+    owned.clear();
+  }
+
   public IplImage get(String fullKey) {
-    return (IplImage) sources.get(fullKey);
+    return (IplImage) getObject(fullKey);
   }
 
   public Object getObject(String fullKey) {
-    return sources.get(fullKey);
+    int slot = keys().find(fullKey);
+    return (slot < 0) ? null : get(slot);
   }
 
   public List<Rectangle> getBoundingBoxArray() {
-    return (List) sources.get(String.format("%s.output.BoundingBoxArray", name));
+    return (List) get(keys().outputBoundingBoxArray);
   }
 
   /**
@@ -214,15 +318,15 @@ public class OpenCVData extends CvData {
 
   public BufferedImage getBufferedImage(String filterKey) {
     // search through current sources
-    String key = String.format("%s.BufferedImage", getKeyPrefix(filterKey));
-    BufferedImage image = (BufferedImage) sources.get(key);
+    int slot = keys().slot(getFilterKey(filterKey), "BufferedImage");
+    BufferedImage image = (BufferedImage) get(slot);
 
     if (image != null) {
       // 1st selected ? 2nd output ?
       image = OpenCV.toBufferedImage(getImage(filterKey));
-      sources.put(key, image);
+      put(slot, image);
     }
-    return (BufferedImage) sources.get(key);
+    return (BufferedImage) get(slot);
   }
 
   /**
@@ -241,8 +345,8 @@ public class OpenCVData extends CvData {
    */
   public BufferedImage getDisplay() {
     BufferedImage bi = null;
-    String key = String.format("%s.BufferedImage", getKeyPrefix("output"));
-    if (!sources.containsKey(key)) {
+    int slot = keys().outputBufferedImage;
+    if (get(slot) == null) {
 
       IplImage image = getImage(); // <- should be output or "selected Filter ..
                                    // i guess"
@@ -254,10 +358,10 @@ public class OpenCVData extends CvData {
                                                       // not be buried down
       }
       // cache result
-      sources.put(key, bi);
+      put(slot, bi);
       // put(String.format("%s.display", name), bi);
     }
-    return (BufferedImage) sources.get(key);
+    return (BufferedImage) get(slot);
   }
 
   public Frame getFrame() {
@@ -265,8 +369,7 @@ public class OpenCVData extends CvData {
   }
 
   public Frame getFrame(String filterKey) {
-    String key = String.format("%s.Frame", getKeyPrefix(filterKey));
-    return (Frame) sources.get(key);
+    return (Frame) get(keys().slot(getFilterKey(filterKey), "Frame"));
   }
 
   public int getFrameIndex() {
@@ -300,21 +403,17 @@ public class OpenCVData extends CvData {
   public IplImage getImage(String filterKey) {
 
     // try cumulative output
-    String key = String.format("%s.IplImage", getKeyPrefix(filterKey));
-    if (sources.containsKey(key)) {
-      return (IplImage) sources.get(key);
-    }
-
-    IplImage image = null;
-    if (!sources.containsKey(key)) {
+    int slot = keys().slot(getFilterKey(filterKey), "IplImage");
+    IplImage image = (IplImage) get(slot);
+    if (image == null) {
       image = OpenCV.toImage(getFrame(filterKey));
-      sources.put(key, image);
+      put(slot, image);
     }
-    return (IplImage) sources.get(key);
+    return image;
   }
 
   public Frame getInputFrame() {
-    return (Frame) sources.get(String.format("%s.input.Frame", name));
+    return (Frame) get(keys().inputFrame);
   }
 
   public IplImage getInputImage() {
@@ -322,13 +421,16 @@ public class OpenCVData extends CvData {
   }
 
   public String getKeyPrefix(String filterKey) {
+    return String.format("%s.%s", name, getFilterKey(filterKey));
+  }
+
+  String getFilterKey(String filterKey) {
     if (filterKey == null && selectedFilter != null) {
       filterKey = selectedFilter;
     } else if (filterKey == null && selectedFilter == null) {
       filterKey = "output";
     }
-
-    return String.format("%s.%s", name, filterKey);
+    return filterKey;
   }
 
   /**
@@ -337,7 +439,7 @@ public class OpenCVData extends CvData {
    * @return - the kinect image in opencv form
    */
   public IplImage getKinectDepth() {
-    return (IplImage) sources.get(String.format("%s.depth", OpenCV.INPUT_KEY));
+    return (IplImage) get(keys().kinectDepth);
   }
 
   /**
@@ -346,17 +448,17 @@ public class OpenCVData extends CvData {
    * @return - the kinect rgb image in opencv form
    */
   public IplImage getKinectVideo() {
-    return (IplImage) sources.get(String.format("%s.video", OpenCV.INPUT_KEY));
+    return (IplImage) get(keys().kinectVideo);
   }
 
   public Mat getMat(String filterKey) {
-    String key = String.format("%s.%s.Mat", filterKey, name);
-    Mat image = null;
-    if (!sources.containsKey(key)) {
+    int slot = keys().slot(getFilterKey(filterKey), "Mat");
+    Mat image = (Mat) get(slot);
+    if (image == null) {
       image = OpenCV.toMat(getFrame(filterKey));
-      sources.put(key, image);
+      put(slot, image);
     }
-    return (Mat) sources.get(key);
+    return image;
   }
 
   public String getName() {
@@ -368,7 +470,7 @@ public class OpenCVData extends CvData {
   }
 
   public List<Point2df> getPointArray() {
-    return (List) sources.get(String.format("%s.output.PointArray", name));
+    return (List) get(keys().outputPointArray);
   }
 
   public String getSelectedFilter() {
@@ -396,23 +498,23 @@ public class OpenCVData extends CvData {
   }
 
   public void put(BufferedImage object) {
-    sources.put(String.format("%s.output.BufferedImage", name), object);
-    sources.put(String.format("%s.%s.BufferedImage", name, selectedFilter), object);
+    put(keys().outputBufferedImage, object);
+    put(keys.slot(selectedFilter, "BufferedImage"), object);
   }
 
   public void put(Graphics2D object) {
-    sources.put(String.format("%s.output.Graphics2D", name), object);
-    sources.put(String.format("%s.%s.Graphics2D", name, selectedFilter), object);
+    put(keys().slot(OpenCV.OUTPUT_KEY, "Graphics2D"), object);
+    put(keys.slot(selectedFilter, "Graphics2D"), object);
   }
 
   public void put(IplImage object) {
-    sources.put(String.format("%s.output.IplImage", name), object);
-    sources.put(String.format("%s.%s.IplImage", name, selectedFilter), object);
+    put(keys().outputImage, object);
+    put(keys.slot(selectedFilter, "IplImage"), object);
   }
 
   public void put(Mat object) {
-    sources.put(String.format("%s.output.Mat", name), object);
-    sources.put(String.format("%s.%s.Mat", name, selectedFilter), object);
+    put(keys().slot(OpenCV.OUTPUT_KEY, "Mat"), object);
+    put(keys.slot(selectedFilter, "Mat"), object);
   }
 
   /**
@@ -425,16 +527,16 @@ public class OpenCVData extends CvData {
    *          - the value
    */
   public void put(String keyPart, Object object) {
-    sources.put(String.format("%s.output.%s", name, keyPart), object);
-    sources.put(String.format("%s.%s.%s", name, selectedFilter, keyPart), object);
+    put(keys().slot(OpenCV.OUTPUT_KEY, keyPart), object);
+    put(keys.slot(selectedFilter, keyPart), object);
   }
 
   public void putBoundingBoxArray(List<Rectangle> bb) {
-    sources.put(String.format("%s.output.BoundingBoxArray", name), bb);
+    put(keys().outputBoundingBoxArray, bb);
   }
 
   public void putDisplay(BufferedImage bi) {
-    sources.put(String.format("%s.BufferedImage", getKeyPrefix("output")), bi);
+    put(keys().outputBufferedImage, bi);
   }
 
   /**
@@ -447,17 +549,25 @@ public class OpenCVData extends CvData {
    *          - rgb image
    */
   public void putKinect(IplImage depth, IplImage video) {
-    sources.put(OpenCV.INPUT_KEY, depth);
-    sources.put(String.format("%s.depth", OpenCV.INPUT_KEY), depth);
-    sources.put(String.format("%s.video", OpenCV.INPUT_KEY), video);
+    put(keys().kinect, depth);
+    put(keys.kinectDepth, depth);
+    put(keys.kinectVideo, video);
   }
 
   public void setFrameIndex(int frameIndex) {
     this.frameIndex = frameIndex;
   }
 
+  /**
+   * data already put in under the old name is dropped
+   * 
+   * @param name
+   *          name of the service
+   */
   public void setName(String name) {
     this.name = name;
+    keys = null;
+    sources = new Object[0];
   }
 
   public void setSelectedFilter(String selectedFilter) {
@@ -474,9 +584,9 @@ public class OpenCVData extends CvData {
     sb.append(String.format("selectedFilter: %s\n", selectedFilter));
     // sb.append(String.format("displayFilter: %s\n", displayFilter));
     sb.append("data:\n");
-    for (String key : sources.keySet()) {
+    for (String key : getKeySet()) {
       sb.append(key);
-      Object o = sources.get(key);
+      Object o = getObject(key);
       sb.append("= ");
       sb.append(System.identityHashCode(o) % 1000);
       sb.append(" ");
@@ -532,13 +642,13 @@ public class OpenCVData extends CvData {
   }
 
   public void writeAll() {
-    for (String key : sources.keySet()) {
+    for (String key : getKeySet()) {
       // OpenCV.recor
     }
   }
 
   public List<PointCloud> getPointCloudList() {
-    return (List<PointCloud>) sources.get(CvData.POINT_CLOUDS);
+    return (List<PointCloud>) get(keys().pointClouds);
   }
 
   public PointCloud getPointCloud() {
@@ -551,16 +661,24 @@ public class OpenCVData extends CvData {
 
   @Override
   public Set<String> getKeySet() {
-    return sources.keySet();
+    Set<String> keySet = new TreeSet<>();
+    if (sources != null) {
+      for (int i = 0; i < sources.length; ++i) {
+        if (sources[i] != null) {
+          keySet.add(keys().getKey(i));
+        }
+      }
+    }
+    return keySet;
   }
 
   public void put(PointCloud pc) {
-    List<PointCloud> pcs = (List<PointCloud>) sources.get(CvData.POINT_CLOUDS);
+    List<PointCloud> pcs = getPointCloudList();
     if (pcs == null) {
       pcs = new ArrayList<PointCloud>();
     }
     pcs.add(pc);
-    sources.put(CvData.POINT_CLOUDS, pcs);
+    put(keys.pointClouds, pcs);
   }
 
   public ArrayList<DetectedText> getDetectedText() {
@@ -0,0 +1,126 @@
+package org.myrobotlab.opencv;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.myrobotlab.cv.CvData;
+import org.myrobotlab.framework.NameIds;
+import org.myrobotlab.service.OpenCV;
+
+/**
+ * The keys of the OpenCVData of one OpenCV service. Every key -
+ * [ServiceName].[FilterName].[Data Type] - gets a slot number once, OpenCVData
+ * stores its values in an array indexed by slot. The input and output slots
+ * are fixed, a filter's slots are registered when the filter is added, so
+ * processing a frame does not format or hash new key strings.
+ *
+ * Slots are never removed - a removed filter's slots just stay empty. The keys
+ * of a service are dropped when the service is released.
+ */
+public class OpenCVDataKeys extends NameIds {
+
+  static final Map<String, OpenCVDataKeys> registries = new ConcurrentHashMap<>();
+
+  /**
+   * data types every filter gets slots for when it is added
+   */
+  static final String[] FILTER_TYPES = new String[] { "Frame", "IplImage", "Mat", "BufferedImage", "Graphics2D" };
+
+  /**
+   * @param name
+   *          name of the OpenCV service
+   * @return the keys of the service
+   */
+  public static OpenCVDataKeys get(String name) {
+    return registries.computeIfAbsent(name, OpenCVDataKeys::new);
+  }
+
+  /**
+   * drop the keys of a released service
+   *
+   * @param name
+   *          name of the OpenCV service
+   */
+  public static void remove(String name) {
+    registries.remove(name);
+  }
+
+  /**
+   * filter name to data type to slot
+   */
+  final Map<String, Map<String, Integer>> filterSlots = new ConcurrentHashMap<>();
+
+  public final int inputFrame;
+  public final int inputImage;
+  public final int outputFrame;
+  public final int outputImage;
+  public final int outputBufferedImage;
+  public final int outputBoundingBoxArray;
+  public final int outputPointArray;
+  public final int kinect;
+  public final int kinectDepth;
+  public final int kinectVideo;
+  public final int pointClouds;
+
+  OpenCVDataKeys(String name) {
+    super(name);
+    inputFrame = slot(OpenCV.INPUT_KEY, "Frame");
+    inputImage = slot(OpenCV.INPUT_KEY, "IplImage");
+    outputFrame = slot(OpenCV.OUTPUT_KEY, "Frame");
+    outputImage = slot(OpenCV.OUTPUT_KEY, "IplImage");
+    outputBufferedImage = slot(OpenCV.OUTPUT_KEY, "BufferedImage");
+    outputBoundingBoxArray = slot(OpenCV.OUTPUT_KEY, "BoundingBoxArray");
+    outputPointArray = slot(OpenCV.OUTPUT_KEY, "PointArray");
+    // kinect and point cloud keys are not prefixed with the service name
+    kinect = slot(OpenCV.INPUT_KEY);
+    kinectDepth = slot(String.format("%s.depth", OpenCV.INPUT_KEY));
+    kinectVideo = slot(String.format("%s.video", OpenCV.INPUT_KEY));
+    pointClouds = slot(CvData.POINT_CLOUDS);
+  }
+
+  /**
+   * registers the slots of a filter's standard data types
+   *
+   * @param filterName
+   *          name of the filter
+   */
+  public void register(String filterName) {
+    for (String type : FILTER_TYPES) {
+      slot(filterName, type);
+    }
+  }
+
+  /**
+   * @param fullKey
+   *          full key
+   * @return slot of the key - registered if new
+   */
+  public int slot(String fullKey) {
+    return id(fullKey);
+  }
+
+  /**
+   * @param filterName
+   *          name of the filter
+   * @param type
+   *          data type e.g. IplImage
+   * @return slot of [ServiceName].[FilterName].[Data Type] - registered if new
+   */
+  public int slot(String filterName, String type) {
+    Map<String, Integer> types = filterSlots.get(filterName);
+    if (types == null) {
+      types = filterSlots.computeIfAbsent(filterName, k -> new ConcurrentHashMap<>());
+    }
+    Integer slot = types.get(type);
+    if (slot == null) {
+      slot = slot(String.format("%s.%s.%s", getName(), filterName, type));
+      types.put(type, slot);
+    }
+    return slot;
+  }
+
+  public String getKey(int slot) {
+    return getName(slot);
+  }
+
+}
@@ -18,26 +18,34 @@ import org.bytedeco.opencv.opencv_core.IplImage;
 import org.bytedeco.opencv.opencv_core.Rect;
 import org.bytedeco.opencv.opencv_imgproc.CvFont;
 import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.opencv.DetectorExecutor.AsyncDetector;
+import org.myrobotlab.opencv.DetectorExecutor.Result;
 import org.myrobotlab.service.Deeplearning4j;
 import org.myrobotlab.service.Runtime;
 import org.myrobotlab.service.Solr;
 import org.slf4j.Logger;
 
 // FIXME - should be OpenCVFilterDl4j
-public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
+/**
+ * vgg16 classification - runs on the shared DetectorExecutor, the filter
+ * latches the latest result onto each frame
+ */
+public class OpenCVFilterDL4J extends OpenCVFilter {
 
   private static final long serialVersionUID = 1L;
   transient public final static Logger log = LoggerFactory.getLogger(OpenCVFilterDL4J.class.getCanonicalName());
 
-  protected Boolean running;
-
   private transient Deeplearning4j dl4j;
   private transient CvFont font = cvFont(CV_FONT_HERSHEY_PLAIN);
 
   public Map<String, Double> lastResult = null;
 
   public ArrayList<YoloDetectedObject> yoloLastResult = null;
-  private transient volatile IplImage lastImage = null;
+  private transient AsyncDetector<Map<String, Double>> detector;
+
+  private transient int count = 0;
+
+  private transient long start;
 
   public OpenCVFilterDL4J(String name) {
     super(name);
@@ -62,14 +70,26 @@ public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
       return;
     }
     log.info("Done loading model..");
-    // start classifier thread
-    Thread classifier = new Thread(this, "DL4JClassifierThread");
-    classifier.start();
-    log.info("DL4J Classifier thread started : {}", this.name);
+    start = System.currentTimeMillis();
+    detector = new AsyncDetector<>(name, "Classification", (image, frameIndex) -> classify(image));
+    detector.setOnResult(result -> {
+      invoke("publishClassification", result.value);
+      if (result.value != null)
+        log.info(formatResultString(result.value));
+    });
   }
 
   @Override
   public IplImage process(IplImage image) throws InterruptedException {
+    if (detector != null) {
+      // copied before the results are drawn on it - the newest frame replaces
+      // one still waiting for the detector
+      detector.submit(image, data.getFrameIndex());
+      Result<Map<String, Double>> result = detector.latch(data);
+      if (result != null) {
+        lastResult = result.value;
+      }
+    }
     if (lastResult != null) {
       // the thread running will be updating lastResult for it as fast as it
       // can.
@@ -79,9 +99,6 @@ public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
     if (yoloLastResult != null) {
       displayResultYolo(image, yoloLastResult);
     }
-    // ok now we just need to update the image that the current thread is
-    // processing (if the current thread is idle i guess?)
-    lastImage = image;
     return image;
   }
 
@@ -133,68 +150,27 @@ public class OpenCVFilterDL4J extends OpenCVFilter implements Runnable {
 
   @Override
   public void release() {
-    running = false;
+    if (detector != null) {
+      detector.clear();
+    }
   }
 
   @Override
-  public void run() {
-
-    int count = 0;
-    long start = System.currentTimeMillis();
-    log.info("Starting the DL4J classifier thread...");
-    running = true;
-    // in a loop, grab the current image and classify it and update the result.
-    while (running) {// FIXME - must be able to release !!
-
-      if (!enabled) {
-        // sleep to avoid cpu usage
-        // TODO: come up with a better way of doing this (maybe shutdown this
-        // thread and restart when it enables/disbales?)
-        try {
-          Thread.sleep(10);
-        } catch (InterruptedException e) {
-          log.info("Dl4j classifier thread interrupted", e);
-        }
-        continue;
-      }
-      // log.info("Running!!!");
-      // now we need to know which image we should classify
-      // there likely needs to be some synchronization on this too.. o/w the
-      // main thread will
-      // be updating it while it's being classified maybe?!
-      if (lastImage != null) {
-        try {
-          // dl4j.yoloImage(lastImage);
-          // yoloLastResult = dl4j.classifyImageTinyYolo(lastImage,
-          // getVideoProcessor().frameIndex);
-          // dl4j.classifyImageDarknet(lastImage);
-          count++;
-          lastResult = dl4j.classifyImageVGG16(lastImage);
-          if (count % 100 == 0) {
-            double rate = 1000.0 * count / (System.currentTimeMillis() - start);
-            log.info("DL4J Filter Rate: {}", rate);
-          }
-          invoke("publishClassification", lastResult);
-          if (lastResult != null)
-            log.info(formatResultString(lastResult));
-        } catch (IOException e) {
-          // TODO Auto-generated catch block
-          log.warn("Exception classifying image!");
-          e.printStackTrace();
-        }
-      } else {
-        // log.info("No Image to classify...");
-      }
-      // TODO: see why there's a race condition. i seem to need a little delay
-      // here o/w the recognition never seems to start.
-      // maybe lastImage needs to be marked as volatile ?
-      try {
-        Thread.sleep(1);
-      } catch (InterruptedException e) {
-        // TODO Auto-generated catch block
-        e.printStackTrace();
-      }
+  public void disable() {
+    super.disable();
+    if (detector != null) {
+      detector.clear();
+    }
+  }
+
+  private Map<String, Double> classify(IplImage image) throws IOException {
+    Map<String, Double> result = dl4j.classifyImageVGG16(image);
+    count++;
+    if (count % 100 == 0) {
+      double rate = 1000.0 * count / (System.currentTimeMillis() - start);
+      log.info("DL4J Filter Rate: {}", rate);
     }
+    return result;
   }
 
   /*
@@ -39,6 +39,7 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.util.ArrayList;
 
+import org.bytedeco.javacv.OpenCVFrameConverter;
 import org.bytedeco.opencv.opencv_core.IplImage;
 import org.bytedeco.opencv.opencv_core.Mat;
 import org.bytedeco.opencv.opencv_core.Rect;
@@ -48,6 +49,8 @@ import org.bytedeco.opencv.opencv_objdetect.CascadeClassifier;
 // import org.bytedeco.opencv.opencv_objdetect.CvHaarClassifierCascade;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.geometry.Rectangle;
+import org.myrobotlab.opencv.DetectorExecutor.AsyncDetector;
+import org.myrobotlab.opencv.DetectorExecutor.Result;
 import org.slf4j.Logger;
 
 public class OpenCVFilterFaceDetect extends OpenCVFilter {
@@ -99,6 +102,20 @@ public class OpenCVFilterFaceDetect extends OpenCVFilter {
   int option = CASCADE_DO_CANNY_PRUNING | CASCADE_FIND_BIGGEST_OBJECT; // default
   // int option = 0; // default
 
+  /**
+   * detect on the shared DetectorExecutor instead of the video thread - the
+   * faces of a frame are then the latest detection, which can be a few frames
+   * old
+   */
+  public boolean async = false;
+
+  transient private AsyncDetector<ArrayList<Rectangle>> detector;
+
+  /**
+   * converter of the detector thread
+   */
+  transient private OpenCVFrameConverter.ToMat asyncConverter;
+
   public OpenCVFilterFaceDetect() {
     super(null);
   }
@@ -181,6 +198,13 @@ public class OpenCVFilterFaceDetect extends OpenCVFilter {
     this.option = option;
   }
 
+  public void setAsync(boolean async) {
+    this.async = async;
+    if (!async && detector != null) {
+      detector.clear();
+    }
+  }
+
   @Override
   public void imageChanged(IplImage image) {
     // Allocate the memory storage TODO make this globalData
@@ -204,32 +228,30 @@ public class OpenCVFilterFaceDetect extends OpenCVFilter {
 
   }
 
-  @Override
-  public IplImage process(IplImage image) {
-
-    bb = new ArrayList<Rectangle>();
-
-    // Clear the memory storage which was used before
-    // cvClearMemStorage(storage);
-
-    if (image == null)
-      return image;
+  /**
+   * run the cascade
+   * 
+   * @param image
+   *          the image
+   * @param converter
+   *          converter of the calling thread
+   * @return bounding boxes of the faces
+   */
+  ArrayList<Rectangle> detect(IplImage image, OpenCVFrameConverter.ToMat converter) {
+    ArrayList<Rectangle> faces = new ArrayList<Rectangle>();
     // Find whether the cascade is loaded, to find the faces. If yes, then:
     if (cascade != null) {
       RectVector vec = new RectVector();
 
-      Mat imageMat = converterToImage.convertToMat(converterToMat.convert(image));
+      Mat imageMat = converter.convertToMat(converter.convert(image));
       cascade.detectMultiScale(imageMat, vec);
       // CvSeq faces = cvHaarDetectObjects(image, cascade, storage, scaleFactor,
       // minNeighbors, option);
       if (vec != null) {
-
-        faceCnt = (int) vec.size();
-        for (i = 0; i < faceCnt; i++) {
+        for (int i = 0; i < vec.size(); i++) {
           try {
             Rect r = vec.get(i);
-            bb.add(new Rectangle(r.x(), r.y(), r.width(), r.height()));
-            data.putBoundingBoxArray(bb);
+            faces.add(new Rectangle(r.x(), r.y(), r.width(), r.height()));
             r.close();
           } catch (Exception e) {
           }
@@ -239,6 +261,38 @@ public class OpenCVFilterFaceDetect extends OpenCVFilter {
       log.info("Creating and loading new classifier instance {}", cascadeFile);
       cascade = new CascadeClassifier(String.format("%s/%s", cascadeDir, cascadeFile));
     }
+    return faces;
+  }
+
+  @Override
+  public IplImage process(IplImage image) {
+
+    bb = new ArrayList<Rectangle>();
+
+    // Clear the memory storage which was used before
+    // cvClearMemStorage(storage);
+
+    if (image == null)
+      return image;
+
+    if (async) {
+      if (detector == null) {
+        asyncConverter = new OpenCVFrameConverter.ToMat();
+        detector = new AsyncDetector<>(name, "BoundingBoxArray", (img, frameIndex) -> detect(img, asyncConverter));
+      }
+      detector.submit(image, data.getFrameIndex());
+      Result<ArrayList<Rectangle>> result = detector.latch(data);
+      if (result != null) {
+        bb = result.value;
+      }
+    } else {
+      bb = detect(image, converterToMat);
+    }
+
+    faceCnt = bb.size();
+    if (faceCnt > 0) {
+      data.putBoundingBoxArray(bb);
+    }
 
     switch (state) {
       case STATE_LOST_TRACKING:
@@ -25,18 +25,21 @@ import org.bytedeco.opencv.opencv_core.Scalar;
 import org.bytedeco.opencv.opencv_core.Size;
 import org.bytedeco.opencv.opencv_dnn.Net;
 import org.myrobotlab.document.Classification;
-import org.myrobotlab.framework.Service;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.math.geometry.Rectangle;
+import org.myrobotlab.opencv.DetectorExecutor.AsyncDetector;
+import org.myrobotlab.opencv.DetectorExecutor.Result;
 import org.slf4j.Logger;
 
-public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
+/**
+ * yolo darknet object detection - the detection runs on the shared
+ * DetectorExecutor, the filter latches the latest result onto each frame
+ */
+public class OpenCVFilterYolo extends OpenCVFilter {
 
   private static final long serialVersionUID = 1L;
   public final static Logger log = LoggerFactory.getLogger(OpenCVFilterYolo.class);
 
-  protected Boolean running;
-
   // zero offset to where the confidence level is in the output matrix of the
   // darknet.
   private static final int CONFIDENCE_INDEX = 4;
@@ -58,8 +61,6 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
   public String modelWeights = "yolov2.weights";
   public String modelNames = "coco.names";
 
-  int classifierThreadCount = 0;
-
   transient DecimalFormat df2 = new DecimalFormat("#.###");
 
   transient private OpenCVFrameConverter.ToIplImage converterToIpl = new OpenCVFrameConverter.ToIplImage();
@@ -68,13 +69,13 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
   transient private Net net;
   ArrayList<String> classNames;
   public ArrayList<Classification> lastResult = null;
-  transient private volatile IplImage lastImage = null;
-  private volatile boolean pending = false;
-  transient private Thread classifier;
+  transient private AsyncDetector<ArrayList<Classification>> detector;
+  transient private boolean loaded = false;
+  transient private int count = 0;
+  transient private long start;
 
   public OpenCVFilterYolo(String name) {
     super(name);
-    enable(); // start classifier thread
   }
 
   public OpenCVFilterYolo() {
@@ -122,16 +123,15 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
 
   @Override
   public IplImage process(IplImage image) throws InterruptedException {
-    if (lastResult != null) {
-      // the thread running will be updating lastResult for it as fast as it
-      // can.
-      // displayResult(image, lastResult);
+    if (detector == null) {
+      detector = new AsyncDetector<>(name, "Classification", (img, frameIndex) -> classify(img, frameIndex));
+      detector.setOnResult(result -> publishClassifications(result.value));
     }
-    // ok now we just need to update the image that the current thread is
-    // processing (if the current thread is idle i guess?)
-    lastImage = image;
-    if (enabled) {
-      pending = true;
+    // the newest frame replaces one still waiting for the detector
+    detector.submit(image, data.getFrameIndex());
+    Result<ArrayList<Classification>> result = detector.latch(data);
+    if (result != null) {
+      lastResult = result.value;
     }
     return image;
   }
@@ -140,78 +140,44 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
   public void imageChanged(IplImage image) {
   }
 
-  @Override
-  public void run() {
-    log.info("yolo run - begin");
-    try {
-      int count = 0;
-      long start = System.currentTimeMillis();
-      loadYolo();
-      log.info("Starting the Yolo classifier thread...");
-      // in a loop, grab the current image and classify it and update the
-      // result.
-      running = true;
-      // loading the model takes a lot of time, we want to block enable/disable
-      // until we are actually running - then we notifyAll
-
-      while (running && enabled) {
-        if (!pending) {
-          log.debug("Skipping frame");
-          Thread.sleep(10);
-          continue;
-        }
-
-        log.info("process - begin");
-        // only classify this if we haven't already classified it.
-        if (lastImage != null) {
-          // lastResult = dl4j.classifyImageVGG16(lastImage);
-          log.debug("Doing yolo...");
-          lastResult = yoloFrame(lastImage);
-          // log.info("Yolo done.");
-          // we processed, next object we'll pick up.
-          pending = false;
-          count++;
-          if (count % 10 == 0) {
-            double rate = 1000.0 * count / (float) (System.currentTimeMillis() - start);
-            log.info("Yolo Classification Rate : {}", rate);
-          }
-
-          Map<String, List<Classification>> ret = new TreeMap<>();
-          for (Classification c : lastResult) {
-            List<Classification> nl = null;
-            if (ret.containsKey(c.getLabel())) {
-              nl = ret.get(c.getLabel());
-            } else {
-              nl = new ArrayList<>();
-              ret.put(c.getLabel(), nl);
-            }
-            nl.add(c);
-          }
-
-          invoke("publishClassification", ret);
-        } else {
-          log.info("No Image to classify...");
-        }
-        // TODO: see why there's a race condition. i seem to need a little delay
-        // here o/w the recognition never seems to start.
-        // maybe lastImage needs to be marked as volatile ?
-
-        Thread.sleep(1);
-      } // while (running)
-
-    } catch (Exception e) {
-      log.error("yolo thread threw", e);
+  private ArrayList<Classification> classify(IplImage image, int frameIndex) {
+    synchronized (lock) {
+      if (!loaded) {
+        // loading the model takes a while - done on the detector thread
+        loaded = true;
+        start = System.currentTimeMillis();
+        loadYolo();
+      }
+      if (net == null) {
+        return new ArrayList<>();
+      }
+      ArrayList<Classification> result = yoloFrame(image, frameIndex);
+      count++;
+      if (count % 10 == 0) {
+        double rate = 1000.0 * count / (float) (System.currentTimeMillis() - start);
+        log.info("Yolo Classification Rate : {}", rate);
+      }
+      return result;
     }
+  }
 
-    synchronized (lock) {
-      classifier = null;
+  private void publishClassifications(List<Classification> classifications) {
+    Map<String, List<Classification>> ret = new TreeMap<>();
+    for (Classification c : classifications) {
+      List<Classification> nl = null;
+      if (ret.containsKey(c.getLabel())) {
+        nl = ret.get(c.getLabel());
+      } else {
+        nl = new ArrayList<>();
+        ret.put(c.getLabel(), nl);
+      }
+      nl.add(c);
     }
 
-    log.info("yolo exiting classifier thread");
-    log.info("run - end");
+    invoke("publishClassification", ret);
   }
 
-  private ArrayList<Classification> yoloFrame(IplImage frame) {
+  private ArrayList<Classification> yoloFrame(IplImage frame, int frameIndex) {
     log.debug("Starting yolo on frame...");
     log.info("yoloFrame - begin");
     // this is our list of objects that have been detected in a given frame.
@@ -308,7 +274,7 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
             debug = false;
             show(cropped, "detected img");
           }
-          Classification obj = new Classification(String.format("%s.%s-%d", data.getName(), name, data.getFrameIndex()));
+          Classification obj = new Classification(String.format("%s.%s-%d", data.getName(), name, frameIndex));
           obj.setLabel(label);
           obj.setBoundingBox(xLeftBottom, yLeftBottom, xRightTop - xLeftBottom, yRightTop - yLeftBottom);
           obj.setConfidence(confidence);
@@ -341,54 +307,27 @@ public class OpenCVFilterYolo extends OpenCVFilter implements Runnable {
 
   @Override
   public void release() {
-    // synchronized (lock) {
     log.info("release - begin");
-    disable(); // blocks until ready
-
-    // while(isRunning){ sleep(30) .. check again }
-    // bleed out the thread before deallocating
-
-    if (net != null) {
-      net.deallocate();
-      net = null;
+    disable();
+    // waits for a running detection before deallocating
+    synchronized (lock) {
+      if (net != null) {
+        net.deallocate();
+        net = null;
+      }
+      loaded = false;
     }
     log.info("release - end");
-    // }
   }
 
   volatile Object lock = new Object();
 
-  @Override
-  public void enable() {
-    if (classifier != null) {
-      // already enabled
-      return;
-    }
-    log.info("enabling yolo");
-    synchronized (lock) {
-      log.info("enable - begin");
-      super.enable();
-      if (classifier == null) {
-        classifier = new Thread(this, "YoloClassifierThread");
-        classifier.start();
-      }
-      log.info("enable - end");
-    }
-  }
-
   @Override
   public void disable() {
-    if (classifier == null) {
-      // already disabled
-      return;
-    }
     super.disable();
-    int waitTime = 0;
-    while (classifier != null && waitTime < 1000) {
-      ++waitTime;
-      Service.sleep(10);
+    if (detector != null) {
+      detector.clear();
     }
-    log.info("capture - waited {} times", waitTime);
   }
 
   @Override
@@ -0,0 +1,147 @@
+package org.myrobotlab.serial;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed size primitive byte fifo for received serial data. Writers add a whole
+ * chunk at a time, readers can take single bytes (blocking or with a timeout)
+ * or drain what is available into an array. No boxing, no per byte node
+ * allocation.
+ *
+ * When full new data is dropped - the same as the rx queue it replaces, a
+ * reader which never reads only costs the capacity.
+ *
+ */
+public class ByteRingBuffer {
+
+  final byte[] buffer;
+
+  int head = 0;
+
+  int size = 0;
+
+  long dropped = 0;
+
+  public ByteRingBuffer(int capacity) {
+    buffer = new byte[capacity];
+  }
+
+  /**
+   * add a chunk of data
+   *
+   * @param data
+   *          source
+   * @param offset
+   *          where to start
+   * @param length
+   *          number of bytes
+   * @return number of bytes added - less than length if the buffer filled
+   */
+  synchronized public int write(byte[] data, int offset, int length) {
+    int n = Math.min(length, buffer.length - size);
+    int tail = (head + size) % buffer.length;
+    int first = Math.min(n, buffer.length - tail);
+    System.arraycopy(data, offset, buffer, tail, first);
+    System.arraycopy(data, offset + first, buffer, 0, n - first);
+    size += n;
+    dropped += length - n;
+    if (n > 0) {
+      notifyAll();
+    }
+    return n;
+  }
+
+  /**
+   * blocks until a byte is available
+   *
+   * @return the unsigned byte
+   * @throws InterruptedException
+   *           e
+   */
+  synchronized public int take() throws InterruptedException {
+    while (size == 0) {
+      wait();
+    }
+    return next();
+  }
+
+  /**
+   * waits up to timeout for a byte
+   *
+   * @param timeout
+   *          how long
+   * @param unit
+   *          units of timeout
+   * @return the unsigned byte or -1 if nothing arrived in time
+   * @throws InterruptedException
+   *           e
+   */
+  synchronized public int poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (size == 0) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return -1;
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+    return next();
+  }
+
+  /**
+   * non blocking read of what is available
+   *
+   * @param data
+   *          destination
+   * @param offset
+   *          where to start
+   * @param length
+   *          max number of bytes
+   * @return number of bytes read
+   */
+  synchronized public int read(byte[] data, int offset, int length) {
+    int n = Math.min(length, size);
+    int first = Math.min(n, buffer.length - head);
+    System.arraycopy(buffer, head, data, offset, first);
+    System.arraycopy(buffer, 0, data, offset + first, n - first);
+    head = (head + n) % buffer.length;
+    size -= n;
+    return n;
+  }
+
+  /**
+   * @return copy of the unread data - nothing is removed
+   */
+  synchronized public byte[] toByteArray() {
+    byte[] data = new byte[size];
+    int first = Math.min(size, buffer.length - head);
+    System.arraycopy(buffer, head, data, 0, first);
+    System.arraycopy(buffer, 0, data, first, size - first);
+    return data;
+  }
+
+  int next() {
+    int b = buffer[head] & 0xff;
+    head = (head + 1) % buffer.length;
+    --size;
+    return b;
+  }
+
+  synchronized public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return buffer.length;
+  }
+
+  synchronized public long getDropped() {
+    return dropped;
+  }
+
+  synchronized public void clear() {
+    head = 0;
+    size = 0;
+  }
+
+}
@@ -12,13 +12,15 @@ import java.util.Arrays;
 import java.util.Base64;
 import java.util.Date;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.myrobotlab.arduino.ArduinoUtils;
 import org.myrobotlab.arduino.BoardInfo;
@@ -29,6 +31,7 @@ import org.myrobotlab.framework.interfaces.Attachable;
 import org.myrobotlab.framework.interfaces.NameProvider;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
 import org.myrobotlab.i2c.I2CBus;
+import org.myrobotlab.i2c.I2CTransactions;
 import org.myrobotlab.io.FileIO;
 import org.myrobotlab.io.Zip;
 import org.myrobotlab.logging.Level;
@@ -43,6 +46,7 @@ import org.myrobotlab.service.config.ArduinoConfig;
 import org.myrobotlab.service.config.ServiceConfig;
 import org.myrobotlab.service.data.DeviceMapping;
 import org.myrobotlab.service.data.PinData;
+import org.myrobotlab.service.data.PinFrame;
 import org.myrobotlab.service.data.SerialRelayData;
 import org.myrobotlab.service.interfaces.EncoderControl;
 import org.myrobotlab.service.interfaces.EncoderController;
@@ -166,20 +170,26 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
 
   I2CBus i2cBus = null;
 
-  volatile byte[] i2cData = new byte[64];
-
   /**
-   * i2c This needs to be volatile because it will be updated in a different
-   * threads
+   * how long blocking i2c reads wait for the data - and how long any read is
+   * kept waiting for its answer
    */
-  volatile boolean i2cDataReturned = false;
+  int i2cTimeout = 1000;
 
-  volatile int i2cDataSize;
+  /**
+   * outstanding i2c reads - completed by publishI2cData from the serial thread
+   */
+  transient I2CTransactions i2cTransactions = new I2CTransactions(i2cTimeout);
 
   Map<String, I2CDeviceMap> i2cDevices = new ConcurrentHashMap<String, I2CDeviceMap>();
 
   transient int[] ioCmd = new int[MAX_MSG_SIZE];
 
+  /**
+   * last pin array poll - reused
+   */
+  transient PinFrame pinFrame = new PinFrame(32);
+
   @Deprecated /*
                * use attachables like everything else - power mapping should be
                * inside the motorcontrol
@@ -482,6 +492,12 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
       if (servo.isEnabled()) {
         msg.servoAttachPin(dm.getId(), pin);
       }
+    } else if (attachable instanceof I2CBus) {
+      // outstanding reads will not be answered by a reset board
+      i2cTransactions.clear();
+      int bus = Integer.parseInt(attachable.getName().substring("I2CBus".length()));
+      log.info("================ re-attaching {} {} {} ================", attachable.getName(), dm.getId(), bus);
+      msg.i2cBusAttach(dm.getId(), bus);
     }
   }
 
@@ -755,6 +771,19 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
     msg.enableAcks(enabled);
   }
 
+  /**
+   * number of commands which can be waiting on their ack - 1 (default) is stop
+   * and wait. Commands carry a sequence number - the window only opens once the
+   * board acks with it, a board which acks without it stays at 1 and is
+   * matched in order.
+   * 
+   * @param size
+   *          1 to 127
+   */
+  public void setAckWindow(int size) {
+    msg.setAckWindow(size);
+  }
+
   transient BoardInfoPoller poller = new BoardInfoPoller();
 
   public class BoardInfoPoller implements Runnable {
@@ -1130,55 +1159,130 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
   @Override
   // > i2cRead/deviceId/deviceAddress/size
   public int i2cRead(I2CControl control, int busAddress, int deviceAddress, byte[] buffer, int size) {
-    i2cDataReturned = false;
-    // Get the device index to the MRL i2c bus
-    String i2cBus = String.format("I2CBus%s", busAddress);
-    int deviceId = getDeviceId(i2cBus);
     log.info("i2cRead requesting {} bytes", size);
-    msg.i2cRead(deviceId, deviceAddress, size);
+    return i2cWait(control, busAddress, new I2CTransactions.Request(deviceAddress, size), buffer);
+  }
+
+  /**
+   * non blocking i2c read - any number of reads can be outstanding, the future
+   * is completed when MrlComm returns the data
+   * 
+   * @param busAddress
+   *          i2c bus
+   * @param deviceAddress
+   *          i2c device
+   * @param size
+   *          number of bytes to read
+   * @return future completed with the data read
+   */
+  public CompletableFuture<byte[]> i2cReadAsync(int busAddress, int deviceAddress, int size) {
+    return i2cSend(busAddress, new I2CTransactions.Request(deviceAddress, size));
+  }
+
+  /**
+   * non blocking read of a register - the register is written and size bytes
+   * read in a single MrlComm command
+   * 
+   * @param busAddress
+   *          i2c bus
+   * @param deviceAddress
+   *          i2c device
+   * @param register
+   *          register to read from
+   * @param size
+   *          number of bytes to read
+   * @return future completed with the data read
+   */
+  public CompletableFuture<byte[]> i2cWriteReadAsync(int busAddress, int deviceAddress, int register, int size) {
+    return i2cSend(busAddress, new I2CTransactions.Request(deviceAddress, register, size));
+  }
+
+  /**
+   * batched read - all the requests are sent without waiting, the future is
+   * completed when all of them have been answered
+   * 
+   * @param busAddress
+   *          i2c bus
+   * @param requests
+   *          devices, registers and sizes to read
+   * @return future completed with the data of each request in request order
+   */
+  public CompletableFuture<List<byte[]>> i2cReadRegisters(int busAddress, List<I2CTransactions.Request> requests) {
+    List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+    for (I2CTransactions.Request request : requests) {
+      futures.add(i2cSend(busAddress, request));
+    }
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+      List<byte[]> data = new ArrayList<>();
+      for (CompletableFuture<byte[]> future : futures) {
+        data.add(future.join());
+      }
+      return data;
+    });
+  }
+
+  // > i2cRead/deviceId/deviceAddress/size
+  // > i2cWriteRead/deviceId/deviceAddress/readSize/writeValue
+  CompletableFuture<byte[]> i2cSend(int busAddress, I2CTransactions.Request request) {
+    Integer deviceId = getDeviceId("I2CBus" + busAddress);
+    if (deviceId == null) {
+      CompletableFuture<byte[]> future = new CompletableFuture<>();
+      future.completeExceptionally(new IllegalStateException(String.format("i2c bus %d is not attached", busAddress)));
+      return future;
+    }
+    return i2cTransactions.send(deviceId, request, r -> {
+      if (r.register < 0) {
+        msg.i2cRead(deviceId, r.deviceAddress, r.size);
+      } else {
+        msg.i2cWriteRead(deviceId, r.deviceAddress, r.size, r.register & 0xFF);
+      }
+    });
+  }
 
-    int retry = 0;
-    int retryMax = 1000; // ( About 1000ms = s)
+  /**
+   * send a read, wait for it and copy its data into the caller's buffer - a
+   * read which times out is removed from the bus so a late answer can not
+   * complete it
+   * 
+   * @return number of bytes read or -1 if nothing came back
+   */
+  int i2cWait(I2CControl control, int busAddress, I2CTransactions.Request request, byte[] buffer) {
+    CompletableFuture<byte[]> future = i2cSend(busAddress, request);
     try {
-      /**
-       * We will wait up to retryMax times to get the i2c data back from
-       * MrlComm.c and wait 1 ms between each try. A blocking queue is not
-       * needed, as this is only a single data element - and blocking is not
-       * necessary.
-       */
-      while ((retry < retryMax) && (!i2cDataReturned)) {
-        sleep(1);
-        ++retry;
+      byte[] data = future.get(i2cTimeout, TimeUnit.MILLISECONDS);
+      int size = Math.min(data.length, buffer.length);
+      System.arraycopy(data, 0, buffer, 0, size);
+      log.debug("i2cReturnData returned {} bytes to caller {}.", size, control.getName());
+      return size;
+    } catch (TimeoutException e) {
+      log.warn("i2c read for {} timed out after {} ms", control.getName(), i2cTimeout);
+      Integer deviceId = getDeviceId("I2CBus" + busAddress);
+      if (deviceId != null) {
+        i2cTransactions.cancel(deviceId, request);
       }
     } catch (Exception e) {
       Logging.logError(e);
     }
-    if (i2cDataReturned) {
-      log.debug("i2cReturnData returned {} bytes to caller {}.", i2cDataSize, control.getName());
-      for (int i = 0; i < i2cDataSize; i++) {
-        buffer[i] = i2cData[i];
-        log.debug("i2cReturnData returned ix {} value {}", i, buffer[i]);
-      }
-      return i2cDataSize;
-    }
     // Time out, no data returned
     return -1;
   }
 
   /**
    * This methods is called by the i2cBus object when data is returned from the
-   * i2cRead It populates the i2cData area and sets the i2cDataReturned flag to
-   * true so that the loop in i2cRead can return the data to the caller
+   * i2cRead - it completes the oldest outstanding read on the bus
    * 
    */
   @Override
   public void i2cReturnData(int[] rawData) {
-    i2cDataSize = rawData.length;
-    for (int i = 0; i < i2cDataSize; i++) {
-      i2cData[i] = (byte) (rawData[i] & 0xff);
+    Integer deviceId = (i2cBus == null) ? null : getDeviceId(i2cBus.getName());
+    if (deviceId != null) {
+      i2cTransactions.complete(deviceId, rawData);
     }
-    log.debug("i2cReturnData invoked. i2cDataSize = {}", i2cDataSize);
-    i2cDataReturned = true;
+  }
+
+  public void setI2cTimeout(int timeoutMs) {
+    i2cTimeout = timeoutMs;
+    i2cTransactions.setStaleTimeout(timeoutMs);
   }
 
   @Override
@@ -1203,43 +1307,7 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
       i2cWrite(control, busAddress, deviceAddress, writeBuffer, writeSize);
       return i2cRead(control, busAddress, deviceAddress, readBuffer, readSize);
     } else {
-      i2cDataReturned = false;
-      // Get the device index to the MRL i2c bus
-      String i2cBus = String.format("I2CBus%s", busAddress);
-      int deviceId = getDeviceId(i2cBus);
-
-      int msgBuffer[] = new int[4];
-      msgBuffer[0] = deviceId;
-      msgBuffer[1] = deviceAddress;
-      msgBuffer[2] = readSize;
-      msgBuffer[3] = writeBuffer[0];
-      msg.i2cWriteRead(deviceId, deviceAddress, readSize, writeBuffer[0] & 0xFF);
-      int retry = 0;
-      int retryMax = 1000; // ( About 1000ms = s)
-      try {
-        /**
-         * We will wait up to retryMax times to get the i2c data back from
-         * MrlComm.c and wait 1 ms between each try. A blocking queue is not
-         * needed, as this is only a single data element - and blocking is not
-         * necessary.
-         */
-        while ((retry < retryMax) && (!i2cDataReturned)) {
-          sleep(1);
-          ++retry;
-        }
-      } catch (Exception e) {
-        Logging.logError(e);
-      }
-      if (i2cDataReturned) {
-        log.debug("i2cReturnData returned %s bytes to caller {}.", i2cDataSize, control.getName());
-        for (int i = 0; i < i2cDataSize; i++) {
-          readBuffer[i] = i2cData[i];
-          log.debug("i2cReturnData returned ix {} value {}", i, readBuffer[i]);
-        }
-        return i2cDataSize;
-      }
-      // Time out, no data returned
-      return -1;
+      return i2cWait(control, busAddress, new I2CTransactions.Request(deviceAddress, writeBuffer[0] & 0xFF, readSize), readBuffer);
     }
   }
 
@@ -1424,6 +1492,7 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
   @Override
   public void onDisconnect(String portName) {
     msg.onDisconnect(portName);
+    i2cTransactions.clear();
     info("%s disconnected from %s", getName(), portName);
     enableBoardInfo(false);
     // chained...
@@ -1638,8 +1707,8 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
    */
   // < publishI2cData/deviceId/[] data
   public void publishI2cData(Integer deviceId, int[] data) {
-    log.info("publishI2cData");
-    i2cReturnData(data);
+    log.debug("publishI2cData");
+    i2cTransactions.complete(deviceId, data);
   }
 
   /**
@@ -1659,14 +1728,11 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
   // < publishPinArray/[] data
   public PinData[] publishPinArray(int[] data) {
     log.debug("publishPinArray {}", data);
-    // if subscribers -
-    // look for subscribed pins and publish them
 
+    // decode once into the reused primitive frame
+    pinFrame.clear();
     int pinDataCnt = data.length / 3;
-    PinData[] pinArray = new PinData[pinDataCnt];
-
-    // parse sort reduce ...
-    for (int i = 0; i < pinArray.length; ++i) {
+    for (int i = 0; i < pinDataCnt; ++i) {
       int address = data[3 * i];
       PinDefinition pinDef = getPin(address);
       if (pinDef == null) {
@@ -1674,14 +1740,34 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
         continue;
       }
       int value = Serial.bytesToInt(data, (3 * i) + 1, 2);
-      PinData pinData = new PinData(pinDef.getPinName(), value);
       // update def with last value
       pinDef.setValue(value);
+      pinFrame.set(address, value);
+    }
+
+    // frame listeners - values copied into their own frames, nothing allocated
+    for (PinFrameSubscription sub : pinFrameListeners.values()) {
+      sub.frame.clear();
+      for (int i = 0; i < pinFrame.size; ++i) {
+        sub.frame.set(pinFrame.address[i], pinFrame.value[i]);
+      }
+      sub.listener.onPinFrame(sub.frame);
+    }
+
+    // PinData is only built if something still listens for it
+    if (pinListeners.isEmpty() && pinArrayListeners.isEmpty() && !outbox.notifyList.containsKey("publishPinArray")) {
+      return null;
+    }
+
+    PinData[] pinArray = new PinData[pinFrame.size];
+    for (int i = 0; i < pinFrame.size; ++i) {
+      int address = pinFrame.address[i];
+      PinData pinData = new PinData(getPin(address).getPinName(), pinFrame.value[i]);
       pinArray[i] = pinData;
 
       // handle individual pins
-      if (pinListeners.containsKey(address)) {
-        Set<PinListener> set = pinListeners.get(address);
+      Set<PinListener> set = pinListeners.get(address);
+      if (set != null) {
         for (PinListener pinListner : set) {
           if (pinListner.isLocal()) {
             pinListner.onPin(pinData);
@@ -1692,29 +1778,15 @@ public class Arduino extends AbstractMicrocontroller implements I2CBusController
       }
     }
 
-    // TODO: improve this logic so it doesn't something more effecient.
-    HashMap<String, PinData> pinDataMap = new HashMap<String, PinData>();
-    for (int i = 0; i < pinArray.length; i++) {
-      if (pinArray[i] != null && pinArray[i].pin != null) {
-        pinDataMap.put(pinArray[i].pin, pinArray[i]);
-      }
-    }
-
-    for (String name : pinArrayListeners.keySet()) {
-      // put the pin data into a map for quick lookup
-      PinArrayListener pal = pinArrayListeners.get(name);
-      if (pal.getActivePins() != null && pal.getActivePins().length > 0) {
-        int numActive = pal.getActivePins().length;
-        PinData[] subArray = new PinData[numActive];
-        for (int i = 0; i < numActive; i++) {
-          String key = pal.getActivePins()[i];
-          if (pinDataMap.containsKey(key)) {
-            subArray[i] = pinDataMap.get(key);
-          } else {
-            subArray[i] = null;
-          }
-        }
+    for (PinArrayListener pal : pinArrayListeners.values()) {
+      int[] addresses = getActiveAddresses(pal);
+      if (addresses != null) {
         // only the values that the listener is asking for.
+        PinData[] subArray = new PinData[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+          int index = pinFrame.indexOf(addresses[i]);
+          subArray[i] = (index < 0) ? null : pinArray[index];
+        }
         pal.onPinArray(subArray);
       } else {
         // the full array
@@ -39,50 +39,13 @@ import org.slf4j.Logger;
  * Clock - This is a simple clock service that can be started and stopped. It
  * generates a pulse with a timestamp on a regular interval defined by the
  * setInterval(Integer) method. Interval is in milliseconds.
+ * 
+ * The clock ticks on a fixed rate task of the shared task scheduler - pulses
+ * do not drift by the time the listeners take.
  */
 public class Clock extends Service {
 
-  public class ClockThread implements Runnable {
-
-    private transient Thread thread = null;
-
-    public ClockThread() {
-      thread = new Thread(this, getName() + "_ticking_thread");
-      thread.start();
-    }
-
-    @Override
-    public void run() {
-
-      try {
-        running = true;
-        while (running) {
-          Date now = new Date();
-          Iterator<ClockEvent> i = events.iterator();
-          while (i.hasNext()) {
-            ClockEvent event = i.next();
-            if (now.after(event.time)) {
-              // TODO repeat - don't delete set time forward
-              // interval
-              send(event.name, event.method, event.data);
-              i.remove();
-            }
-          }
-
-          if (!NoExecutionAtFirstClockStarted) {
-            invoke("pulse", now);
-            invoke("publishTime", now);
-            invoke("publishEpoch", now);
-          }
-          Thread.sleep(interval);
-          NoExecutionAtFirstClockStarted = false;
-        }
-      } catch (InterruptedException e) {
-        log.info("ClockThread interrupt");
-      }
-      running = false;
-    }
-  }
+  static final String TICK = "tick";
 
   private static final long serialVersionUID = 1L;
 
@@ -92,8 +55,6 @@ public class Clock extends Service {
 
   public int interval = 1000;
 
-  protected transient ClockThread myClock = null;
-
   protected List<ClockEvent> events = new ArrayList<ClockEvent>();
 
   private boolean NoExecutionAtFirstClockStarted = false;
@@ -104,6 +65,26 @@ public class Clock extends Service {
     super(n, id);
   }
 
+  /**
+   * one tick of the clock - sends the due clock events and publishes the time
+   */
+  public void tick() {
+    Date now = new Date();
+    Iterator<ClockEvent> i = events.iterator();
+    while (i.hasNext()) {
+      ClockEvent event = i.next();
+      if (now.after(event.time)) {
+        // TODO repeat - don't delete set time forward
+        // interval
+        send(event.name, event.method, event.data);
+        i.remove();
+      }
+    }
+    invoke("pulse", now);
+    invoke("publishTime", now);
+    invoke("publishEpoch", now);
+  }
+
   public void addClockEvent(Date time, String name, String method, Object... data) {
     ClockEvent event = new ClockEvent(time, name, method, data);
     events.add(event);
@@ -150,14 +131,20 @@ public class Clock extends Service {
 
   public void setInterval(Integer milliseconds) {
     interval = milliseconds;
+    if (containsTask(TICK)) {
+      // next tick one new interval from now
+      purgeTask(TICK);
+      addTaskFixedRate(TICK, interval, interval, TICK);
+    }
     broadcastState();
   }
 
   public void startClock(boolean NoExecutionAtFirstClockStarted) {
-    if (myClock == null) {
+    if (!containsTask(TICK)) {
       this.NoExecutionAtFirstClockStarted = NoExecutionAtFirstClockStarted;
       // info("starting clock");
-      myClock = new ClockThread();
+      running = true;
+      addTaskFixedRate(TICK, interval, (NoExecutionAtFirstClockStarted) ? interval : 0, TICK);
       invoke("publishClockStarted");
     } else {
       log.info("clock already started");
@@ -192,12 +179,10 @@ public class Clock extends Service {
 
   public void stopClock(boolean restartMe) {
     this.restartMe = restartMe;
-    if (myClock != null) {
+    if (containsTask(TICK)) {
       // info("stopping clock");
-      log.info("stopping " + getName() + " myClock");
-      myClock.thread.interrupt();
-      myClock.thread = null;
-      myClock = null;
+      log.info("stopping " + getName() + " clock");
+      purgeTask(TICK);
       // have requestors broadcast state !
       // broadcastState();
       invoke("publishClockStopped");
@@ -28,6 +28,8 @@ public class CsvConnector extends AbstractConnector {
 
   public CsvConnector(String name, String id) {
     super(name, id);
+    // every row has the same columns
+    compactDocuments = true;
   }
 
   @Override
@@ -130,7 +132,7 @@ public class CsvConnector extends AbstractConnector {
         } else {
           id = getDocIdPrefix() + nextLine[idColumn];
         }
-        Document docToSend = new Document(id);
+        Document docToSend = createDocument(id);
         for (int i = 0; i < numFields; i++) {
           String v = nextLine[i];
           if (!StringUtil.isEmpty(v)) {
@@ -30,6 +30,8 @@ public class DatabaseConnector extends AbstractConnector {
 
   public DatabaseConnector(String name, String id) {
     super(name, id);
+    // every row has the same columns
+    compactDocuments = true;
   }
 
   @Override
@@ -117,7 +119,7 @@ public class DatabaseConnector extends AbstractConnector {
         while (rs.next()) {
           // Need the ID column from the RS.
           String id = rs.getString(idColumn);
-          Document doc = new Document(id);
+          Document doc = createDocument(id);
           // Add each column / field name to the doc
           for (int i = 0; i < columns.length; i++) {
             doc.addToField(columns[i], rs.getString(i + 1));
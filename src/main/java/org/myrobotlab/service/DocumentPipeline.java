@@ -7,6 +7,7 @@ import org.myrobotlab.document.ProcessingStatus;
 import org.myrobotlab.document.connector.ConnectorState;
 import org.myrobotlab.document.transformer.StageConfiguration;
 import org.myrobotlab.document.transformer.WorkflowConfiguration;
+import org.myrobotlab.document.workflow.DagWorkflow;
 import org.myrobotlab.document.workflow.WorkflowMessage;
 import org.myrobotlab.document.workflow.WorkflowServer;
 import org.myrobotlab.framework.Service;
@@ -167,6 +168,17 @@ public class DocumentPipeline extends Service implements DocumentListener, Docum
     return totalStat;
   }
 
+  /**
+   * @return throughput and queue depth of each stage - only for a dag workflow
+   *         config
+   */
+  public List<DagWorkflow.StageStats> getStageStats() {
+    if (workflowServer == null) {
+      return null;
+    }
+    return workflowServer.getStageStats(workflowName);
+  }
+
   @Override
   public boolean onFlush() {
     // here we need to pass a flush message to the workflow server
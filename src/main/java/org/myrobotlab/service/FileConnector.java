@@ -68,7 +68,7 @@ public class FileConnector extends AbstractConnector implements DocumentPublishe
       return FileVisitResult.TERMINATE;
     }
     String docId = getDocIdPrefix() + file.toFile().getAbsolutePath();
-    Document doc = new Document(docId);
+    Document doc = createDocument(docId);
     doc.setField("last_modified", attrs.lastModifiedTime());
     doc.setField("created_date", attrs.creationTime());
     doc.setField("filename", file.toFile().getAbsolutePath());
@@ -120,7 +120,7 @@ public class Git extends Service {
     // initial clone
     clone(location, url, branches, checkout);
 
-    addTask(checkStatusIntervalMs, "checkStatus");
+    addTaskBlocking("checkStatus", checkStatusIntervalMs, 0, "checkStatus");
   }
 
   public void sync(String location, String url, String checkout) throws InvalidRemoteException, TransportException, GitAPIException, IOException {
@@ -184,7 +184,7 @@ public class Git extends Service {
   public Long setInterval(Long interval) {
     checkStatusIntervalMs = interval;
     purgeTasks();
-    addTask(interval, "checkStatus");
+    addTaskBlocking("checkStatus", interval, 0, "checkStatus");
     return checkStatusIntervalMs;
   }
 
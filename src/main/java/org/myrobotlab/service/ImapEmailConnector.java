@@ -196,7 +196,7 @@ public class ImapEmailConnector extends AbstractConnector {
   private Document processMessage(Message m) throws MessagingException, IOException {
     // create a unique(ish) doc id until we discover the true message id.
     String docId = docIdPrefix + UUID.randomUUID().toString();
-    Document doc = new Document(docId);
+    Document doc = createDocument(docId);
     Enumeration<Header> headers = m.getAllHeaders();
     // walk every header and copy them to fields...
     String messageId = null;
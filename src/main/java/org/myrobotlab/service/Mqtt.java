@@ -594,6 +594,12 @@ public class Mqtt extends Service implements MqttCallback, IMqttActionListener,
           if (isLocal(msg)) {
 
             //////////////// BEGIN RUNTIME CODEBLOCK////////////////////
+            if (Message.RETURN.equals(msg.status)) {
+              // a reply - the inbox completes the caller's future
+              in(msg);
+              return;
+            }
+
             String serviceName = msg.getName();
             // to decode fully we need class name, method name, and an array of
             // json
@@ -621,6 +627,9 @@ public class Mqtt extends Service implements MqttCallback, IMqttActionListener,
 
             // propagate return data to subscribers
             si.out(msg.method, ret);
+            if (Message.BLOCKING.equals(msg.status)) {
+              si.sendReply(msg, ret);
+            }
 
             //////////////// END RUNTIME CODEBLOCK//////////////////////
           } else {
@@ -46,7 +46,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -106,9 +108,12 @@ import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.math.geometry.Point2df;
 import org.myrobotlab.math.geometry.PointCloud;
 import org.myrobotlab.net.Http;
+import org.myrobotlab.opencv.DetectorExecutor;
+import org.myrobotlab.opencv.FilterPipeline;
 import org.myrobotlab.opencv.FilterWrapper;
 import org.myrobotlab.opencv.FrameFileRecorder;
 import org.myrobotlab.opencv.OpenCVData;
+import org.myrobotlab.opencv.OpenCVDataKeys;
 import org.myrobotlab.opencv.OpenCVFilter;
 import org.myrobotlab.opencv.OpenCVFilterFaceDetectDNN;
 import org.myrobotlab.opencv.OpenCVFilterKinectDepth;
@@ -168,8 +173,19 @@ public class OpenCV extends AbstractComputerVision {
           loops++;
         }
 
+        if (filterStages > 0) {
+          filterPipeline = new FilterPipeline(OpenCV.this, filterStages, stageQueueSize, dropFrames);
+          filterPipeline.start();
+          // enough for every frame which can be in the pipeline
+          dataPool = new ArrayBlockingQueue<>((filterStages + 1) * (stageQueueSize + 1) + 1);
+        } else {
+          dataPool = new ArrayBlockingQueue<>(2);
+        }
+        long lastStatsTs = 0;
+
         while (capturing && !stopping) {
           Frame newFrame = null;
+          boolean copied = false;
 
           if (!singleFrame || (singleFrame && frameIndex < 1)) {
             newFrame = grabber.grab();
@@ -179,6 +195,7 @@ public class OpenCV extends AbstractComputerVision {
             lastFrame = newFrame;
           } else if (newFrame == null && lastFrame != null) {
             newFrame = lastFrame.clone();
+            copied = true;
           } else {
             error("could not get valid frame");
             stopCapture();
@@ -187,7 +204,24 @@ public class OpenCV extends AbstractComputerVision {
           frameStartTs = System.currentTimeMillis();
           ++frameIndex;
 
-          data = new OpenCVData(getName(), frameStartTs, frameIndex, newFrame);
+          if (filterPipeline != null && !copied) {
+            // grabbers reuse their frame buffer - the next grab must not
+            // overwrite a frame still in the pipeline
+            newFrame = newFrame.clone();
+            copied = true;
+          }
+
+          OpenCVData recycled = dataPool.poll();
+          if (recycled != null) {
+            recycled.reset(frameStartTs, frameIndex, newFrame);
+            data = recycled;
+          } else {
+            data = new OpenCVData(getName(), frameStartTs, frameIndex, newFrame);
+          }
+          if (copied) {
+            // closed when the frame is recycled or dropped
+            data.own(newFrame);
+          }
 
           if (grabber.getClass().equals(OpenKinectFrameGrabber.class)) {
             // by default this framegrabber returns video
@@ -196,10 +230,28 @@ public class OpenCV extends AbstractComputerVision {
             // here we need ot add the video
 
             IplImage video = ((OpenKinectFrameGrabber) grabber).grabVideo();
+            if (filterPipeline != null) {
+              video = video.clone();
+              data.own(video);
+            }
             data.putKinect(toImage(newFrame), video);
           }
 
-          processVideo(data);
+          if (filterPipeline != null) {
+            filterPipeline.submit(data, getEnabledFilters());
+            if (frameStartTs - lastStatsTs > 1000) {
+              lastStatsTs = frameStartTs;
+              invoke("publishStageStats", filterPipeline.getStats());
+            }
+          } else {
+            processVideo(data);
+          }
+
+          // delay if needed to maxFps
+          long frameTime = System.currentTimeMillis() - frameStartTs;
+          if (maxFps != null && frameTime < 1000 / maxFps) {
+            sleep((1000 / maxFps) - (int) frameTime);
+          }
 
           if (lengthInFrames > 1 && loop && frameIndex > lengthInFrames - 2) {
             grabber.setFrameNumber(0);
@@ -212,6 +264,11 @@ public class OpenCV extends AbstractComputerVision {
       }
       // begin capturing ...
 
+      if (filterPipeline != null) {
+        filterPipeline.stop();
+        filterPipeline = null;
+      }
+
       videoThread = null;
       frameIndex = 0;
 
@@ -501,6 +558,13 @@ public class OpenCV extends AbstractComputerVision {
   transient Color color = getAwtColor("RED");
 
   OpenCVData data;
+
+  /**
+   * OpenCVData of processed frames which nothing else can reference - reused
+   * for new frames instead of allocating a new one per frame
+   */
+  transient BlockingQueue<OpenCVData> dataPool = new ArrayBlockingQueue<>(2);
+
   private String displayFilter = "display";
 
   /**
@@ -573,7 +637,26 @@ public class OpenCV extends AbstractComputerVision {
   /**
    * Used to provide a thread safe way of setting filter states
    */
-  private Map<String, OpenCVFilter> newFilterStates = new HashMap<>();
+  private Map<String, OpenCVFilter> newFilterStates = new ConcurrentHashMap<>();
+
+  /**
+   * number of filter stages of the pipelined mode - 0 runs all filters and the
+   * output of a frame on the capture thread
+   */
+  int filterStages = 0;
+
+  /**
+   * frames waiting in front of each pipeline stage
+   */
+  int stageQueueSize = 2;
+
+  /**
+   * drop frames at a pipeline stage which can not keep up instead of stalling
+   * the camera
+   */
+  boolean dropFrames = false;
+
+  transient FilterPipeline filterPipeline = null;
 
   boolean display = true;
 
@@ -648,6 +731,8 @@ public class OpenCV extends AbstractComputerVision {
     newFilters.putAll(filters);
     // add new filter
     newFilters.put(filter.name, filter);
+    // resolve the filter's data slots now instead of on its first frame
+    OpenCVDataKeys.get(getName()).register(filter.name);
     // switch to new references
     filters = newFilters;
     setDisplayFilter(filter.name);
@@ -1229,24 +1314,70 @@ public class OpenCV extends AbstractComputerVision {
     // for (String filterName : filters.keySet()) {
     for (OpenCVFilter filter : filters.values()) {
       if (filter.isEnabled()) {
-        IplImage input = filter.setData(data);
-        if (input == null) {
-          log.error("could not get setData image");
-          continue;
-        }
-
-        // process the previous filter's output
-        IplImage processed = filter.process(input);
-        filter.postProcess(processed);
-        filter.processDisplay();
-        processFilterStateUpdates(filter);
+        processFilter(filter, data);
       }
     } // for each filter
 
+    processOutput(data);
+  }
+
+  /**
+   * the enabled filters in pipeline order
+   * 
+   * @return list of filters
+   */
+  List<OpenCVFilter> getEnabledFilters() {
+    List<OpenCVFilter> enabled = new ArrayList<>();
+    for (OpenCVFilter filter : filters.values()) {
+      if (filter.isEnabled()) {
+        enabled.add(filter);
+      }
+    }
+    return enabled;
+  }
+
+  /**
+   * run a filter on a frame - a filter is only run by one thread at a time
+   * 
+   * @param filter
+   *          the filter
+   * @param data
+   *          the frame
+   * @throws InterruptedException
+   *           e
+   */
+  public void processFilter(OpenCVFilter filter, OpenCVData data) throws InterruptedException {
+    synchronized (filter) {
+      IplImage input = filter.setData(data);
+      if (input == null) {
+        log.error("could not get setData image");
+        return;
+      }
+
+      // process the previous filter's output
+      IplImage processed = filter.process(input);
+      filter.postProcess(processed);
+      filter.processDisplay();
+      processFilterStateUpdates(filter);
+    }
+  }
+
+  /**
+   * display, publish and record a filtered frame
+   * 
+   * @param data
+   *          the frame
+   * @throws InterruptedException
+   *           e
+   */
+  public void processOutput(OpenCVData data) throws InterruptedException {
+
     // get the display filter to process
 
-    putText("frame: %d", frameIndex);
-    putText("time:  %d", frameStartTs);
+    // the frame being output - in pipelined mode the capture thread's
+    // frameIndex is already a newer frame's
+    putText("frame: %d", data.getFrameIndex());
+    putText("time:  %d", data.getTs());
 
     BufferedImage displayImage = data.getDisplay();
     if (displayImage != null) {
@@ -1274,12 +1405,12 @@ public class OpenCV extends AbstractComputerVision {
          * </pre>
          */
         BufferedImage b = data.getDisplay();
-        SerializableImage si = new SerializableImage(b, displayFilter, frameIndex);
+        SerializableImage si = new SerializableImage(b, displayFilter, data.getFrameIndex());
         invoke("publishDisplay", si);
 
         if (webViewer) {
           // broadcast(???)
-          WebImage webImage = new WebImage(b, getName(), frameIndex);
+          WebImage webImage = new WebImage(b, getName(), data.getFrameIndex());
           // latency use the original ts from before fetch image and the filters
           // !
           webImage.ts = data.getTs();
@@ -1351,8 +1482,9 @@ public class OpenCV extends AbstractComputerVision {
     // this has to be before record as
     // record uses the queue - this has the "issue" if
     // the consumer does not pickup-it will get stale
+    boolean held = false;
     if (blockingData.size() == 0) {
-      blockingData.add(data);
+      held = blockingData.add(data);
     }
 
     if (recording || recordingFrames) {
@@ -1369,14 +1501,29 @@ public class OpenCV extends AbstractComputerVision {
 
     frameEndTs = System.currentTimeMillis();
 
-    // delay if needed to maxFps
-    if (maxFps != null && frameEndTs - frameStartTs < 1000 / maxFps) {
-      sleep((1000 / maxFps) - (int) (frameEndTs - frameStartTs));
+    data.dispose();
+
+    if (!held) {
+      recycle(data);
     }
 
-    data.dispose();
+  } // end processOutput
 
-  } // end processVideo
+  /**
+   * return a frame's OpenCVData to the pool and close the copies it owns -
+   * only if no one subscribes to the published data, a subscriber might keep
+   * it
+   * 
+   * @param data
+   *          a processed or dropped frame
+   */
+  public void recycle(OpenCVData data) {
+    if (outbox.notifyList.containsKey("publishOpenCVData") || outbox.notifyList.containsKey("publishCvData")) {
+      return;
+    }
+    data.release();
+    dataPool.offer(data);
+  }
 
   /**
    * A new method to protect filters from other threads doing updates possibly
@@ -1901,6 +2048,73 @@ public class OpenCV extends AbstractComputerVision {
     masks.put(name, mask);
   }
 
+  /**
+   * pipelined mode - the enabled filters are split between stages, each on its
+   * own thread, so grabbing and filtering of consecutive frames overlap. 0 (the
+   * default) runs everything on the capture thread. Takes effect on the next
+   * capture.
+   * 
+   * @param stages
+   *          number of filter stages
+   */
+  public void setFilterStages(int stages) {
+    filterStages = Math.max(0, stages);
+  }
+
+  public int getFilterStages() {
+    return filterStages;
+  }
+
+  /**
+   * @param b
+   *          drop frames at a pipeline stage which can not keep up instead of
+   *          waiting on it and stalling the camera
+   */
+  public void setDropFrames(boolean b) {
+    dropFrames = b;
+  }
+
+  public void setStageQueueSize(int size) {
+    stageQueueSize = Math.max(1, size);
+  }
+
+  /**
+   * detections (yolo, dl4j, async face detect ..) run on one executor shared
+   * by all OpenCV services in this process
+   * 
+   * @param max
+   *          detections running at the same time over all services
+   */
+  public void setMaxConcurrentDetections(int max) {
+    DetectorExecutor.setMaxConcurrent(max);
+  }
+
+  public int getMaxConcurrentDetections() {
+    return DetectorExecutor.getMaxConcurrent();
+  }
+
+  /**
+   * @return timing of each pipeline stage - empty if not pipelined
+   */
+  public List<FilterPipeline.StageStats> getStageStats() {
+    FilterPipeline pipeline = filterPipeline;
+    if (pipeline == null) {
+      return new ArrayList<>();
+    }
+    return pipeline.getStats();
+  }
+
+  /**
+   * published about once a second while capturing in pipelined mode
+   * 
+   * @param stats
+   *          timing of each stage
+   * @return the stats
+   */
+  public List<FilterPipeline.StageStats> publishStageStats(List<FilterPipeline.StageStats> stats) {
+    return stats;
+  }
+
   public void setMaxFps(Integer fps) {
     if (fps == null || fps < 1 || fps > 1000) {
       maxFps = null;
@@ -1959,6 +2173,13 @@ public class OpenCV extends AbstractComputerVision {
     }
   }
 
+  @Override
+  public void releaseService() {
+    super.releaseService();
+    // a new service of the same name starts with keys of its own
+    OpenCVDataKeys.remove(getName());
+  }
+
   public void setFormat(String format) {
     this.format = format;
     if (grabber != null) {
@@ -8,9 +8,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.framework.LatencyHistogram;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Service;
@@ -57,6 +59,16 @@ public class Python extends Service {
     protected volatile boolean running = false;
     transient protected Thread myThread = null;
 
+    /**
+     * most callbacks taken from the queue at once
+     */
+    int maxBatch = 64;
+
+    /**
+     * largest batch taken - how far the script fell behind
+     */
+    int maxBacklog = 0;
+
     public InputQueue(Python python) {
       this.python = python;
     }
@@ -65,51 +77,19 @@ public class Python extends Service {
     public void run() {
       try {
         running = true;
+        List<Message> batch = new ArrayList<Message>();
         while (running) {
 
-          Message msg = inputQueue.take();
-
-          try {
-            // FIXME - remove all msg_ .. its the old way .. :P
-
-            // serious bad bug in it which I think I fixed - the
-            // msgHandle is really the data coming from a callback
-            // it can originate from the same calling function such
-            // as Sphinx.send - but we want the callback to
-            // call a different method - this means the data needs
-            // to go to a data structure which is keyed by only the
-            // sending method, but must call the appropriate method
-            // in Sphinx
-            StringBuffer msgHandle = new StringBuffer().append("msg_").append(CodecUtils.getSafeReferenceName(msg.sender)).append("_").append(msg.sendingMethod);
-            PyObject compiledObject = null;
-
-            // TODO - getCompiledMethod(msg.method SHOULD BE
-            // getCompiledMethod(methodSignature
-            // without it - no overloading is possible
-
-            if (msg.data == null || msg.data.length == 0) {
-              compiledObject = getCompiledMethod(msg.method, String.format("%s()", msg.method), interp);
-            } else {
-              StringBuffer methodWithParams = new StringBuffer();
-              methodWithParams.append(String.format("%s(", msg.method));
-              for (int i = 0; i < msg.data.length; ++i) {
-                String paramHandle = String.format("%s_p%d", msgHandle, i);
-                interp.set(paramHandle.toString(), msg.data[i]);
-                methodWithParams.append(paramHandle);
-                if (i < msg.data.length - 1) {
-                  methodWithParams.append(",");
-                }
-              }
-              methodWithParams.append(")");
-              compiledObject = getCompiledMethod(msg.method, methodWithParams.toString(), interp);
-            }
-
-            interp.exec(compiledObject);
-
-          } catch (Exception e) {
-            log.error("InputQueueThread threw msg: {}", msg, e);
-            python.error(String.format("%s %s", e.getClass().getSimpleName(), e.getMessage()));
+          batch.add(inputQueue.take());
+          // a slow script lets callbacks queue up - take them all at once
+          inputQueue.drainTo(batch, maxBatch - 1);
+          if (batch.size() > maxBacklog) {
+            maxBacklog = batch.size();
           }
+          for (Message msg : batch) {
+            dispatch(msg);
+          }
+          batch.clear();
         }
       } catch (Exception e) {
         if (e instanceof InterruptedException) {
@@ -121,6 +101,83 @@ public class Python extends Service {
       log.info("shutting down python queue");
     }
 
+    /**
+     * call the python function of a callback - the function is looked up by
+     * name in the interpreter on every call, so functions defined again are
+     * picked up, and called with the message data converted to python
+     * objects. Dotted names or names which are not a function go through the
+     * compiled call of execCompiled.
+     */
+    void dispatch(Message msg) {
+      int arity = (msg.data == null) ? 0 : msg.data.length;
+      CallbackStats callback = callbacks.computeIfAbsent(msg.method + "/" + arity, k -> new CallbackStats(k));
+      long start = System.nanoTime();
+      if (msg.publishTs != 0) {
+        callback.delay.record(start - msg.publishTs);
+      }
+      try {
+        PyObject function = (directCallbacks) ? CallbackStats.resolve(interp, msg.method) : null;
+        if (function != null) {
+          PyObject[] args = new PyObject[arity];
+          for (int i = 0; i < arity; ++i) {
+            args[i] = Py.java2py(msg.data[i]);
+          }
+          function.__call__(args);
+        } else {
+          execCompiled(msg);
+        }
+      } catch (Exception e) {
+        ++callback.errors;
+        log.error("InputQueueThread threw msg: {}", msg, e);
+        python.error(String.format("%s %s", e.getClass().getSimpleName(), e.getMessage()));
+      } finally {
+        ++callback.count;
+        callback.runTime.record(System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * the original callback path - parameters are set as msg_ variables and a
+     * call expression is compiled
+     */
+    void execCompiled(Message msg) {
+      // FIXME - remove all msg_ .. its the old way .. :P
+
+      // serious bad bug in it which I think I fixed - the
+      // msgHandle is really the data coming from a callback
+      // it can originate from the same calling function such
+      // as Sphinx.send - but we want the callback to
+      // call a different method - this means the data needs
+      // to go to a data structure which is keyed by only the
+      // sending method, but must call the appropriate method
+      // in Sphinx
+      StringBuffer msgHandle = new StringBuffer().append("msg_").append(CodecUtils.getSafeReferenceName(msg.sender)).append("_").append(msg.sendingMethod);
+      PyObject compiledObject = null;
+
+      // TODO - getCompiledMethod(msg.method SHOULD BE
+      // getCompiledMethod(methodSignature
+      // without it - no overloading is possible
+
+      if (msg.data == null || msg.data.length == 0) {
+        compiledObject = getCompiledMethod(msg.method, String.format("%s()", msg.method), interp);
+      } else {
+        StringBuffer methodWithParams = new StringBuffer();
+        methodWithParams.append(String.format("%s(", msg.method));
+        for (int i = 0; i < msg.data.length; ++i) {
+          String paramHandle = String.format("%s_p%d", msgHandle, i);
+          interp.set(paramHandle.toString(), msg.data[i]);
+          methodWithParams.append(paramHandle);
+          if (i < msg.data.length - 1) {
+            methodWithParams.append(",");
+          }
+        }
+        methodWithParams.append(")");
+        compiledObject = getCompiledMethod(msg.method, methodWithParams.toString(), interp);
+      }
+
+      interp.exec(compiledObject);
+    }
+
     synchronized public void stop() {
       if (myThread != null) {
         running = false;
@@ -139,6 +196,46 @@ public class Python extends Service {
     }
   }
 
+  /**
+   * a python function called back by messages - with its counts and
+   * latencies
+   */
+  public static class CallbackStats {
+    /**
+     * method/number of parameters
+     */
+    public final String name;
+    public long count = 0;
+    public long errors = 0;
+    /**
+     * from the message being published to the function being called - local
+     * messages only
+     */
+    public final LatencyHistogram delay = new LatencyHistogram();
+    public final LatencyHistogram runTime = new LatencyHistogram();
+
+    public CallbackStats(String name) {
+      this.name = name;
+    }
+
+    /**
+     * @return the function currently bound to the name - null for dotted
+     *         names or names which are not a function
+     */
+    static PyObject resolve(PythonInterpreter interp, String method) {
+      if (method.indexOf('.') >= 0) {
+        return null;
+      }
+      PyObject o = interp.get(method);
+      return (o != null && o.isCallable()) ? o : null;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s count %d errors %d delay [%s] run time [%s]", name, count, errors, delay, runTime);
+    }
+  }
+
   class PIThread extends Thread {
     private String code;
     public boolean executing = false;
@@ -287,6 +384,17 @@ public class Python extends Service {
 
   transient LinkedBlockingQueue<Message> inputQueue = new LinkedBlockingQueue<Message>();
   final transient InputQueue inputQueueThread;
+
+  /**
+   * callbacks by method/number of parameters
+   */
+  transient Map<String, CallbackStats> callbacks = new ConcurrentHashMap<String, CallbackStats>();
+
+  /**
+   * call callback functions directly - false compiles a call expression for
+   * each callback as before
+   */
+  boolean directCallbacks = true;
   transient PythonInterpreter interp = null;
   transient Map<String, PIThread> interpThreads = new HashMap<String, PIThread>();
 
@@ -609,6 +717,31 @@ public class Python extends Service {
     execMethod(method, (Object[]) null);
   }
 
+  /**
+   * @return counts and latencies of the callbacks
+   */
+  public Map<String, CallbackStats> getCallbackStats() {
+    return callbacks;
+  }
+
+  /**
+   * @return callbacks waiting to be run
+   */
+  public int getBacklog() {
+    return inputQueue.size();
+  }
+
+  /**
+   * @return largest number of callbacks which were waiting at once
+   */
+  public int getMaxBacklog() {
+    return inputQueueThread.maxBacklog;
+  }
+
+  public void setDirectCallbacks(boolean b) {
+    directCallbacks = b;
+  }
+
   public void execMethod(String method, Object... parms) {
     Message msg = Message.createMessage(getName(), getName(), method, parms);
     inputQueue.add(msg);
@@ -82,7 +82,7 @@ public class RSSConnector extends AbstractConnector {
       }
       // FeedItem item = feed.getItem(i);
       // create an id for this as being url # item offset
-      Document feedItem = new Document(url + "#" + i);
+      Document feedItem = createDocument(url + "#" + i);
       feedItem.setField("rss_title", feed.getTitle());
       feedItem.setField("rss_link", feed.getLink());
       feedItem.setField("rss_description", feed.getDescription());
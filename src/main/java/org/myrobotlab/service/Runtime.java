@@ -28,7 +28,6 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -37,6 +36,7 @@ import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
+import org.myrobotlab.codec.BinaryCodec;
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.codec.CodecUtils.ApiDescription;
 import org.myrobotlab.framework.CmdOptions;
@@ -51,6 +51,7 @@ import org.myrobotlab.framework.Plan;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.ServiceRegistry;
 import org.myrobotlab.framework.Status;
 import org.myrobotlab.framework.interfaces.MessageListener;
 import org.myrobotlab.framework.interfaces.ServiceInterface;
@@ -121,7 +122,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
    * a registry of all services regardless of which environment they came from -
    * each must have a unique name
    */
-  static private final Map<String, ServiceInterface> registry = new TreeMap<>();
+  static private final ServiceRegistry registry = new ServiceRegistry();
 
   /**
    * thread for non-blocking install of services
@@ -159,6 +160,12 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
    */
   protected final RouteTable routeTable = new RouteTable();
 
+  /**
+   * ask the remote gateway for the BinaryCodec when connecting, the connection
+   * stays json if it does not support it
+   */
+  protected boolean binaryCodec = true;
+
   /**
    * map to hide methods we are not interested in
    */
@@ -498,7 +505,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
   public static String dump() {
     try {
       FileOutputStream dump = new FileOutputStream("registry.json");
-      String reg = CodecUtils.toJson(registry);
+      String reg = CodecUtils.toJson(registry.asMap());
       dump.write(reg.getBytes());
       dump.close();
       return reg;
@@ -728,10 +735,15 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
   public static Map<String, ServiceInterface> getLocalServices() {
     Map<String, ServiceInterface> local = new HashMap<>();
-    for (String serviceName : registry.keySet()) {
+    String localSuffix = "@" + Platform.getLocalInstance().getId();
+    ServiceRegistry.Snapshot snapshot = registry.getSnapshot();
+    List<String> names = snapshot.names;
+    List<ServiceInterface> services = snapshot.services;
+    for (int i = 0; i < names.size(); ++i) {
+      String serviceName = names.get(i);
       // FIXME @ should be a requirement of "all" entries for consistency
-      if (!serviceName.contains("@") || serviceName.endsWith(String.format("@%s", Platform.getLocalInstance().getId()))) {
-        local.put(serviceName, registry.get(serviceName));
+      if (!serviceName.contains("@") || serviceName.endsWith(localSuffix)) {
+        local.put(serviceName, services.get(i));
       }
     }
     return local;
@@ -743,7 +755,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
    * @return filtering/query requests
    */
   public static Map<String, ServiceInterface> getLocalServicesForExport() {
-    return registry;
+    return registry.asMap();
   }
 
   /*
@@ -782,7 +794,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
    */
   synchronized public List<Registration> getServiceList() {
     List<Registration> ret = new ArrayList<>();
-    for (ServiceInterface si : registry.values()) {
+    for (ServiceInterface si : registry.getServices()) {
       // problem with
       // ret.add(new NameAndType(si.getId(), si.getName(), si.getType(),
       // CodecUtils.toJson(si)));
@@ -791,23 +803,18 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
     return ret;
   }
 
-  // FIXME - scary function - returns private data
+  /**
+   * @return read only view of the registry in name order
+   */
   public static Map<String, ServiceInterface> getRegistry() {
-    return registry;// FIXME should return copy
+    return registry.asMap();
   }
 
   public static ServiceInterface getService(String inName) {
     if (inName == null) {
       return null;
     }
-
-    String name = getFullName(inName);
-
-    if (!registry.containsKey(name)) {
-      return null;
-    } else {
-      return registry.get(name);
-    }
+    return registry.get(inName, Platform.getLocalInstance().getId());
   }
 
   /**
@@ -886,16 +893,15 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
   public static List<ServiceInterface> getServices(String id) {
     if (id == null) {
-      return new ArrayList<ServiceInterface>(registry.values());
+      return new ArrayList<ServiceInterface>(registry.getServices());
     }
 
     List<ServiceInterface> list = new ArrayList<>();
     // otherwise we are getting services of an instance
 
-    for (String serviceName : registry.keySet()) {
-      ServiceInterface si = registry.get(serviceName);
+    for (ServiceInterface si : registry.getServices()) {
       if (si.getId().equals(id)) {
-        list.add(registry.get(serviceName));
+        list.add(si);
       }
     }
     return list;
@@ -957,29 +963,19 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
    * @return list of service interfaces
    * 
    */
-  public static synchronized List<ServiceInterface> getServicesFromInterface(Class<?> interfaze) {
-    List<ServiceInterface> ret = new ArrayList<ServiceInterface>();
-
-    Iterator<String> it = registry.keySet().iterator();
-    String serviceName;
-    ServiceInterface sw;
-    Class<?> c;
-    Class<?>[] interfaces;
-    Class<?> m;
-    while (it.hasNext()) {
-      serviceName = it.next();
-      sw = registry.get(serviceName);
-      c = sw.getClass();
-      interfaces = c.getInterfaces();
-      for (int i = 0; i < interfaces.length; ++i) {
-        m = interfaces[i];
-
-        if (m.equals(interfaze)) {
-          ret.add(sw);
-        }
-      }
-    }
-    return ret;
+  public static List<ServiceInterface> getServicesFromInterface(Class<?> interfaze) {
+    return new ArrayList<ServiceInterface>(registry.getServicesFromInterface(interfaze));
+  }
+
+  /**
+   * return a list of services which are currently running and are of a type
+   * 
+   * @param type
+   *          full class name e.g. org.myrobotlab.service.Servo
+   * @return list of service interfaces
+   */
+  public static List<ServiceInterface> getServicesFromType(String type) {
+    return new ArrayList<ServiceInterface>(registry.getServicesFromType(type));
   }
 
   static public Set<Thread> getThreads() {
@@ -1317,11 +1313,15 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
   public List<ServiceInterface> getRemoteServices(String id) {
     List<ServiceInterface> list = new ArrayList<>();
-    for (String serviceName : registry.keySet()) {
+    ServiceRegistry.Snapshot snapshot = registry.getSnapshot();
+    List<String> names = snapshot.names;
+    List<ServiceInterface> services = snapshot.services;
+    for (int i = 0; i < names.size(); ++i) {
+      String serviceName = names.get(i);
       if (serviceName.contains("@")) {
         String sid = serviceName.substring(serviceName.indexOf("@") + 1);
         if (id == null || sid.equals(id)) {
-          list.add(registry.get(serviceName));
+          list.add(services.get(i));
         }
       }
     }
@@ -1586,6 +1586,9 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
       // request default describe - on describe do registrations .. zzz
 
       WsClient client = new WsClient();
+      if (binaryCodec) {
+        client.codec = BinaryCodec.NAME;
+      }
       Connection c = client.connect(this, getFullName(), getId(), url);
 
       // URI uri = new URI(url);
@@ -1638,7 +1641,20 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
       }
 
       // decoding message envelope
-      Message msg = CodecUtils.fromJson(data, Message.class);
+      Message msg = null;
+      if (BinaryCodec.isFrame(data)) {
+        // the remote gateway accepted our codec request - from now on we
+        // send binary too
+        BinaryCodec codec = (BinaryCodec) connection.get("codec");
+        if (codec == null) {
+          codec = new BinaryCodec();
+          connection.putTransient("codec", codec);
+          connection.put("c-codec", BinaryCodec.NAME);
+        }
+        msg = codec.decodeFrame(data);
+      } else {
+        msg = CodecUtils.fromJson(data, Message.class);
+      }
       log.info("==> {} --> {}.{}", msg.sender, msg.name, msg.method);
       msg.setProperty("uuid", uuid); // Properties ???? REMOVE ???
 
@@ -1656,6 +1672,12 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
       // FIXME - see if same code block exists in WebGui .. normalize
       if (isLocal(msg)) {
+        if (Message.RETURN.equals(msg.status)) {
+          // reply to a sendAsync / sendBlocking from this process - completes
+          // the waiting future, it is not invoked
+          in(msg);
+          return;
+        }
 
         // log.info("--> {}.{} from {}", msg.name, msg.method, msg.sender);
 
@@ -1668,7 +1690,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
           log.error("local msg but no Class for requested service {}", serviceName);
           return;
         }
-        Object[] params = cache.getDecodedJsonParameters(clazz, msg.method, msg.data);
+        Object[] params = cache.getDecodedParameters(clazz, msg);
 
         Method method = cache.getMethod(clazz, msg.method, params);
         ServiceInterface si = Runtime.getService(serviceName);
@@ -1685,6 +1707,9 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
         // propagate return data to subscribers
         si.out(msg.method, ret);
+        if (Message.BLOCKING.equals(msg.status)) {
+          si.sendReply(msg, ret);
+        }
 
       } else {
         log.info("GATEWAY {} RELAY {} --to--> {}.{}", getName(), msg.sender, msg.name, msg.method);
@@ -1696,6 +1721,14 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
     }
   }
 
+  public void setBinaryCodec(boolean b) {
+    binaryCodec = b;
+  }
+
+  public boolean getBinaryCodec() {
+    return binaryCodec;
+  }
+
   public void addRoute(String remoteId, String uuid, int metric) {
     routeTable.addRoute(remoteId, uuid, metric);
   }
@@ -2259,13 +2292,13 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
 
   // FYI - the way to call "all" service methods !
   public void clearErrors() {
-    for (String serviceName : registry.keySet()) {
+    for (String serviceName : registry.getNames()) {
       send(serviceName, "clearLastError");
     }
   }
 
   public static boolean hasErrors() {
-    for (ServiceInterface si : registry.values()) {
+    for (ServiceInterface si : registry.getServices()) {
       if (si.hasError()) {
         return true;
       }
@@ -2458,6 +2491,8 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
   }
 
   public ServiceData getServiceData() {
+    // it is sent whole - decode what is still in the index
+    serviceData.loadAll();
     return serviceData;
   }
 
@@ -2570,17 +2605,9 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
       // broadcast completed connection information
       invoke("getConnections"); // FIXME - why isn't this done before ???
 
-      Set<String> set = registry.keySet();
-      String[] list = new String[set.size()];
-      set.toArray(list);
-
       // TODO - filtering on what is broadcasted or re-broadcasted
-      for (int i = 0; i < list.length; ++i) {
-        String fullname = list[i];
-        ServiceInterface si = registry.get(fullname);
-
+      for (ServiceInterface si : registry.getServices()) {
         Registration registration = new Registration(si);
-
         results.addRegistration(registration);
       }
 
@@ -2705,8 +2732,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
   }
 
   public void unregisterId(String id) {
-    Set<String> names = new HashSet<>(registry.keySet());
-    for (String name : names) {
+    for (String name : registry.getNames()) {
       if (name.endsWith("@" + id)) {
         unregister(name);
       }
@@ -2857,7 +2883,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
       return shortname;
     }
     // if nothing is supplied assume local
-    return String.format("%s@%s", shortname, Platform.getLocalInstance().getId());
+    return shortname + "@" + Platform.getLocalInstance().getId();
   }
 
   @Override
@@ -2871,7 +2897,7 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
   }
 
   public void pollHosts() {
-    runtime.addTask(20000, "getHosts");
+    runtime.addTaskBlocking("getHosts", 20000, 0, "getHosts");
   }
 
   // FIXME - remove if not using ...
@@ -2918,7 +2944,16 @@ public class Runtime extends Service implements MessageListener, ServiceLifeCycl
        * ======================================================================
        */
 
-      client.send(CodecUtils.toJsonMsg(msg));
+      BinaryCodec codec = (BinaryCodec) conn.get("codec");
+      if (codec == null) {
+        client.send(CodecUtils.toJsonMsg(msg));
+      } else {
+        // frames reference names interned by earlier frames - encode and send
+        // in the same order
+        synchronized (codec) {
+          client.send(codec.encodeFrame(msg));
+        }
+      }
     }
   }
 
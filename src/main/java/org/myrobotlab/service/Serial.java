@@ -1,5 +1,6 @@
 package org.myrobotlab.service;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -28,6 +29,7 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.net.TcpSerialHub;
+import org.myrobotlab.serial.ByteRingBuffer;
 import org.myrobotlab.serial.Port;
 import org.myrobotlab.serial.PortQueue;
 import org.myrobotlab.serial.PortStream;
@@ -94,9 +96,9 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
   int BUFFER_SIZE = 1024;
 
   /**
-   * blocking queue for blocking rx read requests
+   * rx buffer for blocking read requests - filled a chunk at a time by onBytes
    */
-  transient BlockingQueue<Integer> blockingRX = new LinkedBlockingQueue<Integer>();
+  transient ByteRingBuffer rxBuffer = new ByteRingBuffer(BUFFER_SIZE);
 
   /**
    * our set of ports we have access to. This is a shared resource between ALL
@@ -313,14 +315,14 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
    * method similar to InputStream's
    */
   public int available() {
-    return blockingRX.size();
+    return rxBuffer.size();
   }
 
   /**
    * clears the rx buffer
    */
   public void clear() {
-    blockingRX.clear();
+    rxBuffer.clear();
   }
 
   /**
@@ -731,9 +733,18 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
     return null;
   }
 
+  /**
+   * a copy of the unread rx data - reading from it does not consume anything,
+   * use read() for that
+   */
   @Override
   public BlockingQueue<?> getQueue() {
-    return blockingRX;
+    byte[] data = rxBuffer.toByteArray();
+    BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+    for (int i = 0; i < data.length; ++i) {
+      queue.add(data[i] & 0xff);
+    }
+    return queue;
   }
 
   public int getRXCount() {
@@ -758,6 +769,10 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
    * 
    * readFromPublishedByte is a catch mechanism to verify tests
    * 
+   * The whole chunk is handled at once - one publishBytes, one copy into the rx
+   * buffer, one write per tcp client and recorder. Per byte publishRX is only
+   * done when something has subscribed to it.
+   * 
    */
   @Override
   public void onBytes(byte[] bytes) {
@@ -771,30 +786,62 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
     // String byteIntString = StringUtil.byteArrayToIntString(bytes);
     // log.info("On bytes called len: {} data: {}" , bytes.length,
     // byteIntString);
-    for (int i = 0; i < bytes.length; i++) {
-      Integer newByte = bytes[i] & 0xff;
-      ++rxCount;
-      // publish the rx byte !
-      invoke("publishRX", newByte);
-      if (blockingRX.size() < BUFFER_SIZE) {
-        blockingRX.add(newByte);
+    rxCount += bytes.length;
+    rxBuffer.write(bytes, 0, bytes.length);
+
+    // opt-in per byte publishing
+    if (outbox.notifyList.containsKey("publishRX")) {
+      for (int i = 0; i < bytes.length; i++) {
+        invoke("publishRX", bytes[i] & 0xff);
       }
+    }
+
+    try {
+      tcpSerialHub.broadcast(bytes);
+    } catch (IOException e) {
+      log.warn("Error broadcasting to tcp serial hub", e);
+    }
+    if (recordRx != null) {
+      // potentially variety of formats can be supported here
       try {
-        tcpSerialHub.broadcast(newByte);
+        recordRx.write(toHex(bytes));
       } catch (IOException e) {
-        log.warn("Error broadcasting to tcp serial hub", e);
-      }
-      if (recordRx != null) {
-        // potentially variety of formats can be supported here
-        try {
-          recordRx.write(String.format(" %02X", newByte).getBytes());
-        } catch (IOException e) {
-          log.warn("Error writing to recordRx", e);
-        }
+        log.warn("Error writing to recordRx", e);
       }
     }
   }
 
+  /**
+   * record format - a space and 2 hex digits per byte
+   * 
+   * @param bytes
+   *          data
+   * @return formatted data
+   */
+  static byte[] toHex(byte[] bytes) {
+    byte[] hex = new byte[bytes.length * 3];
+    for (int i = 0; i < bytes.length; ++i) {
+      hex[i * 3] = ' ';
+      hex[i * 3 + 1] = (byte) hexArray[(bytes[i] >> 4) & 0x0f];
+      hex[i * 3 + 2] = (byte) hexArray[bytes[i] & 0x0f];
+    }
+    return hex;
+  }
+
+  /**
+   * next rx byte - waits up to the timeout
+   * 
+   * @return the byte or -1 if the timeout was reached
+   * @throws InterruptedException
+   *           e
+   */
+  int nextByte() throws InterruptedException {
+    if (timeoutMS == null) {
+      return rxBuffer.take();
+    }
+    return rxBuffer.poll(timeoutMS, TimeUnit.MILLISECONDS);
+  }
+
   @Override
   public void onConnect(String portName) {
     info("%s connected to %s", getName(), portName);
@@ -874,11 +921,8 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
    */
   @Override
   synchronized public int read() throws IOException, InterruptedException {
-    if (timeoutMS == null) {
-      return blockingRX.take();
-    }
-    Integer newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-    if (newByte == null) {
+    int newByte = nextByte();
+    if (newByte < 0) {
       String error = String.format("%d ms timeout was reached - no data", timeoutMS);
       error(error);
       throw new IOException(error);
@@ -898,14 +942,12 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
    * 
    */
   synchronized public byte[] readBytes() throws IOException, InterruptedException {
-    int size = blockingRX.size();
+    int size = rxBuffer.size();
     if (size == 0) {
       return null;
     } else {
       byte[] data = new byte[size];
-      for (int i = 0; i < size; i++) {
-        data[i] = blockingRX.take().byteValue();
-      }
+      rxBuffer.read(data, 0, size);
       return data;
     }
   }
@@ -933,14 +975,9 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
   synchronized public byte[] read(int length) throws InterruptedException {
     ByteArrayOutputStream bytes = new ByteArrayOutputStream();
     int count = 0;
-    Integer newByte = null;
     while (count < length) {
-      if (timeoutMS == null) {
-        newByte = blockingRX.take();
-      } else {
-        newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-      }
-      if (newByte == null) {
+      int newByte = nextByte();
+      if (newByte < 0) {
         if (count == 0) {
           error("got nothing!");
           return null;
@@ -949,7 +986,7 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
           break;
         }
       }
-      bytes.write(newByte.intValue() & 0xff);
+      bytes.write(newByte);
       ++count;
     }
     return bytes.toByteArray();
@@ -957,14 +994,9 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 
   public int read(int[] data) throws InterruptedException {
     int count = 0;
-    Integer newByte = null;
     while (count < data.length) {
-      if (timeoutMS == null) {
-        newByte = blockingRX.take();
-      } else {
-        newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-      }
-      if (newByte == null) {
+      int newByte = nextByte();
+      if (newByte < 0) {
         error("expecting %d bytes got %d", data.length, count);
         return count;
       }
@@ -980,18 +1012,14 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 
   public byte[] readLine(char deliminater) throws InterruptedException {
     ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-    Integer newByte = null;
-    while (newByte == null || newByte != deliminater) {
-      if (timeoutMS == null) {
-        newByte = blockingRX.take();
-      } else {
-        newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-      }
-      if (newByte == null) {
+    int newByte = -1;
+    while (newByte != deliminater) {
+      newByte = nextByte();
+      if (newByte < 0) {
         info("non blocking got nothing");
         return bytes.toByteArray();
       }
-      bytes.write(newByte.intValue() & 0xff);
+      bytes.write(newByte);
     }
     return bytes.toByteArray();
   }
@@ -1030,8 +1058,9 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
   }
 
   public void record() throws FileNotFoundException {
-    recordRx = new FileOutputStream(String.format("%s.rx.%s", getName(), Serial.format));
-    recordTx = new FileOutputStream(String.format("%s.tx.%s", getName(), Serial.format));
+    // buffered - flushed when recording stops
+    recordRx = new BufferedOutputStream(new FileOutputStream(String.format("%s.rx.%s", getName(), Serial.format)));
+    recordTx = new BufferedOutputStream(new FileOutputStream(String.format("%s.tx.%s", getName(), Serial.format)));
   }
 
   public void setFormat(String format) throws Exception {
@@ -77,6 +77,12 @@ public class TestCatcher extends Service implements SerialDataListener, HttpData
 
   boolean isLocal = true;
 
+  /**
+   * simulates a slow subscriber - each message is held this long before it is
+   * processed
+   */
+  public long processDelayMs = 0;
+
   public Set<String> onCreated = new HashSet<>();
 
   public Map<String, Registration> onRegistered = new HashMap<String, Registration>();
@@ -119,6 +125,9 @@ public class TestCatcher extends Service implements SerialDataListener, HttpData
   @Override
   public boolean preProcessHook(Message msg) {
     log.info("msg - {}.{}", msg.getName(), msg.method);
+    if (processDelayMs > 0) {
+      sleep(processDelayMs);
+    }
     put(msg);
     // TODO - determine if the callback method exists
     // if not warn return false - if so - return true;
@@ -296,7 +296,7 @@ public class Updater extends Service {
   long updateCheckIntervalMs = 5000;
 
   public synchronized void start() {
-    addTask(updateCheckIntervalMs, "checkForUpdates");
+    addTaskBlocking("checkForUpdates", updateCheckIntervalMs, 0, "checkForUpdates");
   }
 
   public synchronized void stop() {
@@ -1,8 +1,6 @@
 package org.myrobotlab.service;
 
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.myrobotlab.image.SerializableImage;
 import org.myrobotlab.logging.Level;
@@ -37,6 +35,11 @@ public class VideoStreamer
   transient private MjpegServer server;
   public boolean mergeSteams = true;
 
+  /**
+   * jpeg quality of the streams 0.0 - 1.0
+   */
+  public float quality = 0.8f;
+
   public static void main(String[] args) {
     LoggingFactory.init(Level.INFO);
     try {
@@ -75,14 +78,15 @@ public class VideoStreamer
      * if (mergeSteams) { si.setSource("output"); }
      */
 
-    if (!server.videoFeeds.containsKey(si.getSource())) {
-      server.videoFeeds.put(si.getSource(), new LinkedBlockingQueue<SerializableImage>());
+    if (server == null) {
+      return;
     }
 
-    BlockingQueue<SerializableImage> buffer = server.videoFeeds.get(si.getSource());
-    // if its backed up over 10 frames we are dumping it
-    if (buffer.size() < 1) {
-      buffer.add(si);
+    // encoded once - slow clients skip frames, they don't hold up the feed
+    try {
+      server.publish(si);
+    } catch (IOException e) {
+      log.error("{} could not encode frame {}", getName(), si.frameIndex, e);
     }
   }
 
@@ -99,6 +103,19 @@ public class VideoStreamer
     listeningPort = port;
   }
 
+  /**
+   * jpeg quality of the streams
+   * 
+   * @param quality
+   *          0.0 - 1.0 default is 0.8
+   */
+  public void setQuality(float quality) {
+    this.quality = quality;
+    if (server != null) {
+      server.setQuality(quality);
+    }
+  }
+
   public void start() {
     start(listeningPort);
   }
@@ -114,6 +131,7 @@ public class VideoStreamer
     listeningPort = port;
     try {
       server = new MjpegServer(listeningPort);
+      server.setQuality(quality);
       server.start();
     } catch (IOException e) {
       Logging.logError(e);
@@ -5,7 +5,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
 import java.security.KeyStore;
@@ -16,6 +15,7 @@ import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jmdns.JmDNS;
@@ -41,10 +41,13 @@ import org.atmosphere.nettosphere.Handler;
 import org.atmosphere.nettosphere.Nettosphere;
 import org.jboss.netty.handler.ssl.SslContext;
 import org.jboss.netty.handler.ssl.util.SelfSignedCertificate;
+import org.myrobotlab.codec.BinaryCodec;
 import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.codec.JsonStreamEncoder;
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.MethodCache;
+import org.myrobotlab.framework.MethodInvoker;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Registration;
 import org.myrobotlab.framework.Service;
@@ -55,6 +58,7 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.net.BareBonesBrowserLaunch;
 import org.myrobotlab.net.Connection;
+import org.myrobotlab.net.FlowControl;
 import org.myrobotlab.service.config.ServiceConfig;
 import org.myrobotlab.service.config.WebGuiConfig;
 import org.myrobotlab.service.interfaces.AuthorizationProvider;
@@ -215,6 +219,8 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
 
   transient AtmosphereResourceEventListenerAdapter onDisconnect;
 
+  transient AtmosphereResourceEventListenerAdapter onBroadcast;
+
   // FIXME might need to change to HashMap<String, HashMap<String,String>> to
   // add client session
   // TODO - probably should have getters - to publish - currently
@@ -258,6 +264,33 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
 
   protected int maxMsgSize = 1048576;
 
+  /**
+   * encode buffers for broadcastMode - unicast connections have their own
+   */
+  transient JsonStreamEncoder.Pool buffers = new JsonStreamEncoder.Pool();
+
+  /**
+   * flow control of each json client - uuid to FlowControl
+   */
+  transient Map<String, FlowControl> flows = new ConcurrentHashMap<>();
+
+  /**
+   * clients which negotiated the binary codec - uuid to their codec
+   */
+  transient Map<String, BinaryCodec> codecs = new ConcurrentHashMap<>();
+
+  /**
+   * what a client which can not keep up gets of a topic (publishing method) -
+   * topics without a policy are sent until the client is 4 x maxPendingBytes
+   * behind, then dropped
+   */
+  transient Map<String, FlowControl.TopicPolicy> topicPolicies = new ConcurrentHashMap<>();
+
+  /**
+   * bytes a client can have outstanding before it is considered slow
+   */
+  protected long maxPendingBytes = 1048576;
+
   public WebGui(String n, String id) {
     super(n, id);
 
@@ -285,6 +318,8 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
         log.info("onDisconnect - {} {}", event, uuid);
         Runtime runtime = Runtime.getInstance();
         runtime.removeConnection(uuid);
+        flows.remove(uuid);
+        codecs.remove(uuid);
         // runtime.removeRoute(uuid);
         // sessions.remove(uuid);
         if (event.isCancelled()) {
@@ -304,6 +339,43 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
 
       }
     };
+
+    onBroadcast = new AtmosphereResourceEventListenerAdapter() {
+
+      @Override
+      public void onBroadcast(AtmosphereResourceEvent event) {
+        FlowControl flow = flows.get(event.getResource().uuid());
+        if (flow == null) {
+          return;
+        }
+        // only FlowControl sends byte[]
+        Object data = event.getMessage();
+        if (data instanceof byte[]) {
+          flow.delivered(((byte[]) data).length);
+        } else if (data instanceof List) {
+          for (Object o : (List<?>) data) {
+            if (o instanceof byte[]) {
+              flow.delivered(((byte[]) o).length);
+            }
+          }
+        }
+      }
+
+      @Override
+      public void onThrowable(AtmosphereResourceEvent event) {
+        // a write failed - nothing pending will be reported delivered
+        FlowControl flow = flows.get(event.getResource().uuid());
+        if (flow != null) {
+          log.warn("{} transport error - resetting its flow control", event.getResource().uuid());
+          flow.reset();
+        }
+      }
+    };
+
+    // video and other high rate publishers - a slow client gets the latest
+    setTopicPolicy("publishWebDisplay", "latest", 0);
+    setTopicPolicy("publishServoMoveTo", "latest", 20);
+    setTopicPolicy("publishRX", "drop", 0);
   }
 
   @Override // FIXME - implement
@@ -629,7 +701,17 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
         // decoding 1st pass - decodes the containers
         Message msg = null;
         try {
-          msg = CodecUtils.fromJson(bodyData, Message.class);
+          if (BinaryCodec.isFrame(bodyData)) {
+            Connection connection = Runtime.getInstance().getConnection(uuid);
+            BinaryCodec codec = (connection == null) ? null : (BinaryCodec) connection.get("codec");
+            if (codec == null) {
+              log.error("binary message from connection {} which did not negotiate the binary codec", uuid);
+              return;
+            }
+            msg = codec.decodeFrame(bodyData);
+          } else {
+            msg = CodecUtils.fromJson(bodyData, Message.class);
+          }
 
           if (msg.containsHop(getId())) {
             log.error("{} dumping duplicate hop msg to avoid cyclical from {} --to--> {}.{}", getName(), msg.sender, msg.name, msg.method);
@@ -650,6 +732,11 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
         // check if we will execute it locally
         if (isLocal(msg)) {
           log.debug("invoking local msg {}", msg.toString());
+          if (Message.RETURN.equals(msg.status)) {
+            // a reply - the inbox completes the caller's future
+            in(msg);
+            return;
+          }
 
           String serviceName = msg.getFullName();
           Class<?> clazz = Runtime.getClass(serviceName);
@@ -657,9 +744,9 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
             log.error("cannot derive local type from service {}", serviceName);
           }
 
-          Object[] params = cache.getDecodedJsonParameters(clazz, msg.method, msg.data);
+          Object[] params = cache.getDecodedParameters(clazz, msg);
 
-          Method method = cache.getMethod(clazz, msg.method, params);
+          MethodInvoker method = cache.getInvoker(clazz, msg.method, params);
           if (method == null) {
             error("method cache could not find %s.%s(%s)", clazz.getSimpleName(), msg.method, msg.data);
             return;
@@ -670,6 +757,9 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
 
           // propagate return data to subscribers
           si.out(msg.method, ret);
+          if (Message.BLOCKING.equals(msg.status)) {
+            si.sendReply(msg, ret);
+          }
 
         } else {
           // msg came is and is NOT local - we will attempt to route it on its
@@ -714,6 +804,26 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
       connection.putTransient("c-r", r);
       connection.put("c-type", getSimpleName());
 
+      // json is streamed into buffers from the connection's own pool
+      connection.putTransient("buffers", new JsonStreamEncoder.Pool());
+
+      // slow clients get the topic policies instead of unbounded queues
+      r.addEventListener(onBroadcast);
+      flows.put(uuid, new FlowControl(data -> {
+        Broadcaster b = getBroadcasterFactory().lookup(uuid);
+        if (b != null) {
+          b.broadcast(data);
+        }
+      }, topicPolicies, maxPendingBytes));
+
+      // mrl clients can ask for the binary codec - browsers stay json
+      if (BinaryCodec.NAME.equals(request.getParameter("codec"))) {
+        BinaryCodec codec = new BinaryCodec();
+        connection.putTransient("codec", codec);
+        connection.put("c-codec", BinaryCodec.NAME);
+        codecs.put(uuid, codec);
+      }
+
       // cli specific
       connection.put("cwd", "/");
 
@@ -733,7 +843,17 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
     } else {
       // keeping it "fresh" - the resource changes every request ..
       // it switches on
-      runtime.getConnection(uuid).putTransient("c-r", r);
+      Connection existing = runtime.getConnection(uuid);
+      if (existing.get("c-r") != r) {
+        // a reconnect - deliveries are reported by the new resource, what the
+        // old one had not written is gone
+        r.addEventListener(onBroadcast);
+        FlowControl flow = flows.get(uuid);
+        if (flow != null) {
+          flow.reset();
+        }
+      }
+      existing.putTransient("c-r", r);
       return false;
     }
   }
@@ -953,21 +1073,31 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
       // add our id - we don't want to see it again
       msg.addHop(getId());
 
-      // Double encoding - parameters then message
-      String json = CodecUtils.toJsonMsg(msg);
-
-      if (json.length() > maxMsgSize) {
-        log.warn(String.format("sendRemote default msg size (%d) exceeded 65536 for msg %s", json.length(), msg));
-        /*
-         * debugging large msgs try {
-         * FileIO.toFile(String.format("too-big-%s-%d.json", msg.method,
-         * System.currentTimeMillis()), json); } catch (Exception e) { }
-         */
-      }
-
       if (broadcastMode) {
-        // multi-cast mode all clients have a single id
-        broadcaster.broadcast(json);
+        // multi-cast mode all clients have a single id - json is encoded once
+        // and each json client gets it through its own flow control, binary
+        // clients get a frame from their own codec
+        byte[] json = null;
+        String key = null;
+        for (Map.Entry<String, FlowControl> entry : flows.entrySet()) {
+          BinaryCodec codec = codecs.get(entry.getKey());
+          if (codec != null) {
+            Broadcaster broadcaster = getBroadcasterFactory().lookup(entry.getKey());
+            if (broadcaster != null) {
+              // frames reference names interned by earlier frames - never
+              // dropped or coalesced
+              synchronized (codec) {
+                broadcaster.broadcast(codec.encodeFrame(msg));
+              }
+            }
+            continue;
+          }
+          if (json == null) {
+            json = toJsonBytes(msg, buffers);
+            key = msg.sender + "." + msg.sendingMethod;
+          }
+          entry.getValue().send(msg.sendingMethod, key, json);
+        }
       } else {
         // uni-cast mode - all clients have their own id
         Connection c = Runtime.getInstance().getRoute(msg.getId());
@@ -976,13 +1106,102 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
           log.warn("{} failed to lookup broadcaster {} client gone?", getName(), c.getUuid());
           return;
         }
-        broadcaster.broadcast(json);
+        BinaryCodec codec = (BinaryCodec) c.get("codec");
+        FlowControl flow = flows.get(c.getUuid());
+        if (codec == null && flow != null) {
+          JsonStreamEncoder.Pool pool = (JsonStreamEncoder.Pool) c.get("buffers");
+          flow.send(msg.sendingMethod, msg.sender + "." + msg.sendingMethod, toJsonBytes(msg, (pool == null) ? buffers : pool));
+        } else if (codec == null) {
+          broadcaster.broadcast(toJsonBytes(msg, buffers));
+        } else {
+          // frames reference names interned by earlier frames - encode and
+          // broadcast in the same order, never dropped or coalesced
+          synchronized (codec) {
+            broadcaster.broadcast(codec.encodeFrame(msg));
+          }
+        }
       }
     } catch (Exception e) {
       log.error("WebGui.sendRemote threw", e);
     }
   }
 
+  /**
+   * Double encoding - parameters then message - streamed into a pooled buffer.
+   * The broadcaster writes asynchronously and may cache undelivered messages,
+   * so it gets its own exact size copy and the buffer goes straight back to
+   * the pool.
+   */
+  byte[] toJsonBytes(Message msg, JsonStreamEncoder.Pool pool) {
+    JsonStreamEncoder.Buffer json = JsonStreamEncoder.encode(msg, pool);
+
+    if (json.size() > maxMsgSize) {
+      log.warn(String.format("sendRemote default msg size (%d) exceeded %d for msg %s", json.size(), maxMsgSize, msg));
+      /*
+       * debugging large msgs try {
+       * FileIO.toFile(String.format("too-big-%s-%d.json", msg.method,
+       * System.currentTimeMillis()), json); } catch (Exception e) { }
+       */
+    }
+    byte[] bytes = json.toByteArray();
+    pool.release(json);
+    return bytes;
+  }
+
+  /**
+   * set what a slow client gets of a topic
+   * 
+   * @param topic
+   *          publishing method e.g. publishWebDisplay
+   * @param policy
+   *          latest (latest value wins) | drop | null for the default - sent
+   *          until the client is far behind
+   * @param minIntervalMs
+   *          max rate to a client, 0 for no cap
+   */
+  public void setTopicPolicy(String topic, String policy, long minIntervalMs) {
+    if (policy == null) {
+      topicPolicies.remove(topic);
+      return;
+    }
+    topicPolicies.put(topic, new FlowControl.TopicPolicy(FlowControl.Policy.valueOf(policy.toUpperCase()), minIntervalMs));
+  }
+
+  public Map<String, FlowControl.TopicPolicy> getTopicPolicies() {
+    return topicPolicies;
+  }
+
+  /**
+   * bytes a client can have outstanding before it is considered slow - applies
+   * to new connections
+   * 
+   * @param maxPendingBytes
+   *          high water mark
+   */
+  public void setMaxPendingBytes(long maxPendingBytes) {
+    this.maxPendingBytes = maxPendingBytes;
+  }
+
+  /**
+   * sends held messages of rate capped topics - runs as a task
+   */
+  public void flushClients() {
+    for (FlowControl flow : flows.values()) {
+      flow.flush();
+    }
+  }
+
+  /**
+   * @return pending bytes, held, sent, coalesced and dropped per client
+   */
+  public Map<String, String> getFlowStats() {
+    Map<String, String> stats = new HashMap<>();
+    for (Map.Entry<String, FlowControl> entry : flows.entrySet()) {
+      stats.put(entry.getKey(), entry.getValue().toString());
+    }
+    return stats;
+  }
+
   // === begin positioning panels plumbing ===
   public void set(String name, int x, int y) {
     set(name, x, y, 0); // or is z -1 ?
@@ -1088,6 +1307,7 @@ public class WebGui extends Service implements AuthorizationProvider, Gateway, H
     super.startService();
     start();
     startMdns();
+    addTask(50, "flushClients");
   }
 
   public void stop() {
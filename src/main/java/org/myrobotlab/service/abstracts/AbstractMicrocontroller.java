@@ -12,15 +12,39 @@ import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.arduino.BoardType;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.service.data.PinData;
+import org.myrobotlab.service.data.PinFrame;
 import org.myrobotlab.service.interfaces.Microcontroller;
 import org.myrobotlab.service.interfaces.PinArrayListener;
 import org.myrobotlab.service.interfaces.PinDefinition;
+import org.myrobotlab.service.interfaces.PinFrameListener;
 import org.myrobotlab.service.interfaces.PinListener;
 
 public abstract class AbstractMicrocontroller extends Service implements Microcontroller {
 
   private static final long serialVersionUID = 1L;
 
+  /**
+   * a frame listener and the frame it gets - resolved to pin addresses when
+   * attached
+   */
+  protected static class PinFrameSubscription {
+    public final PinFrameListener listener;
+    public final PinFrame frame;
+
+    PinFrameSubscription(PinFrameListener listener, PinFrame frame) {
+      this.listener = listener;
+      this.frame = frame;
+    }
+  }
+
+  /**
+   * the active pins of a PinArrayListener resolved to addresses
+   */
+  static class ActivePins {
+    String[] pins;
+    int[] addresses;
+  }
+
   /**
    * board type - UNO Mega etc..
    * 
@@ -47,6 +71,16 @@ public abstract class AbstractMicrocontroller extends Service implements Microco
    */
   transient protected Map<String, PinArrayListener> pinArrayListeners = new ConcurrentHashMap<String, PinArrayListener>();
 
+  /**
+   * active pin addresses of the pinArrayListeners
+   */
+  transient Map<String, ActivePins> activePins = new ConcurrentHashMap<>();
+
+  /**
+   * local listeners of primitive pin frames
+   */
+  transient protected Map<String, PinFrameSubscription> pinFrameListeners = new ConcurrentHashMap<>();
+
   /**
    * address index of pins - this is the "true" representation of pins as
    * whatever its documented to people e.g. "A5" or "D7", it comes down to a
@@ -90,6 +124,7 @@ public abstract class AbstractMicrocontroller extends Service implements Microco
   @Override
   public void attach(PinArrayListener listener) {
     pinArrayListeners.put(listener.getName(), listener);
+    getActiveAddresses(listener);
     // TODO: re-implement this.. it seemed unstable when i was testing before.
     // attaching a pin listener should enable the pins (if they're not already
     // enabled.)
@@ -109,6 +144,65 @@ public abstract class AbstractMicrocontroller extends Service implements Microco
 
   }
 
+  /**
+   * attach a local listener of primitive pin frames - its pins are resolved to
+   * addresses now, each poll only copies values
+   * 
+   * @param listener
+   *          the listener
+   */
+  public void attach(PinFrameListener listener) {
+    String[] pins = listener.getActivePins();
+    PinFrame frame = (pins == null || pins.length == 0) ? new PinFrame(pinIndex.size()) : new PinFrame(resolvePins(pins));
+    pinFrameListeners.put(listener.getName(), new PinFrameSubscription(listener, frame));
+  }
+
+  public void detach(PinFrameListener listener) {
+    pinFrameListeners.remove(listener.getName());
+  }
+
+  /**
+   * @param pins
+   *          pin names
+   * @return addresses of the pins - -1 for pins which do not exist
+   */
+  protected int[] resolvePins(String[] pins) {
+    int[] addresses = new int[pins.length];
+    for (int i = 0; i < pins.length; ++i) {
+      PinDefinition pinDef = getPin(pins[i]);
+      if (pinDef == null) {
+        log.error("{} is not a valid pin", pins[i]);
+        addresses[i] = -1;
+      } else {
+        addresses[i] = pinDef.getAddress();
+      }
+    }
+    return addresses;
+  }
+
+  /**
+   * addresses of the active pins of a PinArrayListener - resolved when it was
+   * attached and again only if it hands out a different array of pins
+   * 
+   * @param listener
+   *          the listener
+   * @return the addresses or null for all pins
+   */
+  protected int[] getActiveAddresses(PinArrayListener listener) {
+    String[] pins = listener.getActivePins();
+    if (pins == null || pins.length == 0) {
+      return null;
+    }
+    ActivePins active = activePins.get(listener.getName());
+    if (active == null || active.pins != pins) {
+      active = new ActivePins();
+      active.pins = pins;
+      active.addresses = resolvePins(pins);
+      activePins.put(listener.getName(), active);
+    }
+    return active.addresses;
+  }
+
   /**
    * attach a pin listener who listens to a specific pin
    */
@@ -16,4 +16,14 @@ public class ServiceConfig {
   // public HashMap<String, List<MRLListener>> listeners;
   public ArrayList<String> attach;
 
+  /**
+   * inbox/outbox mailbox type "linked" or "ring" - null is default linked
+   */
+  public String mailbox;
+  public Integer mailboxSize;
+  /**
+   * inbox overflow policy - BLOCK, DROP_NEWEST, DROP_OLDEST, COALESCE, WARN
+   */
+  public String overflowPolicy;
+
 }
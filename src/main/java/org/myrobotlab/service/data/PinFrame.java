@@ -0,0 +1,144 @@
+package org.myrobotlab.service.data;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * One poll of a pin array in primitive form - pin addresses and values, no
+ * PinData, no names, no boxing. Frames are reused, a listener must copy what it
+ * wants to keep before returning from onPinFrame.
+ *
+ * A frame is either for all pins, which are in the order the board sent them,
+ * or for a fixed set of pins resolved when the listener attached - then the
+ * pins are in the order the listener asked for them and updated tells which of
+ * them were in this poll.
+ */
+public class PinFrame implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * number of pins in the frame
+   */
+  public int size;
+
+  public int[] address;
+
+  public int[] value;
+
+  /**
+   * true if the pin was in this poll
+   */
+  public boolean[] updated;
+
+  /**
+   * pin address to index in the frame, -1 if not wanted - null for all pins
+   */
+  transient int[] index;
+
+  /**
+   * a frame for all pins
+   *
+   * @param capacity
+   *          initial number of pins - grows if needed
+   */
+  public PinFrame(int capacity) {
+    address = new int[capacity];
+    value = new int[capacity];
+    updated = new boolean[capacity];
+  }
+
+  /**
+   * a frame for a fixed set of pins
+   *
+   * @param addresses
+   *          addresses of the pins wanted, -1 for a pin which does not exist
+   */
+  public PinFrame(int[] addresses) {
+    size = addresses.length;
+    address = addresses.clone();
+    value = new int[size];
+    updated = new boolean[size];
+    int max = -1;
+    for (int a : addresses) {
+      max = Math.max(max, a);
+    }
+    index = new int[max + 1];
+    Arrays.fill(index, -1);
+    // unknown pins (-1) keep their place but are never updated
+    for (int i = 0; i < size; ++i) {
+      if (addresses[i] >= 0) {
+        index[addresses[i]] = i;
+      }
+    }
+  }
+
+  /**
+   * start a new poll
+   */
+  public void clear() {
+    if (index == null) {
+      size = 0;
+    } else {
+      Arrays.fill(updated, false);
+    }
+  }
+
+  /**
+   * @param pinAddress
+   *          address
+   * @param pinValue
+   *          value
+   * @return false if this frame does not want the pin
+   */
+  public boolean set(int pinAddress, int pinValue) {
+    if (index == null) {
+      if (size == address.length) {
+        int capacity = Math.max(8, size << 1);
+        address = Arrays.copyOf(address, capacity);
+        value = Arrays.copyOf(value, capacity);
+        updated = Arrays.copyOf(updated, capacity);
+      }
+      address[size] = pinAddress;
+      value[size] = pinValue;
+      updated[size] = true;
+      ++size;
+      return true;
+    }
+    if (pinAddress < 0 || pinAddress >= index.length || index[pinAddress] < 0) {
+      return false;
+    }
+    int i = index[pinAddress];
+    value[i] = pinValue;
+    updated[i] = true;
+    return true;
+  }
+
+  /**
+   * @param pinAddress
+   *          address
+   * @return index of the pin in the frame or -1
+   */
+  public int indexOf(int pinAddress) {
+    if (index != null) {
+      return (pinAddress >= 0 && pinAddress < index.length) ? index[pinAddress] : -1;
+    }
+    for (int i = 0; i < size; ++i) {
+      if (address[i] == pinAddress) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < size; ++i) {
+      if (updated[i]) {
+        sb.append(String.format("%d=%d ", address[i], value[i]));
+      }
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,20 @@
+package org.myrobotlab.service.interfaces;
+
+import org.myrobotlab.service.data.PinFrame;
+
+/**
+ * primitive version of PinArrayListener - gets every poll of the pin array as
+ * a reused PinFrame
+ */
+public interface PinFrameListener extends Listener {
+
+  public void onPinFrame(PinFrame frame);
+
+  /**
+   * resolved once when attached - null or empty for all pins
+   *
+   * @return names of the pins wanted
+   */
+  public String[] getActivePins();
+
+}
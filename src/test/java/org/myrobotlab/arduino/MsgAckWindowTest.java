@@ -0,0 +1,139 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.interfaces.MrlCommPublisher;
+import org.myrobotlab.service.interfaces.SerialDevice;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class MsgAckWindowTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(MsgAckWindowTest.class);
+
+  // written by the test and the retransmit task
+  List<byte[]> written = Collections.synchronizedList(new ArrayList<>());
+
+  static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == int.class) {
+      return 0;
+    }
+    return null;
+  }
+
+  Msg createMsg() {
+    // board callbacks are not under test
+    MrlCommPublisher arduino = (MrlCommPublisher) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { MrlCommPublisher.class },
+        (proxy, method, args) -> defaultValue(method.getReturnType()));
+    // records every frame written to the board
+    SerialDevice serial = (SerialDevice) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { SerialDevice.class }, (proxy, method, args) -> {
+      if ("write".equals(method.getName()) && args[0] instanceof byte[]) {
+        written.add((byte[]) args[0]);
+      }
+      return defaultValue(method.getReturnType());
+    });
+    Msg msg = new Msg(arduino, serial);
+    msg.setInvoke(false);
+    msg.onBytes(new byte[] { (byte) Msg.MAGIC_NUMBER, 2, Msg.PUBLISH_MRL_COMM_BEGIN, Msg.MRLCOMM_VERSION });
+    return msg;
+  }
+
+  byte[] ack(int function, int seq) {
+    if (seq < 0) {
+      return new byte[] { (byte) Msg.MAGIC_NUMBER, 2, Msg.PUBLISH_ACK, (byte) function };
+    }
+    return new byte[] { (byte) Msg.MAGIC_NUMBER, 3, Msg.PUBLISH_ACK, (byte) function, (byte) seq };
+  }
+
+  /**
+   * wait until the retransmit task has done its part
+   */
+  static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 2000;
+    while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+  }
+
+  @Test
+  public void testWindow() throws Exception {
+    Msg msg = createMsg();
+    msg.setAckWindow(4);
+
+    // the window only opens once the board acks with a sequence number
+    msg.servoMoveToMicroseconds(1, 1500);
+    assertEquals(1, msg.getAckWindow());
+    msg.onBytes(ack(Msg.SERVO_MOVE_TO_MICROSECONDS, 0));
+    assertTrue(msg.isSeqAcks());
+    assertEquals(4, msg.getAckWindow());
+    assertEquals(0, msg.getInFlight());
+
+    // 4 in flight without a single ack
+    for (int i = 1; i <= 4; ++i) {
+      msg.servoMoveToMicroseconds(1, 1500 + i);
+    }
+    assertEquals(5, written.size());
+    assertEquals(4, msg.getInFlight());
+
+    // size includes the sequence number which is the last byte
+    byte[] frame = written.get(2);
+    assertEquals(1 + 1 + 2 + 1, frame[1]);
+    assertEquals(2, frame[frame.length - 1]);
+
+    // seq 1 was lost - the ack of 2 has it retransmitted without waiting on
+    // the timeout
+    msg.onBytes(ack(Msg.SERVO_MOVE_TO_MICROSECONDS, 2));
+    assertEquals(3, msg.getInFlight());
+    waitFor(() -> written.size() == 6);
+    assertEquals(1, written.get(5)[written.get(5).length - 1]);
+    assertEquals(1, msg.getRetransmitCount());
+
+    // nothing comes back - retransmitted on timeout, then given up on
+    msg.setRetransmitTimeout(10);
+    msg.servoMoveToMicroseconds(1, 1600);
+    waitFor(() -> msg.getInFlight() == 0);
+    assertEquals(0, msg.getInFlight());
+    assertEquals(4 * Msg.MAX_RETRIES, msg.getRetransmitCount());
+
+    // reset on disconnect
+    msg.onDisconnect("COM42");
+    assertFalse(msg.isSeqAcks());
+    assertEquals(1, msg.getAckWindow());
+  }
+
+  @Test
+  public void testBoardWithoutSeq() throws Exception {
+    Msg msg = createMsg();
+    msg.setAckWindow(4);
+    msg.setRetransmitTimeout(10);
+
+    // acks without sequence numbers are matched in order - the window stays
+    // at 1
+    msg.servoMoveToMicroseconds(1, 1500);
+    msg.onBytes(ack(Msg.SERVO_MOVE_TO_MICROSECONDS, -1));
+    assertFalse(msg.isSeqAcks());
+    assertEquals(1, msg.getAckWindow());
+    assertEquals(0, msg.getInFlight());
+
+    // and nothing is retransmitted
+    msg.servoMoveToMicroseconds(1, 1501);
+    Thread.sleep(50);
+    assertEquals(2, written.size());
+    assertEquals(0, msg.getRetransmitCount());
+    msg.onDisconnect("COM42");
+  }
+
+}
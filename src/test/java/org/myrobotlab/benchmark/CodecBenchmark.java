@@ -0,0 +1,109 @@
+package org.myrobotlab.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.codec.BinaryCodec;
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.codec.JsonStreamEncoder;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.framework.MethodCache;
+import org.myrobotlab.service.TestCatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * gateway message encoding - CodecUtils.toJsonMsg and the two pass decode
+ * WebGui does with Message + MethodCache.getDecodedJsonParameters, against
+ * the BinaryCodec negotiated by mrl to mrl connections
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+  Message msg;
+
+  String json;
+
+  MethodCache cache;
+
+  BinaryCodec encoder;
+
+  BinaryCodec decoder;
+
+  String frame;
+
+  JsonStreamEncoder.Pool pool;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = MethodCache.getInstance();
+    cache.cacheMethodEntries(TestCatcher.class);
+    msg = Message.createMessage("thrower", "catcher", "testMultipleParamTypes", new Object[] { "hello world", 3.14, 7 });
+    msg.sendingMethod = "pitch";
+    json = CodecUtils.toJsonMsg(msg);
+
+    // steady state of a connection - names already interned on both ends
+    encoder = new BinaryCodec();
+    decoder = new BinaryCodec();
+    decoder.decodeFrame(encoder.encodeFrame(msg));
+    frame = encoder.encodeFrame(msg);
+
+    pool = new JsonStreamEncoder.Pool();
+  }
+
+  @Benchmark
+  public String encode() {
+    return CodecUtils.toJsonMsg(msg);
+  }
+
+  @Benchmark
+  public Object[] decode() {
+    Message decoded = CodecUtils.fromJson(json, Message.class);
+    return cache.getDecodedJsonParameters(TestCatcher.class, decoded.method, decoded.data);
+  }
+
+  /**
+   * what WebGui.sendRemote hands the broadcaster
+   */
+  @Benchmark
+  public byte[] encodeStream() {
+    JsonStreamEncoder.Buffer buffer = JsonStreamEncoder.encode(msg, pool);
+    byte[] bytes = buffer.toByteArray();
+    pool.release(buffer);
+    return bytes;
+  }
+
+  /**
+   * the same from the json string
+   */
+  @Benchmark
+  public byte[] encodeBytes() {
+    return CodecUtils.toJsonMsg(msg).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String encodeBinary() {
+    return encoder.encodeFrame(msg);
+  }
+
+  @Benchmark
+  public Object[] decodeBinary() {
+    Message decoded = decoder.decodeFrame(frame);
+    return cache.getDecodedBinaryParameters(TestCatcher.class, decoded.method, decoded.data);
+  }
+
+}
@@ -0,0 +1,65 @@
+package org.myrobotlab.benchmark;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.framework.MethodCache;
+import org.myrobotlab.framework.MethodInvoker;
+import org.myrobotlab.service.TestCatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * method resolution for in-process invoking - the string keyed getMethod
+ * lookup against the compiled invoker cache
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MethodCacheBenchmark {
+
+  MethodCache cache;
+
+  Object[] params = new Object[] { "hello world", 3.14, 7 };
+
+  Object[] overloaded = new Object[] { 7 };
+
+  @Setup(Level.Trial)
+  public void setup() {
+    cache = MethodCache.getInstance();
+    cache.cacheMethodEntries(TestCatcher.class);
+  }
+
+  @Benchmark
+  public Method getMethod() throws ClassNotFoundException {
+    return cache.getMethod(TestCatcher.class, "testMultipleParamTypes", params);
+  }
+
+  @Benchmark
+  public Method getMethodOverloaded() throws ClassNotFoundException {
+    return cache.getMethod(TestCatcher.class, "getPin", overloaded);
+  }
+
+  @Benchmark
+  public MethodInvoker getInvoker() throws ClassNotFoundException {
+    return cache.getInvoker(TestCatcher.class, "testMultipleParamTypes", params);
+  }
+
+  @Benchmark
+  public MethodInvoker getInvokerOverloaded() throws ClassNotFoundException {
+    return cache.getInvoker(TestCatcher.class, "getPin", overloaded);
+  }
+
+}
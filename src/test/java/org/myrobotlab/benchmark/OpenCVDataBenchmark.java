@@ -0,0 +1,127 @@
+package org.myrobotlab.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.opencv.opencv_core.IplImage;
+import org.myrobotlab.math.geometry.Rectangle;
+import org.myrobotlab.opencv.ImageFileFrameGrabber;
+import org.myrobotlab.opencv.OpenCVData;
+import org.myrobotlab.opencv.OpenCVDataKeys;
+import org.myrobotlab.service.OpenCV;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The OpenCVData bookkeeping of one frame going through a pipeline of filters
+ * - a new OpenCVData per frame against a recycled one, and the per frame
+ * String.format keys against the registered slots. The frame comes from an
+ * ImageFileFrameGrabber and is grabbed once, so image decoding is not part of
+ * the measurement.
+ *
+ * Run with -prof gc, gc.alloc.rate.norm is the bytes allocated per frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenCVDataBenchmark {
+
+  @Param({ "1", "4", "8" })
+  public int filterCount;
+
+  ImageFileFrameGrabber grabber;
+
+  Frame frame;
+
+  IplImage image;
+
+  String[] filterNames;
+
+  OpenCVDataKeys keys;
+
+  OpenCVData recycled;
+
+  List<Rectangle> boxes = new ArrayList<>();
+
+  int frameIndex = 0;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    grabber = new ImageFileFrameGrabber("src/test/resources/OpenCV/white-640x480.png");
+    grabber.start();
+    frame = grabber.grab();
+    image = OpenCV.toImage(frame);
+    keys = OpenCVDataKeys.get("cv");
+    filterNames = new String[filterCount];
+    for (int i = 0; i < filterCount; ++i) {
+      filterNames[i] = "filter" + i;
+      // what OpenCV.addFilter does
+      keys.register(filterNames[i]);
+    }
+    recycled = new OpenCVData("cv", System.currentTimeMillis(), frameIndex, frame);
+  }
+
+  OpenCVData process(OpenCVData data) {
+    for (String filterName : filterNames) {
+      data.setSelectedFilter(filterName);
+      data.getOutputImage();
+      data.put(image);
+      data.put("BoundingBoxArray", boxes);
+      data.getImage();
+    }
+    return data;
+  }
+
+  @Benchmark
+  public OpenCVData newPerFrame() {
+    return process(new OpenCVData("cv", System.currentTimeMillis(), ++frameIndex, frame));
+  }
+
+  @Benchmark
+  public OpenCVData pooled() {
+    recycled.reset(System.currentTimeMillis(), ++frameIndex, frame);
+    return process(recycled);
+  }
+
+  @Benchmark
+  public int formatKeys() {
+    int hash = 0;
+    for (String filterName : filterNames) {
+      hash += String.format("%s.%s.IplImage", "cv", filterName).hashCode();
+      hash += String.format("%s.output.IplImage", "cv").hashCode();
+    }
+    return hash;
+  }
+
+  @Benchmark
+  public int slotKeys() {
+    int slots = 0;
+    for (String filterName : filterNames) {
+      slots += keys.slot(filterName, "IplImage");
+      slots += keys.outputImage;
+    }
+    return slots;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    grabber.release();
+  }
+
+}
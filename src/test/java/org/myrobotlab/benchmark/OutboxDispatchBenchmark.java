@@ -0,0 +1,94 @@
+package org.myrobotlab.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.framework.Mailbox;
+import org.myrobotlab.framework.OverflowPolicy;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.TestCatcher;
+import org.myrobotlab.service.TestThrower;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of a single publisher to N subscribers, one of which is slow,
+ * with sequential and parallel outbox dispatch. The rate is measured at the
+ * fast subscribers - with sequential dispatch they are held back by the slow
+ * one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutboxDispatchBenchmark {
+
+  @Param({ "2", "4", "8", "16" })
+  public int subscribers;
+
+  @Param({ "false", "true" })
+  public boolean parallelDispatch;
+
+  TestThrower thrower;
+
+  TestCatcher slow;
+
+  List<TestCatcher> fast = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    LoggingFactory.init("WARN");
+    thrower = (TestThrower) Runtime.start("thrower", "TestThrower");
+    thrower.getOutbox().setParallelDispatch(parallelDispatch);
+
+    // slow subscriber with a small blocking inbox - back pressure stalls
+    // whatever is delivering to it
+    slow = (TestCatcher) Runtime.create("slow", "TestCatcher");
+    slow.setMailbox(Mailbox.RING, 16, OverflowPolicy.BLOCK.toString());
+    slow.processDelayMs = 1;
+    slow.startService();
+    slow.subscribe("thrower", "pitch");
+
+    for (int i = 0; i < subscribers - 1; ++i) {
+      TestCatcher catcher = (TestCatcher) Runtime.start("fast" + i, "TestCatcher");
+      catcher.subscribe("thrower", "pitch");
+      fast.add(catcher);
+    }
+  }
+
+  @Benchmark
+  public Object publish() throws InterruptedException {
+    thrower.invoke("pitch", 1);
+    Object last = null;
+    for (int i = 0; i < fast.size(); ++i) {
+      last = fast.get(i).msgs.take();
+    }
+    return last;
+  }
+
+  @TearDown(Level.Iteration)
+  public void drain() {
+    slow.msgs.clear();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Runtime.releaseAll();
+  }
+
+}
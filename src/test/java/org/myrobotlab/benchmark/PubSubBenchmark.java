@@ -0,0 +1,76 @@
+package org.myrobotlab.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.TestCatcher;
+import org.myrobotlab.service.TestThrower;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Local publish/subscribe latency - invoke on the publisher until every
+ * subscriber has the message in hand. With 1 subscriber this is the full
+ * invoke --&gt; Outbox --&gt; subscriber Inbox --&gt; subscriber thread path,
+ * with more it measures fan-out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PubSubBenchmark {
+
+  @Param({ "1", "4", "16" })
+  public int subscribers;
+
+  @Param({ "false", "true" })
+  public boolean parallelDispatch;
+
+  TestThrower thrower;
+
+  List<TestCatcher> catchers = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void setup() {
+    LoggingFactory.init("WARN");
+    thrower = (TestThrower) Runtime.start("thrower", "TestThrower");
+    thrower.getOutbox().setParallelDispatch(parallelDispatch);
+    for (int i = 0; i < subscribers; ++i) {
+      TestCatcher catcher = (TestCatcher) Runtime.start("catcher" + i, "TestCatcher");
+      catcher.subscribe("thrower", "pitch");
+      catchers.add(catcher);
+    }
+  }
+
+  @Benchmark
+  public Object publish() throws InterruptedException {
+    thrower.invoke("pitch", 1);
+    Object last = null;
+    for (int i = 0; i < catchers.size(); ++i) {
+      last = catchers.get(i).msgs.take();
+    }
+    return last;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Runtime.releaseAll();
+  }
+
+}
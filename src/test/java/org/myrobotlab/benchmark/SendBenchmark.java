@@ -0,0 +1,62 @@
+package org.myrobotlab.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.framework.TimeoutException;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.TestCatcher;
+import org.myrobotlab.service.TestThrower;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * point to point messaging - Service.send through the sender's outbox to the
+ * receiver's inbox and thread, and the sendBlocking round trip
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendBenchmark {
+
+  TestThrower thrower;
+
+  TestCatcher catcher;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    LoggingFactory.init("WARN");
+    thrower = (TestThrower) Runtime.start("thrower", "TestThrower");
+    catcher = (TestCatcher) Runtime.start("catcher", "TestCatcher");
+  }
+
+  @Benchmark
+  public Object send() throws InterruptedException {
+    thrower.send("catcher", "onInteger", 7);
+    return catcher.msgs.take();
+  }
+
+  @Benchmark
+  public Object sendBlocking() throws InterruptedException, TimeoutException {
+    return thrower.sendBlocking("catcher", "onInteger", 7);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Runtime.releaseAll();
+  }
+
+}
@@ -0,0 +1,93 @@
+package org.myrobotlab.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.myrobotlab.framework.LatencyHistogram;
+import org.myrobotlab.framework.Platform;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Arduino;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.Servo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+
+/**
+ * Servo --&gt; Arduino (virtual) publish latency through the pub/sub path,
+ * with Arduino.onServoMoveTo queued on the Arduino's inbox or delivered
+ * directly from the Servo's outbox. onServoMoveTo writes to the serial port so
+ * it is not a DirectCallback - it is switched to direct here only to measure
+ * what the inbox hop costs. JMH reports the sampled distribution of publish
+ * until the Arduino picks the message up, the publish to invoke histograms
+ * the Arduino kept are logged at the end of each trial.
+ *
+ * Servo.moveTo itself uses broadcast which already invokes the controller on
+ * the calling thread, so the servo's publishServoMoveTo is invoked here to go
+ * through the outbox like any other published event.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServoArduinoBenchmark {
+
+  public final static Logger log = LoggerFactory.getLogger(ServoArduinoBenchmark.class);
+
+  @Param({ "false", "true" })
+  public boolean direct;
+
+  Servo servo;
+
+  Arduino arduino;
+
+  long expected = 0;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    LoggingFactory.init("WARN");
+    LoggingFactory.getInstance().setLevel(ServoArduinoBenchmark.class.getName(), "INFO");
+    Platform.setVirtual(true);
+    arduino = (Arduino) Runtime.start("arduino", "Arduino");
+    arduino.connect("COM42");
+    servo = (Servo) Runtime.start("servo", "Servo");
+    servo.attach(arduino, 7, 90.0);
+    arduino.setDirectCallback("onServoMoveTo", direct);
+    arduino.resetLatencyStats();
+  }
+
+  @Benchmark
+  public long publish() {
+    servo.invoke("publishServoMoveTo", servo);
+    ++expected;
+    LatencyHistogram histogram = null;
+    while (histogram == null || histogram.getCount() < expected) {
+      Thread.yield();
+      histogram = arduino.getLatencyStats().get("onServoMoveTo");
+    }
+    return expected;
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    for (Map.Entry<String, LatencyHistogram> entry : arduino.getLatencyStats().entrySet()) {
+      log.info("direct {} arduino.{} {}", direct, entry.getKey(), entry.getValue());
+    }
+    Runtime.releaseAll();
+  }
+
+}
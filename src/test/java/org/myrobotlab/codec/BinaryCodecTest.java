@@ -0,0 +1,76 @@
+package org.myrobotlab.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.myrobotlab.framework.MRLListener;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class BinaryCodecTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(BinaryCodecTest.class);
+
+  @Test
+  public void testRoundTrip() {
+    // one codec per end of the connection
+    BinaryCodec sender = new BinaryCodec();
+    BinaryCodec receiver = new BinaryCodec();
+
+    Message msg = Message.createMessage("runtime@a", "servo@b", "moveTo", new Object[] { 10.5, 7, -3L, true, "hello", null, new int[] { 1, -2, 300 }, new byte[] { 1, 2 },
+        new MRLListener("publishState", "gui@a", "onState") });
+    msg.msgId = 1234567890123L;
+    msg.status = Message.BLOCKING;
+    msg.addHop("a");
+    msg.setProperty("uuid", "xyz");
+
+    String frame = sender.encodeFrame(msg);
+    assertTrue(BinaryCodec.isFrame(frame));
+    Message decoded = receiver.decodeFrame(frame);
+
+    assertEquals(BinaryCodec.NAME, decoded.encoding);
+    assertEquals(msg.msgId, decoded.msgId);
+    assertEquals("servo@b", decoded.name);
+    assertEquals("runtime@a", decoded.sender);
+    assertEquals("moveTo", decoded.method);
+    assertEquals(Message.BLOCKING, decoded.status);
+    assertEquals("a", decoded.getHops().get(0));
+    assertEquals("xyz", decoded.getProperty("uuid"));
+
+    assertEquals(10.5, decoded.data[0]);
+    assertEquals(7, decoded.data[1]);
+    assertEquals(-3L, decoded.data[2]);
+    assertEquals(true, decoded.data[3]);
+    assertEquals("hello", decoded.data[4]);
+    assertNull(decoded.data[5]);
+    assertArrayEquals(new int[] { 1, -2, 300 }, (int[]) decoded.data[6]);
+    assertArrayEquals(new byte[] { 1, 2 }, (byte[]) decoded.data[7]);
+
+    // objects travel as json and are decoded to the parameter type
+    MRLListener listener = (MRLListener) BinaryCodec.toType(decoded.data[8], MRLListener.class);
+    assertEquals("onState", listener.callbackMethod);
+
+    // numbers are converted to the parameter type
+    assertEquals(7.0, BinaryCodec.toType(decoded.data[1], double.class));
+
+    // second message only references the interned names - and is smaller
+    String second = sender.encodeFrame(msg);
+    assertTrue(second.length() < frame.length());
+    assertEquals("servo@b", receiver.decodeFrame(second).name);
+  }
+
+  @Test
+  public void testNullData() {
+    BinaryCodec codec = new BinaryCodec();
+    Message msg = Message.createMessage("a", "b", "c", (Object[]) null);
+    assertNull(codec.decode(codec.encode(msg)).data);
+    msg.data = new Object[0];
+    assertEquals(0, codec.decode(codec.encode(msg)).data.length);
+  }
+
+}
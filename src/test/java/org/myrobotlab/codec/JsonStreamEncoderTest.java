@@ -0,0 +1,144 @@
+package org.myrobotlab.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class JsonStreamEncoderTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(JsonStreamEncoderTest.class);
+
+  String stream(Message msg) {
+    JsonStreamEncoder.Pool pool = new JsonStreamEncoder.Pool();
+    JsonStreamEncoder.Buffer buffer = JsonStreamEncoder.encode(msg, pool);
+    String json = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    pool.release(buffer);
+    return json;
+  }
+
+  @Test
+  public void testSameAsToJsonMsg() throws Exception {
+    Message msg = Message.createMessage("thrower", "catcher", "onPitch",
+        new Object[] { "quote \" slash \\ tab \t line\n sep \u2028 ctl \u0001 <html> \u00e9 \u20ac \ud83d\ude00", 3.14, null, new int[] { 1, 2, 3 }, true });
+    msg.sendingMethod = "publishPitch";
+    msg.addHop("remote-1");
+    msg.setProperty("uuid", "1234-5678");
+    msg.setProperty("count", 7);
+    msg.status = Message.BLOCKING;
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+
+    // no data
+    msg = Message.createMessage("thrower", "catcher", "getName", null);
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+
+    // already json encoded
+    msg = Message.createMessage("thrower", "catcher", "onPitch", new Object[] { CodecUtils.toJson("fast ball"), null });
+    msg.encoding = "json";
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+
+    // relayed from a binary connection
+    msg = Message.createMessage("thrower", "catcher", "onPitch", new Object[] { new BinaryCodec.JsonValue("{\"speed\":98}") });
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+  }
+
+  /**
+   * the serialized fields of Message - the ones gson writes
+   */
+  static List<Field> fields() {
+    List<Field> ret = new ArrayList<>();
+    for (Field field : Message.class.getDeclaredFields()) {
+      int modifiers = field.getModifiers();
+      if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+        continue;
+      }
+      field.setAccessible(true);
+      ret.add(field);
+    }
+    return ret;
+  }
+
+  /**
+   * a value for a field - fails for a type this test does not know, a new
+   * field must be handled here and in JsonStreamEncoder.write
+   */
+  static Object value(Field field) {
+    Class<?> type = field.getType();
+    if (type == long.class) {
+      return 42L;
+    } else if (type == String.class) {
+      return field.getName() + "-value";
+    } else if (List.class.isAssignableFrom(type)) {
+      List<String> list = new ArrayList<>();
+      list.add(field.getName() + "-value");
+      return list;
+    } else if (Map.class.isAssignableFrom(type)) {
+      Map<String, Object> map = new HashMap<>();
+      map.put(field.getName(), 7);
+      return map;
+    } else if (type == Object[].class) {
+      return new Object[] { field.getName(), 7, null };
+    }
+    fail(String.format("Message.%s %s is not handled - add it to JsonStreamEncoder.write and this test", field.getName(), type));
+    return null;
+  }
+
+  @Test
+  public void testEveryField() throws Exception {
+    // every field set
+    Message msg = new Message();
+    for (Field field : fields()) {
+      field.set(msg, value(field));
+    }
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+    msg.encoding = "json";
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+
+    // every field unset
+    msg = new Message();
+    for (Field field : fields()) {
+      field.set(msg, (field.getType() == long.class) ? 0L : null);
+    }
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+    msg.encoding = "json";
+    assertEquals(CodecUtils.toJsonMsg(msg), stream(msg));
+  }
+
+  @Test
+  public void testPool() throws Exception {
+    JsonStreamEncoder.Pool pool = new JsonStreamEncoder.Pool(2, 16, 1024);
+    Message msg = Message.createMessage("thrower", "catcher", "onPitch", new Object[] { "curve ball" });
+
+    JsonStreamEncoder.Buffer buffer = JsonStreamEncoder.encode(msg, pool);
+    int size = buffer.size();
+    pool.release(buffer);
+    assertEquals(1, pool.size());
+
+    // reused and reset
+    JsonStreamEncoder.Buffer again = JsonStreamEncoder.encode(msg, pool);
+    assertSame(buffer, again);
+    assertEquals(size, again.size());
+    pool.release(again);
+
+    // a buffer which grew too large is not kept
+    JsonStreamEncoder.Buffer big = pool.acquire();
+    assertEquals(0, pool.size());
+    big.write(new String(new char[2048]));
+    pool.release(big);
+    assertEquals(0, pool.size());
+  }
+
+}
@@ -0,0 +1,142 @@
+package org.myrobotlab.document;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Test;
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.test.AbstractTest;
+
+public class CompactDocumentTest extends AbstractTest {
+
+  /**
+   * the same calls on a Document and a CompactDocument give the same fields
+   */
+  void apply(Document doc) {
+    doc.setField("title", "MRL Cookbook.");
+    doc.setField("x", 2);
+    doc.setField("big", 1234567890123L);
+    doc.setField("ratio", 0.5);
+    doc.addToField("tags", "robot");
+    doc.addToField("tags", "vision");
+    doc.addToField("tags", 3);
+    doc.addToField("empty", null);
+    doc.setField("gone", "soon");
+    doc.removeField("gone");
+    doc.setField("old", "renamed");
+    doc.renameField("old", "new");
+    doc.renameField("x", "x");
+    doc.setField("nothing", (Object) null);
+    ArrayList<Object> list = new ArrayList<Object>();
+    list.add("a");
+    doc.setField("list", list);
+    list.add("b");
+  }
+
+  void assertSameFields(Document expected, Document doc) {
+    assertEquals(expected.getFields(), new HashSet<String>(doc.getFields()));
+    for (String fieldName : expected.getFields()) {
+      assertEquals(expected.getValue(fieldName), doc.getValue(fieldName));
+      assertEquals(expected.getField(fieldName), doc.getField(fieldName));
+    }
+  }
+
+  @Test
+  public void testSameAsDocument() {
+    Document expected = new Document("doc_1");
+    apply(expected);
+    CompactDocument doc = new CompactDocument("doc_1", new FieldNames("test"));
+    apply(doc);
+
+    assertSameFields(expected, doc);
+    assertEquals(Integer.valueOf(2), doc.getValue("x"));
+    assertEquals(Long.valueOf(1234567890123L), doc.getValue("big"));
+    assertEquals(Double.valueOf(0.5), doc.getValue("ratio"));
+    assertEquals("[robot, vision, 3]", doc.getField("tags").toString());
+    assertTrue(doc.hasField("empty"));
+    assertNull(doc.getValue("empty"));
+    assertFalse(doc.hasField("gone"));
+    assertFalse(doc.hasField("old"));
+    assertFalse(doc.hasField("nothing"));
+    assertEquals("[a, b]", doc.getField("list").toString());
+  }
+
+  @Test
+  public void testGetFieldIsLive() {
+    CompactDocument doc = new CompactDocument("doc_1", new FieldNames("test"));
+    doc.setField("x", 2);
+    doc.getField("x").add(3);
+    assertEquals("[2, 3]", doc.getField("x").toString());
+    doc.getField("x").clear();
+    assertTrue(doc.hasField("x"));
+    assertNull(doc.getValue("x"));
+  }
+
+  @Test
+  public void testSharedNames() {
+    FieldNames names = new FieldNames("test");
+    CompactDocument a = new CompactDocument("a", names);
+    CompactDocument b = new CompactDocument("b", names);
+    a.setField("one", 1);
+    b.setField("two", 2);
+    b.setField("one", 1);
+    assertEquals(2, names.size());
+    assertEquals(1, a.getFields().size());
+    assertNull(a.getValue("two"));
+    assertEquals(Integer.valueOf(1), b.getValue("one"));
+  }
+
+  @Test
+  public void testCopy() {
+    CompactDocument doc = new CompactDocument("doc_1", new FieldNames("test"));
+    apply(doc);
+    Document copy = doc.copy();
+    assertTrue(copy instanceof CompactDocument);
+    assertEquals(doc, copy);
+    assertEquals(doc.hashCode(), copy.hashCode());
+    copy.addToField("tags", "copy");
+    copy.setField("x", 3);
+    assertEquals("[robot, vision, 3]", doc.getField("tags").toString());
+    assertEquals(Integer.valueOf(2), doc.getValue("x"));
+
+    // a plain copy of a compact document
+    Document plain = new Document(doc);
+    assertSameFields(plain, doc);
+  }
+
+  @Test
+  public void testToMap() {
+    CompactDocument doc = new CompactDocument("doc_1", new FieldNames("test"));
+    doc.addToField("tags", "robot");
+    doc.addToField("tags", "vision");
+    doc.toMap().get("tags").clear();
+    assertEquals("[robot, vision]", doc.getField("tags").toString());
+  }
+
+  @Test
+  public void testJson() {
+    CompactDocument doc = new CompactDocument("doc_1", FieldNames.get("json"));
+    doc.setField("title", "MRL Cookbook.");
+    doc.setField("x", 2);
+    doc.addToField("tags", "robot");
+    doc.addToField("tags", "vision");
+    doc.setStatus(ProcessingStatus.DROP);
+
+    // the fields, not the arrays they are kept in
+    String json = CodecUtils.toJson(doc);
+    assertEquals("{\"id\":\"doc_1\",\"fieldNames\":\"json\",\"data\":{\"title\":[\"MRL Cookbook.\"],\"x\":[2],\"tags\":[\"robot\",\"vision\"]},\"status\":\"DROP\"}", json);
+
+    CompactDocument read = CodecUtils.fromJson(json, CompactDocument.class);
+    assertEquals("doc_1", read.getId());
+    assertTrue(read.getFieldNames() == doc.getFieldNames());
+    assertEquals(ProcessingStatus.DROP, read.getStatus());
+    assertEquals("MRL Cookbook.", read.getValue("title"));
+    assertEquals("[robot, vision]", read.getField("tags").toString());
+  }
+
+}
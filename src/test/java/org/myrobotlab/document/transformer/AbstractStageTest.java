@@ -1,5 +1,8 @@
 package org.myrobotlab.document.transformer;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -28,6 +31,19 @@ public abstract class AbstractStageTest extends AbstractTest {
     validate(doc);
   }
 
+  @Test
+  public void testBatch() {
+    AbstractStage stage = createStage();
+    List<Document> docs = new ArrayList<Document>();
+    for (int i = 0; i < 3; ++i) {
+      docs.add(createDocument());
+    }
+    stage.processDocuments(docs);
+    for (Document doc : docs) {
+      validate(doc);
+    }
+  }
+
   public abstract void validate(Document doc);
 
 }
@@ -0,0 +1,257 @@
+package org.myrobotlab.document.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.document.Document;
+import org.myrobotlab.document.ProcessingStatus;
+import org.myrobotlab.document.transformer.AbstractStage;
+import org.myrobotlab.document.transformer.StageConfiguration;
+import org.myrobotlab.document.transformer.WorkflowConfiguration;
+import org.myrobotlab.test.AbstractTest;
+
+public class DagWorkflowTest extends AbstractTest {
+
+  static final ConcurrentLinkedQueue<Document> collected = new ConcurrentLinkedQueue<>();
+
+  /**
+   * tags each document with the stage name, drops documents with a drop field
+   */
+  public static class Tag extends AbstractStage {
+    String name;
+
+    @Override
+    public void startStage(StageConfiguration config) {
+      name = config.getStageName();
+    }
+
+    @Override
+    public List<Document> processDocument(Document doc) {
+      doc.addToField("stages", name);
+      if (doc.hasField("drop")) {
+        doc.setStatus(ProcessingStatus.DROP);
+      }
+      return null;
+    }
+
+    @Override
+    public void stopStage() {
+    }
+
+    @Override
+    public void flush() {
+    }
+  }
+
+  /**
+   * makes a child of every document
+   */
+  public static class Split extends Tag {
+    @Override
+    public List<Document> processDocument(Document doc) {
+      super.processDocument(doc);
+      List<Document> children = new ArrayList<>();
+      Document child = new Document(doc.getId() + "_child");
+      children.add(child);
+      return children;
+    }
+  }
+
+  public static class Collect extends Tag {
+    @Override
+    public List<Document> processDocument(Document doc) {
+      super.processDocument(doc);
+      collected.add(doc);
+      return null;
+    }
+  }
+
+  /**
+   * throws on documents with a fail field
+   */
+  public static class Fail extends Tag {
+    @Override
+    public List<Document> processDocument(Document doc) {
+      if (doc.hasField("fail")) {
+        throw new IllegalStateException("failing " + doc.getId());
+      }
+      return super.processDocument(doc);
+    }
+  }
+
+  /**
+   * a batch stage - the whole batch throws if one document fails
+   */
+  public static class BatchFail extends Fail {
+    @Override
+    public List<Document> processDocuments(List<Document> docs) {
+      for (Document doc : docs) {
+        if (doc.hasField("fail")) {
+          throw new IllegalStateException("failing batch with " + doc.getId());
+        }
+      }
+      return super.processDocuments(docs);
+    }
+  }
+
+  StageConfiguration stage(String name, Class<?> c, String... inputs) {
+    StageConfiguration config = new StageConfiguration(name, c.getName());
+    if (inputs.length > 0) {
+      config.setInputs(inputs);
+    }
+    return config;
+  }
+
+  @Before
+  public void clear() {
+    collected.clear();
+  }
+
+  @Test
+  public void testChain() throws Exception {
+    WorkflowConfiguration config = new WorkflowConfiguration("chain");
+    config.setQueueLength(4);
+    config.addStage(stage("a", Tag.class));
+    StageConfiguration slow = stage("b", Tag.class);
+    slow.setNumThreads(4);
+    config.addStage(slow);
+    config.addStage(stage("collect", Collect.class));
+
+    DagWorkflow dag = new DagWorkflow(config);
+    dag.initialize();
+    for (int i = 0; i < 100; ++i) {
+      dag.processDocument(new Document("doc_" + i));
+    }
+    Document dropped = new Document("dropped");
+    dropped.setField("drop", true);
+    dag.processDocument(dropped);
+    dag.flush();
+
+    assertEquals(100, collected.size());
+    for (Document doc : collected) {
+      assertEquals("[a, b, collect]", doc.getField("stages").toString());
+    }
+
+    List<DagWorkflow.StageStats> stats = dag.getStats();
+    assertEquals(3, stats.size());
+    assertEquals("a", stats.get(0).name);
+    assertEquals(101, stats.get(0).processed);
+    assertEquals(1, stats.get(0).dropped);
+    assertEquals(4, stats.get(1).threads);
+    assertEquals(100, stats.get(2).processed);
+    assertEquals(0, stats.get(2).queued);
+    assertEquals(4, stats.get(2).queueLength);
+    dag.stop();
+  }
+
+  @Test
+  public void testFanOut() throws Exception {
+    WorkflowConfiguration config = new WorkflowConfiguration("fanout");
+    config.addStage(stage("split", Split.class));
+    // declared before its input
+    config.addStage(stage("collect", Collect.class, "left", "right"));
+    config.addStage(stage("left", Tag.class, "split"));
+    config.addStage(stage("right", Tag.class, "split"));
+
+    DagWorkflow dag = new DagWorkflow(config);
+    dag.initialize();
+    for (int i = 0; i < 10; ++i) {
+      dag.processDocument(new Document("doc_" + i));
+    }
+    dag.flush();
+
+    // 10 documents + 10 children, each down both branches
+    assertEquals(40, collected.size());
+    int left = 0;
+    for (Document doc : collected) {
+      String stages = doc.getField("stages").toString();
+      if (stages.contains("left")) {
+        ++left;
+      }
+      // each branch has its own copy
+      assertTrue(stages, !(stages.contains("left") && stages.contains("right")));
+    }
+    assertEquals(20, left);
+    dag.stop();
+  }
+
+  WorkflowConfiguration failing(String name) {
+    WorkflowConfiguration config = new WorkflowConfiguration(name);
+    config.setBatchSize(10);
+    config.setBatchWaitMs(50);
+    config.addStage(stage("a", Fail.class));
+    config.addStage(stage("b", BatchFail.class));
+    config.addStage(stage("collect", Collect.class));
+    return config;
+  }
+
+  void sendFailing(Workflow workflow) throws Exception {
+    for (int i = 0; i < 20; ++i) {
+      Document doc = new Document("doc_" + i);
+      if (i == 3 || i == 12) {
+        doc.setField("fail", true);
+      }
+      workflow.processDocument(doc);
+    }
+    workflow.flush();
+    // a worker can take a batch just before flush looks at it
+    long deadline = System.currentTimeMillis() + 2000;
+    while (collected.size() + workflow.getErrors() < 20 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testFailedDocument() throws Exception {
+    // one failing document does not take its batch with it
+    WorkflowConfiguration config = failing("failing");
+    Workflow workflow = new Workflow(config);
+    workflow.initialize();
+    sendFailing(workflow);
+    assertEquals(18, collected.size());
+    assertEquals(2, workflow.getErrors());
+
+    // a batch stage which throws is retried a document at a time
+    collected.clear();
+    config = failing("failingBatch");
+    config.getStages().get(0).setStageClass(Tag.class.getName());
+    workflow = new Workflow(config);
+    workflow.initialize();
+    sendFailing(workflow);
+    assertEquals(18, collected.size());
+    assertEquals(2, workflow.getErrors());
+    for (Document doc : collected) {
+      assertTrue(!doc.hasField("fail"));
+    }
+
+    collected.clear();
+    config = failing("failingDag");
+    config.setDag(true);
+    workflow = new Workflow(config);
+    workflow.initialize();
+    sendFailing(workflow);
+    assertEquals(18, collected.size());
+    assertEquals(2, workflow.getErrors());
+  }
+
+  @Test
+  public void testCycle() {
+    WorkflowConfiguration config = new WorkflowConfiguration("cycle");
+    config.addStage(stage("a", Tag.class, new String[0]));
+    config.addStage(stage("b", Tag.class, "a", "c"));
+    config.addStage(stage("c", Tag.class, "b"));
+    try {
+      new DagWorkflow(config);
+      fail("cycle not found");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+}
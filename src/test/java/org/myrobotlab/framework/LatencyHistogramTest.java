@@ -0,0 +1,49 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class LatencyHistogramTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(LatencyHistogramTest.class);
+
+  @Test
+  public void testBuckets() {
+    // every value falls in a bucket whose upper bound is within 25%
+    for (long v = 0; v < 1000000; v += 7) {
+      int i = LatencyHistogram.index(v);
+      long upper = LatencyHistogram.upperBound(i);
+      assertTrue(v <= upper);
+      assertTrue(upper <= v + v / 4 + 1);
+      if (i > 0) {
+        assertTrue(v > LatencyHistogram.upperBound(i - 1));
+      }
+    }
+    assertTrue(LatencyHistogram.index(Long.MAX_VALUE) < LatencyHistogram.BUCKETS);
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; ++i) {
+      histogram.record(i * 1000);
+    }
+    assertEquals(100, histogram.getCount());
+    assertEquals(100000, histogram.getMax());
+    assertEquals(50500.0, histogram.getMean(), 0.1);
+    long p50 = histogram.getPercentile(50);
+    assertTrue(p50 >= 50000 && p50 < 50000 * 1.25);
+    assertEquals(100000, histogram.getPercentile(100));
+    log.info("{}", histogram);
+
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getPercentile(99));
+  }
+
+}
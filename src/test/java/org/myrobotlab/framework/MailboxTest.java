@@ -0,0 +1,154 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class MailboxTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(MailboxTest.class);
+
+  Message msg(String method, Object data) {
+    return Message.createMessage("sender", "receiver", method, data);
+  }
+
+  @Test
+  public void testFifo() throws InterruptedException {
+    for (String type : new String[] { Mailbox.LINKED, Mailbox.RING }) {
+      Mailbox mailbox = AbstractMailbox.create(type, "fifo", 8, OverflowPolicy.DROP_NEWEST);
+      for (int i = 0; i < 8; ++i) {
+        assertTrue(mailbox.offer(msg("onInt", i)));
+      }
+      assertEquals(8, mailbox.size());
+      for (int i = 0; i < 8; ++i) {
+        assertEquals(i, mailbox.take().data[0]);
+      }
+      assertNull(mailbox.poll());
+    }
+  }
+
+  @Test
+  public void testOverflowPolicies() throws InterruptedException {
+    for (String type : new String[] { Mailbox.LINKED, Mailbox.RING }) {
+      Mailbox mailbox = AbstractMailbox.create(type, "newest", 4, OverflowPolicy.DROP_NEWEST);
+      for (int i = 0; i < 6; ++i) {
+        mailbox.offer(msg("onInt", i));
+      }
+      assertEquals(2, mailbox.getStats().droppedNewest);
+      assertEquals(0, mailbox.poll().data[0]);
+
+      mailbox = AbstractMailbox.create(type, "oldest", 4, OverflowPolicy.DROP_OLDEST);
+      for (int i = 0; i < 6; ++i) {
+        assertTrue(mailbox.offer(msg("onInt", i)));
+      }
+      assertEquals(2, mailbox.getStats().droppedOldest);
+      assertEquals(2, mailbox.poll().data[0]);
+
+      mailbox = AbstractMailbox.create(type, "coalesce", 4, OverflowPolicy.COALESCE);
+      for (int i = 0; i < 4; ++i) {
+        mailbox.offer(msg("onInt", i));
+      }
+      mailbox.offer(msg("onInt", 10));
+      mailbox.offer(msg("onInt", 11));
+      assertTrue(mailbox.getStats().coalesced >= 1);
+      assertEquals(4, mailbox.getStats().capacity);
+      Object last = null;
+      Message m = null;
+      while ((m = mailbox.poll()) != null) {
+        last = m.data[0];
+      }
+      // latest value wins
+      assertEquals(11, last);
+    }
+  }
+
+  @Test
+  public void testSpillOrder() throws InterruptedException {
+    for (String type : new String[] { Mailbox.LINKED, Mailbox.RING }) {
+      // spilled topics come after the ones within capacity, latest value per
+      // topic
+      Mailbox mailbox = AbstractMailbox.create(type, "coalesce", 4, OverflowPolicy.COALESCE);
+      for (int i = 0; i < 4; ++i) {
+        assertTrue(mailbox.offer(msg("onInt", i)));
+      }
+      assertTrue(mailbox.offer(msg("onInt", 4)));
+      assertTrue(mailbox.offer(msg("onString", "a")));
+      assertEquals(0, mailbox.poll().data[0]);
+      // room again - still goes after the spilled ones
+      assertFalse(mailbox.offer(msg("onInt", 5)));
+      assertTrue(mailbox.offer(msg("onDouble", 1.0)));
+      assertEquals(1, mailbox.getStats().coalesced);
+      assertEquals(0, mailbox.getStats().droppedNewest);
+      Object[] expected = new Object[] { 1, 2, 3, 5, "a", 1.0 };
+      for (Object e : expected) {
+        assertEquals(type, e, mailbox.poll().data[0]);
+      }
+      assertNull(mailbox.poll());
+      assertEquals(0, mailbox.size());
+
+      // emptied - fills up within capacity again
+      for (int i = 0; i < 4; ++i) {
+        assertTrue(mailbox.offer(msg("onInt", i)));
+      }
+      assertEquals(4, mailbox.size());
+
+      // WARN accepts everything and keeps the order
+      mailbox = AbstractMailbox.create(type, "warn", 4, OverflowPolicy.WARN);
+      for (int i = 0; i < 10; ++i) {
+        assertTrue(mailbox.offer(msg("onInt", i)));
+        if (i == 5) {
+          assertEquals(0, mailbox.poll().data[0]);
+        }
+      }
+      assertEquals(9, mailbox.size());
+      assertEquals(0, mailbox.getStats().blocked);
+      for (int i = 1; i < 10; ++i) {
+        assertEquals(i, mailbox.take().data[0]);
+      }
+      assertNull(mailbox.poll());
+    }
+  }
+
+  @Test
+  public void testConcurrentProducers() throws InterruptedException {
+    final Mailbox mailbox = new RingBufferMailbox("mpsc", 64, OverflowPolicy.BLOCK);
+    final int producers = 4;
+    final int count = 10000;
+    Thread[] threads = new Thread[producers];
+    for (int p = 0; p < producers; ++p) {
+      final int base = p * count;
+      threads[p] = new Thread("producer-" + p) {
+        public void run() {
+          try {
+            for (int i = 0; i < count; ++i) {
+              mailbox.offer(msg("onInt", base + i));
+            }
+          } catch (InterruptedException e) {
+          }
+        }
+      };
+      threads[p].start();
+    }
+
+    Set<Object> received = new HashSet<>();
+    for (int i = 0; i < producers * count; ++i) {
+      received.add(mailbox.take().data[0]);
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertEquals(producers * count, received.size());
+    assertEquals(0, mailbox.size());
+    assertFalse(mailbox.getStats().droppedNewest > 0);
+  }
+
+}
@@ -1,6 +1,7 @@
 package org.myrobotlab.framework;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -162,6 +163,29 @@ public class MethodCacheTest extends AbstractTest {
 
   }
 
+  @Test
+  public void invokerTest() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, ClassNotFoundException {
+
+    MethodInvoker invoker = cache.getInvoker(TestCatcher.class, "primitiveOnlyMethod", 3);
+    assertTrue(invoker.isCompiled());
+    assertEquals(5, invoker.invoke(tester, 5));
+
+    // same runtime types resolve to the same compiled invoker
+    assertTrue(invoker == cache.getInvoker(TestCatcher.class, "primitiveOnlyMethod", 7));
+
+    // overloads are resolved per parameter types
+    assertEquals("echo", cache.getInvoker(TestCatcher.class, "invokeTest", "echo").invoke(tester, "echo"));
+    Integer[] testArray = new Integer[] { 3, 5, 10 };
+    assertEquals(testArray, cache.getInvoker(TestCatcher.class, "getPin", new Object[] { testArray }).invoke(tester, new Object[] { testArray }));
+
+    // void methods return null
+    assertEquals(null, cache.getInvoker(TestCatcher.class, "clear").invoke(tester));
+
+    // a null value in a mutli-type call
+    invoker = cache.getInvoker(TestCatcher.class, "testMultipleParamTypes", new Object[] { "hello world", null, 3 });
+    assertEquals("hello world", invoker.invoke(tester, new Object[] { "hello world", null, 3 }));
+  }
+
   /**
    * Testing json
    * 
@@ -226,6 +250,10 @@ public class MethodCacheTest extends AbstractTest {
     public int getInt(int i) {
       return i;
     }
+
+    public double getDouble(double d) {
+      return d;
+    }
   }
 
   @Test
@@ -236,6 +264,23 @@ public class MethodCacheTest extends AbstractTest {
     assertTrue(7 == r);
   }
 
+  @Test
+  public void widenedInvokerTest() throws IllegalAccessException, IllegalArgumentException, InvocationTargetException, ClassNotFoundException, NoSuchMethodException {
+    TestClass test = new TestClass();
+    Method getDouble = TestClass.class.getMethod("getDouble", double.class);
+
+    // an int argument to a double parameter is widened by reflection
+    MethodInvoker invoker = new MethodInvoker(getDouble, new Class<?>[] { Integer.class });
+    assertFalse(invoker.isCompiled());
+    assertEquals(5.0, invoker.invoke(test, 5));
+
+    invoker = new MethodInvoker(getDouble, new Class<?>[] { Double.class });
+    assertTrue(invoker.isCompiled());
+    assertEquals(5.0, invoker.invoke(test, 5.0));
+    // not the types it was compiled for
+    assertEquals(3.0, invoker.invoke(test, 3));
+  }
+
   public static void main(String[] args) {
     try {
 
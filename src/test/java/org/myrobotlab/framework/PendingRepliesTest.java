@@ -0,0 +1,90 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class PendingRepliesTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(PendingRepliesTest.class);
+
+  Message reply(long msgId, Object ret) {
+    Message msg = Message.createMessage("catcher", "thrower", "onGetInt", new Object[] { ret });
+    msg.msgId = msgId;
+    msg.status = Message.RETURN;
+    return msg;
+  }
+
+  @Test
+  public void testCorrelation() throws Exception {
+    PendingReplies replies = PendingReplies.getInstance();
+    Inbox inbox = new Inbox("thrower");
+
+    // two concurrent requests to the same method
+    CompletableFuture<Object> first = replies.register(1001);
+    CompletableFuture<Object> second = replies.register(1002);
+
+    // replies come back out of order and are never queued
+    inbox.add(reply(1002, 2));
+    inbox.add(reply(1001, 1));
+    assertEquals(0, inbox.size());
+
+    assertEquals(1, first.get(1, TimeUnit.SECONDS));
+    assertEquals(2, second.get(1, TimeUnit.SECONDS));
+    assertEquals(0, replies.size());
+
+    // a late reply after the caller gave up is dropped
+    CompletableFuture<Object> late = replies.register(1003);
+    replies.cancel(1003);
+    assertTrue(late.isCancelled());
+    inbox.add(reply(1003, 3));
+    assertEquals(0, inbox.size());
+  }
+
+  @Test
+  public void testJsonReturn() throws Exception {
+    PendingReplies replies = PendingReplies.getInstance();
+    CompletableFuture<Object> future = replies.register(1004);
+
+    // as it arrives from a remote gateway
+    Message msg = reply(1004, CodecUtils.toJson("hello"));
+    msg.encoding = "json";
+    msg.setProperty(PendingReplies.RETURN_TYPE, String.class.getName());
+    assertTrue(replies.complete(msg));
+    assertEquals("hello", future.get(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTopic() throws Exception {
+    PendingReplies replies = PendingReplies.getInstance();
+    Inbox inbox = new Inbox("catcher");
+
+    CompletableFuture<Object> a = replies.registerTopic("catcher", "onPitch");
+    CompletableFuture<Object> b = replies.registerTopic("catcher", "onPitch");
+    assertTrue(replies.hasTopicWaiters());
+
+    // not the topic - queued and invoked as usual
+    inbox.add(Message.createMessage("thrower", "catcher", "onCatch", 7));
+    assertEquals(1, inbox.size());
+
+    inbox.add(Message.createMessage("thrower", "catcher", "onPitch", 5));
+    assertEquals(1, inbox.size());
+    assertEquals(5, a.get(1, TimeUnit.SECONDS));
+    assertEquals(5, b.get(1, TimeUnit.SECONDS));
+    assertFalse(replies.hasTopicWaiters());
+
+    CompletableFuture<Object> c = replies.registerTopic("catcher", "onPitch");
+    replies.cancelTopic("catcher", "onPitch", c);
+    assertFalse(replies.hasTopicWaiters());
+  }
+
+}
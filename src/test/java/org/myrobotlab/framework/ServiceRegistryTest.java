@@ -0,0 +1,158 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.myrobotlab.framework.interfaces.ServiceInterface;
+import org.myrobotlab.test.AbstractTest;
+
+public class ServiceRegistryTest extends AbstractTest {
+
+  /**
+   * a stand in service - its class implements the given interfaces directly
+   */
+  static ServiceInterface service(String name, Class<?>... interfaces) {
+    Class<?>[] all = new Class<?>[interfaces.length + 1];
+    all[0] = ServiceInterface.class;
+    System.arraycopy(interfaces, 0, all, 1, interfaces.length);
+    return (ServiceInterface) Proxy.newProxyInstance(ServiceRegistryTest.class.getClassLoader(), all, (proxy, method, args) -> {
+      if (method.getName().equals("getName")) {
+        return name;
+      }
+      if (method.getName().equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      if (method.getName().equals("equals")) {
+        return proxy == args[0];
+      }
+      return null;
+    });
+  }
+
+  @Test
+  public void testLookupAndIndex() {
+    ServiceRegistry registry = new ServiceRegistry();
+    ServiceInterface b = service("b", Runnable.class);
+    ServiceInterface a = service("a", Runnable.class, Comparable.class);
+    ServiceInterface c = service("c");
+    registry.put("b@test", b);
+    registry.put("a@test", a);
+    registry.put("c@remote", c);
+
+    assertSame(a, registry.get("a@test"));
+    assertNull(registry.get("a"));
+    assertEquals(3, registry.size());
+
+    // name order
+    assertEquals("[a@test, b@test, c@remote]", registry.getNames().toString());
+    assertSame(a, registry.getServices().get(0));
+
+    List<ServiceInterface> runnables = registry.getServicesFromInterface(Runnable.class);
+    assertEquals(2, runnables.size());
+    assertSame(a, runnables.get(0));
+    assertEquals(1, registry.getServicesFromInterface(Comparable.class).size());
+    assertEquals(0, registry.getServicesFromInterface(AutoCloseable.class).size());
+    assertEquals(1, registry.getServicesFromType(a.getClass().getName()).size());
+
+    registry.remove("a@test");
+    assertFalse(registry.containsKey("a@test"));
+    assertEquals(1, registry.getServicesFromInterface(Runnable.class).size());
+    assertEquals(0, registry.getServicesFromInterface(Comparable.class).size());
+    // snapshots taken before are not changed
+    assertEquals(2, runnables.size());
+
+    registry.clear();
+    assertEquals(0, registry.getServices().size());
+    assertEquals(0, registry.asMap().size());
+  }
+
+  @Test
+  public void testShortName() {
+    ServiceRegistry registry = new ServiceRegistry();
+    ServiceInterface local = service("servo");
+    ServiceInterface remote = service("servo");
+    registry.put("servo@test", local);
+    registry.put("servo@remote", remote);
+    assertSame(local, registry.get("servo", "test"));
+    assertSame(remote, registry.get("servo", "remote"));
+    assertSame(remote, registry.get("servo@remote", "test"));
+    assertNull(registry.get("servo", "other"));
+
+    registry.remove("servo@remote");
+    assertSame(local, registry.get("servo", "test"));
+    assertNull(registry.get("servo", "remote"));
+    registry.remove("servo@test");
+    assertNull(registry.get("servo", "test"));
+  }
+
+  @Test
+  public void testSnapshot() {
+    ServiceRegistry registry = new ServiceRegistry();
+    ServiceInterface a = service("a");
+    registry.put("a@test", a);
+    ServiceRegistry.Snapshot snapshot = registry.getSnapshot();
+    assertSame(snapshot, registry.getSnapshot());
+
+    registry.put("b@test", service("b"));
+    // names and services of a snapshot stay paired
+    assertEquals(1, snapshot.names.size());
+    assertEquals(1, snapshot.services.size());
+    ServiceRegistry.Snapshot next = registry.getSnapshot();
+    assertEquals(2, next.names.size());
+    assertEquals(2, next.services.size());
+    assertSame(a, next.services.get(next.names.indexOf("a@test")));
+  }
+
+  @Test
+  public void testConcurrentReaders() throws Exception {
+    ServiceRegistry registry = new ServiceRegistry();
+    registry.put("runtime@test", service("runtime", Runnable.class));
+    AtomicInteger errors = new AtomicInteger();
+    List<Thread> readers = new ArrayList<>();
+    for (int t = 0; t < 4; ++t) {
+      Thread reader = new Thread(() -> {
+        try {
+          for (int i = 0; i < 20000; ++i) {
+            if (registry.get("runtime@test") == null) {
+              errors.incrementAndGet();
+            }
+            for (ServiceInterface si : registry.getServicesFromInterface(Runnable.class)) {
+              si.getName();
+            }
+            ServiceRegistry.Snapshot snapshot = registry.getSnapshot();
+            if (snapshot.names.size() != snapshot.services.size()) {
+              errors.incrementAndGet();
+            }
+          }
+        } catch (Exception e) {
+          errors.incrementAndGet();
+        }
+      });
+      readers.add(reader);
+      reader.start();
+    }
+    for (int i = 0; i < 200; ++i) {
+      registry.put(String.format("s%d@test", i), service("s" + i, Runnable.class));
+      if (i % 2 == 0) {
+        registry.remove(String.format("s%d@test", i));
+      }
+    }
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, errors.get());
+    assertEquals(101, registry.size());
+    assertEquals(101, registry.getServicesFromInterface(Runnable.class).size());
+    assertTrue(registry.asMap().containsKey("s199@test"));
+  }
+
+}
@@ -1,9 +1,15 @@
 package org.myrobotlab.framework;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -47,6 +53,67 @@ public class TaskTest extends AbstractTest {
     catcher.clear();
   }
 
+  @Test
+  public void addTaskFixedRate() throws InterruptedException {
+    Runtime runtime = Runtime.getInstance();
+    runtime.addTaskFixedRate("uptimeFixedRate", 100, 0, "getUptime");
+    Service.sleep(550);
+
+    Task task = runtime.getTasks().get("uptimeFixedRate");
+    log.info("{}", task);
+    assertTrue(task.isFixedRate());
+
+    runtime.purgeTask("uptimeFixedRate");
+    assertFalse(runtime.containsTask("uptimeFixedRate"));
+    Service.sleep(100);
+    long runs = task.getRuns();
+    assertTrue(runs >= 4);
+    assertEquals(runs, task.getRunTime().getCount());
+    Service.sleep(300);
+    // purged - no more runs
+    assertEquals(runs, task.getRuns());
+  }
+
+  @Test
+  public void oneShotIsRemoved() throws InterruptedException {
+    Runtime runtime = Runtime.getInstance();
+    // interval 0 - runs once
+    runtime.addTask("uptimeOneShot", 0, 50, "getUptime");
+    assertTrue(runtime.containsTask("uptimeOneShot"));
+    Service.sleep(500);
+    // a one shot task removes itself after it ran
+    assertFalse(runtime.containsTask("uptimeOneShot"));
+  }
+
+  @Test
+  public void blockingTasksDoNotHoldSharedThreads() throws InterruptedException {
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> threads = new CopyOnWriteArrayList<>();
+    // more blocked tasks than the shared pool has threads
+    for (int i = 0; i < TaskScheduler.getThreads() + 1; ++i) {
+      TaskScheduler.schedule(() -> {
+        threads.add(Thread.currentThread().getName());
+        try {
+          release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+        }
+      }, 0, true);
+    }
+    CountDownLatch ran = new CountDownLatch(1);
+    TaskScheduler.schedule(() -> ran.countDown(), 10);
+    assertTrue(ran.await(1, TimeUnit.SECONDS));
+    release.countDown();
+    for (String thread : threads) {
+      assertTrue(thread, thread.startsWith("task-blocking-"));
+    }
+
+    Runtime runtime = Runtime.getInstance();
+    runtime.addTaskBlocking("uptimeBlocking", 0, 100, "getUptime");
+    assertTrue(runtime.getTasks().get("uptimeBlocking").isBlocking());
+    Service.sleep(500);
+    assertFalse(runtime.containsTask("uptimeBlocking"));
+  }
+
   public void onUptime(String data) {
     log.info("uptime {}", data);
   }
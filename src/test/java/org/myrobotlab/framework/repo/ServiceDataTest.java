@@ -1,8 +1,13 @@
 package org.myrobotlab.framework.repo;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
@@ -41,6 +46,37 @@ public class ServiceDataTest extends AbstractTest {
     assertNotNull(generated);
   }
 
+  @Test
+  public void testIndex() throws IOException {
+    ServiceData sd = ServiceData.getLocalInstance();
+    File file = File.createTempFile("serviceData", ".idx");
+    file.deleteOnExit();
+    assertTrue(sd.saveIndex(file.getAbsolutePath(), "test"));
+
+    ServiceIndex index = ServiceIndex.open(file);
+    assertEquals("test", index.getVersion());
+    assertNull(ServiceData.openIndex(file, "another version"));
+
+    ServiceData indexed = new ServiceData(index);
+    assertArrayEquals(sd.getServiceTypeNames(), indexed.getServiceTypeNames());
+    assertArrayEquals(sd.getCategoryNames(), indexed.getCategoryNames());
+    assertTrue(indexed.containsServiceType("org.myrobotlab.service.Clock"));
+    assertFalse(indexed.containsServiceType("org.myrobotlab.service.NoSuchService"));
+
+    // decoded on first access
+    MetaData clock = indexed.getServiceType("org.myrobotlab.service.Clock");
+    assertNotNull(clock);
+    assertEquals(sd.getServiceType("org.myrobotlab.service.Clock").getDependencies().size(), clock.getDependencies().size());
+    assertEquals(sd.getAvailableServiceTypes().size(), indexed.getAvailableServiceTypes().size());
+
+    // replaced, not written over, while mapped
+    assertEquals("test", ServiceIndex.readVersion(file));
+    assertTrue(sd.saveIndex(file.getAbsolutePath(), "test2"));
+    assertEquals("test2", ServiceIndex.readVersion(file));
+    assertEquals("test", index.getVersion());
+    assertNotNull(indexed.getServiceType("org.myrobotlab.service.Clock"));
+  }
+
   @Test
   public void testGetLocalInstance() {
     if (printMethods)
@@ -0,0 +1,101 @@
+package org.myrobotlab.i2c;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.myrobotlab.i2c.I2CTransactions.Request;
+import org.myrobotlab.test.AbstractTest;
+
+public class I2CTransactionsTest extends AbstractTest {
+
+  static Throwable cause(CompletableFuture<byte[]> future) throws InterruptedException {
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      return e.getCause();
+    }
+    return null;
+  }
+
+  @Test
+  public void testLostAnswer() throws Exception {
+    I2CTransactions i2c = new I2CTransactions();
+    List<Request> sent = new ArrayList<>();
+    CompletableFuture<byte[]> lost = i2c.send(1, new Request(0x68, 0x3B, 2), sent::add);
+    CompletableFuture<byte[]> temp = i2c.send(1, new Request(0x48, 0x20, 3), sent::add);
+    CompletableFuture<byte[]> status = i2c.send(1, new Request(0x48, 0x21, 1), sent::add);
+    assertEquals(3, sent.size());
+
+    // the answer to the first read never comes - the next ones still get
+    // their own data
+    assertTrue(i2c.complete(1, new int[] { 1, 2, 3 }));
+    assertTrue(cause(lost) instanceof TimeoutException);
+    assertArrayEquals(new byte[] { 1, 2, 3 }, temp.get());
+    assertTrue(i2c.complete(1, new int[] { 4 }));
+    assertArrayEquals(new byte[] { 4 }, status.get());
+    assertEquals(0, i2c.size());
+
+    // reads after the loss are not shifted
+    CompletableFuture<byte[]> next = i2c.send(1, new Request(0x68, 0x43, 2), sent::add);
+    assertTrue(i2c.complete(1, 0x68, new int[] { 5, 6 }));
+    assertArrayEquals(new byte[] { 5, 6 }, next.get());
+  }
+
+  @Test
+  public void testCancel() throws Exception {
+    I2CTransactions i2c = new I2CTransactions();
+    Request gaveUp = new Request(0x68, 2);
+    CompletableFuture<byte[]> first = i2c.send(1, gaveUp, r -> {
+    });
+    CompletableFuture<byte[]> second = i2c.send(1, new Request(0x68, 4), r -> {
+    });
+    assertTrue(i2c.cancel(1, gaveUp));
+    assertFalse(i2c.cancel(1, gaveUp));
+    assertTrue(cause(first) instanceof TimeoutException);
+
+    // the late answer of the cancelled read matches nothing
+    assertFalse(i2c.complete(1, new int[] { 1, 2 }));
+    assertFalse(second.isDone());
+    assertTrue(i2c.complete(1, new int[] { 1, 2, 3, 4 }));
+    assertEquals(4, second.get().length);
+  }
+
+  @Test
+  public void testMatch() throws Exception {
+    I2CTransactions i2c = new I2CTransactions();
+    CompletableFuture<byte[]> read = i2c.send(1, new Request(0x68, 2), r -> {
+    });
+    // other bus, other device
+    assertFalse(i2c.complete(2, new int[] { 1, 2 }));
+    assertFalse(i2c.complete(1, 0x48, new int[] { 1, 2 }));
+    // the device returned less than asked for
+    assertFalse(i2c.complete(1, new int[] { 7 }));
+    assertFalse(read.isDone());
+
+    assertTrue(i2c.complete(1, 0x68, new int[] { 7, 8 }));
+    assertArrayEquals(new byte[] { 7, 8 }, read.get());
+  }
+
+  @Test
+  public void testStale() throws Exception {
+    I2CTransactions i2c = new I2CTransactions(20);
+    CompletableFuture<byte[]> old = i2c.send(1, new Request(0x68, 2), r -> {
+    });
+    Thread.sleep(40);
+    CompletableFuture<byte[]> read = i2c.send(1, new Request(0x68, 2), r -> {
+    });
+    assertTrue(cause(old) instanceof TimeoutException);
+    assertTrue(i2c.complete(1, new int[] { 1, 2 }));
+    assertTrue(read.isDone());
+  }
+
+}
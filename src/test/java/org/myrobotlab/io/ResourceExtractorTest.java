@@ -0,0 +1,121 @@
+package org.myrobotlab.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class ResourceExtractorTest extends AbstractTest {
+
+  /**
+   * write a jar of name, content pairs
+   */
+  static void jar(File file, String... entries) throws IOException {
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        zip.putNextEntry(new ZipEntry(entries[i]));
+        zip.write(entries[i + 1].getBytes());
+        zip.closeEntry();
+      }
+    }
+  }
+
+  static String read(File dir, String name) throws IOException {
+    return new String(Files.readAllBytes(new File(dir, name).toPath()));
+  }
+
+  @Test
+  public void testChangedOnly() throws IOException {
+    File dir = Files.createTempDirectory("extract").toFile();
+    File jar = new File(dir, "myrobotlab.jar");
+    File dst = new File(dir, "data");
+    jar(jar, "resource/Servo.png", "png", "resource/OpenCV/a.txt", "a1", "resource/Arduino/b.txt", "b1", "org/myrobotlab/X.class", "x");
+
+    assertEquals(3, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+    assertEquals("a1", read(dst, "resource/OpenCV/a.txt"));
+    assertFalse(new File(dst, "org").exists());
+    assertTrue(new File(dst, "resource/" + ResourceExtractor.MANIFEST).exists());
+
+    // nothing changed
+    assertEquals(0, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+
+    // a new version of a.txt - b.txt changed by the user but not in the jar
+    Files.write(new File(dst, "resource/Arduino/b.txt").toPath(), "mine".getBytes());
+    jar(jar, "resource/Servo.png", "png", "resource/OpenCV/a.txt", "a2", "resource/Arduino/b.txt", "b1");
+    assertEquals(1, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+    assertEquals("a2", read(dst, "resource/OpenCV/a.txt"));
+    assertEquals("mine", read(dst, "resource/Arduino/b.txt"));
+
+    // a new version of b.txt does not replace the user's
+    jar(jar, "resource/Servo.png", "png", "resource/OpenCV/a.txt", "a2", "resource/Arduino/b.txt", "b2");
+    assertEquals(0, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+    assertEquals("mine", read(dst, "resource/Arduino/b.txt"));
+
+    // deleted files come back
+    new File(dst, "resource/Servo.png").delete();
+    assertEquals(1, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+    assertEquals("png", read(dst, "resource/Servo.png"));
+  }
+
+  @Test
+  public void testNoManifest() throws IOException {
+    File dir = Files.createTempDirectory("extract").toFile();
+    File jar = new File(dir, "myrobotlab.jar");
+    File dst = new File(dir, "data");
+    // extracted by an older version, before there was a manifest
+    File a = new File(dst, "resource/OpenCV/a.txt");
+    a.getParentFile().mkdirs();
+    Files.write(a.toPath(), "a0".getBytes());
+    File c = new File(dst, "resource/OpenCV/c.txt");
+    Files.write(c.toPath(), "c1".getBytes());
+    jar(jar, "resource/OpenCV/a.txt", "a1", "resource/OpenCV/b.txt", "b1", "resource/OpenCV/c.txt", "c1");
+
+    // files there before the manifest are kept
+    assertEquals(1, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+    assertEquals("a0", read(dst, "resource/OpenCV/a.txt"));
+    assertEquals("b1", read(dst, "resource/OpenCV/b.txt"));
+    assertEquals("c1", read(dst, "resource/OpenCV/c.txt"));
+
+    // but recorded as what they are - the next version replaces them
+    jar(jar, "resource/OpenCV/a.txt", "a2", "resource/OpenCV/b.txt", "b2", "resource/OpenCV/c.txt", "c2");
+    assertEquals(3, new ResourceExtractor(jar.getPath(), "resource", dst.getPath()).extract(false));
+    assertEquals("a2", read(dst, "resource/OpenCV/a.txt"));
+    assertEquals("b2", read(dst, "resource/OpenCV/b.txt"));
+    assertEquals("c2", read(dst, "resource/OpenCV/c.txt"));
+  }
+
+  @Test
+  public void testLazy() throws IOException {
+    File dir = Files.createTempDirectory("extract").toFile();
+    File jar = new File(dir, "myrobotlab.jar");
+    File dst = new File(dir, "data");
+    jar(jar, "resource/Servo.png", "png", "resource/framework/f.json", "{}", "resource/OpenCV/a.txt", "a1", "resource/Arduino/b.txt", "b1");
+
+    ResourceExtractor extractor = new ResourceExtractor(jar.getPath(), "resource", dst.getPath());
+    assertEquals(2, extractor.extract(true));
+    assertTrue(new File(dst, "resource/Servo.png").exists());
+    assertTrue(new File(dst, "resource/framework/f.json").exists());
+    assertFalse(new File(dst, "resource/OpenCV").exists());
+    assertEquals(2, extractor.getDeferred().size());
+
+    assertEquals(1, extractor.extractType("OpenCV"));
+    assertEquals("a1", read(dst, "resource/OpenCV/a.txt"));
+    assertEquals(0, extractor.extractType("OpenCV"));
+    assertFalse(new File(dst, "resource/Arduino").exists());
+    assertEquals(1, extractor.getDeferred().size());
+
+    assertEquals(1, extractor.extractDeferred());
+    assertEquals("b1", read(dst, "resource/Arduino/b.txt"));
+    assertEquals(0, extractor.getDeferred().size());
+  }
+
+}
@@ -0,0 +1,122 @@
+package org.myrobotlab.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class FlowControlTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(FlowControlTest.class);
+
+  @Test
+  public void testSlowClient() throws Exception {
+    Map<String, FlowControl.TopicPolicy> policies = new ConcurrentHashMap<>();
+    policies.put("publishWebDisplay", new FlowControl.TopicPolicy(FlowControl.Policy.LATEST, 0));
+    policies.put("publishRX", new FlowControl.TopicPolicy(FlowControl.Policy.DROP, 0));
+
+    List<byte[]> sent = new ArrayList<>();
+    FlowControl flow = new FlowControl(data -> sent.add(data), policies, 10);
+
+    // fills the client up
+    assertTrue(flow.send("publishWebDisplay", "opencv.publishWebDisplay", new byte[] { 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1 }));
+    assertTrue(flow.isCongested());
+
+    // latest value wins while it is behind
+    assertFalse(flow.send("publishWebDisplay", "opencv.publishWebDisplay", new byte[] { 2 }));
+    assertFalse(flow.send("publishWebDisplay", "opencv.publishWebDisplay", new byte[] { 3 }));
+    assertFalse(flow.send("publishRX", "serial.publishRX", new byte[] { 4 }));
+    assertEquals(1, flow.getHeld());
+    assertEquals(1, flow.getCoalesced());
+    assertEquals(1, flow.getDropped());
+
+    // topics without a policy always go
+    assertTrue(flow.send("publishStatus", "runtime.publishStatus", new byte[] { 5 }));
+    assertEquals(2, sent.size());
+
+    // caught up - the held latest value goes
+    flow.delivered(11);
+    flow.delivered(1);
+    assertEquals(3, sent.size());
+    assertEquals(3, sent.get(2)[0]);
+    assertEquals(0, flow.getHeld());
+    assertEquals(1, flow.getPending());
+  }
+
+  @Test
+  public void testReset() throws Exception {
+    Map<String, FlowControl.TopicPolicy> policies = new ConcurrentHashMap<>();
+    policies.put("publishWebDisplay", new FlowControl.TopicPolicy(FlowControl.Policy.LATEST, 0));
+
+    List<byte[]> sent = new ArrayList<>();
+    FlowControl flow = new FlowControl(data -> sent.add(data), policies, 10);
+
+    assertTrue(flow.send("publishWebDisplay", "opencv.publishWebDisplay", new byte[11]));
+    assertFalse(flow.send("publishWebDisplay", "opencv.publishWebDisplay", new byte[] { 2 }));
+
+    // the transport errored or reconnected - the held value goes
+    flow.reset();
+    assertFalse(flow.isCongested());
+    assertEquals(2, sent.size());
+    assertEquals(1, flow.getPending());
+
+    // a late delivery of what was sent before the reset
+    flow.delivered(11);
+    assertEquals(0, flow.getPending());
+  }
+
+  @Test
+  public void testUnlistedCap() throws Exception {
+    List<byte[]> sent = new ArrayList<>();
+    FlowControl flow = new FlowControl(data -> sent.add(data), new ConcurrentHashMap<>(), 10, 20);
+
+    // behind but not far - topics without a policy still go
+    assertTrue(flow.send("publishStatus", "runtime.publishStatus", new byte[11]));
+    assertTrue(flow.isCongested());
+    assertTrue(flow.send("onState", "servo.onState", new byte[10]));
+    assertEquals(21, flow.getPending());
+
+    // far behind - dropped instead of queued without limit
+    assertFalse(flow.send("publishStatus", "runtime.publishStatus", new byte[1]));
+    assertFalse(flow.send(null, null, new byte[1]));
+    assertEquals(2, flow.getDropped());
+    assertEquals(2, sent.size());
+    assertEquals(21, flow.getPending());
+
+    flow.delivered(21);
+    assertTrue(flow.send("publishStatus", "runtime.publishStatus", new byte[1]));
+    assertEquals(3, sent.size());
+  }
+
+  @Test
+  public void testRateCap() throws Exception {
+    Map<String, FlowControl.TopicPolicy> policies = new ConcurrentHashMap<>();
+    policies.put("publishServoMoveTo", new FlowControl.TopicPolicy(FlowControl.Policy.LATEST, 50));
+
+    List<byte[]> sent = new ArrayList<>();
+    FlowControl flow = new FlowControl(data -> sent.add(data), policies, 1024);
+
+    assertTrue(flow.send("publishServoMoveTo", "servo.publishServoMoveTo", new byte[] { 1 }));
+    assertFalse(flow.send("publishServoMoveTo", "servo.publishServoMoveTo", new byte[] { 2 }));
+    // other publishers of the same topic have their own interval
+    assertTrue(flow.send("publishServoMoveTo", "servo2.publishServoMoveTo", new byte[] { 3 }));
+
+    // nothing goes until the interval is over
+    flow.flush();
+    assertEquals(2, sent.size());
+    Thread.sleep(60);
+    flow.flush();
+    assertEquals(3, sent.size());
+    assertEquals(2, sent.get(2)[0]);
+  }
+
+}
@@ -0,0 +1,256 @@
+package org.myrobotlab.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.image.SerializableImage;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.net.MjpegBroadcaster.EncodedFrame;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class MjpegBroadcasterTest extends AbstractTest {
+
+  public final static Logger log = LoggerFactory.getLogger(MjpegBroadcasterTest.class);
+
+  /**
+   * counts the encodes
+   */
+  static class CountingBroadcaster extends MjpegBroadcaster {
+    final AtomicInteger encoded = new AtomicInteger();
+
+    CountingBroadcaster() {
+      super("test", 0.9f);
+    }
+
+    @Override
+    synchronized EncodedFrame encode(SerializableImage si) throws IOException {
+      encoded.incrementAndGet();
+      return super.encode(si);
+    }
+  }
+
+  /**
+   * the watching end of a socket pair - reads the stream like a browser
+   */
+  static class Viewer {
+    final Socket socket;
+    final DataInputStream in;
+
+    Viewer(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setSoTimeout(10000);
+      in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    String readLine() throws IOException {
+      ByteArrayOutputStream line = new ByteArrayOutputStream();
+      int b;
+      while ((b = in.read()) != '\n') {
+        if (b < 0) {
+          throw new IOException("end of stream");
+        }
+        if (b != '\r') {
+          line.write(b);
+        }
+      }
+      return line.toString("US-ASCII");
+    }
+
+    void readResponseHeader() throws IOException {
+      assertEquals("HTTP/1.0 200 OK", readLine());
+      while (readLine().length() > 0) {
+      }
+    }
+
+    byte[] readPart() throws IOException {
+      assertEquals(MjpegBroadcaster.BOUNDARY, readLine());
+      assertEquals("Content-Type: image/jpeg", readLine());
+      String length = readLine();
+      assertTrue(length, length.startsWith("Content-Length: "));
+      assertEquals("", readLine());
+      byte[] jpeg = new byte[Integer.parseInt(length.substring("Content-Length: ".length()))];
+      in.readFully(jpeg);
+      assertEquals("", readLine());
+      assertEquals("", readLine());
+      return jpeg;
+    }
+
+    void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  ServerSocket server;
+  CountingBroadcaster broadcaster;
+  final List<Viewer> viewers = new ArrayList<>();
+  final Random random = new Random(7);
+
+  @Before
+  public void setUp() throws IOException {
+    server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+    broadcaster = new CountingBroadcaster();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    broadcaster.close();
+    for (Viewer viewer : viewers) {
+      viewer.close();
+    }
+    server.close();
+  }
+
+  /**
+   * connect a viewer and hand the server end to the broadcaster
+   */
+  Viewer connect(int receiveBufferSize) throws IOException {
+    Socket socket = new Socket();
+    if (receiveBufferSize > 0) {
+      socket.setReceiveBufferSize(receiveBufferSize);
+    }
+    socket.connect(server.getLocalSocketAddress());
+    Socket accepted = server.accept();
+    if (receiveBufferSize > 0) {
+      accepted.setSendBufferSize(receiveBufferSize);
+    }
+    broadcaster.addClient(accepted);
+    Viewer viewer = new Viewer(socket);
+    viewers.add(viewer);
+    return viewer;
+  }
+
+  /**
+   * noise - does not compress, so a frame is large
+   */
+  SerializableImage frame(int frameIndex, int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+    for (int y = 0; y < height; ++y) {
+      for (int x = 0; x < width; ++x) {
+        image.setRGB(x, y, random.nextInt(0xffffff));
+      }
+    }
+    return new SerializableImage(image, "test", frameIndex);
+  }
+
+  static byte[] bytes(EncodedFrame frame) {
+    byte[] jpeg = new byte[frame.size()];
+    frame.jpeg.duplicate().get(jpeg);
+    return jpeg;
+  }
+
+  void waitForClients(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (broadcaster.getClientCount() != count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, broadcaster.getClientCount());
+  }
+
+  @Test
+  public void testSharedEncode() throws Exception {
+    // no one watching - nothing encoded
+    assertNull(broadcaster.publish(frame(0, 32, 24)));
+    assertEquals(0, broadcaster.encoded.get());
+
+    List<Viewer> three = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      three.add(connect(0));
+    }
+    EncodedFrame frame = broadcaster.publish(frame(1, 64, 48));
+    assertNotNull(frame);
+    assertEquals(1, frame.frameIndex);
+    assertEquals(1, broadcaster.encoded.get());
+
+    byte[] jpeg = bytes(frame);
+    for (Viewer viewer : three) {
+      viewer.readResponseHeader();
+      assertArrayEquals(jpeg, viewer.readPart());
+    }
+  }
+
+  @Test
+  public void testLastFrameOnConnect() throws Exception {
+    Viewer first = connect(0);
+    EncodedFrame frame = broadcaster.publish(frame(1, 64, 48));
+    first.readResponseHeader();
+    assertArrayEquals(bytes(frame), first.readPart());
+
+    // a new viewer gets the last frame without waiting for the next one
+    Viewer late = connect(0);
+    late.readResponseHeader();
+    assertArrayEquals(bytes(frame), late.readPart());
+    assertEquals(1, broadcaster.encoded.get());
+  }
+
+  @Test
+  public void testSkipAhead() throws Exception {
+    Viewer slow = connect(4096);
+    Viewer fast = connect(0);
+    fast.readResponseHeader();
+
+    // the slow viewer reads nothing - its sender blocks on the first frame
+    List<byte[]> published = new ArrayList<>();
+    for (int i = 0; i < 20; ++i) {
+      EncodedFrame frame = broadcaster.publish(frame(i, 320, 240));
+      published.add(bytes(frame));
+      // the fast viewer is not held up by the slow one
+      assertArrayEquals(published.get(i), fast.readPart());
+    }
+
+    slow.readResponseHeader();
+    List<Integer> received = new ArrayList<>();
+    while (!received.contains(19)) {
+      byte[] jpeg = slow.readPart();
+      int index = -1;
+      for (int i = 0; i < published.size(); ++i) {
+        if (Arrays.equals(published.get(i), jpeg)) {
+          index = i;
+        }
+      }
+      assertTrue("not a published frame", index >= 0);
+      if (received.size() > 0) {
+        assertTrue(received.get(received.size() - 1) < index);
+      }
+      received.add(index);
+    }
+    log.info("slow viewer got frames {}", received);
+    // skipped to the newest instead of sending every frame it missed
+    assertTrue(received.size() < published.size());
+    assertEquals(20, broadcaster.encoded.get());
+  }
+
+  @Test
+  public void testClientGone() throws Exception {
+    Viewer viewer = connect(0);
+    waitForClients(1);
+    viewer.close();
+    // the write fails and the client is removed
+    for (int i = 0; i < 20 && broadcaster.getClientCount() > 0; ++i) {
+      broadcaster.publish(frame(i, 320, 240));
+      Thread.sleep(50);
+    }
+    waitForClients(0);
+  }
+
+}
@@ -0,0 +1,18 @@
+package org.myrobotlab.net;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.myrobotlab.test.AbstractTest;
+
+public class WsClientTest extends AbstractTest {
+
+  @Test
+  public void testAddParameter() {
+    assertEquals("ws://localhost:8888/api/messages?id=a", WsClient.addParameter("ws://localhost:8888/api/messages", "id", "a"));
+    assertEquals("ws://localhost:8888/api/messages?id=a&codec=binary", WsClient.addParameter("ws://localhost:8888/api/messages?id=a", "codec", "binary"));
+    // a url which already had its own query string
+    assertEquals("ws://localhost:8888/api/messages?user=b&id=a", WsClient.addParameter("ws://localhost:8888/api/messages?user=b", "id", "a"));
+  }
+
+}
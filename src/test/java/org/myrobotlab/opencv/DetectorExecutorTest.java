@@ -0,0 +1,193 @@
+package org.myrobotlab.opencv;
+
+import static org.bytedeco.opencv.global.opencv_core.IPL_DEPTH_8U;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bytedeco.opencv.opencv_core.IplImage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.myrobotlab.opencv.DetectorExecutor.AsyncDetector;
+import org.myrobotlab.opencv.DetectorExecutor.Result;
+import org.myrobotlab.service.OpenCV;
+import org.myrobotlab.test.AbstractTest;
+
+public class DetectorExecutorTest extends AbstractTest {
+
+  /**
+   * a detector which waits for the test - records the frames it ran on and
+   * how many detections of it ran at the same time
+   */
+  static class GatedDetector implements DetectorExecutor.Detector<Integer> {
+    final Semaphore gate = new Semaphore(0);
+    final Semaphore started = new Semaphore(0);
+    final List<Integer> frames = new ArrayList<>();
+    final AtomicInteger running = new AtomicInteger();
+    volatile int maxRunning = 0;
+
+    @Override
+    public Integer detect(IplImage image, int frameIndex) throws Exception {
+      int now = running.incrementAndGet();
+      maxRunning = Math.max(maxRunning, now);
+      synchronized (frames) {
+        frames.add(frameIndex);
+      }
+      started.release();
+      try {
+        gate.acquire();
+      } finally {
+        running.decrementAndGet();
+      }
+      return frameIndex * 10;
+    }
+
+    void open() {
+      gate.release(1000);
+    }
+  }
+
+  IplImage image;
+  int maxConcurrent;
+
+  @Before
+  public void setUp() {
+    image = IplImage.create(8, 8, IPL_DEPTH_8U, 1);
+    maxConcurrent = DetectorExecutor.getMaxConcurrent();
+  }
+
+  @After
+  public void tearDown() {
+    DetectorExecutor.setMaxConcurrent(maxConcurrent);
+    image.release();
+  }
+
+  static void waitFor(AsyncDetector<?> async, long detected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (System.currentTimeMillis() < deadline) {
+      synchronized (async) {
+        if (async.detected >= detected && !async.scheduled) {
+          return;
+        }
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testDropsStale() throws Exception {
+    GatedDetector detector = new GatedDetector();
+    AsyncDetector<Integer> async = new AsyncDetector<>("stale", "stale", detector);
+    async.submit(image, 0);
+    assertTrue(detector.started.tryAcquire(5, TimeUnit.SECONDS));
+
+    // frame 0 is being detected - only the newest of the rest waits
+    for (int i = 1; i <= 5; ++i) {
+      async.submit(image, i);
+    }
+    detector.open();
+    waitFor(async, 2);
+
+    assertEquals(6, async.submitted);
+    assertEquals(4, async.dropped);
+    assertEquals(2, async.detected);
+    assertEquals("[0, 5]", detector.frames.toString());
+  }
+
+  @Test
+  public void testOneInFlight() throws Exception {
+    DetectorExecutor.setMaxConcurrent(4);
+    GatedDetector detector = new GatedDetector();
+    AsyncDetector<Integer> async = new AsyncDetector<>("one", "one", detector);
+    detector.open();
+    for (int i = 0; i < 50; ++i) {
+      async.submit(image, i);
+      Thread.sleep(1);
+    }
+    waitFor(async, 1);
+    synchronized (async) {
+      assertEquals(async.submitted, async.detected + async.dropped);
+    }
+    // free threads do not run a second detection of the same detector
+    assertEquals(1, detector.maxRunning);
+    // frames are detected in order, the last one always is
+    List<Integer> frames = detector.frames;
+    for (int i = 1; i < frames.size(); ++i) {
+      assertTrue(frames.get(i - 1) < frames.get(i));
+    }
+    assertEquals(49, (int) frames.get(frames.size() - 1));
+  }
+
+  @Test
+  public void testLatch() throws Exception {
+    GatedDetector detector = new GatedDetector();
+    AsyncDetector<Integer> async = new AsyncDetector<>("latch", "latch", detector);
+    CountDownLatch published = new CountDownLatch(1);
+    List<Result<Integer>> results = new ArrayList<>();
+    async.setOnResult(result -> {
+      results.add(result);
+      published.countDown();
+    });
+
+    OpenCVData data = new OpenCVData("detector-test", System.currentTimeMillis(), 7, null);
+    assertNull(async.latch(data));
+
+    detector.open();
+    async.submit(image, 3);
+    assertTrue(published.await(5, TimeUnit.SECONDS));
+
+    // later frames carry the result with the index of the frame it ran on
+    Result<Integer> result = async.latch(data);
+    assertSame(results.get(0), result);
+    assertEquals(3, result.frameIndex);
+    assertEquals(30, (int) result.value);
+    assertTrue(result.getLatency() >= 0);
+    assertSame(result, data.get(data.getKeys().slot(OpenCV.OUTPUT_KEY, "latchResult")));
+
+    async.clear();
+    assertNull(async.getResult());
+  }
+
+  @Test
+  public void testSetMaxConcurrent() throws Exception {
+    // ignored
+    DetectorExecutor.setMaxConcurrent(0);
+    assertEquals(maxConcurrent, DetectorExecutor.getMaxConcurrent());
+
+    DetectorExecutor.setMaxConcurrent(2);
+    assertEquals(2, DetectorExecutor.getMaxConcurrent());
+
+    GatedDetector[] detectors = new GatedDetector[4];
+    for (int i = 0; i < detectors.length; ++i) {
+      detectors[i] = new GatedDetector();
+      new AsyncDetector<>("max" + i, "max" + i, detectors[i]).submit(image, i);
+    }
+    Thread.sleep(200);
+    int started = 0;
+    for (GatedDetector d : detectors) {
+      started += d.frames.size();
+    }
+    // bounded over all detectors
+    assertEquals(2, started);
+    assertEquals(2, DetectorExecutor.getActiveCount());
+
+    // more threads start on the waiting detections
+    DetectorExecutor.setMaxConcurrent(4);
+    for (GatedDetector d : detectors) {
+      assertTrue(d.started.tryAcquire(5, TimeUnit.SECONDS));
+    }
+    for (GatedDetector d : detectors) {
+      d.open();
+    }
+  }
+
+}
@@ -0,0 +1,207 @@
+package org.myrobotlab.opencv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.myrobotlab.opencv.FilterPipeline.StageStats;
+import org.myrobotlab.service.OpenCV;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.test.AbstractTest;
+
+public class FilterPipelineTest extends AbstractTest {
+
+  /**
+   * OpenCV with the filters and the output replaced by sleeps - records the
+   * order frames are output in and what the pipeline hands back
+   */
+  static class TestOpenCV extends OpenCV {
+    private static final long serialVersionUID = 1L;
+
+    volatile long filterMs = 0;
+    volatile long outputMs = 0;
+
+    final List<Integer> output = new ArrayList<>();
+    final AtomicInteger recycled = new AtomicInteger();
+
+    TestOpenCV(String name) {
+      super(name, Runtime.getInstance().getId());
+    }
+
+    @Override
+    public void processFilter(OpenCVFilter filter, OpenCVData data) throws InterruptedException {
+      // uneven per frame so later frames can catch up with earlier ones
+      Thread.sleep(filterMs * (data.getFrameIndex() % 3));
+    }
+
+    @Override
+    public void processOutput(OpenCVData data) throws InterruptedException {
+      Thread.sleep(outputMs);
+      synchronized (output) {
+        output.add(data.getFrameIndex());
+      }
+    }
+
+    @Override
+    public void recycle(OpenCVData data) {
+      recycled.incrementAndGet();
+    }
+
+    List<Integer> getOutput() {
+      synchronized (output) {
+        return new ArrayList<>(output);
+      }
+    }
+  }
+
+  /**
+   * stands in for a native copy owned by a frame
+   */
+  static class Copy implements AutoCloseable {
+    static final AtomicInteger closed = new AtomicInteger();
+
+    @Override
+    public void close() {
+      closed.incrementAndGet();
+    }
+  }
+
+  TestOpenCV opencv;
+  FilterPipeline pipeline;
+
+  final List<OpenCVFilter> filters = Arrays.asList(new OpenCVFilterInvert("a"), new OpenCVFilterInvert("b"), new OpenCVFilterInvert("c"),
+      new OpenCVFilterInvert("d"));
+
+  void start(int filterStages, int queueSize, boolean dropFrames) {
+    Copy.closed.set(0);
+    opencv = new TestOpenCV("pipeline");
+    pipeline = new FilterPipeline(opencv, filterStages, queueSize, dropFrames);
+    pipeline.start();
+  }
+
+  OpenCVData frame(int frameIndex) {
+    OpenCVData data = new OpenCVData("pipeline", System.currentTimeMillis(), frameIndex, null);
+    data.own(new Copy());
+    return data;
+  }
+
+  void waitForOutput(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (opencv.getOutput().size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  long dropped() {
+    long dropped = 0;
+    for (StageStats stats : pipeline.getStats()) {
+      dropped += stats.dropped;
+    }
+    return dropped;
+  }
+
+  @After
+  public void tearDown() {
+    if (pipeline != null) {
+      pipeline.stop();
+    }
+  }
+
+  @Test
+  public void testInOrder() throws InterruptedException {
+    start(2, 2, false);
+    opencv.filterMs = 2;
+    for (int i = 0; i < 50; ++i) {
+      assertTrue(pipeline.submit(frame(i), filters));
+    }
+    waitForOutput(50);
+
+    List<Integer> output = opencv.getOutput();
+    assertEquals(50, output.size());
+    for (int i = 0; i < output.size(); ++i) {
+      assertEquals(i, (int) output.get(i));
+    }
+    for (StageStats stats : pipeline.getStats()) {
+      assertEquals(stats.name, 50, stats.frames);
+    }
+  }
+
+  @Test
+  public void testBlockingDropsNothing() throws InterruptedException {
+    start(2, 1, false);
+    opencv.outputMs = 10;
+    for (int i = 0; i < 20; ++i) {
+      // waits for the slow output instead of dropping
+      assertTrue(pipeline.submit(frame(i), filters));
+    }
+    waitForOutput(20);
+
+    assertEquals(20, opencv.getOutput().size());
+    assertEquals(0, dropped());
+    assertEquals(0, opencv.recycled.get());
+    assertEquals(0, Copy.closed.get());
+  }
+
+  @Test
+  public void testDropFrames() throws InterruptedException {
+    start(2, 1, true);
+    opencv.outputMs = 50;
+    int rejected = 0;
+    for (int i = 0; i < 20; ++i) {
+      if (!pipeline.submit(frame(i), filters)) {
+        ++rejected;
+      }
+    }
+
+    long deadline = System.currentTimeMillis() + 10000;
+    while (opencv.getOutput().size() + dropped() < 20 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    List<Integer> output = opencv.getOutput();
+    long dropped = dropped();
+    // 5 frames in flight at most - the rest are dropped instead of waiting
+    assertTrue(dropped > 0);
+    assertTrue(dropped >= rejected);
+    assertEquals(20, output.size() + dropped);
+    // every drop is handed back and its copy closed
+    assertEquals(dropped, opencv.recycled.get());
+    assertEquals(dropped, Copy.closed.get());
+    for (int i = 1; i < output.size(); ++i) {
+      assertTrue(output.get(i - 1) < output.get(i));
+    }
+  }
+
+  @Test
+  public void testStop() throws InterruptedException {
+    start(1, 2, false);
+    opencv.outputMs = 10000;
+    // 1 in output + 2 queued, 1 held by the filter stage + 2 queued
+    for (int i = 0; i < 6; ++i) {
+      assertTrue(pipeline.submit(frame(i), filters));
+    }
+    Thread.sleep(100);
+
+    long start = System.currentTimeMillis();
+    pipeline.stop();
+    assertTrue(System.currentTimeMillis() - start < 3000);
+
+    assertFalse(pipeline.isRunning());
+    for (FilterPipeline.Stage stage : pipeline.stages) {
+      assertFalse(stage.stats.name, stage.thread.isAlive());
+      assertEquals(stage.stats.name, 0, stage.queue.size());
+    }
+    assertEquals(0, opencv.getOutput().size());
+    // all but the frame the output was interrupted in
+    assertEquals(5, Copy.closed.get());
+    pipeline = null;
+  }
+
+}
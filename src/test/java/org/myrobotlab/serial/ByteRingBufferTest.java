@@ -0,0 +1,51 @@
+package org.myrobotlab.serial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.test.AbstractTest;
+import org.slf4j.Logger;
+
+public class ByteRingBufferTest extends AbstractTest {
+
+  transient public final static Logger log = LoggerFactory.getLogger(ByteRingBufferTest.class);
+
+  @Test
+  public void testRingBuffer() throws Exception {
+    ByteRingBuffer rx = new ByteRingBuffer(4);
+
+    assertEquals(3, rx.write(new byte[] { 0, 127, (byte) 128 }, 0, 3));
+    assertEquals(0, rx.take());
+    assertEquals(127, rx.take());
+
+    // wraps around - and is full
+    assertEquals(3, rx.write(new byte[] { (byte) 255, 1, 2, 3 }, 0, 4));
+    assertEquals(4, rx.size());
+    assertEquals(1, rx.getDropped());
+    assertArrayEquals(new byte[] { (byte) 128, (byte) 255, 1, 2 }, rx.toByteArray());
+
+    byte[] data = new byte[8];
+    assertEquals(4, rx.read(data, 0, data.length));
+    assertEquals(128, data[0] & 0xff);
+    assertEquals(2, data[3]);
+    assertEquals(0, rx.size());
+
+    // empty - times out
+    assertEquals(-1, rx.poll(10, TimeUnit.MILLISECONDS));
+
+    // a reader waiting on data
+    new Thread(() -> {
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+      }
+      rx.write(new byte[] { 42 }, 0, 1);
+    }).start();
+    assertEquals(42, rx.poll(1000, TimeUnit.MILLISECONDS));
+  }
+
+}
@@ -1,5 +1,6 @@
 package org.myrobotlab.service;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -7,9 +8,13 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -17,12 +22,16 @@ import org.myrobotlab.arduino.BoardInfo;
 import org.myrobotlab.arduino.Msg;
 import org.myrobotlab.arduino.virtual.Device;
 import org.myrobotlab.arduino.virtual.MrlServo;
+import org.myrobotlab.i2c.I2CTransactions;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.Arduino.Sketch;
 import org.myrobotlab.service.data.DeviceMapping;
 import org.myrobotlab.service.data.PinData;
+import org.myrobotlab.service.data.PinFrame;
+import org.myrobotlab.service.interfaces.I2CControl;
 import org.myrobotlab.service.interfaces.PinArrayListener;
 import org.myrobotlab.service.interfaces.PinDefinition;
+import org.myrobotlab.service.interfaces.PinFrameListener;
 import org.myrobotlab.service.interfaces.PinListener;
 import org.myrobotlab.service.interfaces.SerialDevice;
 import org.myrobotlab.test.AbstractTest;
@@ -168,6 +177,41 @@ public class ArduinoTest extends AbstractTest implements PinArrayListener, PinLi
     }
   }
 
+  @Test
+  public void testAckWindow() throws Exception {
+    if (printMethods)
+      System.out.println(String.format("Running %s.%s", getSimpleName(), getName()));
+    if (!arduino01.isVirtual()) {
+      return;
+    }
+    Msg msg = arduino01.msg;
+    try {
+      // a board which acks without sequence numbers keeps stop and wait
+      arduino01.setAckWindow(8);
+      arduino01.digitalWrite(10, 1);
+      assertEquals(1, msg.getAckWindow());
+
+      // the virtual MrlComm sends them back - the window opens
+      arduino01.getVirtual().getMrlComm().enableAckSeq(true);
+      for (int i = 0; i < 50; ++i) {
+        arduino01.digitalWrite(10, i % 2);
+      }
+      assertTrue(msg.isSeqAcks());
+      assertEquals(8, msg.getAckWindow());
+
+      // every command is acked, nothing needed a retransmit
+      long deadline = System.currentTimeMillis() + 2000;
+      while (msg.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, msg.getInFlight());
+      assertEquals(0, msg.getRetransmitCount());
+    } finally {
+      arduino01.getVirtual().getMrlComm().enableAckSeq(false);
+      arduino01.setAckWindow(1);
+    }
+  }
+
   @Test
   public final void testDigitalWrite() {
     if (printMethods)
@@ -541,6 +585,93 @@ public class ArduinoTest extends AbstractTest implements PinArrayListener, PinLi
     pinData.clear();
   }
 
+  @Test
+  public void testI2cTransactions() throws Exception {
+    // a bare i2c device on bus 1
+    I2CControl control = (I2CControl) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { I2CControl.class }, (proxy, method, args) -> {
+      switch (method.getName()) {
+        case "getName":
+          return "i2cTest";
+        case "getBus":
+        case "getDeviceBus":
+          return "1";
+        case "getAddress":
+        case "getDeviceAddress":
+          return "0x68";
+        default:
+          return null;
+      }
+    });
+    arduino01.attachI2CControl(control);
+
+    // several reads outstanding - virtual i2c registers hold their own address
+    CompletableFuture<byte[]> accel = arduino01.i2cWriteReadAsync(1, 0x68, 0x3B, 2);
+    CompletableFuture<byte[]> gyro = arduino01.i2cWriteReadAsync(1, 0x68, 0x43, 2);
+    assertArrayEquals(new byte[] { 0x3B, 0x3C }, accel.get(1, TimeUnit.SECONDS));
+    assertArrayEquals(new byte[] { 0x43, 0x44 }, gyro.get(1, TimeUnit.SECONDS));
+
+    // batched
+    List<byte[]> data = arduino01.i2cReadRegisters(1, Arrays.asList(new I2CTransactions.Request(0x68, 0x10, 1), new I2CTransactions.Request(0x48, 0x20, 3)))
+        .get(1, TimeUnit.SECONDS);
+    assertArrayEquals(new byte[] { 0x10 }, data.get(0));
+    assertArrayEquals(new byte[] { 0x20, 0x21, 0x22 }, data.get(1));
+
+    // blocking read continues where the last read of the device stopped
+    byte[] buffer = new byte[2];
+    assertEquals(2, arduino01.i2cRead(control, 1, 0x68, buffer, 2));
+    assertArrayEquals(new byte[] { 0x11, 0x12 }, buffer);
+  }
+
+  @Test
+  public void testPinFrame() {
+    PinFrame[] last = new PinFrame[1];
+    PinFrameListener listener = new PinFrameListener() {
+
+      @Override
+      public String getName() {
+        return "pinFrameTest";
+      }
+
+      @Override
+      public boolean isLocal() {
+        return true;
+      }
+
+      @Override
+      public String[] getActivePins() {
+        return new String[] { "A1", "A0" };
+      }
+
+      @Override
+      public void onPinFrame(PinFrame frame) {
+        last[0] = frame;
+      }
+    };
+
+    arduino01.setBoardUno();
+    arduino01.attach(listener);
+    int a0 = arduino01.getPin("A0").getAddress();
+    int a1 = arduino01.getPin("A1").getAddress();
+    int d2 = arduino01.getPin("D2").getAddress();
+
+    // in the order the listener asked for - other pins left out
+    arduino01.publishPinArray(new int[] { a0, 0, 10, d2, 1, 0, a1, 0, 20 });
+    PinFrame frame = last[0];
+    assertEquals(2, frame.size);
+    assertEquals(a1, frame.address[0]);
+    assertEquals(20, frame.value[0]);
+    assertEquals(10, frame.value[1]);
+
+    // the same frame is reused - A1 was not in this poll
+    arduino01.publishPinArray(new int[] { a0, 0, 11 });
+    assertTrue(frame == last[0]);
+    assertFalse(frame.updated[0]);
+    assertTrue(frame.updated[1]);
+    assertEquals(11, frame.value[1]);
+
+    arduino01.detach(listener);
+  }
+
   @Override
   public void onPin(PinData pindata) {
     pinData.put(pindata.pin, pindata);
@@ -79,6 +79,30 @@ public class PythonTest extends AbstractServiceTest {
     Integer count = (Integer) python.get("count");
     assertTrue(count > 0);
 
+    // called directly - with stats per method/number of parameters
+    Python.CallbackStats pulse = python.getCallbackStats().get("onPulse/1");
+    assertTrue(pulse.count > 0);
+    assertEquals(0, pulse.errors);
+    assertEquals(pulse.count, pulse.runTime.getCount());
+    assertTrue(pulse.delay.getCount() > 0);
+
+    // a function defined again is the one called back
+    python.exec("pulses = 0\ndef onPulse(clock_date):\n\tglobal pulses\n\tpulses = pulses + 1");
+    sleep(1500);
+    assertTrue((Integer) python.get("pulses") > 0);
+
+    // and one bound again by a callback, not by a script
+    python.exec("ticks = 0\ndef tick(clock_date):\n\tglobal ticks\n\tticks = ticks + 1\ndef onPulse(clock_date):\n\tglobal onPulse\n\tonPulse = tick");
+    sleep(1500);
+    assertTrue((Integer) python.get("ticks") > 0);
+
+    // the compiled call expression
+    python.setDirectCallbacks(false);
+    python.exec("pulses = 0");
+    sleep(1500);
+    assertTrue((Integer) python.get("pulses") > 0);
+    python.setDirectCallbacks(true);
+
     python.exec("clockp01.stopClock()");
     sleep(500);
 